@@ -0,0 +1,134 @@
+package com.aviadmini.quickimagepick.benchmarks;
+
+import com.aviadmini.quickimagepick.core.CopyLoops;
+import com.aviadmini.quickimagepick.core.Hashing;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Import copy loops on a file of camera picture size: channel transfer, buffered copy through direct and heap buffers,
+ * buffered copy with hashing (dedup import) and plain stream copy
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class CopyBenchmark {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    @Param({"1048576", "8388608"})
+    public int size;
+
+    private File mSourceFile;
+    private File mDestinationFile;
+
+    private RandomAccessFile mSource;
+    private RandomAccessFile mDestination;
+
+    private final ByteBuffer mDirectBuffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private final ByteBuffer mHeapBuffer   = ByteBuffer.allocate(BUFFER_SIZE);
+    private final byte[]     mStreamBuffer = new byte[16 * 1024];
+
+    @Setup(Level.Trial)
+    public void createFiles()
+            throws IOException {
+
+        this.mSourceFile = File.createTempFile("qip-copy-src", null);
+        this.mDestinationFile = File.createTempFile("qip-copy-dst", null);
+
+        final byte[] content = new byte[this.size];
+        new Random(42).nextBytes(content);
+
+        final FileOutputStream out = new FileOutputStream(this.mSourceFile);
+        try {
+            out.write(content);
+        } finally {
+            out.close();
+        }
+
+    }
+
+    @Setup(Level.Invocation)
+    public void openFiles()
+            throws IOException {
+
+        this.mSource = new RandomAccessFile(this.mSourceFile, "r");
+        this.mDestination = new RandomAccessFile(this.mDestinationFile, "rw");
+        this.mDestination.setLength(0);
+
+    }
+
+    @TearDown(Level.Invocation)
+    public void closeFiles()
+            throws IOException {
+
+        this.mSource.close();
+        this.mDestination.close();
+
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteFiles() {
+
+        //noinspection ResultOfMethodCallIgnored
+        this.mSourceFile.delete();
+        //noinspection ResultOfMethodCallIgnored
+        this.mDestinationFile.delete();
+
+    }
+
+    @Benchmark
+    public long transfer()
+            throws IOException {
+        return CopyLoops.transfer(this.mSource.getChannel(), this.mDestination.getChannel(), this.mDirectBuffer);
+    }
+
+    @Benchmark
+    public long bufferedDirect()
+            throws IOException {
+        return CopyLoops.copyBuffered(this.mSource.getChannel(), this.mDestination.getChannel(), this.mDirectBuffer, null);
+    }
+
+    @Benchmark
+    public long bufferedHeap()
+            throws IOException {
+        return CopyLoops.copyBuffered(this.mSource.getChannel(), this.mDestination.getChannel(), this.mHeapBuffer, null);
+    }
+
+    @Benchmark
+    public long bufferedDirectSha256()
+            throws IOException {
+        return CopyLoops.copyBuffered(this.mSource.getChannel(), this.mDestination.getChannel(), this.mDirectBuffer, Hashing.sha256());
+    }
+
+    @Benchmark
+    public long stream()
+            throws IOException {
+
+        final FileChannel source = this.mSource.getChannel();
+        final FileChannel destination = this.mDestination.getChannel();
+
+        // streams over the same descriptors, closed with the files
+        return CopyLoops.copyStream(Channels.newInputStream(source), Channels.newOutputStream(destination), this.mStreamBuffer);
+    }
+
+}
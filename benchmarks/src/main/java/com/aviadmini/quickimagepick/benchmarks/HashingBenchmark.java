@@ -0,0 +1,53 @@
+package com.aviadmini.quickimagepick.benchmarks;
+
+import com.aviadmini.quickimagepick.core.Hashing;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.security.MessageDigest;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Content hash of a picture (dedup store) and cache key hashing (thumbnail disk tier)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class HashingBenchmark {
+
+    private static final int CONTENT_SIZE = 1024 * 1024;
+
+    private static final String THUMBNAIL_KEY = "content://com.android.providers.media.documents/document/image%3A1234#256@1476612345000";
+
+    private byte[] mContent;
+
+    @Setup
+    public void setUp() {
+
+        this.mContent = new byte[CONTENT_SIZE];
+        new Random(42).nextBytes(this.mContent);
+
+    }
+
+    @Benchmark
+    public String sha256Hex() {
+
+        final MessageDigest digest = Hashing.sha256();
+        digest.update(this.mContent);
+
+        return Hashing.toHex(digest.digest());
+    }
+
+    @Benchmark
+    public String thumbnailKey() {
+        return Hashing.md5Hex(THUMBNAIL_KEY);
+    }
+
+}
@@ -0,0 +1,119 @@
+package com.aviadmini.quickimagepick.benchmarks;
+
+import com.aviadmini.quickimagepick.core.ImageHeaderParser;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Header parsing of synthetic images. JPEG carries an EXIF segment padded to the size of a typical camera one (with thumbnail)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class HeaderParserBenchmark {
+
+    private static final int EXIF_PADDING = 24 * 1024;
+
+    @Param({"jpeg", "png", "webp"})
+    public String format;
+
+    private byte[] mImage;
+
+    @Setup
+    public void setUp()
+            throws IOException {
+
+        switch (this.format) {
+
+            case "jpeg": {
+
+                this.mImage = jpeg(4032, 3024, 6);
+
+                break;
+            }
+
+            case "png": {
+
+                this.mImage = png(1080, 1920);
+
+                break;
+            }
+
+            default: {
+
+                this.mImage = webp(1080, 1920);
+
+                break;
+            }
+
+        }
+
+    }
+
+    @Benchmark
+    public ImageHeaderParser.Header parse()
+            throws IOException {
+        return ImageHeaderParser.parse(new ByteArrayInputStream(this.mImage));
+    }
+
+    // ==== //
+
+    static byte[] jpeg(final int pWidth, final int pHeight, final int pOrientation)
+            throws IOException {
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        out.write(new byte[]{(byte) 0xFF, (byte) 0xD8});
+
+        // APP1: "Exif\0\0", big endian TIFF header, IFD0 with orientation only, then padding
+        final ByteArrayOutputStream exif = new ByteArrayOutputStream();
+        exif.write(new byte[]{'E', 'x', 'i', 'f', 0, 0, 'M', 'M', 0, 42, 0, 0, 0, 8, 0, 1, 0x01, 0x12, 0, 3, 0, 0, 0, 1, 0,
+                (byte) pOrientation, 0, 0, 0, 0, 0, 0});
+        exif.write(new byte[EXIF_PADDING]);
+
+        writeSegment(out, 0xE1, exif.toByteArray());
+
+        // SOF0: precision, height, width, one component
+        writeSegment(out, 0xC0, new byte[]{8, (byte) (pHeight >> 8), (byte) pHeight, (byte) (pWidth >> 8), (byte) pWidth, 1, 1, 0x11, 0});
+
+        out.write(new byte[]{(byte) 0xFF, (byte) 0xD9});
+
+        return out.toByteArray();
+    }
+
+    static byte[] png(final int pWidth, final int pHeight) {
+        return new byte[]{(byte) 0x89, 'P', 'N', 'G', 0x0D, 0x0A, 0x1A, 0x0A, 0, 0, 0, 13, 'I', 'H', 'D', 'R', (byte) (pWidth >> 24),
+                (byte) (pWidth >> 16), (byte) (pWidth >> 8), (byte) pWidth, (byte) (pHeight >> 24), (byte) (pHeight >> 16),
+                (byte) (pHeight >> 8), (byte) pHeight, 8, 6, 0, 0, 0};
+    }
+
+    static byte[] webp(final int pWidth, final int pHeight) {
+        return new byte[]{'R', 'I', 'F', 'F', 0, 0, 0, 0, 'W', 'E', 'B', 'P', 'V', 'P', '8', ' ', 0, 0, 0, 0, 0, 0, 0, (byte) 0x9D, 0x01,
+                0x2A, (byte) pWidth, (byte) ((pWidth >> 8) & 0x3F), (byte) pHeight, (byte) ((pHeight >> 8) & 0x3F)};
+    }
+
+    private static void writeSegment(final ByteArrayOutputStream pOut, final int pMarker, final byte[] pPayload) {
+
+        final int length = pPayload.length + 2;
+
+        pOut.write(0xFF);
+        pOut.write(pMarker);
+        pOut.write(length >> 8);
+        pOut.write(length);
+        pOut.write(pPayload, 0, pPayload.length);
+
+    }
+
+}
@@ -0,0 +1,79 @@
+package com.aviadmini.quickimagepick.benchmarks;
+
+import com.aviadmini.quickimagepick.core.RequestCodes;
+import com.aviadmini.quickimagepick.core.ResultRouter;
+import com.aviadmini.quickimagepick.core.SampleSize;
+import com.aviadmini.quickimagepick.core.SourceSelection;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Main thread work of a pick: chooser planning, result routing and sample size math
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class PickFlowBenchmark {
+
+    private static final int ALL_SOURCES = SourceSelection.SOURCE_CAMERA | SourceSelection.SOURCE_GALLERY | SourceSelection.SOURCE_DOCUMENTS;
+
+    // installed camera and gallery apps
+    @Param({"2", "16"})
+    public int targets;
+
+    private List<String> mCameraTargets;
+    private List<String> mGalleryTargets;
+
+    private int mSessionId;
+
+    @Setup
+    public void setUp() {
+
+        this.mCameraTargets = new ArrayList<>();
+        this.mGalleryTargets = new ArrayList<>();
+        for (int i = 0; i < this.targets; i++) {
+
+            this.mCameraTargets.add("com.example.camera" + i);
+            this.mGalleryTargets.add("com.example.gallery" + i);
+
+        }
+
+    }
+
+    @Benchmark
+    public List<SourceSelection.Entry<String>> planChooser() {
+        return SourceSelection.plan(ALL_SOURCES, true, this.mCameraTargets, this.mGalleryTargets);
+    }
+
+    @Benchmark
+    public void routeResult(final Blackhole pBlackhole) {
+
+        final int requestCode = RequestCodes.toRequestCode(RequestCodes.KIND_MULTIPLE, this.mSessionId++);
+
+        pBlackhole.consume(RequestCodes.isRequestCode(requestCode));
+        pBlackhole.consume(RequestCodes.slotOf(requestCode));
+        pBlackhole.consume(ResultRouter.route(RequestCodes.kindOf(requestCode), (requestCode & 1) == 0));
+
+    }
+
+    @Benchmark
+    public int sampleSize() {
+
+        final float scale = SampleSize.fitScale(4032, 3024, 1024, 1024);
+
+        return SampleSize.compute(4032, 3024, Math.round(4032 * scale), Math.round(3024 * scale));
+    }
+
+}
@@ -0,0 +1,133 @@
+package com.aviadmini.quickimagepick.core;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.security.MessageDigest;
+
+/**
+ * Copy and read loops used to import and upload picked images
+ */
+public final class CopyLoops {
+
+    /**
+     * Copies whole file with {@link FileChannel#transferTo(long, long, WritableByteChannel)}, content does not pass through Java heap.
+     * Some channels stop transferring before the end (transferTo returns 0), the rest is then copied through given buffer
+     *
+     * @param pBuffer buffer for the rest of the file if transfer stops early
+     * @return number of bytes copied, less than file size only if the file was truncated meanwhile
+     */
+    public static long transfer(final FileChannel pSource, final WritableByteChannel pDestination, final ByteBuffer pBuffer)
+            throws IOException {
+
+        final long size = pSource.size();
+
+        long position = 0;
+        while (position < size) {
+
+            final long transferred = pSource.transferTo(position, size - position, pDestination);
+            if (transferred <= 0) {
+
+                pSource.position(position);
+
+                return position + copyBuffered(pSource, pDestination, pBuffer, null);
+            }
+
+            position += transferred;
+
+        }
+
+        return position;
+    }
+
+    /**
+     * Copies channel until its end through given buffer, for sources that cannot transfer (pipes, sockets)
+     *
+     * @param pBuffer buffer to copy through, direct ones avoid an extra copy
+     * @param pDigest digest to feed every copied byte to, or null
+     * @return number of bytes copied
+     */
+    public static long copyBuffered(final ReadableByteChannel pSource, final WritableByteChannel pDestination, final ByteBuffer pBuffer,
+                                    final MessageDigest pDigest)
+            throws IOException {
+
+        pBuffer.clear();
+
+        long total = 0;
+        while (pSource.read(pBuffer) != -1) {
+
+            pBuffer.flip();
+
+            if (pDigest != null) {
+
+                pBuffer.mark();
+                pDigest.update(pBuffer);
+                pBuffer.reset();
+
+            }
+
+            while (pBuffer.hasRemaining()) {
+                total += pDestination.write(pBuffer);
+            }
+
+            pBuffer.clear();
+
+        }
+
+        return total;
+    }
+
+    /**
+     * Copies stream until its end through given buffer
+     *
+     * @return number of bytes copied
+     */
+    public static long copyStream(final InputStream pIn, final OutputStream pOut, final byte[] pBuffer)
+            throws IOException {
+
+        long total = 0;
+        int read;
+        while ((read = pIn.read(pBuffer)) != -1) {
+
+            pOut.write(pBuffer, 0, read);
+
+            total += read;
+
+        }
+
+        return total;
+    }
+
+    /**
+     * Reads from given position until buffer is full or end of file is reached. Channel position is not used nor changed,
+     * so several threads may read the same channel at once
+     *
+     * @return number of bytes read
+     */
+    public static int readFully(final FileChannel pSource, final ByteBuffer pBuffer, final long pPosition)
+            throws IOException {
+
+        int total = 0;
+        while (pBuffer.hasRemaining()) {
+
+            final int read = pSource.read(pBuffer, pPosition + total);
+            if (read == -1) {
+                break;
+            }
+
+            total += read;
+
+        }
+
+        return total;
+    }
+
+    // ==== //
+
+    private CopyLoops() {}
+
+}
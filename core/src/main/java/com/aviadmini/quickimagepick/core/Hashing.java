@@ -0,0 +1,63 @@
+package com.aviadmini.quickimagepick.core;
+
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Content hashes used for deduplication and cache keys
+ */
+public final class Hashing {
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * @return new SHA-256 digest
+     */
+    public static MessageDigest sha256() {
+        return newDigest("SHA-256");
+    }
+
+    /**
+     * @return hex MD5 of given key, short and file name safe
+     */
+    public static String md5Hex(final String pKey) {
+        return toHex(newDigest("MD5").digest(pKey.getBytes(UTF_8)));
+    }
+
+    /**
+     * @return lower case hex of given bytes
+     */
+    public static String toHex(final byte[] pBytes) {
+
+        final char[] result = new char[pBytes.length * 2];
+        for (int i = 0; i < pBytes.length; i++) {
+
+            result[i * 2] = HEX_DIGITS[(pBytes[i] >> 4) & 0xF];
+            result[i * 2 + 1] = HEX_DIGITS[pBytes[i] & 0xF];
+
+        }
+
+        return new String(result);
+    }
+
+    // ==== //
+
+    private static MessageDigest newDigest(final String pAlgorithm) {
+
+        try {
+            return MessageDigest.getInstance(pAlgorithm);
+        } catch (final NoSuchAlgorithmException e) {
+            // both are mandatory for every Java platform
+            throw new IllegalStateException(e);
+        }
+
+    }
+
+    // ==== //
+
+    private Hashing() {}
+
+}
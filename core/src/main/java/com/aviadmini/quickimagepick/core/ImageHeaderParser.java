@@ -0,0 +1,584 @@
+package com.aviadmini.quickimagepick.core;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Reads format, dimensions and EXIF orientation from the first bytes of an image, without decoding it.
+ * Understands JPEG (APP1 EXIF and SOFn segments), PNG (IHDR), WebP (VP8, VP8L and VP8X chunks) and GIF.
+ * Only header bytes are read, parsing stops as soon as dimensions are known.
+ * <br>
+ * Also extracts JPEG thumbnails embedded into EXIF (IFD1), for previews that need no decode of the image itself.
+ */
+public final class ImageHeaderParser {
+
+    public static final String MIME_JPEG = "image/jpeg";
+    public static final String MIME_PNG  = "image/png";
+    public static final String MIME_WEBP = "image/webp";
+    public static final String MIME_GIF  = "image/gif";
+
+    public static final int ORIENTATION_UNDEFINED = 0;
+    public static final int ORIENTATION_NORMAL    = 1;
+
+    // APP1 segments larger than that are skipped instead of being parsed for orientation
+    private static final int MAX_EXIF_SEGMENT_SIZE = 64 * 1024;
+
+    private static final int TIFF_TAG_ORIENTATION      = 0x0112;
+    private static final int TIFF_TAG_THUMBNAIL_OFFSET = 0x0201;
+    private static final int TIFF_TAG_THUMBNAIL_LENGTH = 0x0202;
+    private static final int TIFF_TYPE_SHORT           = 3;
+    private static final int TIFF_TYPE_LONG            = 4;
+
+    /**
+     * @param pIn image stream, positioned at the start of the image. Not closed
+     * @return parsed header or null if format is not recognized
+     * @throws IOException if stream cannot be read or ends before header does
+     */
+    public static Header parse(final InputStream pIn)
+            throws IOException {
+
+        final Reader reader = new Reader(pIn);
+
+        final int first = reader.readUInt16BE();
+
+        if (first == 0xFFD8) {
+            return parseJpeg(reader);
+        }
+
+        if (first == 0x8950 && reader.readUInt16BE() == 0x4E47 && reader.readInt32BE() == 0x0D0A1A0A) {
+            return parsePng(reader);
+        }
+
+        if (first == 0x5249 && reader.readUInt16BE() == 0x4646) { // RIFF
+            return parseWebP(reader);
+        }
+
+        if (first == 0x4749 && reader.readUInt16BE() == 0x4638) { // GIF8
+            return parseGif(reader);
+        }
+
+        return null;
+    }
+
+    // ==== JPEG ==== //
+
+    private static Header parseJpeg(final Reader pReader)
+            throws IOException {
+
+        int orientation = ORIENTATION_UNDEFINED;
+
+        while (true) {
+
+            int marker = pReader.readUInt8();
+            if (marker != 0xFF) {
+                return null;
+            }
+
+            // fill bytes
+            do {
+                marker = pReader.readUInt8();
+            } while (marker == 0xFF);
+
+            // standalone markers have no length
+            if (marker == 0x01 || (marker >= 0xD0 && marker <= 0xD7)) {
+                continue;
+            }
+
+            // image data started or ended before a frame header
+            if (marker == 0xDA || marker == 0xD9) {
+                return null;
+            }
+
+            final int length = pReader.readUInt16BE() - 2;
+            if (length < 0) {
+                return null;
+            }
+
+            if (isStartOfFrame(marker)) {
+
+                pReader.skip(1); // precision
+
+                final int height = pReader.readUInt16BE();
+                final int width = pReader.readUInt16BE();
+
+                return new Header(MIME_JPEG, width, height, orientation);
+            }
+
+            if (marker == 0xE1 && orientation == ORIENTATION_UNDEFINED && length <= MAX_EXIF_SEGMENT_SIZE) {
+
+                final byte[] segment = pReader.readBytes(length);
+
+                orientation = parseExifOrientation(segment, 0, segment.length);
+
+                continue;
+            }
+
+            pReader.skip(length);
+
+        }
+
+    }
+
+    private static boolean isStartOfFrame(final int pMarker) {
+        // C4 (DHT), C8 (JPG) and CC (DAC) share the range but are not frame headers
+        return pMarker >= 0xC0 && pMarker <= 0xCF && pMarker != 0xC4 && pMarker != 0xC8 && pMarker != 0xCC;
+    }
+
+    /**
+     * @param pSegment APP1 segment payload, starting with "Exif\0\0"
+     * @return orientation from IFD0 or {@link #ORIENTATION_UNDEFINED}
+     */
+    public static int parseExifOrientation(final byte[] pSegment, final int pOffset, final int pLength) {
+
+        if (pLength < 14 || pSegment[pOffset] != 'E' || pSegment[pOffset + 1] != 'x' || pSegment[pOffset + 2] != 'i'
+                || pSegment[pOffset + 3] != 'f' || pSegment[pOffset + 4] != 0 || pSegment[pOffset + 5] != 0) {
+            return ORIENTATION_UNDEFINED;
+        }
+
+        final int tiff = pOffset + 6;
+        final int end = pOffset + pLength;
+
+        final boolean littleEndian;
+        if (pSegment[tiff] == 'I' && pSegment[tiff + 1] == 'I') {
+            littleEndian = true;
+        } else if (pSegment[tiff] == 'M' && pSegment[tiff + 1] == 'M') {
+            littleEndian = false;
+        } else {
+            return ORIENTATION_UNDEFINED;
+        }
+
+        final long ifdOffset = readUInt32(pSegment, tiff + 4, littleEndian);
+        if (ifdOffset < 8 || tiff + ifdOffset + 2 > end) {
+            return ORIENTATION_UNDEFINED;
+        }
+
+        final int ifd = (int) (tiff + ifdOffset);
+        final int entryCount = readUInt16(pSegment, ifd, littleEndian);
+
+        for (int i = 0; i < entryCount; i++) {
+
+            final int entry = ifd + 2 + i * 12;
+            if (entry + 12 > end) {
+                break;
+            }
+
+            if (readUInt16(pSegment, entry, littleEndian) != TIFF_TAG_ORIENTATION) {
+                continue;
+            }
+
+            if (readUInt16(pSegment, entry + 2, littleEndian) != TIFF_TYPE_SHORT) {
+                return ORIENTATION_UNDEFINED;
+            }
+
+            final int orientation = readUInt16(pSegment, entry + 8, littleEndian);
+
+            return orientation >= 1 && orientation <= 8 ? orientation : ORIENTATION_UNDEFINED;
+        }
+
+        return ORIENTATION_UNDEFINED;
+    }
+
+    // ==== EXIF THUMBNAIL ==== //
+
+    /**
+     * Reads JPEG segments up to the first APP1 segment with an EXIF thumbnail. At most 64KB of segment data are read
+     * as EXIF must fit into a single segment, image data is never reached.
+     *
+     * @param pIn image stream, positioned at the start of the image. Not closed
+     * @return embedded JPEG thumbnail or null if image is not a JPEG or has none
+     * @throws IOException if stream cannot be read or ends before a thumbnail is found
+     */
+    public static byte[] readExifThumbnail(final InputStream pIn)
+            throws IOException {
+
+        final Reader reader = new Reader(pIn);
+
+        if (reader.readUInt16BE() != 0xFFD8) {
+            return null;
+        }
+
+        while (true) {
+
+            int marker = reader.readUInt8();
+            if (marker != 0xFF) {
+                return null;
+            }
+
+            // fill bytes
+            do {
+                marker = reader.readUInt8();
+            } while (marker == 0xFF);
+
+            // standalone markers have no length
+            if (marker == 0x01 || (marker >= 0xD0 && marker <= 0xD7)) {
+                continue;
+            }
+
+            // APPn segments precede frame header
+            if (marker == 0xDA || marker == 0xD9 || isStartOfFrame(marker)) {
+                return null;
+            }
+
+            final int length = reader.readUInt16BE() - 2;
+            if (length < 0) {
+                return null;
+            }
+
+            // XMP is APP1 too, keep looking after it
+            if (marker == 0xE1) {
+
+                final byte[] segment = reader.readBytes(length);
+
+                final byte[] thumbnail = extractExifThumbnail(segment, 0, segment.length);
+                if (thumbnail != null) {
+                    return thumbnail;
+                }
+
+                continue;
+            }
+
+            reader.skip(length);
+
+        }
+
+    }
+
+    /**
+     * @param pSegment APP1 segment payload, starting with "Exif\0\0"
+     * @return copy of JPEG thumbnail referenced by IFD1, or null if there is none or it points outside of the segment
+     */
+    public static byte[] extractExifThumbnail(final byte[] pSegment, final int pOffset, final int pLength) {
+
+        if (pLength < 14 || pSegment[pOffset] != 'E' || pSegment[pOffset + 1] != 'x' || pSegment[pOffset + 2] != 'i'
+                || pSegment[pOffset + 3] != 'f' || pSegment[pOffset + 4] != 0 || pSegment[pOffset + 5] != 0) {
+            return null;
+        }
+
+        final int tiff = pOffset + 6;
+        final int end = pOffset + pLength;
+
+        final boolean littleEndian;
+        if (pSegment[tiff] == 'I' && pSegment[tiff + 1] == 'I') {
+            littleEndian = true;
+        } else if (pSegment[tiff] == 'M' && pSegment[tiff + 1] == 'M') {
+            littleEndian = false;
+        } else {
+            return null;
+        }
+
+        final long ifd0Offset = readUInt32(pSegment, tiff + 4, littleEndian);
+        if (ifd0Offset < 8 || tiff + ifd0Offset + 2 > end) {
+            return null;
+        }
+
+        // offset of the next IFD follows the last entry of IFD0
+        final int ifd0 = (int) (tiff + ifd0Offset);
+        final long next = ifd0 + 2L + readUInt16(pSegment, ifd0, littleEndian) * 12L;
+        if (next + 4 > end) {
+            return null;
+        }
+
+        final long ifd1Offset = readUInt32(pSegment, (int) next, littleEndian);
+        if (ifd1Offset < 8 || tiff + ifd1Offset + 2 > end) {
+            return null;
+        }
+
+        final int ifd1 = (int) (tiff + ifd1Offset);
+        final int entryCount = readUInt16(pSegment, ifd1, littleEndian);
+
+        long thumbnailOffset = -1;
+        long thumbnailLength = -1;
+        for (int i = 0; i < entryCount; i++) {
+
+            final int entry = ifd1 + 2 + i * 12;
+            if (entry + 12 > end) {
+                break;
+            }
+
+            final int tag = readUInt16(pSegment, entry, littleEndian);
+            if (tag != TIFF_TAG_THUMBNAIL_OFFSET && tag != TIFF_TAG_THUMBNAIL_LENGTH) {
+                continue;
+            }
+
+            final int type = readUInt16(pSegment, entry + 2, littleEndian);
+
+            final long value;
+            if (type == TIFF_TYPE_LONG) {
+                value = readUInt32(pSegment, entry + 8, littleEndian);
+            } else if (type == TIFF_TYPE_SHORT) {
+                value = readUInt16(pSegment, entry + 8, littleEndian);
+            } else {
+                return null;
+            }
+
+            if (tag == TIFF_TAG_THUMBNAIL_OFFSET) {
+                thumbnailOffset = value;
+            } else {
+                thumbnailLength = value;
+            }
+
+        }
+
+        if (thumbnailOffset < 0 || thumbnailLength < 4 || tiff + thumbnailOffset + thumbnailLength > end) {
+            return null;
+        }
+
+        final int start = (int) (tiff + thumbnailOffset);
+
+        // uncompressed thumbnails have no SOI
+        if ((pSegment[start] & 0xFF) != 0xFF || (pSegment[start + 1] & 0xFF) != 0xD8) {
+            return null;
+        }
+
+        return Arrays.copyOfRange(pSegment, start, start + (int) thumbnailLength);
+    }
+
+    // ==== PNG ==== //
+
+    private static Header parsePng(final Reader pReader)
+            throws IOException {
+
+        pReader.skip(4); // chunk length
+
+        if (pReader.readInt32BE() != 0x49484452) { // IHDR
+            return null;
+        }
+
+        final int width = pReader.readInt32BE();
+        final int height = pReader.readInt32BE();
+
+        return new Header(MIME_PNG, width, height, ORIENTATION_UNDEFINED);
+    }
+
+    // ==== WEBP ==== //
+
+    private static Header parseWebP(final Reader pReader)
+            throws IOException {
+
+        pReader.skip(4); // RIFF size
+
+        if (pReader.readInt32BE() != 0x57454250) { // WEBP
+            return null;
+        }
+
+        final int chunk = pReader.readInt32BE();
+
+        pReader.skip(4); // chunk size
+
+        switch (chunk) {
+
+            case 0x56503820: { // "VP8 " - lossy
+
+                pReader.skip(3); // frame tag
+
+                if (pReader.readUInt8() != 0x9D || pReader.readUInt8() != 0x01 || pReader.readUInt8() != 0x2A) {
+                    return null;
+                }
+
+                final int width = pReader.readUInt16LE() & 0x3FFF;
+                final int height = pReader.readUInt16LE() & 0x3FFF;
+
+                return new Header(MIME_WEBP, width, height, ORIENTATION_UNDEFINED);
+            }
+
+            case 0x5650384C: { // "VP8L" - lossless
+
+                if (pReader.readUInt8() != 0x2F) {
+                    return null;
+                }
+
+                final int bits = pReader.readInt32LE();
+
+                final int width = (bits & 0x3FFF) + 1;
+                final int height = ((bits >> 14) & 0x3FFF) + 1;
+
+                return new Header(MIME_WEBP, width, height, ORIENTATION_UNDEFINED);
+            }
+
+            case 0x56503858: { // "VP8X" - extended. EXIF chunk, if any, comes after image data and is not read
+
+                pReader.skip(4); // flags and reserved
+
+                final int width = pReader.readUInt24LE() + 1;
+                final int height = pReader.readUInt24LE() + 1;
+
+                return new Header(MIME_WEBP, width, height, ORIENTATION_UNDEFINED);
+            }
+
+            default: {
+                return null;
+            }
+
+        }
+
+    }
+
+    // ==== GIF ==== //
+
+    private static Header parseGif(final Reader pReader)
+            throws IOException {
+
+        pReader.skip(2); // "7a" or "9a"
+
+        final int width = pReader.readUInt16LE();
+        final int height = pReader.readUInt16LE();
+
+        return new Header(MIME_GIF, width, height, ORIENTATION_UNDEFINED);
+    }
+
+    // ==== //
+
+    private static int readUInt16(final byte[] pBytes, final int pOffset, final boolean pLittleEndian) {
+
+        final int b0 = pBytes[pOffset] & 0xFF;
+        final int b1 = pBytes[pOffset + 1] & 0xFF;
+
+        return pLittleEndian ? (b1 << 8) | b0 : (b0 << 8) | b1;
+    }
+
+    private static long readUInt32(final byte[] pBytes, final int pOffset, final boolean pLittleEndian) {
+
+        final long high = readUInt16(pBytes, pLittleEndian ? pOffset + 2 : pOffset, pLittleEndian);
+        final long low = readUInt16(pBytes, pLittleEndian ? pOffset : pOffset + 2, pLittleEndian);
+
+        return (high << 16) | low;
+    }
+
+    // ==== //
+
+    private ImageHeaderParser() {}
+
+    // ==== //
+
+    public static final class Header {
+
+        private final String mMimeType;
+        private final int    mWidth;
+        private final int    mHeight;
+        private final int    mOrientation;
+
+        Header(final String pMimeType, final int pWidth, final int pHeight, final int pOrientation) {
+
+            this.mMimeType = pMimeType;
+            this.mWidth = pWidth;
+            this.mHeight = pHeight;
+            this.mOrientation = pOrientation;
+
+        }
+
+        /**
+         * @return one of {@code MIME_} constants
+         */
+        public String getMimeType() {
+            return this.mMimeType;
+        }
+
+        public int getWidth() {
+            return this.mWidth;
+        }
+
+        public int getHeight() {
+            return this.mHeight;
+        }
+
+        /**
+         * @return EXIF orientation (1-8) or {@link #ORIENTATION_UNDEFINED}
+         */
+        public int getOrientation() {
+            return this.mOrientation;
+        }
+
+    }
+
+    private static final class Reader {
+
+        private final InputStream mIn;
+
+        Reader(final InputStream pIn) {
+            this.mIn = pIn;
+        }
+
+        int readUInt8()
+                throws IOException {
+
+            final int b = this.mIn.read();
+            if (b == -1) {
+                throw new EOFException();
+            }
+
+            return b;
+        }
+
+        int readUInt16BE()
+                throws IOException {
+            return (this.readUInt8() << 8) | this.readUInt8();
+        }
+
+        int readUInt16LE()
+                throws IOException {
+            return this.readUInt8() | (this.readUInt8() << 8);
+        }
+
+        int readUInt24LE()
+                throws IOException {
+            return this.readUInt8() | (this.readUInt8() << 8) | (this.readUInt8() << 16);
+        }
+
+        int readInt32BE()
+                throws IOException {
+            return (this.readUInt16BE() << 16) | this.readUInt16BE();
+        }
+
+        int readInt32LE()
+                throws IOException {
+            return this.readUInt16LE() | (this.readUInt16LE() << 16);
+        }
+
+        byte[] readBytes(final int pCount)
+                throws IOException {
+
+            final byte[] bytes = new byte[pCount];
+
+            int read = 0;
+            while (read < pCount) {
+
+                final int count = this.mIn.read(bytes, read, pCount - read);
+                if (count == -1) {
+                    throw new EOFException();
+                }
+
+                read += count;
+
+            }
+
+            return bytes;
+        }
+
+        void skip(final long pCount)
+                throws IOException {
+
+            long remaining = pCount;
+            while (remaining > 0) {
+
+                final long skipped = this.mIn.skip(remaining);
+                if (skipped > 0) {
+
+                    remaining -= skipped;
+
+                    continue;
+                }
+
+                // some streams refuse to skip, fall back to reading
+                this.readUInt8();
+
+                remaining--;
+
+            }
+
+        }
+
+    }
+
+}
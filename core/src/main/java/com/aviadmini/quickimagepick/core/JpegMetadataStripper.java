@@ -0,0 +1,343 @@
+package com.aviadmini.quickimagepick.core;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Removes metadata from JPEG files without re-encoding them. Input is parsed segment by segment and entropy-coded data is copied
+ * as is, so output decodes to exactly the same pixels and stripping takes about as long as copying the file.
+ * <br>
+ * Dropped: EXIF and XMP (APP1), APP3-APP13 (IPTC, Photoshop and others), APP15, comments and anything after the end of image
+ * (e.g. secondary images of multi-picture files, which carry their own EXIF). Kept: JFIF (APP0), ICC profile (APP2) and Adobe (APP14)
+ * segments, which change how pixels are interpreted.
+ * <br>
+ * Pixels are not rotated, that needs a transform of DCT coefficients. Instead EXIF orientation, if not normal, is kept in a minimal
+ * EXIF segment that holds nothing else, written where the original EXIF segment was.
+ */
+public final class JpegMetadataStripper {
+
+    // "Exif\0\0", big endian TIFF header, IFD0 with a single SHORT entry and no next IFD
+    private static final byte[] ORIENTATION_SEGMENT = {
+            (byte) 0xFF, (byte) 0xE1, 0x00, 0x22,
+            'E', 'x', 'i', 'f', 0x00, 0x00,
+            'M', 'M', 0x00, 0x2A, 0x00, 0x00, 0x00, 0x08,
+            0x00, 0x01,
+            0x01, 0x12, 0x00, 0x03, 0x00, 0x00, 0x00, 0x01, 0x00, 0x00, 0x00, 0x00,
+            0x00, 0x00, 0x00, 0x00
+    };
+
+    // offset of orientation value in the segment above
+    private static final int ORIENTATION_VALUE_OFFSET = 29;
+
+    private static final int END_OF_STREAM = -1;
+
+    /**
+     * @param pIn     JPEG stream, positioned at the start of the image. Not closed
+     * @param pOut    stream to write stripped JPEG to. Not closed
+     * @param pBuffer buffer to copy through
+     * @return EXIF orientation (1-8) of the image or {@link ImageHeaderParser#ORIENTATION_UNDEFINED}. Kept in output unless it is normal
+     * @throws IOException if streams cannot be read or written or input is not a JPEG
+     */
+    public static int strip(final InputStream pIn, final OutputStream pOut, final byte[] pBuffer)
+            throws IOException {
+
+        final Scanner scanner = new Scanner(pIn, pBuffer);
+
+        if (scanner.readUInt8() != 0xFF || scanner.readUInt8() != 0xD8) {
+            throw new IOException("Not a JPEG");
+        }
+
+        pOut.write(0xFF);
+        pOut.write(0xD8);
+
+        int orientation = ImageHeaderParser.ORIENTATION_UNDEFINED;
+
+        int marker = scanner.nextMarker();
+        while (true) {
+
+            // files cut in the middle of image data decode partially, so does the output
+            if (marker == END_OF_STREAM) {
+                return orientation;
+            }
+
+            if (marker == 0xD9) {
+
+                pOut.write(0xFF);
+                pOut.write(0xD9);
+
+                return orientation;
+            }
+
+            // standalone markers have no length
+            if (marker == 0x01 || (marker >= 0xD0 && marker <= 0xD7)) {
+
+                pOut.write(0xFF);
+                pOut.write(marker);
+
+                marker = scanner.nextMarker();
+
+                continue;
+            }
+
+            final int length = scanner.readUInt16BE() - 2;
+            if (length < 0) {
+                throw new IOException("Invalid length of segment " + Integer.toHexString(marker));
+            }
+
+            if (isMetadata(marker)) {
+
+                if (marker == 0xE1 && orientation == ImageHeaderParser.ORIENTATION_UNDEFINED) {
+
+                    final byte[] segment = scanner.readBytes(length);
+
+                    // XMP is APP1 too and gives undefined here
+                    orientation = ImageHeaderParser.parseExifOrientation(segment, 0, segment.length);
+
+                    if (orientation != ImageHeaderParser.ORIENTATION_UNDEFINED && orientation != ImageHeaderParser.ORIENTATION_NORMAL) {
+                        writeOrientationSegment(pOut, orientation);
+                    }
+
+                } else {
+                    scanner.skip(length);
+                }
+
+                marker = scanner.nextMarker();
+
+                continue;
+            }
+
+            pOut.write(0xFF);
+            pOut.write(marker);
+            pOut.write((length + 2) >> 8);
+            pOut.write((length + 2) & 0xFF);
+
+            scanner.copy(length, pOut);
+
+            // scan header is followed by entropy-coded data, which ends at the next marker
+            marker = marker == 0xDA ? scanner.copyEntropyCoded(pOut) : scanner.nextMarker();
+
+        }
+
+    }
+
+    private static boolean isMetadata(final int pMarker) {
+        return pMarker == 0xE1 || (pMarker >= 0xE3 && pMarker <= 0xED) || pMarker == 0xEF || pMarker == 0xFE;
+    }
+
+    private static void writeOrientationSegment(final OutputStream pOut, final int pOrientation)
+            throws IOException {
+
+        final byte[] segment = ORIENTATION_SEGMENT.clone();
+        segment[ORIENTATION_VALUE_OFFSET] = (byte) pOrientation;
+
+        pOut.write(segment);
+
+    }
+
+    // ==== //
+
+    private JpegMetadataStripper() {}
+
+    // ==== //
+
+    private static final class Scanner {
+
+        private final InputStream mIn;
+        private final byte[]      mBuffer;
+
+        private int mPosition;
+        private int mLimit;
+
+        Scanner(final InputStream pIn, final byte[] pBuffer) {
+
+            this.mIn = pIn;
+            this.mBuffer = pBuffer;
+
+        }
+
+        /**
+         * @return false if stream has ended
+         */
+        private boolean fill()
+                throws IOException {
+
+            if (this.mPosition < this.mLimit) {
+                return true;
+            }
+
+            final int read = this.mIn.read(this.mBuffer);
+            if (read == -1) {
+                return false;
+            }
+
+            this.mPosition = 0;
+            this.mLimit = read;
+
+            return true;
+        }
+
+        int readUInt8()
+                throws IOException {
+
+            if (!this.fill()) {
+                throw new EOFException();
+            }
+
+            return this.mBuffer[this.mPosition++] & 0xFF;
+        }
+
+        int readUInt16BE()
+                throws IOException {
+            return (this.readUInt8() << 8) | this.readUInt8();
+        }
+
+        byte[] readBytes(final int pCount)
+                throws IOException {
+
+            final byte[] bytes = new byte[pCount];
+
+            int read = 0;
+            while (read < pCount) {
+
+                if (!this.fill()) {
+                    throw new EOFException();
+                }
+
+                final int count = Math.min(pCount - read, this.mLimit - this.mPosition);
+                System.arraycopy(this.mBuffer, this.mPosition, bytes, read, count);
+
+                this.mPosition += count;
+                read += count;
+
+            }
+
+            return bytes;
+        }
+
+        void copy(final int pCount, final OutputStream pOut)
+                throws IOException {
+
+            int copied = 0;
+            while (copied < pCount) {
+
+                if (!this.fill()) {
+                    throw new EOFException();
+                }
+
+                final int count = Math.min(pCount - copied, this.mLimit - this.mPosition);
+                pOut.write(this.mBuffer, this.mPosition, count);
+
+                this.mPosition += count;
+                copied += count;
+
+            }
+
+        }
+
+        void skip(final int pCount)
+                throws IOException {
+
+            int skipped = 0;
+            while (skipped < pCount) {
+
+                if (!this.fill()) {
+                    throw new EOFException();
+                }
+
+                final int count = Math.min(pCount - skipped, this.mLimit - this.mPosition);
+
+                this.mPosition += count;
+                skipped += count;
+
+            }
+
+        }
+
+        /**
+         * @return marker following 0xFF and fill bytes, or {@link #END_OF_STREAM}
+         */
+        int nextMarker()
+                throws IOException {
+
+            if (!this.fill()) {
+                return END_OF_STREAM;
+            }
+
+            if (this.readUInt8() != 0xFF) {
+                throw new IOException("Marker expected");
+            }
+
+            return this.skipFill();
+        }
+
+        /**
+         * Copies entropy-coded data, including stuffed zero bytes and restart markers, up to the next marker
+         *
+         * @return marker that ended the data, or {@link #END_OF_STREAM}
+         */
+        int copyEntropyCoded(final OutputStream pOut)
+                throws IOException {
+
+            while (true) {
+
+                if (!this.fill()) {
+                    return END_OF_STREAM;
+                }
+
+                int end = this.mPosition;
+                while (end < this.mLimit && this.mBuffer[end] != (byte) 0xFF) {
+                    end++;
+                }
+
+                pOut.write(this.mBuffer, this.mPosition, end - this.mPosition);
+                this.mPosition = end;
+
+                if (end == this.mLimit) {
+                    continue;
+                }
+
+                this.mPosition++;
+
+                if (!this.fill()) {
+                    return END_OF_STREAM;
+                }
+
+                final int marker = this.skipFill();
+                if (marker == END_OF_STREAM) {
+                    return END_OF_STREAM;
+                }
+
+                if (marker != 0x00 && (marker < 0xD0 || marker > 0xD7)) {
+                    return marker;
+                }
+
+                pOut.write(0xFF);
+                pOut.write(marker);
+
+            }
+
+        }
+
+        // 0xFF was consumed, any number of 0xFF fill bytes may follow it
+        private int skipFill()
+                throws IOException {
+
+            int marker;
+            do {
+
+                if (!this.fill()) {
+                    return END_OF_STREAM;
+                }
+
+                marker = this.mBuffer[this.mPosition++] & 0xFF;
+
+            } while (marker == 0xFF);
+
+            return marker;
+        }
+
+    }
+
+}
@@ -0,0 +1,44 @@
+package com.aviadmini.quickimagepick.core;
+
+/**
+ * Request codes of pick sessions. A request code carries the kind of pick and the slot of its session,
+ * so that results are routed without any lookup by code
+ */
+public final class RequestCodes {
+
+    public static final int KIND_CAMERA    = 0;
+    public static final int KIND_GALLERY   = 1;
+    public static final int KIND_DOCUMENTS = 2;
+    public static final int KIND_MULTIPLE  = 3;
+
+    // request codes must fit in lower 16 bits (support library restriction):
+    // 4 bits marker | 2 bits kind | 10 bits session slot
+    private static final int REQ_MARKER      = 0xA000;
+    private static final int REQ_MARKER_MASK = 0xF000;
+    private static final int KIND_SHIFT      = 10;
+    private static final int KIND_MASK       = 0x3;
+
+    public static final int SLOT_COUNT = 1 << KIND_SHIFT;
+    public static final int SLOT_MASK  = SLOT_COUNT - 1;
+
+    public static int toRequestCode(final int pKind, final int pSessionId) {
+        return REQ_MARKER | ((pKind & KIND_MASK) << KIND_SHIFT) | (pSessionId & SLOT_MASK);
+    }
+
+    public static boolean isRequestCode(final int pRequestCode) {
+        return (pRequestCode & ~0xFFFF) == 0 && (pRequestCode & REQ_MARKER_MASK) == REQ_MARKER;
+    }
+
+    public static int kindOf(final int pRequestCode) {
+        return (pRequestCode >> KIND_SHIFT) & KIND_MASK;
+    }
+
+    public static int slotOf(final int pRequestCode) {
+        return pRequestCode & SLOT_MASK;
+    }
+
+    // ==== //
+
+    private RequestCodes() {}
+
+}
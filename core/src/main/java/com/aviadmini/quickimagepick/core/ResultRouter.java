@@ -0,0 +1,53 @@
+package com.aviadmini.quickimagepick.core;
+
+/**
+ * Decides which source an activity result belongs to, from the kind encoded in its request code
+ * and the shape of the result
+ */
+public final class ResultRouter {
+
+    public static final int ROUTE_CAMERA    = 0;
+    public static final int ROUTE_GALLERY   = 1;
+    public static final int ROUTE_DOCUMENTS = 2;
+
+    /**
+     * Multiple sources pick that returned data: an app from the chooser returned a {@code Uri}, so it's not camera.
+     * Successful results are handled as documents, cancelled ones are told apart by the {@code Uri}
+     */
+    public static final int ROUTE_PICKED_DATA = 3;
+
+    /**
+     * @param pKind    pick kind, see {@link RequestCodes#kindOf(int)}
+     * @param pHasData true if result {@code Intent} has data {@code Uri}
+     * @return one of {@code ROUTE_} constants
+     */
+    public static int route(final int pKind, final boolean pHasData) {
+
+        switch (pKind) {
+
+            case RequestCodes.KIND_CAMERA: {
+                return ROUTE_CAMERA;
+            }
+
+            case RequestCodes.KIND_GALLERY: {
+                return ROUTE_GALLERY;
+            }
+
+            case RequestCodes.KIND_DOCUMENTS: {
+                return ROUTE_DOCUMENTS;
+            }
+
+            default: {
+                // camera apps write to the output file and return no data
+                return pHasData ? ROUTE_PICKED_DATA : ROUTE_CAMERA;
+            }
+
+        }
+
+    }
+
+    // ==== //
+
+    private ResultRouter() {}
+
+}
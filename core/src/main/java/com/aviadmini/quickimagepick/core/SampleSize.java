@@ -0,0 +1,55 @@
+package com.aviadmini.quickimagepick.core;
+
+/**
+ * Size math of sampled decoding
+ */
+public final class SampleSize {
+
+    /**
+     * @param pSourceWidth  source image width
+     * @param pSourceHeight source image height
+     * @param pTargetWidth  required width
+     * @param pTargetHeight required height
+     * @return largest power-of-two sample size that keeps decoded image not smaller than required size
+     */
+    public static int compute(final int pSourceWidth, final int pSourceHeight, final int pTargetWidth, final int pTargetHeight) {
+
+        int sampleSize = 1;
+        while (pSourceWidth / (sampleSize * 2) >= pTargetWidth && pSourceHeight / (sampleSize * 2) >= pTargetHeight) {
+            sampleSize *= 2;
+        }
+
+        return sampleSize;
+    }
+
+    /**
+     * @return scale (at most 1) that fits source size into given box, keeping aspect ratio
+     */
+    public static float fitScale(final int pSourceWidth, final int pSourceHeight, final int pMaxWidth, final int pMaxHeight) {
+        return Math.min(1F, Math.min((float) pMaxWidth / pSourceWidth, (float) pMaxHeight / pSourceHeight));
+    }
+
+    /**
+     * @return {width, height} of the largest size with about source aspect ratio that has at most given pixel count.
+     * Source size if it is within the budget already
+     */
+    public static int[] pixelBudgetSize(final int pSourceWidth, final int pSourceHeight, final long pMaxPixels) {
+
+        if ((long) pSourceWidth * pSourceHeight <= pMaxPixels) {
+            return new int[]{pSourceWidth, pSourceHeight};
+        }
+
+        final double scale = Math.sqrt(pMaxPixels / ((double) pSourceWidth * pSourceHeight));
+
+        // rounding either side up can overshoot the budget, flooring both cannot
+        final int height = Math.max(1, (int) Math.floor(pSourceHeight * scale));
+        final int width = (int) Math.max(1, Math.min((long) Math.floor(pSourceWidth * scale), pMaxPixels / height));
+
+        return new int[]{width, height};
+    }
+
+    // ==== //
+
+    private SampleSize() {}
+
+}
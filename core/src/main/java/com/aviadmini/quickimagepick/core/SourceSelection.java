@@ -0,0 +1,97 @@
+package com.aviadmini.quickimagepick.core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Builds the list of entries shown by a multiple sources chooser: camera apps, then gallery apps, then documents.
+ * Apps are opaque targets here, the platform layer resolves them and turns entries into intents
+ */
+public final class SourceSelection {
+
+    // bit per source, same as 1 << PickSource.ordinal()
+    public static final int SOURCE_CAMERA    = 1;
+    public static final int SOURCE_GALLERY   = 1 << 1;
+    public static final int SOURCE_DOCUMENTS = 1 << 2;
+
+    /**
+     * @param pSourcesMask      {@code SOURCE_} bits of offered sources
+     * @param pHasCameraOutput  false if camera output could not be created, camera apps are not offered then
+     * @param pCameraTargets    apps that can take a picture
+     * @param pGalleryTargets   apps that can pick an image
+     * @param <T>               target type
+     * @return chooser entries in display order, empty if there is nothing to offer
+     */
+    public static <T> List<Entry<T>> plan(final int pSourcesMask, final boolean pHasCameraOutput, final List<T> pCameraTargets,
+                                          final List<T> pGalleryTargets) {
+
+        final boolean addCamera = (pSourcesMask & SOURCE_CAMERA) != 0 && pHasCameraOutput;
+        final boolean addGallery = (pSourcesMask & SOURCE_GALLERY) != 0;
+        final boolean addDocuments = (pSourcesMask & SOURCE_DOCUMENTS) != 0;
+
+        final int size = (addCamera ? pCameraTargets.size() : 0) + (addGallery ? pGalleryTargets.size() : 0) + (addDocuments ? 1 : 0);
+        if (size == 0) {
+            return Collections.emptyList();
+        }
+
+        final List<Entry<T>> result = new ArrayList<>(size);
+
+        if (addCamera) {
+
+            for (final T target : pCameraTargets) {
+                result.add(new Entry<>(SOURCE_CAMERA, target));
+            }
+
+        }
+
+        if (addGallery) {
+
+            for (final T target : pGalleryTargets) {
+                result.add(new Entry<>(SOURCE_GALLERY, target));
+            }
+
+        }
+
+        if (addDocuments) {
+            result.add(new Entry<T>(SOURCE_DOCUMENTS, null));
+        }
+
+        return result;
+    }
+
+    // ==== //
+
+    private SourceSelection() {}
+
+    // ==== //
+
+    public static final class Entry<T> {
+
+        private final int mSource;
+        private final T   mTarget;
+
+        Entry(final int pSource, final T pTarget) {
+
+            this.mSource = pSource;
+            this.mTarget = pTarget;
+
+        }
+
+        /**
+         * @return one of {@code SOURCE_} constants
+         */
+        public int getSource() {
+            return this.mSource;
+        }
+
+        /**
+         * @return app to launch, null for documents (system picker)
+         */
+        public T getTarget() {
+            return this.mTarget;
+        }
+
+    }
+
+}
@@ -0,0 +1,71 @@
+package com.aviadmini.quickimagepick.core;
+
+/**
+ * Geometry of tiled image decoding. Image is covered by a grid of square tiles for every power-of-two sample size:
+ * a tile at sample size {@code s} covers {@code tileSize * s} source pixels per side and decodes to about {@code tileSize} pixels
+ */
+public final class TileGrid {
+
+    private static final int MAX_SAMPLE_SHIFT = 30;
+
+    /**
+     * @param pScale displayed pixels per source pixel, e.g. 0.1 when a 10000 px wide image is shown 1000 px wide
+     * @return largest power-of-two sample size that does not drop below displayed resolution, 1 when zoomed in
+     */
+    public static int sampleSizeFor(final float pScale) {
+
+        if (pScale >= 1F || pScale <= 0F) {
+            return 1;
+        }
+
+        int sampleSize = 1;
+        while (sampleSize < (1 << MAX_SAMPLE_SHIFT) && sampleSize * 2 * pScale <= 1F) {
+            sampleSize *= 2;
+        }
+
+        return sampleSize;
+    }
+
+    /**
+     * @return number of tiles along a side of given size
+     */
+    public static int tileCount(final int pImageSize, final int pTileSize, final int pSampleSize) {
+
+        final long span = (long) pTileSize * pSampleSize;
+
+        return (int) ((pImageSize + span - 1) / span);
+    }
+
+    /**
+     * @return first source pixel of given tile along a side
+     */
+    public static int tileStart(final int pIndex, final int pTileSize, final int pSampleSize) {
+        return (int) ((long) pIndex * pTileSize * pSampleSize);
+    }
+
+    /**
+     * @return source pixel after the last one of given tile along a side
+     */
+    public static int tileEnd(final int pIndex, final int pImageSize, final int pTileSize, final int pSampleSize) {
+        return (int) Math.min(pImageSize, (long) (pIndex + 1) * pTileSize * pSampleSize);
+    }
+
+    /**
+     * @return key unique for every tile of an image
+     */
+    public static long key(final int pSampleSize, final int pColumn, final int pRow) {
+        return ((long) Integer.numberOfTrailingZeros(pSampleSize) << 56) | ((long) pColumn << 28) | pRow;
+    }
+
+    /**
+     * @return stripe of given tile, neighbouring tiles get different stripes
+     */
+    public static int stripeOf(final int pColumn, final int pRow, final int pStripeCount) {
+        return ((pColumn + pRow * 31) & Integer.MAX_VALUE) % pStripeCount;
+    }
+
+    // ==== //
+
+    private TileGrid() {}
+
+}
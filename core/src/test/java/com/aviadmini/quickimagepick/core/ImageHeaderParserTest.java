@@ -0,0 +1,301 @@
+package com.aviadmini.quickimagepick.core;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.Arrays;
+
+import static com.aviadmini.quickimagepick.core.TestImages.EOI;
+import static com.aviadmini.quickimagepick.core.TestImages.SOI;
+import static com.aviadmini.quickimagepick.core.TestImages.ascii;
+import static com.aviadmini.quickimagepick.core.TestImages.concat;
+import static com.aviadmini.quickimagepick.core.TestImages.exif;
+import static com.aviadmini.quickimagepick.core.TestImages.filler;
+import static com.aviadmini.quickimagepick.core.TestImages.payload;
+import static com.aviadmini.quickimagepick.core.TestImages.scan;
+import static com.aviadmini.quickimagepick.core.TestImages.segment;
+import static com.aviadmini.quickimagepick.core.TestImages.startOfFrame;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public final class ImageHeaderParserTest {
+
+    private static final byte[] JFIF   = segment(0xE0, payload("JFIF\0", 9));
+    private static final byte[] XMP    = segment(0xE1, payload("http://ns.adobe.com/xap/1.0/\0", 200));
+    private static final byte[] TABLES = concat(segment(0xDB, filler(65, 1)), segment(0xC4, filler(30, 2)));
+
+    private static final byte[] THUMBNAIL = concat(SOI, JFIF, startOfFrame(0xC0, 160, 120), scan(300, 3), EOI);
+
+    // ==== JPEG ==== //
+
+    @Test
+    public void parseJpeg()
+            throws IOException {
+
+        final byte[] jpeg = concat(SOI, JFIF, TABLES, startOfFrame(0xC0, 4000, 3000), scan(100, 1), EOI);
+
+        assertHeader(ImageHeaderParser.MIME_JPEG, 4000, 3000, ImageHeaderParser.ORIENTATION_UNDEFINED, parse(jpeg));
+
+    }
+
+    @Test
+    public void parseJpegOfEveryFrameType()
+            throws IOException {
+
+        // C4 (DHT), C8 (JPG) and CC (DAC) are not frame headers
+        for (int marker = 0xC0; marker <= 0xCF; marker++) {
+
+            if (marker == 0xC4 || marker == 0xC8 || marker == 0xCC) {
+                continue;
+            }
+
+            assertHeader(ImageHeaderParser.MIME_JPEG, 640, 480, ImageHeaderParser.ORIENTATION_UNDEFINED,
+                    parse(concat(SOI, startOfFrame(marker, 640, 480))));
+
+        }
+
+        // DHT is not mistaken for a frame header, the one that follows is read
+        assertHeader(ImageHeaderParser.MIME_JPEG, 640, 480, ImageHeaderParser.ORIENTATION_UNDEFINED,
+                parse(concat(SOI, segment(0xC4, filler(30, 2)), startOfFrame(0xC2, 640, 480))));
+
+    }
+
+    @Test
+    public void parseJpegOrientation()
+            throws IOException {
+
+        for (int orientation = 1; orientation <= 8; orientation++) {
+
+            for (final boolean littleEndian : new boolean[]{false, true}) {
+
+                final byte[] jpeg = concat(SOI, JFIF, segment(0xE1, exif(littleEndian, orientation, THUMBNAIL)), TABLES,
+                        startOfFrame(0xC0, 4032, 3024));
+
+                assertHeader(ImageHeaderParser.MIME_JPEG, 4032, 3024, orientation, parse(jpeg));
+
+            }
+
+        }
+
+    }
+
+    @Test
+    public void parseJpegOrientationAfterXmp()
+            throws IOException {
+
+        // XMP is APP1 too and has no orientation to read
+        final byte[] jpeg = concat(SOI, XMP, segment(0xE1, exif(true, 6, null)), startOfFrame(0xC0, 4032, 3024));
+
+        assertHeader(ImageHeaderParser.MIME_JPEG, 4032, 3024, 6, parse(jpeg));
+
+    }
+
+    @Test
+    public void parseJpegWithFillBytes()
+            throws IOException {
+
+        final byte[] jpeg = concat(SOI, new byte[]{(byte) 0xFF, (byte) 0xFF}, JFIF, new byte[]{(byte) 0xFF}, startOfFrame(0xC0, 100, 50));
+
+        assertHeader(ImageHeaderParser.MIME_JPEG, 100, 50, ImageHeaderParser.ORIENTATION_UNDEFINED, parse(jpeg));
+
+    }
+
+    @Test
+    public void parseJpegWithoutFrameHeader()
+            throws IOException {
+
+        // image data or its end before a frame header
+        assertNull(parse(concat(SOI, JFIF, TABLES, scan(100, 1), EOI)));
+        assertNull(parse(concat(SOI, JFIF, EOI)));
+
+        // garbage where a marker should be
+        assertNull(parse(concat(SOI, JFIF, ascii("garbage"))));
+
+    }
+
+    @Test
+    public void parseExifOrientationOutOfRange() {
+
+        assertEquals(ImageHeaderParser.ORIENTATION_UNDEFINED, parseExifOrientation(exif(false, 9, null)));
+        assertEquals(ImageHeaderParser.ORIENTATION_UNDEFINED, parseExifOrientation(exif(true, ImageHeaderParser.ORIENTATION_UNDEFINED,
+                null)));
+
+    }
+
+    @Test
+    public void parseExifOrientationOfInvalidSegment() {
+
+        final byte[] exif = exif(false, 6, null);
+
+        // bad identifier, bad byte order, IFD out of segment, entry cut off
+        final byte[] badIdentifier = exif.clone();
+        badIdentifier[0] = 'e';
+
+        final byte[] badByteOrder = exif.clone();
+        badByteOrder[6] = 'X';
+
+        final byte[] badIfdOffset = exif.clone();
+        badIfdOffset[13] = 0x7F;
+
+        assertEquals(ImageHeaderParser.ORIENTATION_UNDEFINED, parseExifOrientation(badIdentifier));
+        assertEquals(ImageHeaderParser.ORIENTATION_UNDEFINED, parseExifOrientation(badByteOrder));
+        assertEquals(ImageHeaderParser.ORIENTATION_UNDEFINED, parseExifOrientation(badIfdOffset));
+        assertEquals(ImageHeaderParser.ORIENTATION_UNDEFINED, parseExifOrientation(Arrays.copyOf(exif, 24)));
+        assertEquals(ImageHeaderParser.ORIENTATION_UNDEFINED, parseExifOrientation(Arrays.copyOf(exif, 10)));
+
+    }
+
+    @Test(expected = EOFException.class)
+    public void parseTruncatedJpeg()
+            throws IOException {
+
+        final byte[] jpeg = concat(SOI, JFIF, startOfFrame(0xC0, 4000, 3000));
+
+        parse(Arrays.copyOf(jpeg, jpeg.length - 12));
+
+    }
+
+    // ==== EXIF THUMBNAIL ==== //
+
+    @Test
+    public void readExifThumbnail()
+            throws IOException {
+
+        for (final boolean littleEndian : new boolean[]{false, true}) {
+
+            final byte[] jpeg = concat(SOI, JFIF, segment(0xE1, exif(littleEndian, 6, THUMBNAIL)), TABLES, startOfFrame(0xC0, 4000, 3000),
+                    scan(100, 1), EOI);
+
+            assertArrayEquals(THUMBNAIL, readExifThumbnail(jpeg));
+
+        }
+
+    }
+
+    @Test
+    public void readExifThumbnailAfterXmp()
+            throws IOException {
+
+        final byte[] jpeg = concat(SOI, XMP, segment(0xE1, exif(true, ImageHeaderParser.ORIENTATION_UNDEFINED, THUMBNAIL)),
+                startOfFrame(0xC0, 4000, 3000));
+
+        assertArrayEquals(THUMBNAIL, readExifThumbnail(jpeg));
+
+    }
+
+    @Test
+    public void readExifThumbnailOfImageWithoutOne()
+            throws IOException {
+
+        // no IFD1, no EXIF, not a JPEG: frame header or the first bytes end the search
+        assertNull(readExifThumbnail(concat(SOI, JFIF, segment(0xE1, exif(false, 6, null)), startOfFrame(0xC0, 4000, 3000))));
+        assertNull(readExifThumbnail(concat(SOI, JFIF, startOfFrame(0xC0, 4000, 3000))));
+        assertNull(readExifThumbnail(TestImages.png(100, 100)));
+
+    }
+
+    @Test
+    public void extractExifThumbnailOfInvalidSegment() {
+
+        final byte[] exif = exif(false, 6, THUMBNAIL);
+
+        // thumbnail cut off by the end of the segment
+        assertNull(ImageHeaderParser.extractExifThumbnail(exif, 0, exif.length - 1));
+
+        // uncompressed thumbnail has no SOI
+        final byte[] uncompressed = exif(false, 6, filler(THUMBNAIL.length, 4));
+        assertNull(ImageHeaderParser.extractExifThumbnail(uncompressed, 0, uncompressed.length));
+
+        // segment within a larger array
+        final byte[] padded = concat(filler(5, 5), exif, filler(5, 6));
+        assertArrayEquals(THUMBNAIL, ImageHeaderParser.extractExifThumbnail(padded, 5, exif.length));
+
+    }
+
+    // ==== PNG, WEBP, GIF ==== //
+
+    @Test
+    public void parsePng()
+            throws IOException {
+        assertHeader(ImageHeaderParser.MIME_PNG, 1920, 1080, ImageHeaderParser.ORIENTATION_UNDEFINED, parse(TestImages.png(1920, 1080)));
+    }
+
+    @Test
+    public void parseWebP()
+            throws IOException {
+
+        assertHeader(ImageHeaderParser.MIME_WEBP, 1024, 768, ImageHeaderParser.ORIENTATION_UNDEFINED, parse(TestImages.webPLossy(1024, 768)));
+        assertHeader(ImageHeaderParser.MIME_WEBP, 16383, 1, ImageHeaderParser.ORIENTATION_UNDEFINED, parse(TestImages.webPLossy(16383, 1)));
+
+        assertHeader(ImageHeaderParser.MIME_WEBP, 1024, 768, ImageHeaderParser.ORIENTATION_UNDEFINED,
+                parse(TestImages.webPLossless(1024, 768)));
+        assertHeader(ImageHeaderParser.MIME_WEBP, 16384, 16384, ImageHeaderParser.ORIENTATION_UNDEFINED,
+                parse(TestImages.webPLossless(16384, 16384)));
+
+        // extended allows sizes beyond 14 bits
+        assertHeader(ImageHeaderParser.MIME_WEBP, 1024, 768, ImageHeaderParser.ORIENTATION_UNDEFINED,
+                parse(TestImages.webPExtended(1024, 768)));
+        assertHeader(ImageHeaderParser.MIME_WEBP, 100000, 3, ImageHeaderParser.ORIENTATION_UNDEFINED,
+                parse(TestImages.webPExtended(100000, 3)));
+
+    }
+
+    @Test
+    public void parseGif()
+            throws IOException {
+        assertHeader(ImageHeaderParser.MIME_GIF, 500, 300, ImageHeaderParser.ORIENTATION_UNDEFINED, parse(TestImages.gif(500, 300)));
+    }
+
+    @Test
+    public void parseUnknownFormat()
+            throws IOException {
+
+        assertNull(parse(ascii("BM6\0\0\0\0\0\0\0")));
+        assertNull(parse(ascii("<svg xmlns=\"http://www.w3.org/2000/svg\"/>")));
+
+        // RIFF, but not WebP
+        final byte[] wave = TestImages.webPLossy(100, 100);
+        System.arraycopy(ascii("WAVE"), 0, wave, 8, 4);
+        assertNull(parse(wave));
+
+    }
+
+    @Test(expected = EOFException.class)
+    public void parseTruncatedPng()
+            throws IOException {
+        parse(Arrays.copyOf(TestImages.png(1920, 1080), 20));
+    }
+
+    // ==== //
+
+    private static ImageHeaderParser.Header parse(final byte[] pBytes)
+            throws IOException {
+        return ImageHeaderParser.parse(new ByteArrayInputStream(pBytes));
+    }
+
+    private static byte[] readExifThumbnail(final byte[] pBytes)
+            throws IOException {
+        return ImageHeaderParser.readExifThumbnail(new ByteArrayInputStream(pBytes));
+    }
+
+    private static int parseExifOrientation(final byte[] pSegment) {
+        return ImageHeaderParser.parseExifOrientation(pSegment, 0, pSegment.length);
+    }
+
+    private static void assertHeader(final String pMimeType, final int pWidth, final int pHeight, final int pOrientation,
+                                     final ImageHeaderParser.Header pHeader) {
+
+        assertNotNull(pHeader);
+
+        assertEquals(pMimeType, pHeader.getMimeType());
+        assertEquals(pWidth, pHeader.getWidth());
+        assertEquals(pHeight, pHeader.getHeight());
+        assertEquals(pOrientation, pHeader.getOrientation());
+
+    }
+
+}
@@ -0,0 +1,202 @@
+package com.aviadmini.quickimagepick.core;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.Arrays;
+
+import static com.aviadmini.quickimagepick.core.TestImages.EOI;
+import static com.aviadmini.quickimagepick.core.TestImages.SOI;
+import static com.aviadmini.quickimagepick.core.TestImages.ascii;
+import static com.aviadmini.quickimagepick.core.TestImages.concat;
+import static com.aviadmini.quickimagepick.core.TestImages.exif;
+import static com.aviadmini.quickimagepick.core.TestImages.filler;
+import static com.aviadmini.quickimagepick.core.TestImages.payload;
+import static com.aviadmini.quickimagepick.core.TestImages.scan;
+import static com.aviadmini.quickimagepick.core.TestImages.segment;
+import static com.aviadmini.quickimagepick.core.TestImages.startOfFrame;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public final class JpegMetadataStripperTest {
+
+    private static final byte[] JFIF  = segment(0xE0, payload("JFIF\0", 9));
+    private static final byte[] ICC   = segment(0xE2, payload("ICC_PROFILE\0", 300));
+    private static final byte[] ADOBE = segment(0xEE, payload("Adobe", 7));
+
+    private static final byte[] XMP       = segment(0xE1, payload("http://ns.adobe.com/xap/1.0/\0", 200));
+    private static final byte[] APP3      = segment(0xE3, payload("Meta", 40));
+    private static final byte[] PHOTOSHOP = segment(0xED, payload("Photoshop 3.0\0", 120));
+    private static final byte[] APP15     = segment(0xEF, payload("", 16));
+    private static final byte[] COMMENT   = segment(0xFE, ascii("made with a camera"));
+
+    private static final byte[] TABLES = concat(segment(0xDB, filler(65, 1)), segment(0xC4, filler(30, 2)));
+
+    // progressive: tables may change between scans
+    private static final byte[] IMAGE = concat(startOfFrame(0xC2, 640, 480), TABLES, scan(1000, 3), segment(0xC4, filler(20, 4)),
+            scan(1500, 5), scan(700, 6));
+
+    @Test
+    public void stripDropsMetadataAndKeepsColorSegments()
+            throws IOException {
+
+        final byte[] jpeg = concat(SOI, JFIF, XMP, ICC, APP3, PHOTOSHOP, ADOBE, APP15, COMMENT, IMAGE, EOI);
+
+        assertArrayEquals(concat(SOI, JFIF, ICC, ADOBE, IMAGE, EOI), strip(jpeg, 4096));
+
+    }
+
+    @Test
+    public void stripKeepsEntropyCodedDataAcrossBufferBoundaries()
+            throws IOException {
+
+        final byte[] jpeg = concat(SOI, JFIF, COMMENT, IMAGE, EOI);
+        final byte[] expected = concat(SOI, JFIF, IMAGE, EOI);
+
+        // stuffed bytes and markers split between reads
+        for (int bufferSize = 1; bufferSize <= 64; bufferSize++) {
+            assertArrayEquals("Buffer of " + bufferSize, expected, strip(jpeg, bufferSize));
+        }
+
+    }
+
+    @Test
+    public void stripReplacesExifWithOrientationOnly()
+            throws IOException {
+
+        for (int orientation = 2; orientation <= 8; orientation++) {
+
+            for (final boolean littleEndian : new boolean[]{false, true}) {
+
+                final byte[] app1 = segment(0xE1, exif(littleEndian, orientation, concat(SOI, filler(500, orientation), EOI)));
+                final byte[] jpeg = concat(SOI, JFIF, app1, XMP, ICC, IMAGE, EOI);
+
+                final ByteArrayOutputStream out = new ByteArrayOutputStream();
+                assertEquals(orientation, JpegMetadataStripper.strip(new ByteArrayInputStream(jpeg), out, new byte[4096]));
+
+                final byte[] stripped = out.toByteArray();
+
+                // the minimal segment is big endian, in place of the original EXIF
+                final byte[] minimal = segment(0xE1, exif(false, orientation, null));
+                assertArrayEquals(concat(SOI, JFIF, minimal, ICC, IMAGE, EOI), stripped);
+
+                final ImageHeaderParser.Header header = ImageHeaderParser.parse(new ByteArrayInputStream(stripped));
+                assertNotNull(header);
+                assertEquals(orientation, header.getOrientation());
+                assertEquals(640, header.getWidth());
+                assertEquals(480, header.getHeight());
+
+            }
+
+        }
+
+    }
+
+    @Test
+    public void stripDropsNormalOrientation()
+            throws IOException {
+
+        final byte[] jpeg = concat(SOI, segment(0xE1, exif(true, ImageHeaderParser.ORIENTATION_NORMAL, null)), IMAGE, EOI);
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertEquals(ImageHeaderParser.ORIENTATION_NORMAL, JpegMetadataStripper.strip(new ByteArrayInputStream(jpeg), out, new byte[4096]));
+
+        assertArrayEquals(concat(SOI, IMAGE, EOI), out.toByteArray());
+
+    }
+
+    @Test
+    public void stripCutsDataAfterEndOfImage()
+            throws IOException {
+
+        // multi-picture files append a second JPEG with its own EXIF
+        final byte[] secondImage = concat(SOI, segment(0xE1, exif(false, 6, null)), IMAGE, EOI);
+        final byte[] jpeg = concat(SOI, JFIF, IMAGE, EOI, secondImage, ascii("trailer"));
+
+        assertArrayEquals(concat(SOI, JFIF, IMAGE, EOI), strip(jpeg, 4096));
+
+    }
+
+    @Test
+    public void stripOfTruncatedInputFailsCleanly() {
+
+        final byte[] jpeg = concat(SOI, JFIF, segment(0xE1, exif(false, 6, null)), XMP, ICC, COMMENT, IMAGE, EOI);
+
+        // headers end where image data starts
+        final int imageData = jpeg.length - EOI.length - IMAGE.length + startOfFrame(0xC2, 640, 480).length + TABLES.length;
+
+        for (int length = 0; length < jpeg.length; length++) {
+
+            final byte[] truncated = new byte[length];
+            System.arraycopy(jpeg, 0, truncated, 0, length);
+
+            final byte[] stripped;
+            try {
+                stripped = strip(truncated, 64);
+            } catch (final IOException e) {
+
+                // anything else, e.g. an index out of bounds, fails the test
+                continue;
+            }
+
+            // cut within a segment is an error, cut within image data decodes partially
+            assertTrue("Cut at " + length + " of " + jpeg.length, length >= imageData || isSegmentBoundary(jpeg, length));
+            assertTrue(stripped.length <= length);
+
+        }
+
+    }
+
+    @Test(expected = EOFException.class)
+    public void stripOfSegmentCutInHalfFails()
+            throws IOException {
+
+        final byte[] jpeg = concat(SOI, JFIF, ICC);
+
+        strip(Arrays.copyOf(jpeg, jpeg.length - ICC.length / 2), 4096);
+
+    }
+
+    @Test
+    public void stripRejectsNonJpeg() {
+
+        final byte[][] inputs = {new byte[0], {(byte) 0xFF}, ascii("GIF89a"), concat(new byte[]{(byte) 0x89}, ascii("PNG\r\n\u001a\n"))};
+        for (final byte[] input : inputs) {
+
+            try {
+
+                strip(input, 4096);
+
+                fail("Stripped " + input.length + " bytes of non-JPEG");
+            } catch (final IOException e) {
+                // expected
+            }
+
+        }
+
+    }
+
+    // ==== //
+
+    private static byte[] strip(final byte[] pJpeg, final int pBufferSize)
+            throws IOException {
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        JpegMetadataStripper.strip(new ByteArrayInputStream(pJpeg), out, new byte[pBufferSize]);
+
+        return out.toByteArray();
+    }
+
+    // true if given offset is at a marker, or between 0xFF and a marker that follows a segment
+    private static boolean isSegmentBoundary(final byte[] pJpeg, final int pOffset) {
+        return pJpeg[pOffset] == (byte) 0xFF || (pOffset > 0 && pJpeg[pOffset - 1] == (byte) 0xFF);
+    }
+
+}
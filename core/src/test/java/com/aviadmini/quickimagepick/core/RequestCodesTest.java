@@ -0,0 +1,70 @@
+package com.aviadmini.quickimagepick.core;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public final class RequestCodesTest {
+
+    private static final int[] KINDS = {RequestCodes.KIND_CAMERA, RequestCodes.KIND_GALLERY, RequestCodes.KIND_DOCUMENTS,
+            RequestCodes.KIND_MULTIPLE};
+
+    @Test
+    public void requestCodeRoundTrips() {
+
+        for (final int kind : KINDS) {
+
+            for (int slot = 0; slot < RequestCodes.SLOT_COUNT; slot++) {
+
+                final int requestCode = RequestCodes.toRequestCode(kind, slot);
+
+                assertTrue(RequestCodes.isRequestCode(requestCode));
+                assertEquals(kind, RequestCodes.kindOf(requestCode));
+                assertEquals(slot, RequestCodes.slotOf(requestCode));
+
+            }
+
+        }
+
+    }
+
+    @Test
+    public void requestCodeFitsInLower16Bits() {
+
+        for (final int kind : KINDS) {
+
+            for (int slot = 0; slot < RequestCodes.SLOT_COUNT; slot++) {
+                assertEquals(0, RequestCodes.toRequestCode(kind, slot) & ~0xFFFF);
+            }
+
+        }
+
+    }
+
+    @Test
+    public void sessionIdWrapsToSlot() {
+
+        final int sessionId = RequestCodes.SLOT_COUNT * 5 + 17;
+
+        final int requestCode = RequestCodes.toRequestCode(RequestCodes.KIND_GALLERY, sessionId);
+
+        assertEquals(17, RequestCodes.slotOf(requestCode));
+        assertEquals(RequestCodes.KIND_GALLERY, RequestCodes.kindOf(requestCode));
+        assertEquals(sessionId & RequestCodes.SLOT_MASK, RequestCodes.slotOf(requestCode));
+
+    }
+
+    @Test
+    public void foreignRequestCodesAreNotRecognized() {
+
+        // app request codes, fragment request codes (upper 16 bits used by support library), negative ones
+        final int[] foreign = {0, 1, 42, 0x1000, 0x9FFF, 0xB000, 0xFFFF, 0x1A000, 0xA000 | 0x10000, -1, Integer.MIN_VALUE | 0xA000};
+        for (final int requestCode : foreign) {
+            assertFalse(Integer.toHexString(requestCode), RequestCodes.isRequestCode(requestCode));
+        }
+
+    }
+
+}
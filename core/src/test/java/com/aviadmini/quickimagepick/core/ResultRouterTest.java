@@ -0,0 +1,52 @@
+package com.aviadmini.quickimagepick.core;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public final class ResultRouterTest {
+
+    @Test
+    public void singleSourceKindsIgnoreData() {
+
+        for (final boolean hasData : new boolean[]{false, true}) {
+
+            assertEquals(ResultRouter.ROUTE_CAMERA, ResultRouter.route(RequestCodes.KIND_CAMERA, hasData));
+            assertEquals(ResultRouter.ROUTE_GALLERY, ResultRouter.route(RequestCodes.KIND_GALLERY, hasData));
+            assertEquals(ResultRouter.ROUTE_DOCUMENTS, ResultRouter.route(RequestCodes.KIND_DOCUMENTS, hasData));
+
+        }
+
+    }
+
+    @Test
+    public void multipleSourcesRouteByData() {
+
+        // camera apps write to the output file and return no data
+        assertEquals(ResultRouter.ROUTE_CAMERA, ResultRouter.route(RequestCodes.KIND_MULTIPLE, false));
+        assertEquals(ResultRouter.ROUTE_PICKED_DATA, ResultRouter.route(RequestCodes.KIND_MULTIPLE, true));
+
+    }
+
+    @Test
+    public void routeOfRequestCode() {
+
+        final int[][] table = {
+                {RequestCodes.KIND_CAMERA, 0, ResultRouter.ROUTE_CAMERA},
+                {RequestCodes.KIND_GALLERY, 1, ResultRouter.ROUTE_GALLERY},
+                {RequestCodes.KIND_DOCUMENTS, 1, ResultRouter.ROUTE_DOCUMENTS},
+                {RequestCodes.KIND_MULTIPLE, 0, ResultRouter.ROUTE_CAMERA},
+                {RequestCodes.KIND_MULTIPLE, 1, ResultRouter.ROUTE_PICKED_DATA}
+        };
+
+        for (final int[] row : table) {
+
+            final int requestCode = RequestCodes.toRequestCode(row[0], RequestCodes.SLOT_MASK);
+
+            assertEquals(row[2], ResultRouter.route(RequestCodes.kindOf(requestCode), row[1] != 0));
+
+        }
+
+    }
+
+}
@@ -0,0 +1,139 @@
+package com.aviadmini.quickimagepick.core;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public final class SampleSizeTest {
+
+    // 12 MP, 4:3
+    private static final int SOURCE_WIDTH  = 4000;
+    private static final int SOURCE_HEIGHT = 3000;
+
+    @Test
+    public void computeKeepsSourceSizeForLargerTarget() {
+
+        assertEquals(1, SampleSize.compute(SOURCE_WIDTH, SOURCE_HEIGHT, SOURCE_WIDTH, SOURCE_HEIGHT));
+        assertEquals(1, SampleSize.compute(SOURCE_WIDTH, SOURCE_HEIGHT, 8000, 6000));
+
+    }
+
+    @Test
+    public void computeReturnsLargestPowerOfTwoNotBelowTarget() {
+
+        assertEquals(2, SampleSize.compute(SOURCE_WIDTH, SOURCE_HEIGHT, 1024, 768));
+        assertEquals(4, SampleSize.compute(SOURCE_WIDTH, SOURCE_HEIGHT, 1000, 750));
+        assertEquals(8, SampleSize.compute(SOURCE_WIDTH, SOURCE_HEIGHT, 256, 192));
+        assertEquals(16, SampleSize.compute(SOURCE_WIDTH, SOURCE_HEIGHT, 250, 187));
+
+    }
+
+    @Test
+    public void computeIsLimitedByTighterDimension() {
+
+        // width alone would allow 8
+        assertEquals(2, SampleSize.compute(SOURCE_WIDTH, SOURCE_HEIGHT, 500, 1000));
+
+    }
+
+    @Test
+    public void computeBoundsSampledSize() {
+
+        for (int target = 1; target <= SOURCE_WIDTH; target += 37) {
+
+            final int sampleSize = SampleSize.compute(SOURCE_WIDTH, SOURCE_HEIGHT, target, target * SOURCE_HEIGHT / SOURCE_WIDTH);
+
+            assertEquals(0, sampleSize & (sampleSize - 1));
+
+            // never smaller than target, less than twice as large: decoded pixels stay below 4x target
+            assertTrue(SOURCE_WIDTH / sampleSize >= target);
+            assertTrue(SOURCE_WIDTH / sampleSize < target * 2);
+
+        }
+
+    }
+
+    @Test
+    public void fitScale() {
+
+        assertEquals(1F, SampleSize.fitScale(800, 600, 1024, 1024), 0F);
+        assertEquals(0.256F, SampleSize.fitScale(SOURCE_WIDTH, SOURCE_HEIGHT, 1024, 1024), 1e-6F);
+        assertEquals(0.25F, SampleSize.fitScale(SOURCE_WIDTH, SOURCE_HEIGHT, 2000, 750), 1e-6F);
+
+    }
+
+    @Test
+    public void pixelBudgetSizeKeepsSmallerSource() {
+
+        assertSize(SOURCE_WIDTH, SOURCE_HEIGHT, SampleSize.pixelBudgetSize(SOURCE_WIDTH, SOURCE_HEIGHT, 50000000L));
+        assertSize(SOURCE_WIDTH, SOURCE_HEIGHT, SampleSize.pixelBudgetSize(SOURCE_WIDTH, SOURCE_HEIGHT, 12000000L));
+
+    }
+
+    @Test
+    public void pixelBudgetSizeNeverExceedsBudget() {
+
+        // rounding both sides gives 1155x866 = 1000230
+        assertWithinBudget(4032, 3024, 1000000L);
+
+        // 12 MP and 50 MP sources
+        final int[][] sources = {{SOURCE_WIDTH, SOURCE_HEIGHT}, {8160, 6120}, {6120, 8160}, {8192, 6144}, {9000, 16000}};
+        for (final int[] source : sources) {
+
+            for (long maxPixels = 1; maxPixels < (long) source[0] * source[1]; maxPixels = maxPixels * 3 + 7) {
+                assertWithinBudget(source[0], source[1], maxPixels);
+            }
+
+            for (long maxPixels = 100000; maxPixels <= 20000000; maxPixels += 99991) {
+                assertWithinBudget(source[0], source[1], maxPixels);
+            }
+
+        }
+
+    }
+
+    @Test
+    public void pixelBudgetSizeOfExtremeAspectRatio() {
+
+        // height alone would be below a pixel
+        final int[] size = SampleSize.pixelBudgetSize(100000, 10, 1000);
+
+        assertSize(1000, 1, size);
+
+    }
+
+    // ==== //
+
+    private static void assertWithinBudget(final int pWidth, final int pHeight, final long pMaxPixels) {
+
+        final int[] size = SampleSize.pixelBudgetSize(pWidth, pHeight, pMaxPixels);
+
+        if ((long) pWidth * pHeight <= pMaxPixels) {
+
+            assertSize(pWidth, pHeight, size);
+
+            return;
+        }
+
+        final long pixels = (long) size[0] * size[1];
+
+        final String message = pWidth + "x" + pHeight + " into " + pMaxPixels + ": " + size[0] + "x" + size[1];
+
+        assertTrue(message, size[0] >= 1 && size[1] >= 1);
+        assertTrue(message, pixels <= pMaxPixels);
+
+        // not needlessly small: one more row or column of the same aspect ratio would not fit
+        assertTrue(message, (long) (size[0] + 1) * (size[1] + 1) > pMaxPixels);
+        assertEquals(message, (double) pWidth / pHeight, (double) size[0] / size[1], 2D * pWidth / pHeight / Math.min(size[0], size[1]) + 1e-9);
+
+    }
+
+    private static void assertSize(final int pWidth, final int pHeight, final int[] pSize) {
+
+        assertEquals(pWidth, pSize[0]);
+        assertEquals(pHeight, pSize[1]);
+
+    }
+
+}
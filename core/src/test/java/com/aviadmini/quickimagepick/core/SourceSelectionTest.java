@@ -0,0 +1,96 @@
+package com.aviadmini.quickimagepick.core;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public final class SourceSelectionTest {
+
+    private static final int ALL = SourceSelection.SOURCE_CAMERA | SourceSelection.SOURCE_GALLERY | SourceSelection.SOURCE_DOCUMENTS;
+
+    private static final List<String> CAMERA_APPS  = Arrays.asList("camera", "other camera");
+    private static final List<String> GALLERY_APPS = Arrays.asList("gallery", "photos", "files");
+
+    @Test
+    public void planListsCameraThenGalleryThenDocuments() {
+
+        final List<SourceSelection.Entry<String>> plan = SourceSelection.plan(ALL, true, CAMERA_APPS, GALLERY_APPS);
+
+        assertEquals(6, plan.size());
+
+        assertEntry(SourceSelection.SOURCE_CAMERA, "camera", plan.get(0));
+        assertEntry(SourceSelection.SOURCE_CAMERA, "other camera", plan.get(1));
+        assertEntry(SourceSelection.SOURCE_GALLERY, "gallery", plan.get(2));
+        assertEntry(SourceSelection.SOURCE_GALLERY, "photos", plan.get(3));
+        assertEntry(SourceSelection.SOURCE_GALLERY, "files", plan.get(4));
+        assertEntry(SourceSelection.SOURCE_DOCUMENTS, null, plan.get(5));
+
+    }
+
+    @Test
+    public void planOmitsCameraWithoutOutput() {
+
+        final List<SourceSelection.Entry<String>> plan = SourceSelection.plan(ALL, false, CAMERA_APPS, GALLERY_APPS);
+
+        assertEquals(4, plan.size());
+
+        for (final SourceSelection.Entry<String> entry : plan) {
+            assertTrue(entry.getSource() != SourceSelection.SOURCE_CAMERA);
+        }
+
+    }
+
+    @Test
+    public void planOffersOnlyMaskedSources() {
+
+        final List<SourceSelection.Entry<String>> gallery = SourceSelection.plan(SourceSelection.SOURCE_GALLERY, true, CAMERA_APPS,
+                GALLERY_APPS);
+
+        assertEquals(GALLERY_APPS.size(), gallery.size());
+        for (final SourceSelection.Entry<String> entry : gallery) {
+            assertEquals(SourceSelection.SOURCE_GALLERY, entry.getSource());
+        }
+
+        final List<SourceSelection.Entry<String>> documents = SourceSelection.plan(SourceSelection.SOURCE_DOCUMENTS, true, CAMERA_APPS,
+                GALLERY_APPS);
+
+        assertEquals(1, documents.size());
+        assertEntry(SourceSelection.SOURCE_DOCUMENTS, null, documents.get(0));
+
+    }
+
+    @Test
+    public void planOfNothingToOffer() {
+
+        final List<String> none = Collections.emptyList();
+
+        assertTrue(SourceSelection.plan(0, true, CAMERA_APPS, GALLERY_APPS)
+                                  .isEmpty());
+        assertTrue(SourceSelection.plan(SourceSelection.SOURCE_CAMERA, false, CAMERA_APPS, GALLERY_APPS)
+                                  .isEmpty());
+        assertTrue(SourceSelection.plan(SourceSelection.SOURCE_CAMERA | SourceSelection.SOURCE_GALLERY, true, none, none)
+                                  .isEmpty());
+
+    }
+
+    // ==== //
+
+    private static void assertEntry(final int pSource, final String pTarget, final SourceSelection.Entry<String> pEntry) {
+
+        assertEquals(pSource, pEntry.getSource());
+
+        if (pTarget == null) {
+            assertNull(pEntry.getTarget());
+        } else {
+            assertEquals(pTarget, pEntry.getTarget());
+        }
+
+    }
+
+}
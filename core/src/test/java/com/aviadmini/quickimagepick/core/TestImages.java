@@ -0,0 +1,278 @@
+package com.aviadmini.quickimagepick.core;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.Charset;
+import java.util.Random;
+
+/**
+ * Hand-built image bytes for parser tests. Only headers are valid, there is nothing to decode
+ */
+final class TestImages {
+
+    private static final Charset US_ASCII = Charset.forName("US-ASCII");
+
+    // ==== JPEG ==== //
+
+    static final byte[] SOI = {(byte) 0xFF, (byte) 0xD8};
+    static final byte[] EOI = {(byte) 0xFF, (byte) 0xD9};
+
+    /**
+     * @return marker, big endian length and payload
+     */
+    static byte[] segment(final int pMarker, final byte[] pPayload) {
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        out.write(0xFF);
+        out.write(pMarker);
+        out.write((pPayload.length + 2) >> 8);
+        out.write((pPayload.length + 2) & 0xFF);
+        out.write(pPayload, 0, pPayload.length);
+
+        return out.toByteArray();
+    }
+
+    /**
+     * @return segment payload starting with given identifier, followed by filler bytes
+     */
+    static byte[] payload(final String pIdentifier, final int pFillerLength) {
+        return concat(ascii(pIdentifier), filler(pFillerLength, pIdentifier.hashCode()));
+    }
+
+    /**
+     * @return SOFn segment of 3 components
+     */
+    static byte[] startOfFrame(final int pMarker, final int pWidth, final int pHeight) {
+
+        return segment(pMarker, new byte[]{8, (byte) (pHeight >> 8), (byte) pHeight, (byte) (pWidth >> 8), (byte) pWidth, 3,
+                1, 0x22, 0, 2, 0x11, 1, 3, 0x11, 1});
+    }
+
+    /**
+     * @return APP1 payload: "Exif\0\0", TIFF header and IFD0 with orientation (none if {@link ImageHeaderParser#ORIENTATION_UNDEFINED}).
+     * With a thumbnail IFD1 points to it, the thumbnail follows IFD1
+     */
+    static byte[] exif(final boolean pLittleEndian, final int pOrientation, final byte[] pThumbnail) {
+
+        final Tiff tiff = new Tiff(pLittleEndian);
+
+        tiff.bytes(ascii("Exif\0\0"));
+        tiff.bytes(ascii(pLittleEndian ? "II" : "MM"));
+        tiff.int16(42);
+        tiff.int32(8);
+
+        final int ifd0Entries = pOrientation == ImageHeaderParser.ORIENTATION_UNDEFINED ? 0 : 1;
+        final int ifd1 = 8 + 2 + ifd0Entries * 12 + 4;
+
+        tiff.int16(ifd0Entries);
+        if (ifd0Entries != 0) {
+            tiff.entry(0x0112, 3, pOrientation);
+        }
+        tiff.int32(pThumbnail == null ? 0 : ifd1);
+
+        if (pThumbnail != null) {
+
+            tiff.int16(2);
+            tiff.entry(0x0201, 4, ifd1 + 2 + 2 * 12 + 4);
+            tiff.entry(0x0202, 4, pThumbnail.length);
+            tiff.int32(0);
+
+            tiff.bytes(pThumbnail);
+
+        }
+
+        return tiff.toByteArray();
+    }
+
+    /**
+     * @return SOS segment followed by entropy-coded data with stuffed zero bytes and restart markers
+     */
+    static byte[] scan(final int pLength, final int pSeed) {
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        final byte[] header = segment(0xDA, new byte[]{1, 1, 0, 0, 63, 0});
+        out.write(header, 0, header.length);
+
+        final Random random = new Random(pSeed);
+        for (int i = 0; i < pLength; i++) {
+
+            final int b = random.nextInt(256);
+
+            out.write(b);
+            if (b == 0xFF) {
+                out.write(0x00);
+            }
+
+            if (i % 97 == 96) {
+
+                out.write(0xFF);
+                out.write(0xD0 + (i / 97) % 8);
+
+            }
+
+        }
+
+        return out.toByteArray();
+    }
+
+    // ==== PNG, WEBP, GIF ==== //
+
+    /**
+     * @return signature and IHDR chunk
+     */
+    static byte[] png(final int pWidth, final int pHeight) {
+
+        return concat(new byte[]{(byte) 0x89}, ascii("PNG\r\n\u001a\n"), int32BE(13), ascii("IHDR"), int32BE(pWidth), int32BE(pHeight),
+                new byte[]{8, 6, 0, 0, 0}, int32BE(0));
+    }
+
+    /**
+     * @return lossy WebP with horizontal and vertical scale bits set, which are not part of dimensions
+     */
+    static byte[] webPLossy(final int pWidth, final int pHeight) {
+
+        return webP("VP8 ", concat(new byte[]{0x10, 0x02, 0x00, (byte) 0x9D, 0x01, 0x2A}, int16LE(pWidth | 0x4000),
+                int16LE(pHeight | 0x8000)));
+    }
+
+    static byte[] webPLossless(final int pWidth, final int pHeight) {
+        return webP("VP8L", concat(new byte[]{0x2F}, int32LE((pWidth - 1) | ((pHeight - 1) << 14))));
+    }
+
+    static byte[] webPExtended(final int pWidth, final int pHeight) {
+        return webP("VP8X", concat(new byte[]{0x08, 0, 0, 0}, int24LE(pWidth - 1), int24LE(pHeight - 1)));
+    }
+
+    static byte[] gif(final int pWidth, final int pHeight) {
+        return concat(ascii("GIF89a"), int16LE(pWidth), int16LE(pHeight), new byte[]{(byte) 0xF7, 0, 0});
+    }
+
+    private static byte[] webP(final String pChunk, final byte[] pPayload) {
+
+        final byte[] chunk = concat(ascii(pChunk), int32LE(pPayload.length), pPayload, filler(32, pChunk.hashCode()));
+
+        return concat(ascii("RIFF"), int32LE(4 + chunk.length), ascii("WEBP"), chunk);
+    }
+
+    private static byte[] int16LE(final int pValue) {
+        return new byte[]{(byte) pValue, (byte) (pValue >> 8)};
+    }
+
+    private static byte[] int24LE(final int pValue) {
+        return new byte[]{(byte) pValue, (byte) (pValue >> 8), (byte) (pValue >> 16)};
+    }
+
+    private static byte[] int32LE(final int pValue) {
+        return new byte[]{(byte) pValue, (byte) (pValue >> 8), (byte) (pValue >> 16), (byte) (pValue >> 24)};
+    }
+
+    private static byte[] int32BE(final int pValue) {
+        return new byte[]{(byte) (pValue >> 24), (byte) (pValue >> 16), (byte) (pValue >> 8), (byte) pValue};
+    }
+
+    // ==== //
+
+    static byte[] ascii(final String pString) {
+        return pString.getBytes(US_ASCII);
+    }
+
+    static byte[] filler(final int pLength, final int pSeed) {
+
+        final byte[] bytes = new byte[pLength];
+        new Random(pSeed).nextBytes(bytes);
+
+        // no markers inside segments, parsers must not look there anyway
+        for (int i = 0; i < bytes.length; i++) {
+            if (bytes[i] == (byte) 0xFF) {
+                bytes[i] = 0x7F;
+            }
+        }
+
+        return bytes;
+    }
+
+    static byte[] concat(final byte[]... pParts) {
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (final byte[] part : pParts) {
+            out.write(part, 0, part.length);
+        }
+
+        return out.toByteArray();
+    }
+
+    // ==== //
+
+    private TestImages() {}
+
+    // ==== //
+
+    private static final class Tiff
+            extends ByteArrayOutputStream {
+
+        private final boolean mLittleEndian;
+
+        Tiff(final boolean pLittleEndian) {
+            this.mLittleEndian = pLittleEndian;
+        }
+
+        void bytes(final byte[] pBytes) {
+            this.write(pBytes, 0, pBytes.length);
+        }
+
+        void int16(final int pValue) {
+
+            if (this.mLittleEndian) {
+
+                this.write(pValue & 0xFF);
+                this.write((pValue >> 8) & 0xFF);
+
+            } else {
+
+                this.write((pValue >> 8) & 0xFF);
+                this.write(pValue & 0xFF);
+
+            }
+
+        }
+
+        void int32(final int pValue) {
+
+            if (this.mLittleEndian) {
+
+                this.int16(pValue & 0xFFFF);
+                this.int16(pValue >>> 16);
+
+            } else {
+
+                this.int16(pValue >>> 16);
+                this.int16(pValue & 0xFFFF);
+
+            }
+
+        }
+
+        /**
+         * Entry of count 1, value is left aligned in the value field
+         */
+        void entry(final int pTag, final int pType, final int pValue) {
+
+            this.int16(pTag);
+            this.int16(pType);
+            this.int32(1);
+
+            if (pType == 3) {
+
+                this.int16(pValue);
+                this.int16(0);
+
+            } else {
+                this.int32(pValue);
+            }
+
+        }
+
+    }
+
+}
@@ -0,0 +1,106 @@
+package com.aviadmini.quickimagepick.core;
+
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public final class TileGridTest {
+
+    private static final int TILE_SIZE = 256;
+
+    @Test
+    public void sampleSizeFor() {
+
+        assertEquals(1, TileGrid.sampleSizeFor(2F));
+        assertEquals(1, TileGrid.sampleSizeFor(1F));
+        assertEquals(1, TileGrid.sampleSizeFor(0.6F));
+        assertEquals(2, TileGrid.sampleSizeFor(0.5F));
+        assertEquals(2, TileGrid.sampleSizeFor(0.3F));
+        assertEquals(8, TileGrid.sampleSizeFor(0.1F));
+        assertEquals(1024, TileGrid.sampleSizeFor(1F / 1024));
+
+        // nonsense scales are not zoomed out
+        assertEquals(1, TileGrid.sampleSizeFor(0F));
+        assertEquals(1, TileGrid.sampleSizeFor(-1F));
+
+        // bounded, does not overflow
+        assertEquals(1 << 30, TileGrid.sampleSizeFor(Float.MIN_VALUE));
+
+    }
+
+    @Test
+    public void tilesCoverImageWithoutOverlap() {
+
+        final int[] imageSizes = {1, 255, 256, 257, 4000, 100000};
+        for (final int imageSize : imageSizes) {
+
+            for (int sampleSize = 1; sampleSize <= 64; sampleSize *= 2) {
+
+                final int count = TileGrid.tileCount(imageSize, TILE_SIZE, sampleSize);
+                assertTrue(count >= 1);
+
+                int expectedStart = 0;
+                for (int i = 0; i < count; i++) {
+
+                    final int start = TileGrid.tileStart(i, TILE_SIZE, sampleSize);
+                    final int end = TileGrid.tileEnd(i, imageSize, TILE_SIZE, sampleSize);
+
+                    assertEquals(expectedStart, start);
+                    assertTrue(end > start);
+                    assertTrue(end - start <= TILE_SIZE * sampleSize);
+
+                    expectedStart = end;
+
+                }
+
+                assertEquals(imageSize, expectedStart);
+
+            }
+
+        }
+
+    }
+
+    @Test
+    public void keysAreUnique() {
+
+        final Set<Long> keys = new HashSet<>();
+        for (int sampleSize = 1; sampleSize <= 32; sampleSize *= 2) {
+
+            for (int column = 0; column < 20; column++) {
+
+                for (int row = 0; row < 20; row++) {
+                    assertTrue(keys.add(TileGrid.key(sampleSize, column, row)));
+                }
+
+            }
+
+        }
+
+    }
+
+    @Test
+    public void neighbouringTilesGetDifferentStripes() {
+
+        final int stripeCount = 4;
+        for (int column = 0; column < 50; column++) {
+
+            for (int row = 0; row < 50; row++) {
+
+                final int stripe = TileGrid.stripeOf(column, row, stripeCount);
+
+                assertTrue(stripe >= 0 && stripe < stripeCount);
+                assertTrue(stripe != TileGrid.stripeOf(column + 1, row, stripeCount));
+                assertTrue(stripe != TileGrid.stripeOf(column, row + 1, stripeCount));
+
+            }
+
+        }
+
+    }
+
+}
@@ -0,0 +1,262 @@
+package com.aviadmini.quickimagepick;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.net.Uri;
+import android.support.annotation.NonNull;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compares pick state kept in shared preferences, as 1.x did, with {@link PickSessionStore} journal: a cold read, i.e. the first
+ * one after process start, and a burst of updates until they are on disk. Shared preferences instances are cached per process,
+ * so cold ones are read from files of unique names written here, holding the keys 1.x kept
+ */
+@RunWith(AndroidJUnit4.class)
+public final class PickSessionStoreTimingTest {
+
+    private static final String TAG = "PickSessionStoreTiming";
+
+    private static final int ITERATIONS = 15;
+
+    // a burst of state changes, e.g. several picks started and finished in a row
+    private static final int UPDATES = 50;
+
+    private static final String CAMERA_DIR = "/storage/emulated/0/Android/data/com.example/files/Pictures/qip";
+    private static final String CAMERA_URI = "content://com.example.qip.provider/camera/20260101_120000.jpg";
+
+    // a cold read that is a millisecond slower is noise, not a regression
+    private static final long READ_SLACK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private static final long TIMEOUT_SECONDS = 10;
+
+    private final List<File> mFiles = new ArrayList<>();
+
+    private Context mContext;
+    private File    mPrefsDir;
+
+    @Before
+    public void setUp() {
+
+        this.mContext = InstrumentationRegistry.getTargetContext();
+
+        this.mPrefsDir = new File(this.mContext.getFilesDir()
+                                               .getParentFile(), "shared_prefs");
+
+    }
+
+    @After
+    public void tearDown() {
+
+        for (final File file : this.mFiles) {
+
+            //noinspection ResultOfMethodCallIgnored
+            file.delete();
+
+        }
+
+    }
+
+    @Test
+    public void coldJournalReadIsNotSlowerThanColdPreferencesRead()
+            throws IOException, InterruptedException {
+
+        final long[] prefsNanos = new long[ITERATIONS];
+        final long[] journalNanos = new long[ITERATIONS];
+
+        for (int i = 0; i < ITERATIONS; i++) {
+
+            final String prefsName = this.writePreferencesFile(i);
+
+            final long prefsStart = System.nanoTime();
+            final String prefsCameraDir = this.mContext.getSharedPreferences(prefsName, Context.MODE_PRIVATE)
+                                                       .getString("cam_dir", null);
+            prefsNanos[i] = System.nanoTime() - prefsStart;
+
+            final File journalFile = this.writeJournalFile(i);
+
+            final long journalStart = System.nanoTime();
+            final String journalCameraDir = PickSessionStore.newInstance(this.mContext, journalFile)
+                                                            .getCameraDir();
+            journalNanos[i] = System.nanoTime() - journalStart;
+
+            assertEquals(CAMERA_DIR + i, prefsCameraDir);
+            assertEquals(CAMERA_DIR + i, journalCameraDir);
+
+        }
+
+        final long prefs = median(prefsNanos);
+        final long journal = median(journalNanos);
+
+        Log.i(TAG, "Cold read, median of " + ITERATIONS + ": preferences " + prefs / 1000 + " us, journal " + journal / 1000 + " us");
+
+        assertTrue("Journal " + journal + " ns, preferences " + prefs + " ns", journal <= prefs + READ_SLACK_NANOS);
+
+    }
+
+    @Test
+    public void coalescedJournalWriteIsFasterThanPreferencesCommits()
+            throws InterruptedException {
+
+        final long[] prefsNanos = new long[ITERATIONS];
+        final long[] journalNanos = new long[ITERATIONS];
+
+        for (int i = 0; i < ITERATIONS; i++) {
+
+            final String prefsName = this.uniqueName("prefs_write_" + i);
+            this.mFiles.add(new File(this.mPrefsDir, prefsName + ".xml"));
+
+            final SharedPreferences preferences = this.mContext.getSharedPreferences(prefsName, Context.MODE_PRIVATE);
+
+            // load is not part of the write
+            preferences.getString("cam_dir", null);
+
+            // 1.x wrote every update right away
+            final long prefsStart = System.nanoTime();
+            for (int update = 0; update < UPDATES; update++) {
+
+                preferences.edit()
+                           .putString("cam_dir", CAMERA_DIR + update)
+                           .commit();
+
+            }
+            prefsNanos[i] = System.nanoTime() - prefsStart;
+
+            final File journalFile = this.journalFile("write_" + i);
+            final PickSessionStore store = PickSessionStore.newInstance(this.mContext, journalFile);
+
+            store.getCameraDir();
+
+            // updates are coalesced into the journal writes that are pending when they happen
+            final long journalStart = System.nanoTime();
+            for (int update = 0; update < UPDATES; update++) {
+                store.putCameraDir(CAMERA_DIR + update);
+            }
+            awaitJournalWrites();
+            journalNanos[i] = System.nanoTime() - journalStart;
+
+            // last update is on disk
+            assertEquals(CAMERA_DIR + (UPDATES - 1), PickSessionStore.newInstance(this.mContext, journalFile)
+                                                                     .getCameraDir());
+
+        }
+
+        final long prefs = median(prefsNanos);
+        final long journal = median(journalNanos);
+
+        Log.i(TAG, UPDATES + " updates until on disk, median of " + ITERATIONS + ": preferences " + prefs / 1000 + " us, journal "
+                + journal / 1000 + " us");
+
+        assertTrue("Journal " + journal + " ns, preferences " + prefs + " ns", journal < prefs);
+
+    }
+
+    // ==== //
+
+    @NonNull
+    private String writePreferencesFile(final int pIteration)
+            throws IOException {
+
+        final String name = this.uniqueName("prefs_read_" + pIteration);
+
+        //noinspection ResultOfMethodCallIgnored
+        this.mPrefsDir.mkdirs();
+
+        final File file = new File(this.mPrefsDir, name + ".xml");
+        this.mFiles.add(file);
+
+        final Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        try {
+
+            writer.write("<?xml version='1.0' encoding='utf-8' standalone='yes' ?>\n<map>\n");
+            writer.write("    <string name=\"cam_dir\">" + CAMERA_DIR + pIteration + "</string>\n");
+            writer.write("    <string name=\"last_cam_uri\">" + CAMERA_URI + "</string>\n");
+            writer.write("    <int name=\"req_type\" value=\"7\" />\n");
+            writer.write("</map>\n");
+
+        } finally {
+            writer.close();
+        }
+
+        return name;
+    }
+
+    @NonNull
+    private File writeJournalFile(final int pIteration)
+            throws InterruptedException {
+
+        final File file = this.journalFile("read_" + pIteration);
+
+        final PickSessionStore store = PickSessionStore.newInstance(this.mContext, file);
+        store.putCameraDir(CAMERA_DIR + pIteration);
+        store.newSession(PickSession.KIND_CAMERA, 7, Uri.parse(CAMERA_URI), false, PickSource.CAMERA);
+
+        awaitJournalWrites();
+
+        return file;
+    }
+
+    @NonNull
+    private File journalFile(@NonNull final String pName) {
+
+        final File file = new File(this.mContext.getFilesDir(), this.uniqueName(pName) + ".journal");
+        this.mFiles.add(file);
+        this.mFiles.add(new File(file.getPath() + ".tmp"));
+
+        return file;
+    }
+
+    @NonNull
+    private String uniqueName(@NonNull final String pName) {
+        return "qip_timing_" + pName + "_" + System.nanoTime();
+    }
+
+    // io executor is serial: once a task queued now has run, writes scheduled before it have finished
+    private static void awaitJournalWrites()
+            throws InterruptedException {
+
+        final CountDownLatch latch = new CountDownLatch(1);
+
+        PickExecutors.io()
+                     .execute(new Runnable() {
+
+                         @Override
+                         public void run() {
+                             latch.countDown();
+                         }
+
+                     });
+
+        assertTrue(latch.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+
+    }
+
+    private static long median(@NonNull final long[] pValues) {
+
+        final long[] sorted = pValues.clone();
+        Arrays.sort(sorted);
+
+        return sorted[sorted.length / 2];
+    }
+
+}
@@ -0,0 +1,24 @@
+package com.aviadmini.quickimagepick;
+
+import android.app.Activity;
+import android.content.Intent;
+
+/**
+ * Records pick intents instead of starting them, tests then hand a fake result to {@link QuickImagePick#handleActivityResult}
+ */
+public final class PickTestActivity
+        extends Activity {
+
+    // main thread only
+    Intent mStartedIntent;
+    int    mStartedRequestCode;
+
+    @Override
+    public void startActivityForResult(final Intent pIntent, final int pRequestCode) {
+
+        this.mStartedIntent = pIntent;
+        this.mStartedRequestCode = pRequestCode;
+
+    }
+
+}
@@ -0,0 +1,309 @@
+package com.aviadmini.quickimagepick;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.net.Uri;
+import android.os.Debug;
+import android.support.annotation.NonNull;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Decodes generated 12 MP and 50 MP JPEGs and checks the bytes actually allocated while decoding against the target size:
+ * a full decode would allocate 4 bytes per source pixel. Allocation is sampled on Java and native heaps (bitmap pixels live in
+ * the latter on API 26+), so it includes everything the decoder allocates, not only bitmaps reported to {@link PickMetrics}
+ */
+@RunWith(AndroidJUnit4.class)
+public final class SampledImageDecoderTest {
+
+    // 12 MP, 4:3
+    private static final int SMALL_WIDTH  = 4000;
+    private static final int SMALL_HEIGHT = 3000;
+
+    // 50 MP, 4:3
+    private static final int LARGE_WIDTH  = 8160;
+    private static final int LARGE_HEIGHT = 6120;
+
+    // decoder buffers, streams and the like
+    private static final long ALLOCATION_SLACK = 8L * 1024 * 1024;
+
+    private static Uri sSmallUri;
+    private static Uri sLargeUri;
+
+    private final AtomicLong mReportedPeakBytes = new AtomicLong(-1);
+
+    private Context mContext;
+
+    @BeforeClass
+    public static void writeImages() throws IOException {
+
+        final File dir = InstrumentationRegistry.getTargetContext()
+                                                .getCacheDir();
+
+        sSmallUri = Uri.fromFile(writeJpeg(new File(dir, "sampled_decoder_12mp.jpg"), SMALL_WIDTH, SMALL_HEIGHT));
+        sLargeUri = Uri.fromFile(writeJpeg(new File(dir, "sampled_decoder_50mp.jpg"), LARGE_WIDTH, LARGE_HEIGHT));
+
+    }
+
+    @Before
+    public void setUp() {
+
+        this.mContext = InstrumentationRegistry.getTargetContext();
+
+        // pooled bitmaps would not be allocated by the decode
+        BitmapPool.get()
+                  .clear();
+
+        QuickImagePick.setMetricsListener(new PickMetrics.ListenerAdapter() {
+
+            @Override
+            public void onDecoded(final int pSessionId, final int pWidth, final int pHeight, final long pPeakBytes,
+                                  final long pDurationNanos) {
+                mReportedPeakBytes.set(pPeakBytes);
+            }
+
+        });
+
+    }
+
+    @After
+    public void tearDown() {
+
+        QuickImagePick.setMetricsListener(null);
+
+        BitmapPool.get()
+                  .clear();
+
+    }
+
+    @Test
+    public void decodeToSize12Mp() throws IOException, InterruptedException {
+        this.decodeToSize(sSmallUri, SMALL_WIDTH, SMALL_HEIGHT);
+    }
+
+    @Test
+    public void decodeToSize50Mp() throws IOException, InterruptedException {
+        this.decodeToSize(sLargeUri, LARGE_WIDTH, LARGE_HEIGHT);
+    }
+
+    @Test
+    public void decodeWithinPixels12Mp() throws IOException, InterruptedException {
+        this.decodeWithinPixels(sSmallUri, SMALL_WIDTH, SMALL_HEIGHT);
+    }
+
+    @Test
+    public void decodeWithinPixels50Mp() throws IOException, InterruptedException {
+        this.decodeWithinPixels(sLargeUri, LARGE_WIDTH, LARGE_HEIGHT);
+    }
+
+    @Test
+    public void decodeWithinPixelsOfOddBudget() throws IOException {
+
+        // rounding both sides would give 1155x866 = 1000230
+        final long maxPixels = 1000000L;
+
+        final Bitmap bitmap = SampledImageDecoder.decodeWithinPixels(this.mContext, sSmallUri, maxPixels);
+
+        assertTrue(bitmap.getWidth() + "x" + bitmap.getHeight(), (long) bitmap.getWidth() * bitmap.getHeight() <= maxPixels);
+
+        bitmap.recycle();
+
+    }
+
+    @Test
+    public void decodeAtSampledSize() throws IOException, InterruptedException {
+
+        // exact power-of-two fraction: no scaling pass, only the sampled bitmap is alive
+        final AllocationSampler sampler = AllocationSampler.begin();
+        final Bitmap bitmap = SampledImageDecoder.decode(this.mContext, sSmallUri, SMALL_WIDTH / 4, SMALL_HEIGHT / 4);
+        final long allocated = sampler.end();
+
+        assertEquals(SMALL_WIDTH / 4, bitmap.getWidth());
+        assertEquals(SMALL_HEIGHT / 4, bitmap.getHeight());
+
+        assertEquals(targetBytes(bitmap), this.mReportedPeakBytes.get());
+
+        assertAllocation(allocated, bitmap, SMALL_WIDTH, SMALL_HEIGHT, 1);
+
+        bitmap.recycle();
+
+    }
+
+    // ==== //
+
+    private void decodeToSize(@NonNull final Uri pUri, final int pSourceWidth, final int pSourceHeight)
+            throws IOException, InterruptedException {
+
+        final AllocationSampler sampler = AllocationSampler.begin();
+        final Bitmap bitmap = SampledImageDecoder.decode(this.mContext, pUri, 1024, 1024);
+        final long allocated = sampler.end();
+
+        assertEquals(1024, bitmap.getWidth());
+        assertEquals(768, bitmap.getHeight());
+
+        // sampled bitmap is less than twice the target per side, the result is alive together with it
+        assertAllocation(allocated, bitmap, pSourceWidth, pSourceHeight, 5);
+
+        bitmap.recycle();
+
+    }
+
+    private void decodeWithinPixels(@NonNull final Uri pUri, final int pSourceWidth, final int pSourceHeight)
+            throws IOException, InterruptedException {
+
+        final long maxPixels = 2000000L;
+
+        final AllocationSampler sampler = AllocationSampler.begin();
+        final Bitmap bitmap = SampledImageDecoder.decodeWithinPixels(this.mContext, pUri, maxPixels);
+        final long allocated = sampler.end();
+
+        assertTrue(bitmap.getWidth() + "x" + bitmap.getHeight(), (long) bitmap.getWidth() * bitmap.getHeight() <= maxPixels);
+
+        assertAllocation(allocated, bitmap, pSourceWidth, pSourceHeight, 5);
+
+        bitmap.recycle();
+
+    }
+
+    private static void assertAllocation(final long pAllocated, @NonNull final Bitmap pResult, final int pSourceWidth,
+                                         final int pSourceHeight, final int pMaxTargets) {
+
+        final long targetBytes = targetBytes(pResult);
+        final long fullBytes = (long) pSourceWidth * pSourceHeight * 4;
+
+        // the result is alive when sampling stops, anything less means the sampler does not see bitmap memory
+        assertTrue("Allocated " + pAllocated + " below result " + targetBytes, pAllocated >= targetBytes * 9 / 10);
+
+        assertTrue("Allocated " + pAllocated + " over target " + targetBytes,
+                pAllocated <= pMaxTargets * targetBytes + ALLOCATION_SLACK);
+        assertTrue("Allocated " + pAllocated + " not below full decode " + fullBytes, pAllocated < fullBytes / 2);
+
+    }
+
+    private static long targetBytes(@NonNull final Bitmap pBitmap) {
+        return (long) pBitmap.getRowBytes() * pBitmap.getHeight();
+    }
+
+    @NonNull
+    private static File writeJpeg(@NonNull final File pFile, final int pWidth, final int pHeight) throws IOException {
+
+        // half the memory of ARGB, the decoder does not care what the JPEG was encoded from
+        final Bitmap bitmap = Bitmap.createBitmap(pWidth, pHeight, Bitmap.Config.RGB_565);
+
+        final Canvas canvas = new Canvas(bitmap);
+        final Paint paint = new Paint();
+        for (int i = 0; i < 16; i++) {
+
+            paint.setColor(Color.rgb(i * 16, 255 - i * 16, (i * 64) & 0xFF));
+
+            canvas.drawCircle(pWidth * (i + 1) / 17F, pHeight / 2F, pHeight / (2F + i), paint);
+
+        }
+
+        final FileOutputStream out = new FileOutputStream(pFile);
+        try {
+            assertTrue(bitmap.compress(Bitmap.CompressFormat.JPEG, 90, out));
+        } finally {
+
+            out.close();
+
+            bitmap.recycle();
+
+        }
+
+        return pFile;
+    }
+
+    // ==== //
+
+    /**
+     * Polls Java and native heap usage on a background thread and keeps the highest value above the usage at start
+     */
+    private static final class AllocationSampler
+            extends Thread {
+
+        private final long mBaseline;
+
+        private volatile boolean mStopped;
+        private volatile long    mPeak;
+
+        @NonNull
+        static AllocationSampler begin() {
+
+            // garbage of earlier tests must not be collected during the decode and hide its allocations
+            Runtime.getRuntime()
+                   .gc();
+            System.runFinalization();
+            Runtime.getRuntime()
+                   .gc();
+
+            final AllocationSampler sampler = new AllocationSampler(allocated());
+            sampler.start();
+
+            return sampler;
+        }
+
+        private AllocationSampler(final long pBaseline) {
+
+            super("allocation sampler");
+
+            this.mBaseline = pBaseline;
+            this.mPeak = pBaseline;
+
+        }
+
+        /**
+         * @return highest allocation above the baseline seen since begin, including allocations still alive now
+         */
+        long end() throws InterruptedException {
+
+            this.mStopped = true;
+            this.join();
+
+            return Math.max(this.mPeak, allocated()) - this.mBaseline;
+        }
+
+        @Override
+        public void run() {
+
+            while (!this.mStopped) {
+
+                this.mPeak = Math.max(this.mPeak, allocated());
+
+                try {
+                    Thread.sleep(1);
+                } catch (final InterruptedException e) {
+                    return;
+                }
+
+            }
+
+        }
+
+        private static long allocated() {
+
+            final Runtime runtime = Runtime.getRuntime();
+
+            return runtime.totalMemory() - runtime.freeMemory() + Debug.getNativeHeapAllocatedSize();
+        }
+
+    }
+
+}
@@ -0,0 +1,262 @@
+package com.aviadmini.quickimagepick;
+
+import android.app.Activity;
+import android.app.Instrumentation;
+import android.content.Intent;
+import android.graphics.Bitmap;
+import android.net.Uri;
+import android.support.annotation.NonNull;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.rule.ActivityTestRule;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Drives whole picks on main thread with library strict mode enabled: any library disk access on main thread throws
+ * and fails the test. Pick apps are not started, {@link PickTestActivity} records the intent and the test fakes the result
+ */
+@RunWith(AndroidJUnit4.class)
+public final class StrictModePickTest {
+
+    private static final int  REQUEST_TYPE    = 7;
+    private static final long TIMEOUT_SECONDS = 10;
+
+    @Rule
+    public final ActivityTestRule<PickTestActivity> mActivityRule = new ActivityTestRule<>(PickTestActivity.class);
+
+    private Instrumentation mInstrumentation;
+
+    @Before
+    public void setUp() {
+
+        this.mInstrumentation = InstrumentationRegistry.getInstrumentation();
+
+        QuickImagePick.setStrictMode(true);
+
+    }
+
+    @After
+    public void tearDown() {
+
+        QuickImagePick.setStrictMode(false);
+        QuickImagePick.setPickLimits(null);
+
+    }
+
+    @Test
+    public void cameraPick() throws InterruptedException {
+
+        final PickTestActivity activity = this.mActivityRule.getActivity();
+        final ResultCallback callback = new ResultCallback();
+
+        this.runPick(new Runnable() {
+
+            @Override
+            public void run() {
+
+                assertNotNull(QuickImagePick.pickFromCamera(activity, REQUEST_TYPE));
+
+                // camera app wrote the picture and returned no data
+                QuickImagePick.handleActivityResult(activity, activity.mStartedRequestCode, Activity.RESULT_OK, null, callback);
+
+            }
+
+        }, callback);
+
+        assertNull(callback.mError);
+        assertEquals(PickSource.CAMERA, callback.mPickSource);
+        assertEquals(REQUEST_TYPE, callback.mRequestType);
+        assertNotNull(callback.mImageUri);
+
+    }
+
+    @Test
+    public void galleryPickWithLimits() throws InterruptedException, IOException {
+
+        final PickTestActivity activity = this.mActivityRule.getActivity();
+
+        final Uri imageUri = Uri.fromFile(writeJpeg(new File(activity.getCacheDir(), "strict_mode_pick.jpg"), 64, 48));
+
+        // validation reads the image header and size
+        QuickImagePick.setPickLimits(new PickLimits(PickLimits.UNLIMITED, PickLimits.UNLIMITED));
+
+        final ResultCallback callback = this.pickFromGallery(activity, imageUri);
+
+        assertNull(callback.mError);
+        assertEquals(PickSource.GALLERY, callback.mPickSource);
+        assertEquals(REQUEST_TYPE, callback.mRequestType);
+        assertEquals(imageUri, callback.mImageUri);
+
+    }
+
+    @Test
+    public void galleryPickOfReplacedImage() throws InterruptedException, IOException {
+
+        final PickTestActivity activity = this.mActivityRule.getActivity();
+
+        final File file = writeJpeg(new File(activity.getCacheDir(), "strict_mode_replaced.jpg"), 64, 48);
+        final Uri imageUri = Uri.fromFile(file);
+
+        // the first version fits, the second one has 100 times more pixels
+        QuickImagePick.setPickLimits(new PickLimits(10000, PickLimits.UNLIMITED));
+
+        final ResultCallback first = this.pickFromGallery(activity, imageUri);
+
+        assertNull(first.mError);
+        assertEquals(imageUri, first.mImageUri);
+
+        // same Uri, replaced in place; modification time set explicitly as file systems may store seconds only
+        final long lastModified = file.lastModified();
+        writeJpeg(file, 640, 480);
+        assertTrue(file.setLastModified(lastModified + 10000));
+
+        final ResultCallback second = this.pickFromGallery(activity, imageUri);
+
+        assertEquals(QuickImagePick.ERR_LIMITS_EXCEEDED, second.mError);
+
+    }
+
+    // ==== //
+
+    @NonNull
+    private ResultCallback pickFromGallery(@NonNull final PickTestActivity pActivity, @NonNull final Uri pImageUri)
+            throws InterruptedException {
+
+        final ResultCallback callback = new ResultCallback();
+
+        this.runPick(new Runnable() {
+
+            @Override
+            public void run() {
+
+                assertNotNull(QuickImagePick.pickFromGallery(pActivity, REQUEST_TYPE));
+
+                QuickImagePick.handleActivityResult(pActivity, pActivity.mStartedRequestCode, Activity.RESULT_OK,
+                        new Intent().setData(pImageUri), callback);
+
+            }
+
+        }, callback);
+
+        return callback;
+    }
+
+    /**
+     * Runs given pick on main thread and waits for its callback. Assertion errors and strict mode violations on main thread
+     * are rethrown here
+     */
+    private void runPick(@NonNull final Runnable pPick, @NonNull final ResultCallback pCallback) throws InterruptedException {
+
+        final Throwable[] failure = new Throwable[1];
+
+        this.mInstrumentation.runOnMainSync(new Runnable() {
+
+            @Override
+            public void run() {
+
+                try {
+                    pPick.run();
+                } catch (final Throwable e) {
+                    failure[0] = e;
+                }
+
+            }
+
+        });
+
+        if (failure[0] instanceof Error) {
+            throw (Error) failure[0];
+        }
+
+        if (failure[0] != null) {
+            throw new AssertionError(failure[0]);
+        }
+
+        assertTrue("No callback", pCallback.mDone.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+
+    }
+
+    @NonNull
+    private static File writeJpeg(@NonNull final File pFile, final int pWidth, final int pHeight) throws IOException {
+
+        final Bitmap bitmap = Bitmap.createBitmap(pWidth, pHeight, Bitmap.Config.ARGB_8888);
+
+        final FileOutputStream out = new FileOutputStream(pFile);
+        try {
+            assertTrue(bitmap.compress(Bitmap.CompressFormat.JPEG, 90, out));
+        } finally {
+
+            out.close();
+
+            bitmap.recycle();
+
+        }
+
+        return pFile;
+    }
+
+    // ==== //
+
+    private static final class ResultCallback
+            implements QuickImagePick.Callback {
+
+        final CountDownLatch mDone = new CountDownLatch(1);
+
+        // written on main thread before mDone is counted down
+        volatile PickSource mPickSource;
+        volatile int        mRequestType;
+        volatile Uri        mImageUri;
+        volatile String     mError;
+
+        @Override
+        public void onImagePicked(@NonNull final PickSource pPickSource, final int pRequestType, @NonNull final Uri pImageUri) {
+
+            this.mPickSource = pPickSource;
+            this.mRequestType = pRequestType;
+            this.mImageUri = pImageUri;
+
+            this.mDone.countDown();
+
+        }
+
+        @Override
+        public void onError(@NonNull final PickSource pPickSource, final int pRequestType, @NonNull final String pErrorString) {
+
+            this.mPickSource = pPickSource;
+            this.mRequestType = pRequestType;
+            this.mError = pErrorString;
+
+            this.mDone.countDown();
+
+        }
+
+        @Override
+        public void onCancel(@NonNull final PickSource pPickSource, final int pRequestType) {
+
+            this.mPickSource = pPickSource;
+            this.mRequestType = pRequestType;
+            this.mError = "cancelled";
+
+            this.mDone.countDown();
+
+        }
+
+    }
+
+}
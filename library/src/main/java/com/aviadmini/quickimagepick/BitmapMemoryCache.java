@@ -0,0 +1,247 @@
+package com.aviadmini.quickimagepick;
+
+import android.graphics.Bitmap;
+import android.support.annotation.MainThread;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.WorkerThread;
+import android.support.v4.util.LruCache;
+
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Memory LRU of decoded bitmaps bounded by their allocation size, shared by {@link ThumbnailCache} and {@link TiledImageSource}.
+ * Concurrent gets of the same key share one load: the first caller loads, the others wait for its result.
+ * <br>
+ * A loaded bitmap is put into the LRU before its load stops being in flight, and a caller that starts a load checks the LRU again,
+ * so a key is never loaded twice because a caller missed both.
+ *
+ * @param <K> key type
+ */
+final class BitmapMemoryCache<K> {
+
+    private final LruCache<K, Bitmap> mMemory;
+
+    private final ConcurrentHashMap<K, FutureTask<Bitmap>> mInFlight = new ConcurrentHashMap<>();
+
+    private volatile boolean mClosed;
+
+    /**
+     * @param pMaxBytes max bytes of bitmaps kept in memory
+     */
+    BitmapMemoryCache(final int pMaxBytes) {
+
+        this.mMemory = new LruCache<K, Bitmap>(pMaxBytes) {
+
+            @Override
+            protected int sizeOf(final K pKey, final Bitmap pValue) {
+                return (int) BitmapPool.byteCountOf(pValue);
+            }
+
+        };
+
+    }
+
+    /**
+     * Memory only, does no I/O
+     *
+     * @return cached bitmap or null
+     */
+    @Nullable
+    Bitmap peek(@NonNull final K pKey) {
+        return this.mMemory.get(pKey);
+    }
+
+    /**
+     * Gets bitmap from memory or loads it, sharing the load with concurrent callers. Blocking
+     *
+     * @param pKey    key
+     * @param pWhat   what is loaded, for error messages
+     * @param pLoader loads the bitmap on a miss
+     * @return bitmap. Shared, must not be recycled or modified
+     * @throws IOException if loader failed or the wait was interrupted
+     */
+    @WorkerThread
+    @NonNull
+    Bitmap get(@NonNull final K pKey, @NonNull final String pWhat, @NonNull final Loader pLoader)
+            throws IOException {
+
+        final Bitmap cached = this.mMemory.get(pKey);
+        if (cached != null) {
+            return cached;
+        }
+
+        FutureTask<Bitmap> task = this.mInFlight.get(pKey);
+        if (task == null) {
+
+            final FutureTask<Bitmap> newTask = new FutureTask<>(new Callable<Bitmap>() {
+
+                @Override
+                public Bitmap call()
+                        throws IOException {
+
+                    // a load of the same key may have finished between the miss above and putIfAbsent
+                    final Bitmap loaded = mMemory.get(pKey);
+                    if (loaded != null) {
+                        return loaded;
+                    }
+
+                    final Bitmap bitmap = pLoader.load();
+
+                    if (!mClosed) {
+                        mMemory.put(pKey, bitmap);
+                    }
+
+                    return bitmap;
+                }
+
+            });
+
+            task = this.mInFlight.putIfAbsent(pKey, newTask);
+            if (task == null) {
+
+                task = newTask;
+
+                try {
+                    task.run();
+                } finally {
+                    this.mInFlight.remove(pKey, task);
+                }
+
+            }
+
+        }
+
+        try {
+            return task.get();
+        } catch (final InterruptedException e) {
+
+            Thread.currentThread()
+                  .interrupt();
+
+            throw new IOException("Interrupted while waiting for " + pWhat);
+        } catch (final ExecutionException e) {
+
+            final Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+
+            throw new IOException("Could not load " + pWhat, cause);
+        }
+
+    }
+
+    /**
+     * Gets bitmap in {@link PickScheduler.Priority#VISIBLE} lane and delivers it on main thread. Cached bitmap is delivered immediately
+     *
+     * @param pKey      key
+     * @param pTag      scheduler tag, usually image {@link android.net.Uri}
+     * @param pWhat     what is loaded, for error messages
+     * @param pLoader   loads the bitmap on a miss
+     * @param pDelivery receives the result
+     */
+    @MainThread
+    void load(@NonNull final K pKey, @NonNull final Object pTag, @NonNull final String pWhat, @NonNull final Loader pLoader,
+              @NonNull final Delivery pDelivery) {
+
+        final Bitmap cached = this.peek(pKey);
+        if (cached != null) {
+
+            pDelivery.onLoaded(cached);
+
+            return;
+        }
+
+        PickScheduler.get()
+                     .execute(PickScheduler.Priority.VISIBLE, pTag, new Runnable() {
+
+                         @Override
+                         public void run() {
+
+                             try {
+
+                                 final Bitmap bitmap = get(pKey, pWhat, pLoader);
+
+                                 PickExecutors.mainHandler()
+                                              .post(new Runnable() {
+
+                                                  @Override
+                                                  public void run() {
+                                                      pDelivery.onLoaded(bitmap);
+                                                  }
+
+                                              });
+
+                             } catch (final IOException e) {
+
+                                 PickExecutors.mainHandler()
+                                              .post(new Runnable() {
+
+                                                  @Override
+                                                  public void run() {
+                                                      pDelivery.onError(e);
+                                                  }
+
+                                              });
+
+                             }
+
+                         }
+
+                     });
+
+    }
+
+    @NonNull
+    Set<K> keys() {
+        return this.mMemory.snapshot()
+                           .keySet();
+    }
+
+    void remove(@NonNull final K pKey) {
+        this.mMemory.remove(pKey);
+    }
+
+    void evictAll() {
+        this.mMemory.evictAll();
+    }
+
+    /**
+     * Drops cached bitmaps, loads finishing later are not cached
+     */
+    void close() {
+
+        this.mClosed = true;
+
+        this.mMemory.evictAll();
+
+    }
+
+    // ==== //
+
+    interface Loader {
+
+        @WorkerThread
+        @NonNull
+        Bitmap load()
+                throws IOException;
+
+    }
+
+    interface Delivery {
+
+        @MainThread
+        void onLoaded(@NonNull final Bitmap pBitmap);
+
+        @MainThread
+        void onError(@NonNull final IOException pError);
+
+    }
+
+}
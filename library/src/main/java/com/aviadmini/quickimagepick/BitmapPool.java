@@ -0,0 +1,375 @@
+package com.aviadmini.quickimagepick;
+
+import android.graphics.Bitmap;
+import android.graphics.Color;
+import android.os.Build;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Pool of mutable {@link Bitmap}s reused by library decodes through {@link android.graphics.BitmapFactory.Options#inBitmap},
+ * so that picking many images does not allocate a new large bitmap for each of them.
+ * <br>
+ * Bitmaps are bucketed by size class: on API 19+ by allocation size rounded up to a power of two (any bitmap that is large enough
+ * can be reused), on API 11-18 by exact width, height and config (the only bitmaps those versions can decode into).
+ * Pool is bounded by bytes, least recently released bitmaps are recycled first. Below API 11 nothing is pooled.
+ * <br>
+ * Bitmaps returned by {@link SampledImageDecoder} may be given back with {@link #release(Bitmap)} once they are no longer used
+ */
+@SuppressWarnings("unused")
+public final class BitmapPool {
+
+    private static final boolean API_11 = Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB;
+    private static final boolean API_19 = Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT;
+
+    private static volatile BitmapPool sInstance;
+
+    /**
+     * @return pool used by library decodes, bounded by 1/16 of max heap
+     */
+    @NonNull
+    public static BitmapPool get() {
+
+        BitmapPool instance = sInstance;
+        if (instance == null) {
+
+            synchronized (BitmapPool.class) {
+
+                instance = sInstance;
+                if (instance == null) {
+                    instance = sInstance = new BitmapPool(Runtime.getRuntime()
+                                                                 .maxMemory() / 16);
+                }
+
+            }
+
+        }
+
+        return instance;
+    }
+
+    // guarded by this
+    private final Map<Long, ArrayDeque<Bitmap>> mBuckets = new HashMap<>();
+    private final ArrayDeque<Bitmap>            mReleaseOrder = new ArrayDeque<>();
+    private final Set<Bitmap>                   mPooled = Collections.newSetFromMap(new IdentityHashMap<Bitmap, Boolean>());
+
+    // guarded by this
+    private long mMaxBytes;
+    private long mBytesHeld;
+    private long mHits;
+    private long mMisses;
+
+    /**
+     * @param pMaxBytes max bytes of pooled bitmaps
+     */
+    public BitmapPool(final long pMaxBytes) {
+        this.mMaxBytes = pMaxBytes;
+    }
+
+    // ==== ACQUIRE ==== //
+
+    /**
+     * @param pWidth  required width
+     * @param pHeight required height
+     * @param pConfig required config
+     * @return pooled bitmap of exactly given size and config, cleared to transparent, or a new one if there is none
+     */
+    @NonNull
+    public Bitmap obtain(final int pWidth, final int pHeight, @NonNull final Bitmap.Config pConfig) {
+
+        final Bitmap pooled = this.take(pWidth, pHeight, pConfig);
+        if (pooled == null) {
+            return Bitmap.createBitmap(pWidth, pHeight, pConfig);
+        }
+
+        if (API_19 && (pooled.getWidth() != pWidth || pooled.getHeight() != pHeight || pooled.getConfig() != pConfig)) {
+            pooled.reconfigure(pWidth, pHeight, pConfig);
+        }
+
+        pooled.eraseColor(Color.TRANSPARENT);
+
+        return pooled;
+    }
+
+    /**
+     * @param pWidth      decoded width
+     * @param pHeight     decoded height
+     * @param pMimeType   source format, pre-KitKat decoders reuse bitmaps only for JPEG and PNG
+     * @param pSampleSize sample size of the decode, pre-KitKat decoders reuse bitmaps only without sampling
+     * @return bitmap to decode into, or null if the decode cannot reuse one. Must be released if the decode does not use it
+     */
+    @Nullable
+    Bitmap takeForDecode(final int pWidth, final int pHeight, @Nullable final String pMimeType, final int pSampleSize) {
+
+        if (!API_19 && (pSampleSize != 1 || !("image/jpeg".equals(pMimeType) || "image/png".equals(pMimeType)))) {
+            return null;
+        }
+
+        return this.take(pWidth, pHeight, Bitmap.Config.ARGB_8888);
+    }
+
+    // ==== RELEASE ==== //
+
+    /**
+     * Gives bitmap to the pool. It must not be used by the caller afterwards: it is either reused by a later decode or recycled.
+     * Immutable and recycled bitmaps are ignored, releasing a bitmap that is already pooled does nothing
+     *
+     * @param pBitmap bitmap no longer used by the caller
+     */
+    public void release(@Nullable final Bitmap pBitmap) {
+
+        if (pBitmap == null || pBitmap.isRecycled() || !pBitmap.isMutable()) {
+            return;
+        }
+
+        final long bytes = byteCountOf(pBitmap);
+
+        synchronized (this) {
+
+            if (this.mPooled.contains(pBitmap)) {
+                return;
+            }
+
+            if (!API_11 || bytes > this.mMaxBytes / 2) {
+
+                pBitmap.recycle();
+
+                return;
+            }
+
+            final Long key = API_19 ? sizeClassKey(bytes) : exactKey(pBitmap.getWidth(), pBitmap.getHeight(), pBitmap.getConfig());
+
+            ArrayDeque<Bitmap> bucket = this.mBuckets.get(key);
+            if (bucket == null) {
+                this.mBuckets.put(key, bucket = new ArrayDeque<>());
+            }
+
+            bucket.addLast(pBitmap);
+            this.mReleaseOrder.addLast(pBitmap);
+            this.mPooled.add(pBitmap);
+            this.mBytesHeld += bytes;
+
+            this.trimTo(this.mMaxBytes);
+
+        }
+
+    }
+
+    // ==== SIZE ==== //
+
+    /**
+     * @param pMaxBytes new max bytes of pooled bitmaps. Excess bitmaps are recycled right away
+     */
+    public synchronized void setMaxBytes(final long pMaxBytes) {
+
+        this.mMaxBytes = pMaxBytes;
+
+        this.trimTo(pMaxBytes);
+
+    }
+
+    /**
+     * Recycles all pooled bitmaps, e.g. on {@link android.content.ComponentCallbacks2#onTrimMemory(int)}
+     */
+    public synchronized void clear() {
+        this.trimTo(0);
+    }
+
+    // ==== STATS ==== //
+
+    public synchronized long getMaxBytes() {
+        return this.mMaxBytes;
+    }
+
+    /**
+     * @return bytes of bitmaps currently in the pool
+     */
+    public synchronized long getBytesHeld() {
+        return this.mBytesHeld;
+    }
+
+    public synchronized int getPooledCount() {
+        return this.mPooled.size();
+    }
+
+    public synchronized long getHitCount() {
+        return this.mHits;
+    }
+
+    public synchronized long getMissCount() {
+        return this.mMisses;
+    }
+
+    /**
+     * @return share of requests served from the pool, 0 if there were none
+     */
+    public synchronized float getHitRate() {
+
+        final long requests = this.mHits + this.mMisses;
+
+        return requests == 0 ? 0 : (float) this.mHits / requests;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "BitmapPool{bytesHeld=" + this.mBytesHeld + ", maxBytes=" + this.mMaxBytes + ", pooled=" + this.mPooled.size() + ", hits="
+                + this.mHits + ", misses=" + this.mMisses + '}';
+    }
+
+    // ==== //
+
+    @Nullable
+    private Bitmap take(final int pWidth, final int pHeight, @NonNull final Bitmap.Config pConfig) {
+
+        Bitmap result = null;
+        synchronized (this) {
+
+            if (API_11) {
+
+                if (API_19) {
+
+                    // candidates in the required class may still be too small, any one in the next class is large enough
+                    final long required = (long) pWidth * pHeight * bytesPerPixel(pConfig);
+                    final long key = sizeClassKey(required);
+
+                    result = this.takeFromBucket(key, required);
+                    if (result == null) {
+                        result = this.takeFromBucket(key + 1, required);
+                    }
+
+                } else {
+                    result = this.takeFromBucket(exactKey(pWidth, pHeight, pConfig), 0);
+                }
+
+            }
+
+            if (result == null) {
+                this.mMisses++;
+            } else {
+                this.mHits++;
+            }
+
+        }
+
+        PickMetrics.cacheLookup(PickMetrics.CACHE_BITMAP_POOL, result != null);
+
+        return result;
+    }
+
+    // guarded by this
+    @Nullable
+    private Bitmap takeFromBucket(final long pKey, final long pMinBytes) {
+
+        final ArrayDeque<Bitmap> bucket = this.mBuckets.get(pKey);
+        if (bucket == null) {
+            return null;
+        }
+
+        // most recently released first, it is the most likely to still be in CPU caches
+        final Iterator<Bitmap> iterator = bucket.descendingIterator();
+        while (iterator.hasNext()) {
+
+            final Bitmap bitmap = iterator.next();
+
+            final long bytes = byteCountOf(bitmap);
+            if (bytes >= pMinBytes) {
+
+                iterator.remove();
+
+                if (bucket.isEmpty()) {
+                    this.mBuckets.remove(pKey);
+                }
+
+                this.mReleaseOrder.remove(bitmap);
+                this.mPooled.remove(bitmap);
+                this.mBytesHeld -= bytes;
+
+                return bitmap;
+            }
+
+        }
+
+        return null;
+    }
+
+    // guarded by this
+    private void trimTo(final long pMaxBytes) {
+
+        while (this.mBytesHeld > pMaxBytes) {
+
+            final Bitmap eldest = this.mReleaseOrder.pollFirst();
+            if (eldest == null) {
+                break;
+            }
+
+            final long bytes = byteCountOf(eldest);
+            final long key = API_19 ? sizeClassKey(bytes) : exactKey(eldest.getWidth(), eldest.getHeight(), eldest.getConfig());
+
+            final ArrayDeque<Bitmap> bucket = this.mBuckets.get(key);
+            if (bucket != null) {
+
+                bucket.remove(eldest);
+
+                if (bucket.isEmpty()) {
+                    this.mBuckets.remove(key);
+                }
+
+            }
+
+            this.mPooled.remove(eldest);
+            this.mBytesHeld -= bytes;
+
+            eldest.recycle();
+
+        }
+
+    }
+
+    /**
+     * @return bytes held by given bitmap, which on API 19+ may be more than its current size needs (pooled and reconfigured bitmaps)
+     */
+    static long byteCountOf(@NonNull final Bitmap pBitmap) {
+        return API_19 ? pBitmap.getAllocationByteCount() : (long) pBitmap.getRowBytes() * pBitmap.getHeight();
+    }
+
+    /**
+     * @return smallest n such that 2^n is at least given byte count
+     */
+    private static long sizeClassKey(final long pBytes) {
+        return pBytes <= 1 ? 0 : 64 - Long.numberOfLeadingZeros(pBytes - 1);
+    }
+
+    private static long exactKey(final int pWidth, final int pHeight, @Nullable final Bitmap.Config pConfig) {
+        return ((long) pWidth << 36) | ((long) pHeight << 8) | (pConfig == null ? 0xFF : pConfig.ordinal());
+    }
+
+    private static int bytesPerPixel(@NonNull final Bitmap.Config pConfig) {
+
+        switch (pConfig) {
+
+            case ALPHA_8: {
+                return 1;
+            }
+
+            case RGB_565:
+            case ARGB_4444: {
+                return 2;
+            }
+
+            default: {
+                return 4;
+            }
+
+        }
+
+    }
+
+}
@@ -0,0 +1,357 @@
+package com.aviadmini.quickimagepick;
+
+import android.graphics.Bitmap;
+import android.support.annotation.NonNull;
+import android.support.annotation.WorkerThread;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Encodes a {@link Bitmap} with the highest quality that fits into a byte budget. Quality is found by a k-ary search:
+ * every round encodes a few candidate qualities in parallel on the library processing executor and narrows the range
+ * to the one between the largest fitting and the smallest non-fitting candidate. Candidates are written into pooled
+ * buffers that are reused across encodes.
+ */
+@SuppressWarnings("unused")
+public final class BudgetEncoder {
+
+    private static final int MIN_QUALITY = 0;
+    private static final int MAX_QUALITY = 100;
+
+    // more candidates per round finish in fewer rounds but waste more encodes
+    private static final int MAX_CANDIDATES_PER_ROUND = 3;
+
+    private static final int MAX_POOLED_BUFFERS  = 8;
+    private static final int MAX_POOLED_CAPACITY = 4 * 1024 * 1024;
+
+    private static final ArrayDeque<EncodeBuffer> sBufferPool = new ArrayDeque<>();
+
+    /**
+     * Blocking, call it from a background thread
+     *
+     * @param pBitmap   bitmap to encode
+     * @param pFormat   {@link Bitmap.CompressFormat#JPEG} or {@link Bitmap.CompressFormat#WEBP}
+     * @param pMaxBytes byte budget
+     * @return best encode. If even the lowest quality exceeds the budget, that encode is returned and
+     * {@link Result#isWithinBudget()} is false
+     * @throws IOException if bitmap cannot be compressed
+     */
+    @WorkerThread
+    @NonNull
+    public static Result encode(@NonNull final Bitmap pBitmap, @NonNull final Bitmap.CompressFormat pFormat, final long pMaxBytes)
+            throws IOException {
+
+        if (pFormat == Bitmap.CompressFormat.PNG) {
+            throw new IllegalArgumentException("PNG is lossless, quality does not change its size");
+        }
+
+        if (pMaxBytes <= 0) {
+            throw new IllegalArgumentException("Byte budget must be positive: " + pMaxBytes);
+        }
+
+        final long start = System.nanoTime();
+
+        final int candidatesPerRound = Math.max(1, Math.min(MAX_CANDIDATES_PER_ROUND, PickExecutors.coreCount()));
+
+        EncodeBuffer best = null;
+        int bestQuality = -1;
+
+        EncodeBuffer smallest = null;
+
+        int low = MIN_QUALITY;
+        int high = MAX_QUALITY;
+        int attempts = 0;
+        try {
+
+            while (low <= high) {
+
+                final int[] qualities = candidates(low, high, candidatesPerRound);
+                final EncodeBuffer[] buffers = encodeAll(pBitmap, pFormat, qualities);
+
+                attempts += qualities.length;
+
+                // qualities ascend, so do sizes: the last fitting candidate is the best one
+                int fitting = -1;
+                for (int i = 0; i < qualities.length; i++) {
+
+                    if (buffers[i].size() <= pMaxBytes) {
+                        fitting = i;
+                    } else {
+                        break;
+                    }
+
+                }
+
+                if (fitting >= 0) {
+
+                    release(best);
+                    best = buffers[fitting];
+                    buffers[fitting] = null;
+                    bestQuality = qualities[fitting];
+
+                    low = bestQuality + 1;
+
+                } else if (qualities[0] == MIN_QUALITY) {
+
+                    // nothing fits, keep the smallest encode to report it
+                    smallest = buffers[0];
+                    buffers[0] = null;
+
+                }
+
+                if (fitting + 1 < qualities.length) {
+                    high = qualities[fitting + 1] - 1;
+                }
+
+                for (final EncodeBuffer buffer : buffers) {
+                    release(buffer);
+                }
+
+            }
+
+            final long duration = System.nanoTime() - start;
+
+            if (best != null) {
+                return new Result(best.toByteArray(), bestQuality, true, attempts, duration);
+            }
+
+            //noinspection ConstantConditions - the lowest quality is always encoded when nothing fits
+            return new Result(smallest.toByteArray(), MIN_QUALITY, false, attempts, duration);
+        } finally {
+
+            release(best);
+            release(smallest);
+
+        }
+
+    }
+
+    // ==== //
+
+    @NonNull
+    private static int[] candidates(final int pLow, final int pHigh, final int pCount) {
+
+        final int[] result = new int[Math.min(pCount, pHigh - pLow + 1)];
+
+        int size = 0;
+        for (int i = 1; i <= result.length; i++) {
+
+            final int quality = pLow + (int) ((long) (pHigh - pLow) * i / (result.length + 1));
+            if (size == 0 || quality > result[size - 1]) {
+                result[size++] = quality;
+            }
+
+        }
+
+        return size == result.length ? result : Arrays.copyOf(result, size);
+    }
+
+    @NonNull
+    private static EncodeBuffer[] encodeAll(@NonNull final Bitmap pBitmap, @NonNull final Bitmap.CompressFormat pFormat,
+                                            @NonNull final int[] pQualities)
+            throws IOException {
+
+        final List<FutureTask<EncodeBuffer>> tasks = new ArrayList<>(pQualities.length);
+        for (final int quality : pQualities) {
+
+            tasks.add(new FutureTask<>(new Callable<EncodeBuffer>() {
+
+                @Override
+                public EncodeBuffer call()
+                        throws IOException {
+
+                    final EncodeBuffer buffer = acquire();
+                    if (!pBitmap.compress(pFormat, quality, buffer)) {
+
+                        release(buffer);
+
+                        throw new IOException("Could not compress bitmap to " + pFormat + " at quality " + quality);
+                    }
+
+                    return buffer;
+                }
+
+            }));
+
+        }
+
+        final Executor executor = PickExecutors.processing();
+        for (int i = 1; i < tasks.size(); i++) {
+            executor.execute(tasks.get(i));
+        }
+
+        // caller may itself be a processing thread: run whatever was not picked up yet instead of waiting for it
+        for (final FutureTask<EncodeBuffer> task : tasks) {
+            task.run();
+        }
+
+        final EncodeBuffer[] buffers = new EncodeBuffer[tasks.size()];
+
+        IOException error = null;
+        for (int i = 0; i < buffers.length; i++) {
+
+            try {
+                buffers[i] = tasks.get(i)
+                                  .get();
+            } catch (final InterruptedException e) {
+
+                Thread.currentThread()
+                      .interrupt();
+
+                error = new IOException("Interrupted while encoding");
+
+            } catch (final ExecutionException e) {
+
+                final Throwable cause = e.getCause();
+                error = cause instanceof IOException ? (IOException) cause : new IOException("Could not encode", cause);
+
+            }
+
+        }
+
+        if (error != null) {
+
+            for (final EncodeBuffer buffer : buffers) {
+                release(buffer);
+            }
+
+            throw error;
+        }
+
+        return buffers;
+    }
+
+    @NonNull
+    private static EncodeBuffer acquire() {
+
+        synchronized (sBufferPool) {
+
+            final EncodeBuffer buffer = sBufferPool.pollFirst();
+            if (buffer != null) {
+                return buffer;
+            }
+
+        }
+
+        return new EncodeBuffer();
+    }
+
+    private static void release(final EncodeBuffer pBuffer) {
+
+        if (pBuffer == null || pBuffer.capacity() > MAX_POOLED_CAPACITY) {
+            return;
+        }
+
+        pBuffer.reset();
+
+        synchronized (sBufferPool) {
+
+            if (sBufferPool.size() < MAX_POOLED_BUFFERS) {
+                sBufferPool.addFirst(pBuffer);
+            }
+
+        }
+
+    }
+
+    // ==== //
+
+    private BudgetEncoder() {}
+
+    // ==== //
+
+    private static final class EncodeBuffer
+            extends ByteArrayOutputStream {
+
+        EncodeBuffer() {
+            super(IoUtils.BUFFER_SIZE);
+        }
+
+        int capacity() {
+            return this.buf.length;
+        }
+
+    }
+
+    /**
+     * Outcome of {@link #encode(Bitmap, Bitmap.CompressFormat, long)}
+     */
+    public static final class Result {
+
+        private final byte[]  mBytes;
+        private final int     mQuality;
+        private final boolean mWithinBudget;
+        private final int     mAttempts;
+        private final long    mDurationNanos;
+
+        Result(@NonNull final byte[] pBytes, final int pQuality, final boolean pWithinBudget, final int pAttempts, final long pDurationNanos) {
+
+            this.mBytes = pBytes;
+            this.mQuality = pQuality;
+            this.mWithinBudget = pWithinBudget;
+            this.mAttempts = pAttempts;
+            this.mDurationNanos = pDurationNanos;
+
+        }
+
+        /**
+         * @return encoded image
+         */
+        @NonNull
+        public byte[] getBytes() {
+            return this.mBytes;
+        }
+
+        /**
+         * @return encoded size in bytes
+         */
+        public int getSize() {
+            return this.mBytes.length;
+        }
+
+        /**
+         * @return quality the image was encoded with
+         */
+        public int getQuality() {
+            return this.mQuality;
+        }
+
+        /**
+         * @return false if even the lowest quality did not fit
+         */
+        public boolean isWithinBudget() {
+            return this.mWithinBudget;
+        }
+
+        /**
+         * @return number of candidate encodes
+         */
+        public int getAttempts() {
+            return this.mAttempts;
+        }
+
+        /**
+         * @return wall time of the search, including all candidate encodes
+         */
+        public long getDurationNanos() {
+            return this.mDurationNanos;
+        }
+
+        @Override
+        public String toString() {
+            return "BudgetEncoder.Result{size=" + this.mBytes.length + ", quality=" + this.mQuality + ", withinBudget=" + this.mWithinBudget
+                    + ", attempts=" + this.mAttempts + ", durationNanos=" + this.mDurationNanos + '}';
+        }
+
+    }
+
+}
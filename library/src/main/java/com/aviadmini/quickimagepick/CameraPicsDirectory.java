@@ -0,0 +1,153 @@
+package com.aviadmini.quickimagepick;
+
+import android.content.Context;
+import android.os.Environment;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.io.File;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Camera pictures directory, created and checked for write access once on the prep thread (see {@link PickExecutors#prep()})
+ * and cached, so that camera picks and their results do not touch the disk on main thread. Prepared again when the directory
+ * is changed or when the previous attempt failed, e.g. because external storage was not mounted.
+ */
+final class CameraPicsDirectory {
+
+    private static volatile CameraPicsDirectory sInstance;
+
+    @NonNull
+    static CameraPicsDirectory get(@NonNull final Context pContext) {
+
+        CameraPicsDirectory instance = sInstance;
+        if (instance == null) {
+
+            synchronized (CameraPicsDirectory.class) {
+
+                instance = sInstance;
+                if (instance == null) {
+                    instance = sInstance = new CameraPicsDirectory(pContext.getApplicationContext());
+                }
+
+            }
+
+        }
+
+        return instance;
+    }
+
+    private final Context mAppContext;
+
+    private final Object mLock = new Object();
+
+    // guarded by mLock
+    private FutureTask<File> mTask;
+
+    private CameraPicsDirectory(@NonNull final Context pAppContext) {
+        this.mAppContext = pAppContext;
+    }
+
+    /**
+     * Starts preparation on prep thread unless it is already prepared or in progress
+     */
+    void prepare() {
+        this.task();
+    }
+
+    /**
+     * Waits for preparation if it is still in progress. Does no I/O on main thread
+     *
+     * @return writable directory or null if it cannot be used
+     */
+    @Nullable
+    File await() {
+
+        final FutureTask<File> task = this.task();
+
+        File dir = null;
+        try {
+            dir = PickExecutors.join(task);
+        } catch (final ExecutionException ignored) {
+        }
+
+        if (dir == null) {
+
+            // not cached, next pick tries again
+            synchronized (this.mLock) {
+
+                if (this.mTask == task) {
+                    this.mTask = null;
+                }
+
+            }
+
+        }
+
+        return dir;
+    }
+
+    /**
+     * Drops prepared directory and prepares the current one, call it after it was changed
+     */
+    void invalidate() {
+
+        synchronized (this.mLock) {
+            this.mTask = null;
+        }
+
+        this.prepare();
+
+    }
+
+    // ==== //
+
+    @NonNull
+    private FutureTask<File> task() {
+
+        final FutureTask<File> task;
+        synchronized (this.mLock) {
+
+            if (this.mTask != null) {
+                return this.mTask;
+            }
+
+            task = this.mTask = new FutureTask<>(new Callable<File>() {
+
+                @Override
+                public File call() {
+                    return resolve();
+                }
+
+            });
+
+        }
+
+        PickExecutors.prep()
+                     .execute(task);
+
+        return task;
+    }
+
+    @Nullable
+    private File resolve() {
+
+        PickStrictMode.onDiskAccess("camera pictures directory preparation");
+
+        final String dirPath = PickSessionStore.get(this.mAppContext)
+                                               .getCameraDir();
+
+        final File dir = dirPath == null ? this.mAppContext.getExternalFilesDir(Environment.DIRECTORY_PICTURES) : new File(dirPath);
+        if (dir == null) {
+            return null;
+        }
+
+        //noinspection ResultOfMethodCallIgnored
+        dir.mkdirs();
+
+        return dir.isDirectory() && dir.canWrite() ? dir : null;
+    }
+
+}
@@ -0,0 +1,416 @@
+package com.aviadmini.quickimagepick;
+
+import android.content.Context;
+import android.support.annotation.NonNull;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Keeps track of files created for camera picks and deletes the ones that are no longer needed:
+ * outputs of picks that never returned (orphans) and, if a quota is set, least recently used pictures above it.
+ * All bookkeeping except {@link #onSessionFinished(int)} happens on the library io thread.
+ */
+final class CameraPicsJanitor {
+
+    private static final String INDEX_FILE_NAME = "qip_camera_pics.index";
+
+    private static final int INDEX_MAGIC   = 0x5149504A; // QIPJ
+    private static final int INDEX_VERSION = 1;
+
+    // camera picks in flight for longer than that are considered abandoned
+    private static final long ORPHAN_AGE_MS = 24 * 60 * 60 * 1000L;
+
+    private static final byte STATE_PENDING  = 0;
+    private static final byte STATE_FINISHED = 1;
+
+    private static volatile CameraPicsJanitor sInstance;
+
+    @NonNull
+    static CameraPicsJanitor get(@NonNull final Context pContext) {
+
+        CameraPicsJanitor instance = sInstance;
+        if (instance == null) {
+
+            synchronized (CameraPicsJanitor.class) {
+
+                instance = sInstance;
+                if (instance == null) {
+                    instance = sInstance = new CameraPicsJanitor(pContext.getApplicationContext());
+                }
+
+            }
+
+        }
+
+        return instance;
+    }
+
+    private final Context mAppContext;
+
+    private final AtomicBoolean mCleanUpPending = new AtomicBoolean();
+
+    // written from main thread, consumed on io thread
+    private final Set<Integer> mFinishedSessionIds = new HashSet<>();
+
+    // io thread only
+    private final List<Entry> mEntries = new ArrayList<>();
+    private boolean mLoaded;
+    private long    mMaxBytes;
+    private int     mMaxFiles;
+
+    private CameraPicsJanitor(@NonNull final Context pAppContext) {
+        this.mAppContext = pAppContext;
+    }
+
+    // ==== TRACKING ==== //
+
+    void onFileCreated(final int pSessionId, @NonNull final File pFile) {
+
+        final String path = pFile.getAbsolutePath();
+
+        PickExecutors.io()
+                     .execute(new Runnable() {
+
+                         @Override
+                         public void run() {
+
+                             ensureLoaded();
+
+                             mEntries.add(new Entry(pSessionId, path, STATE_PENDING, System.currentTimeMillis()));
+
+                             writeIndex();
+
+                         }
+
+                     });
+
+    }
+
+    /**
+     * Must be called before the session is removed from {@link PickSessionStore}, so that a concurrent clean up
+     * never sees a finished session as an orphan
+     */
+    void onSessionFinished(final int pSessionId) {
+
+        synchronized (this.mFinishedSessionIds) {
+            this.mFinishedSessionIds.add(pSessionId);
+        }
+
+        this.schedule();
+
+    }
+
+    void setQuota(final long pMaxBytes, final int pMaxFiles) {
+
+        PickExecutors.io()
+                     .execute(new Runnable() {
+
+                         @Override
+                         public void run() {
+
+                             ensureLoaded();
+
+                             mMaxBytes = pMaxBytes;
+                             mMaxFiles = pMaxFiles;
+
+                             writeIndex();
+
+                         }
+
+                     });
+
+        this.schedule();
+
+    }
+
+    // ==== CLEAN UP ==== //
+
+    /**
+     * Schedules clean up on io thread. Cheap to call, repeated calls are coalesced
+     */
+    void schedule() {
+
+        if (!this.mCleanUpPending.compareAndSet(false, true)) {
+            return;
+        }
+
+        PickExecutors.io()
+                     .execute(new Runnable() {
+
+                         @Override
+                         public void run() {
+
+                             mCleanUpPending.set(false);
+
+                             cleanUp();
+
+                         }
+
+                     });
+
+    }
+
+    private void cleanUp() {
+
+        this.ensureLoaded();
+
+        final PickSessionStore sessionStore = PickSessionStore.get(this.mAppContext);
+
+        final List<Entry> finished = new ArrayList<>();
+
+        final long now = System.currentTimeMillis();
+
+        long totalBytes = 0;
+
+        final Iterator<Entry> iterator = this.mEntries.iterator();
+        while (iterator.hasNext()) {
+
+            final Entry entry = iterator.next();
+
+            if (entry.mState == STATE_PENDING) {
+
+                synchronized (this.mFinishedSessionIds) {
+
+                    if (this.mFinishedSessionIds.remove(entry.mSessionId)) {
+
+                        entry.mState = STATE_FINISHED;
+                        entry.mLastUsed = now;
+
+                    }
+
+                }
+
+            }
+
+            final File file = new File(entry.mPath);
+
+            if (entry.mState == STATE_PENDING && sessionStore.isSessionLive(entry.mSessionId)) {
+
+                // still in flight
+                if (now - entry.mLastUsed < ORPHAN_AGE_MS) {
+
+                    totalBytes += file.length();
+
+                    continue;
+                }
+
+                sessionStore.discardSession(entry.mSessionId);
+
+            }
+
+            // cancelled, deleted by the app, or camera never wrote it
+            if (!file.exists()) {
+
+                iterator.remove();
+
+                continue;
+            }
+
+            if (entry.mState == STATE_PENDING) {
+
+                synchronized (this.mFinishedSessionIds) {
+
+                    // session ended between the checks above
+                    if (this.mFinishedSessionIds.contains(entry.mSessionId)) {
+                        continue;
+                    }
+
+                }
+
+                // orphan: session was abandoned or dropped without a result
+                //noinspection ResultOfMethodCallIgnored
+                file.delete();
+
+                iterator.remove();
+
+                continue;
+            }
+
+            entry.mSize = file.length();
+            entry.mLastUsed = Math.max(entry.mLastUsed, file.lastModified());
+
+            totalBytes += entry.mSize;
+
+            finished.add(entry);
+
+        }
+
+        this.evict(finished, totalBytes);
+
+        this.writeIndex();
+
+    }
+
+    private void evict(@NonNull final List<Entry> pFinished, final long pTotalBytes) {
+
+        final boolean limitBytes = this.mMaxBytes > 0;
+        final boolean limitFiles = this.mMaxFiles > 0;
+        if (!limitBytes && !limitFiles) {
+            return;
+        }
+
+        Collections.sort(pFinished, LRU_ORDER);
+
+        long totalBytes = pTotalBytes;
+        int totalFiles = this.mEntries.size();
+        for (final Entry entry : pFinished) {
+
+            if ((!limitBytes || totalBytes <= this.mMaxBytes) && (!limitFiles || totalFiles <= this.mMaxFiles)) {
+                break;
+            }
+
+            //noinspection ResultOfMethodCallIgnored
+            new File(entry.mPath).delete();
+
+            this.mEntries.remove(entry);
+
+            totalBytes -= entry.mSize;
+            totalFiles--;
+
+        }
+
+    }
+
+    // ==== INDEX ==== //
+
+    // io thread only
+    private void ensureLoaded() {
+
+        if (this.mLoaded) {
+            return;
+        }
+
+        this.mLoaded = true;
+
+        final File file = this.getIndexFile();
+        if (!file.isFile()) {
+            return;
+        }
+
+        final List<Entry> entries = new ArrayList<>();
+
+        DataInputStream in = null;
+        try {
+
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+
+            if (in.readInt() != INDEX_MAGIC || in.readInt() != INDEX_VERSION) {
+                return;
+            }
+
+            final long maxBytes = in.readLong();
+            final int maxFiles = in.readInt();
+
+            final int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                entries.add(new Entry(in.readInt(), in.readUTF(), in.readByte(), in.readLong()));
+            }
+
+            this.mMaxBytes = maxBytes;
+            this.mMaxFiles = maxFiles;
+
+            // entries created before load are kept too
+            this.mEntries.addAll(0, entries);
+
+        } catch (final IOException ignored) {
+            // corrupted index - files created before are no longer tracked
+        } finally {
+            IoUtils.closeQuietly(in);
+        }
+
+    }
+
+    // io thread only
+    private void writeIndex() {
+
+        final File file = this.getIndexFile();
+        final File tmpFile = new File(file.getPath() + ".tmp");
+
+        DataOutputStream out = null;
+        try {
+
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)));
+
+            out.writeInt(INDEX_MAGIC);
+            out.writeInt(INDEX_VERSION);
+            out.writeLong(this.mMaxBytes);
+            out.writeInt(this.mMaxFiles);
+
+            out.writeInt(this.mEntries.size());
+            for (final Entry entry : this.mEntries) {
+
+                out.writeInt(entry.mSessionId);
+                out.writeUTF(entry.mPath);
+                out.writeByte(entry.mState);
+                out.writeLong(entry.mLastUsed);
+
+            }
+
+            out.close();
+            out = null;
+
+            //noinspection ResultOfMethodCallIgnored
+            tmpFile.renameTo(file);
+
+        } catch (final IOException e) {
+
+            //noinspection ResultOfMethodCallIgnored
+            tmpFile.delete();
+
+        } finally {
+            IoUtils.closeQuietly(out);
+        }
+
+    }
+
+    @NonNull
+    private File getIndexFile() {
+        return new File(this.mAppContext.getFilesDir(), INDEX_FILE_NAME);
+    }
+
+    // ==== //
+
+    private static final Comparator<Entry> LRU_ORDER = new Comparator<Entry>() {
+
+        @Override
+        public int compare(final Entry pLhs, final Entry pRhs) {
+            return pLhs.mLastUsed < pRhs.mLastUsed ? -1 : (pLhs.mLastUsed == pRhs.mLastUsed ? 0 : 1);
+        }
+
+    };
+
+    private static final class Entry {
+
+        final int    mSessionId;
+        final String mPath;
+        byte mState;
+        long mLastUsed;
+        long mSize;
+
+        Entry(final int pSessionId, @NonNull final String pPath, final byte pState, final long pLastUsed) {
+
+            this.mSessionId = pSessionId;
+            this.mPath = pPath;
+            this.mState = pState;
+            this.mLastUsed = pLastUsed;
+
+        }
+
+    }
+
+}
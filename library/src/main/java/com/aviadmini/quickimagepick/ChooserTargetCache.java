@@ -0,0 +1,213 @@
+package com.aviadmini.quickimagepick;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.pm.ResolveInfo;
+import android.provider.MediaStore;
+import android.support.annotation.NonNull;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Cache of activities able to handle camera and gallery intents, used to build the multiple sources chooser.
+ * Resolved once (lazily or via {@link #warmUp()}) and dropped whenever a package is added, removed or changed.
+ */
+final class ChooserTargetCache {
+
+    private static volatile ChooserTargetCache sInstance;
+
+    @NonNull
+    static ChooserTargetCache get(@NonNull final Context pContext) {
+
+        ChooserTargetCache instance = sInstance;
+        if (instance == null) {
+
+            synchronized (ChooserTargetCache.class) {
+
+                instance = sInstance;
+                if (instance == null) {
+                    instance = sInstance = new ChooserTargetCache(pContext.getApplicationContext());
+                }
+
+            }
+
+        }
+
+        return instance;
+    }
+
+    private final Context mAppContext;
+
+    private final Object mLock = new Object();
+
+    private boolean mReceiverRegistered;
+
+    // bumped on every invalidation so that a slow resolve does not store stale data
+    private int mGeneration;
+
+    private List<ResolveInfo> mCameraTargets;
+    private List<ResolveInfo> mGalleryTargets;
+
+    private ChooserTargetCache(@NonNull final Context pAppContext) {
+        this.mAppContext = pAppContext;
+    }
+
+    /**
+     * @return activities able to take a picture with {@link MediaStore#ACTION_IMAGE_CAPTURE}
+     */
+    @NonNull
+    List<ResolveInfo> getCameraTargets() {
+
+        final int generation;
+        synchronized (this.mLock) {
+
+            this.ensureReceiverRegistered();
+
+            PickMetrics.cacheLookup(PickMetrics.CACHE_CHOOSER_TARGETS, this.mCameraTargets != null);
+
+            if (this.mCameraTargets != null) {
+                return this.mCameraTargets;
+            }
+
+            generation = this.mGeneration;
+
+        }
+
+        final List<ResolveInfo> targets = this.resolve(new Intent(MediaStore.ACTION_IMAGE_CAPTURE));
+
+        synchronized (this.mLock) {
+
+            if (generation == this.mGeneration) {
+                this.mCameraTargets = targets;
+            }
+
+        }
+
+        return targets;
+    }
+
+    /**
+     * @param pGalleryIntent gallery pick intent
+     * @return activities able to pick an image from gallery
+     */
+    @NonNull
+    List<ResolveInfo> getGalleryTargets(@NonNull final Intent pGalleryIntent) {
+
+        final int generation;
+        synchronized (this.mLock) {
+
+            this.ensureReceiverRegistered();
+
+            PickMetrics.cacheLookup(PickMetrics.CACHE_CHOOSER_TARGETS, this.mGalleryTargets != null);
+
+            if (this.mGalleryTargets != null) {
+                return this.mGalleryTargets;
+            }
+
+            generation = this.mGeneration;
+
+        }
+
+        final List<ResolveInfo> targets = this.resolve(pGalleryIntent);
+
+        synchronized (this.mLock) {
+
+            if (generation == this.mGeneration) {
+                this.mGalleryTargets = targets;
+            }
+
+        }
+
+        return targets;
+    }
+
+    /**
+     * Resolves chooser targets on library io thread so that the first chooser does not have to. Does nothing if they are cached
+     */
+    void warmUp() {
+
+        if (this.isResolved()) {
+            return;
+        }
+
+        PickExecutors.io()
+                     .execute(new Runnable() {
+
+                         @Override
+                         public void run() {
+
+                             // repeated warm-ups queue up behind the first one
+                             if (isResolved()) {
+                                 return;
+                             }
+
+                             getCameraTargets();
+                             getGalleryTargets(QuickImagePick.prepareGalleryIntent());
+
+                         }
+
+                     });
+
+    }
+
+    void invalidate() {
+
+        synchronized (this.mLock) {
+
+            this.mGeneration++;
+
+            this.mCameraTargets = null;
+            this.mGalleryTargets = null;
+
+        }
+
+    }
+
+    private boolean isResolved() {
+
+        synchronized (this.mLock) {
+            return this.mCameraTargets != null && this.mGalleryTargets != null;
+        }
+
+    }
+
+    @NonNull
+    private List<ResolveInfo> resolve(@NonNull final Intent pIntent) {
+
+        final List<ResolveInfo> result = this.mAppContext.getPackageManager()
+                                                         .queryIntentActivities(pIntent, 0);
+
+        return result == null ? Collections.<ResolveInfo>emptyList() : Collections.unmodifiableList(result);
+    }
+
+    // must be called while holding mLock
+    private void ensureReceiverRegistered() {
+
+        if (this.mReceiverRegistered) {
+            return;
+        }
+
+        this.mReceiverRegistered = true;
+
+        final IntentFilter filter = new IntentFilter();
+        filter.addAction(Intent.ACTION_PACKAGE_ADDED);
+        filter.addAction(Intent.ACTION_PACKAGE_REMOVED);
+        filter.addAction(Intent.ACTION_PACKAGE_REPLACED);
+        filter.addAction(Intent.ACTION_PACKAGE_CHANGED);
+        filter.addDataScheme("package");
+
+        this.mAppContext.registerReceiver(new BroadcastReceiver() {
+
+            @Override
+            public void onReceive(final Context pContext, final Intent pIntent) {
+                invalidate();
+            }
+
+        }, filter);
+
+    }
+
+}
@@ -0,0 +1,371 @@
+package com.aviadmini.quickimagepick;
+
+import android.content.Context;
+import android.net.Uri;
+import android.os.ParcelFileDescriptor;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.WorkerThread;
+
+import com.aviadmini.quickimagepick.core.CopyLoops;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.UUID;
+import java.util.zip.CRC32;
+
+/**
+ * Picked image split into fixed-size chunks for resumable uploads. Any chunk can be read at any time and from several threads:
+ * reads are positional reads of the image file descriptor, which is opened once and never rewound, so resuming after
+ * a failure starts at the first chunk not acknowledged by the server without reading earlier data again.
+ * Each chunk comes with its CRC32.
+ * <br>
+ * Providers that only give a pipe (no random access) are imported into app cache dir first, the copy is deleted on {@link #close()}.
+ * Content is expected not to change while the source is open.
+ */
+@SuppressWarnings("unused")
+public final class ChunkSource
+        implements Closeable {
+
+    public static final int DEFAULT_CHUNK_SIZE = 256 * 1024;
+
+    private static final String CACHE_DIR_NAME = "qip_chunks";
+
+    private static final long UNKNOWN_CRC = -1;
+
+    /**
+     * Opens source with {@link #DEFAULT_CHUNK_SIZE}. Blocking, call it from a background thread
+     *
+     * @see #open(Context, Uri, int)
+     */
+    @WorkerThread
+    @NonNull
+    public static ChunkSource open(@NonNull final Context pContext, @NonNull final Uri pUri)
+            throws IOException {
+        return open(pContext, pUri, DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * Blocking, call it from a background thread
+     *
+     * @param pContext   app {@link Context}
+     * @param pUri       image {@link Uri}
+     * @param pChunkSize size of every chunk but the last one
+     * @return open source, must be closed
+     * @throws IOException if image cannot be opened
+     */
+    @WorkerThread
+    @NonNull
+    public static ChunkSource open(@NonNull final Context pContext, @NonNull final Uri pUri, final int pChunkSize)
+            throws IOException {
+
+        if (pChunkSize <= 0) {
+            throw new IllegalArgumentException("Chunk size must be positive: " + pChunkSize);
+        }
+
+        PickStrictMode.onDiskAccess("chunk source open");
+
+        final ParcelFileDescriptor descriptor = pContext.getContentResolver()
+                                                        .openFileDescriptor(pUri, "r");
+        if (descriptor == null) {
+            throw new FileNotFoundException("Could not open " + pUri);
+        }
+
+        // pipes and sockets report -1, they cannot be read at a position
+        if (descriptor.getStatSize() >= 0) {
+            return new ChunkSource(pUri, pChunkSize, new ParcelFileDescriptor.AutoCloseInputStream(descriptor), null);
+        }
+
+        // ParcelFileDescriptor is not Closeable before API 16
+        try {
+            descriptor.close();
+        } catch (final IOException ignored) {
+        }
+
+        final File dir = new File(pContext.getCacheDir(), CACHE_DIR_NAME);
+        //noinspection ResultOfMethodCallIgnored
+        dir.mkdirs();
+
+        final File copy = new File(dir, UUID.randomUUID()
+                                            .toString());
+        try {
+
+            ImageImporter.importTo(pContext, pUri, copy);
+
+            return new ChunkSource(pUri, pChunkSize, new FileInputStream(copy), copy);
+        } catch (final IOException | RuntimeException e) {
+
+            //noinspection ResultOfMethodCallIgnored
+            copy.delete();
+
+            throw e;
+        }
+
+    }
+
+    private final Uri             mUri;
+    private final int             mChunkSize;
+    private final FileInputStream mStream;
+    private final FileChannel     mChannel;
+    private final File            mCopy;
+    private final long            mSize;
+
+    // guarded by itself
+    private final long[] mCrcs;
+
+    private ChunkSource(@NonNull final Uri pUri, final int pChunkSize, @NonNull final FileInputStream pStream, @Nullable final File pCopy)
+            throws IOException {
+
+        this.mUri = pUri;
+        this.mChunkSize = pChunkSize;
+        this.mStream = pStream;
+        this.mChannel = pStream.getChannel();
+        this.mCopy = pCopy;
+
+        try {
+            this.mSize = this.mChannel.size();
+        } catch (final IOException e) {
+
+            this.close();
+
+            throw e;
+        }
+
+        final long chunkCount = (this.mSize + pChunkSize - 1) / pChunkSize;
+        if (chunkCount > Integer.MAX_VALUE) {
+
+            this.close();
+
+            throw new IOException("Too many chunks of " + pChunkSize + " bytes in " + this.mSize + " bytes");
+        }
+
+        this.mCrcs = new long[(int) chunkCount];
+        Arrays.fill(this.mCrcs, UNKNOWN_CRC);
+
+    }
+
+    @NonNull
+    public Uri getUri() {
+        return this.mUri;
+    }
+
+    /**
+     * @return image size in bytes
+     */
+    public long getSize() {
+        return this.mSize;
+    }
+
+    public int getChunkSize() {
+        return this.mChunkSize;
+    }
+
+    public int getChunkCount() {
+        return this.mCrcs.length;
+    }
+
+    /**
+     * @param pIndex chunk index
+     * @return offset of chunk's first byte in the image
+     */
+    public long getChunkOffset(final int pIndex) {
+
+        this.checkIndex(pIndex);
+
+        return (long) pIndex * this.mChunkSize;
+    }
+
+    /**
+     * @param pIndex chunk index
+     * @return chunk length, equal to chunk size for all chunks but the last one
+     */
+    public int getChunkLength(final int pIndex) {
+        return (int) Math.min(this.mChunkSize, this.mSize - this.getChunkOffset(pIndex));
+    }
+
+    /**
+     * @param pOffset byte offset, e.g. number of bytes acknowledged by the server
+     * @return index of the chunk containing given byte, or chunk count if offset is at or past the end
+     */
+    public int getChunkIndex(final long pOffset) {
+
+        if (pOffset < 0) {
+            throw new IllegalArgumentException("Offset must not be negative: " + pOffset);
+        }
+
+        return (int) Math.min(this.mCrcs.length, pOffset / this.mChunkSize);
+    }
+
+    /**
+     * Reads chunk into a new array. Blocking, call it from a background thread
+     *
+     * @param pIndex chunk index
+     * @return chunk with its bytes and CRC32
+     * @throws IOException if image cannot be read or is shorter than when it was opened
+     */
+    @WorkerThread
+    @NonNull
+    public Chunk read(final int pIndex)
+            throws IOException {
+        return this.read(pIndex, new byte[this.getChunkLength(pIndex)]);
+    }
+
+    /**
+     * Reads chunk into given buffer, e.g. one reused for all chunks. Blocking, call it from a background thread
+     *
+     * @param pIndex  chunk index
+     * @param pBuffer buffer of at least chunk length bytes. Returned chunk refers to it
+     * @return chunk with its bytes and CRC32
+     * @throws IOException if image cannot be read or is shorter than when it was opened
+     */
+    @WorkerThread
+    @NonNull
+    public Chunk read(final int pIndex, @NonNull final byte[] pBuffer)
+            throws IOException {
+
+        final long offset = this.getChunkOffset(pIndex);
+        final int length = this.getChunkLength(pIndex);
+
+        if (pBuffer.length < length) {
+            throw new IllegalArgumentException("Buffer of " + pBuffer.length + " bytes is too small for chunk of " + length);
+        }
+
+        PickStrictMode.onDiskAccess("chunk read");
+
+        final int read = CopyLoops.readFully(this.mChannel, ByteBuffer.wrap(pBuffer, 0, length), offset);
+        if (read != length) {
+            throw new IOException("Unexpected end of " + this.mUri + " at " + (offset + read) + ", expected " + this.mSize + " bytes");
+        }
+
+        final CRC32 crc = new CRC32();
+        crc.update(pBuffer, 0, length);
+
+        final long value = crc.getValue();
+        synchronized (this.mCrcs) {
+            this.mCrcs[pIndex] = value;
+        }
+
+        return new Chunk(pIndex, offset, length, pBuffer, value);
+    }
+
+    /**
+     * @param pIndex chunk index
+     * @return CRC32 of chunk. Reads the chunk if it was not read yet, blocking in that case
+     * @throws IOException if chunk has to be read and cannot be
+     */
+    @WorkerThread
+    public long getCrc32(final int pIndex)
+            throws IOException {
+
+        this.checkIndex(pIndex);
+
+        synchronized (this.mCrcs) {
+
+            if (this.mCrcs[pIndex] != UNKNOWN_CRC) {
+                return this.mCrcs[pIndex];
+            }
+
+        }
+
+        return this.read(pIndex)
+                   .getCrc32();
+    }
+
+    /**
+     * Closes the file descriptor and deletes the local copy, if there is one
+     */
+    @Override
+    public void close() {
+
+        IoUtils.closeQuietly(this.mStream);
+
+        if (this.mCopy != null) {
+            //noinspection ResultOfMethodCallIgnored
+            this.mCopy.delete();
+        }
+
+    }
+
+    @Override
+    public String toString() {
+        return "ChunkSource{uri=" + this.mUri + ", size=" + this.mSize + ", chunkSize=" + this.mChunkSize + '}';
+    }
+
+    // ==== //
+
+    private void checkIndex(final int pIndex) {
+
+        if (pIndex < 0 || pIndex >= this.mCrcs.length) {
+            throw new IndexOutOfBoundsException("Chunk " + pIndex + " of " + this.mCrcs.length);
+        }
+
+    }
+
+    // ==== //
+
+    /**
+     * Single chunk of a {@link ChunkSource}
+     */
+    public static final class Chunk {
+
+        private final int    mIndex;
+        private final long   mOffset;
+        private final int    mLength;
+        private final byte[] mBytes;
+        private final long   mCrc32;
+
+        Chunk(final int pIndex, final long pOffset, final int pLength, @NonNull final byte[] pBytes, final long pCrc32) {
+
+            this.mIndex = pIndex;
+            this.mOffset = pOffset;
+            this.mLength = pLength;
+            this.mBytes = pBytes;
+            this.mCrc32 = pCrc32;
+
+        }
+
+        public int getIndex() {
+            return this.mIndex;
+        }
+
+        /**
+         * @return offset of chunk's first byte in the image
+         */
+        public long getOffset() {
+            return this.mOffset;
+        }
+
+        /**
+         * @return number of valid bytes in {@link #getBytes()}, starting at 0
+         */
+        public int getLength() {
+            return this.mLength;
+        }
+
+        /**
+         * @return chunk bytes. May be longer than the chunk when read into a reused buffer
+         */
+        @NonNull
+        public byte[] getBytes() {
+            return this.mBytes;
+        }
+
+        public long getCrc32() {
+            return this.mCrc32;
+        }
+
+        @Override
+        public String toString() {
+            return "ChunkSource.Chunk{index=" + this.mIndex + ", offset=" + this.mOffset + ", length=" + this.mLength + ", crc32="
+                    + Long.toHexString(this.mCrc32) + '}';
+        }
+
+    }
+
+}
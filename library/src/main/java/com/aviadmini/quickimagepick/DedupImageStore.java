@@ -0,0 +1,418 @@
+package com.aviadmini.quickimagepick;
+
+import android.content.Context;
+import android.net.Uri;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.aviadmini.quickimagepick.core.Hashing;
+
+import java.io.File;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Content-addressed store for picked images. Images are hashed (SHA-256) while being imported, identical content is stored once,
+ * in a file named after its hash. Results of processing are cached by content hash too, see {@link #processOnce(String, PickPipeline.Stage)}.
+ * <br>
+ * Stored images are kept until deleted or evicted: without a quota ({@link #setMaxBytes(long)}, none by default) the store only grows.
+ * Processing results are cached in memory only (last 64 of them), so processing is deduplicated within one process lifetime,
+ * while stored images outlive it.
+ * <br>
+ * By default the store lives next to {@link QuickImagePick#getCameraPicsDirectory(Context)}. That directory may not be known yet
+ * when {@link #get(Context)} is called, so default store resolves it on first use that needs it ({@link #put(Context, Uri)},
+ * {@link #find(String)}, {@link #getDirectory()}), which may wait for it
+ */
+@SuppressWarnings("unused")
+public final class DedupImageStore {
+
+    private static final String DIR_NAME = "qip_dedup";
+
+    private static final int MAX_CACHED_RESULTS = 64;
+
+    // stored files handed out recently may still be read by processing
+    private static final long MIN_EVICTION_AGE_MS = 10L * 60 * 1000;
+
+    private static volatile DedupImageStore sDefault;
+
+    /**
+     * Does no I/O, can be called on main thread
+     *
+     * @param pContext app {@link Context}
+     * @return store in default directory
+     */
+    @NonNull
+    public static DedupImageStore get(@NonNull final Context pContext) {
+
+        DedupImageStore instance = sDefault;
+        if (instance == null) {
+
+            synchronized (DedupImageStore.class) {
+
+                instance = sDefault;
+                if (instance == null) {
+                    instance = sDefault = new DedupImageStore(pContext.getApplicationContext());
+                }
+
+            }
+
+        }
+
+        return instance;
+    }
+
+    // default store only, to resolve its directory
+    private final Context mAppContext;
+
+    private final Object mDirLock = new Object();
+
+    // resolved once, written under mDirLock
+    private volatile File             mDir;
+    private volatile DirectoryTrimmer mTrimmer;
+
+    // 0 for no limit
+    private volatile long mMaxBytes;
+
+    // key + hash -> processing result, least recently used first
+    private final Map<String, FutureTask<Object>> mResults = new LinkedHashMap<String, FutureTask<Object>>(16, 0.75F, true) {
+
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<String, FutureTask<Object>> pEldest) {
+            return this.size() > MAX_CACHED_RESULTS;
+        }
+
+    };
+
+    /**
+     * @param pDir directory to store images in. Should not be used for anything else
+     */
+    public DedupImageStore(@NonNull final File pDir) {
+
+        this.mAppContext = null;
+        this.mDir = pDir;
+        this.mTrimmer = new DirectoryTrimmer(pDir, 0, MIN_EVICTION_AGE_MS);
+
+    }
+
+    private DedupImageStore(@NonNull final Context pAppContext) {
+        this.mAppContext = pAppContext;
+    }
+
+    /**
+     * Limits disk space used by stored images. When exceeded, least recently stored or deduplicated images are deleted
+     * in background. Images handed out in the last 10 minutes are kept even above the quota.
+     * <br>
+     * <b>Important: evicted images are deleted even if your app still references their files.</b> Cached processing results
+     * of an evicted image are kept, results that point to the stored file itself may outlive it
+     *
+     * @param pMaxBytes max total size of stored images, 0 for no limit (default)
+     */
+    public void setMaxBytes(final long pMaxBytes) {
+
+        if (pMaxBytes < 0) {
+            throw new IllegalArgumentException("Quota must not be negative: " + pMaxBytes);
+        }
+
+        final DirectoryTrimmer trimmer;
+        synchronized (this.mDirLock) {
+
+            this.mMaxBytes = pMaxBytes;
+
+            // directory not resolved yet: trimmer is created with the quota
+            trimmer = this.mTrimmer;
+
+        }
+
+        if (trimmer != null) {
+            trimmer.setMaxBytes(pMaxBytes);
+        }
+
+    }
+
+    /**
+     * @return max total size of stored images, 0 if there is no limit
+     */
+    public long getMaxBytes() {
+        return this.mMaxBytes;
+    }
+
+    /**
+     * Default store may wait for camera pictures directory here, see {@link DedupImageStore}
+     *
+     * @return directory images are stored in
+     */
+    @NonNull
+    public File getDirectory() {
+        return this.directory();
+    }
+
+    /**
+     * Imports image into the store unless identical content is already there. Blocking, call it from a background thread
+     *
+     * @param pContext app {@link Context}
+     * @param pUri     image {@link Uri}
+     * @return stored image
+     * @throws IOException if image cannot be read or stored
+     */
+    @NonNull
+    public Entry put(@NonNull final Context pContext, @NonNull final Uri pUri)
+            throws IOException {
+
+        PickStrictMode.onDiskAccess("deduplicating import");
+
+        final File dir = this.directory();
+
+        //noinspection ResultOfMethodCallIgnored
+        dir.mkdirs();
+
+        final MessageDigest digest = Hashing.sha256();
+
+        final File tmpFile = new File(dir, UUID.randomUUID()
+                                               .toString() + ".tmp");
+        try {
+
+            final ImageImporter.Result result = ImageImporter.importHashing(pContext, pUri, tmpFile, digest);
+
+            final String hash = Hashing.toHex(digest.digest());
+            final File file = new File(dir, hash);
+
+            synchronized (this) {
+
+                final boolean duplicate = file.exists();
+
+                PickMetrics.cacheLookup(PickMetrics.CACHE_DEDUP, duplicate);
+
+                if (duplicate) {
+
+                    // eviction order is by modification time
+                    //noinspection ResultOfMethodCallIgnored
+                    file.setLastModified(System.currentTimeMillis());
+
+                    return new Entry(hash, file, true, result.getBytes());
+                }
+
+                if (!tmpFile.renameTo(file)) {
+                    throw new IOException("Could not store " + pUri + " as " + file);
+                }
+
+            }
+
+            this.mTrimmer.scheduleTrim();
+
+            return new Entry(hash, file, false, result.getBytes());
+        } finally {
+
+            //noinspection ResultOfMethodCallIgnored
+            tmpFile.delete();
+
+        }
+
+    }
+
+    /**
+     * @param pHash content hash, as returned by {@link Entry#getHash()}
+     * @return stored file or null if there is no such content in the store
+     */
+    @Nullable
+    public File find(@NonNull final String pHash) {
+
+        final File file = new File(this.directory(), pHash);
+
+        return file.isFile() ? file : null;
+    }
+
+    /**
+     * Wraps given stage so that it runs once per distinct image content. Picked image is {@link #put(Context, Uri) put}
+     * into the store and the stage gets {@link Uri} of the stored file. If the same content was already processed by a stage
+     * with the same key, cached result is returned and the stage is skipped. Concurrent picks of the same content share one run.
+     * The same result object is returned to every pick: a cached {@link android.graphics.Bitmap} must not be modified, recycled
+     * or released to {@link BitmapPool}, e.g. by later stages with {@code pReleaseInput} (see {@link PickStages})
+     *
+     * @param pKey   identifies the processing, e.g. "thumbnail-256". Results of stages with different keys are cached separately
+     * @param pStage processing to run
+     * @param <T>    result type
+     * @return deduplicating stage
+     */
+    @NonNull
+    public <T> PickPipeline.Stage<Uri, T> processOnce(@NonNull final String pKey, @NonNull final PickPipeline.Stage<Uri, T> pStage) {
+
+        return new PickPipeline.Stage<Uri, T>() {
+
+            @SuppressWarnings("unchecked")
+            @NonNull
+            @Override
+            public T process(@NonNull final Context pContext, @NonNull final Uri pInput)
+                    throws Exception {
+
+                final Entry entry = put(pContext, pInput);
+
+                final String cacheKey = pKey + ':' + entry.getHash();
+
+                final FutureTask<Object> task;
+                final boolean owner;
+                synchronized (mResults) {
+
+                    final FutureTask<Object> cached = mResults.get(cacheKey);
+                    if (cached == null) {
+
+                        task = new FutureTask<>(new Callable<Object>() {
+
+                            @Override
+                            public Object call()
+                                    throws Exception {
+                                return pStage.process(pContext, Uri.fromFile(entry.getFile()));
+                            }
+
+                        });
+                        owner = true;
+
+                        mResults.put(cacheKey, task);
+
+                    } else {
+
+                        task = cached;
+                        owner = false;
+
+                    }
+
+                }
+
+                if (owner) {
+                    task.run();
+                }
+
+                try {
+                    return (T) task.get();
+                } catch (final ExecutionException e) {
+
+                    // failures are not cached
+                    synchronized (mResults) {
+
+                        if (mResults.get(cacheKey) == task) {
+                            mResults.remove(cacheKey);
+                        }
+
+                    }
+
+                    final Throwable cause = e.getCause();
+                    throw cause instanceof Exception ? (Exception) cause : e;
+                }
+
+            }
+
+        };
+    }
+
+    /**
+     * Drops cached processing results. Stored images are kept
+     */
+    public void clearCachedResults() {
+
+        synchronized (this.mResults) {
+            this.mResults.clear();
+        }
+
+    }
+
+    // ==== //
+
+    @NonNull
+    private File directory() {
+
+        final File dir = this.mDir;
+        if (dir != null) {
+            return dir;
+        }
+
+        // may wait for camera pictures directory, so not under the lock. Concurrent callers resolve the same directory
+        final File resolved = defaultDirectory(this.mAppContext);
+
+        final DirectoryTrimmer trimmer;
+        synchronized (this.mDirLock) {
+
+            if (this.mDir != null) {
+                return this.mDir;
+            }
+
+            // quota set before the directory was known applies now
+            trimmer = new DirectoryTrimmer(resolved, this.mMaxBytes, MIN_EVICTION_AGE_MS);
+
+            this.mTrimmer = trimmer;
+            this.mDir = resolved;
+
+        }
+
+        trimmer.scheduleTrim();
+
+        return resolved;
+    }
+
+    @NonNull
+    private static File defaultDirectory(@NonNull final Context pContext) {
+
+        final File cameraPicsDir = QuickImagePick.getCameraPicsDirectory(pContext);
+        final File parent = cameraPicsDir == null ? null : cameraPicsDir.getParentFile();
+
+        return new File(parent == null ? pContext.getFilesDir() : parent, DIR_NAME);
+    }
+
+    // ==== //
+
+    /**
+     * Image stored in {@link DedupImageStore}
+     */
+    public static final class Entry {
+
+        private final String  mHash;
+        private final File    mFile;
+        private final boolean mDuplicate;
+        private final long    mSize;
+
+        Entry(@NonNull final String pHash, @NonNull final File pFile, final boolean pDuplicate, final long pSize) {
+
+            this.mHash = pHash;
+            this.mFile = pFile;
+            this.mDuplicate = pDuplicate;
+            this.mSize = pSize;
+
+        }
+
+        /**
+         * @return hex SHA-256 of image content
+         */
+        @NonNull
+        public String getHash() {
+            return this.mHash;
+        }
+
+        /**
+         * @return stored file, shared by all imports of the same content
+         */
+        @NonNull
+        public File getFile() {
+            return this.mFile;
+        }
+
+        /**
+         * @return true if identical content was already in the store
+         */
+        public boolean isDuplicate() {
+            return this.mDuplicate;
+        }
+
+        /**
+         * @return content size in bytes
+         */
+        public long getSize() {
+            return this.mSize;
+        }
+
+    }
+
+}
@@ -0,0 +1,158 @@
+package com.aviadmini.quickimagepick;
+
+import android.support.annotation.NonNull;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Keeps a library directory within a byte quota: least recently modified files are deleted first, like {@link CameraPicsJanitor}
+ * evicts camera pictures. Files modified recently are kept even above the quota, as they may still be written or read
+ * by a running pick or pipeline. Trims run on the library io thread.
+ */
+final class DirectoryTrimmer {
+
+    private final File mDir;
+    private final long mMinAgeMs;
+
+    private final AtomicBoolean mTrimPending = new AtomicBoolean();
+
+    // 0 for no limit
+    private volatile long mMaxBytes;
+
+    /**
+     * @param pDir      directory to trim, files in subdirectories are not counted
+     * @param pMaxBytes max total size of files, 0 for no limit
+     * @param pMinAgeMs files modified less than this ago are never deleted
+     */
+    DirectoryTrimmer(@NonNull final File pDir, final long pMaxBytes, final long pMinAgeMs) {
+
+        this.mDir = pDir;
+        this.mMaxBytes = pMaxBytes;
+        this.mMinAgeMs = pMinAgeMs;
+
+    }
+
+    long getMaxBytes() {
+        return this.mMaxBytes;
+    }
+
+    void setMaxBytes(final long pMaxBytes) {
+
+        this.mMaxBytes = pMaxBytes;
+
+        this.scheduleTrim();
+
+    }
+
+    /**
+     * Schedules a trim on io thread. Cheap to call, repeated calls are coalesced
+     */
+    void scheduleTrim() {
+
+        if (this.mMaxBytes <= 0 || !this.mTrimPending.compareAndSet(false, true)) {
+            return;
+        }
+
+        PickExecutors.io()
+                     .execute(new Runnable() {
+
+                         @Override
+                         public void run() {
+
+                             mTrimPending.set(false);
+
+                             trim();
+
+                         }
+
+                     });
+
+    }
+
+    // io thread only
+    private void trim() {
+
+        final long maxBytes = this.mMaxBytes;
+        if (maxBytes <= 0) {
+            return;
+        }
+
+        PickStrictMode.onDiskAccess("directory trim");
+
+        final File[] files = this.mDir.listFiles();
+        if (files == null) {
+            return;
+        }
+
+        final List<Entry> entries = new ArrayList<>(files.length);
+
+        long totalBytes = 0;
+        for (final File file : files) {
+
+            if (!file.isFile()) {
+                continue;
+            }
+
+            final Entry entry = new Entry(file, file.length(), file.lastModified());
+
+            totalBytes += entry.mSize;
+
+            entries.add(entry);
+
+        }
+
+        if (totalBytes <= maxBytes) {
+            return;
+        }
+
+        Collections.sort(entries, LRU_ORDER);
+
+        final long now = System.currentTimeMillis();
+        for (final Entry entry : entries) {
+
+            // the rest is younger still
+            if (totalBytes <= maxBytes || now - entry.mLastModified < this.mMinAgeMs) {
+                break;
+            }
+
+            if (entry.mFile.delete()) {
+                totalBytes -= entry.mSize;
+            }
+
+        }
+
+    }
+
+    // ==== //
+
+    private static final Comparator<Entry> LRU_ORDER = new Comparator<Entry>() {
+
+        @Override
+        public int compare(final Entry pLhs, final Entry pRhs) {
+            return pLhs.mLastModified < pRhs.mLastModified ? -1 : (pLhs.mLastModified == pRhs.mLastModified ? 0 : 1);
+        }
+
+    };
+
+    private static final class Entry {
+
+        final File mFile;
+        final long mSize;
+        final long mLastModified;
+
+        Entry(@NonNull final File pFile, final long pSize, final long pLastModified) {
+
+            this.mFile = pFile;
+            this.mSize = pSize;
+            this.mLastModified = pLastModified;
+
+        }
+
+    }
+
+}
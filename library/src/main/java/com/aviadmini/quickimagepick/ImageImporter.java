@@ -0,0 +1,200 @@
+package com.aviadmini.quickimagepick;
+
+import android.content.Context;
+import android.net.Uri;
+import android.os.ParcelFileDescriptor;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.aviadmini.quickimagepick.core.CopyLoops;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+
+/**
+ * Imports picked images into app storage. Content is moved with {@link FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)}
+ * so that it does not pass through Java heap. Non-seekable sources (pipes from some providers) are copied through a direct buffer
+ * that is reused by the calling thread.
+ */
+@SuppressWarnings("unused")
+public final class ImageImporter {
+
+    private static final int DIRECT_BUFFER_SIZE = 64 * 1024;
+
+    private static final ThreadLocal<ByteBuffer> DIRECT_BUFFER = new ThreadLocal<ByteBuffer>() {
+
+        @Override
+        protected ByteBuffer initialValue() {
+            return ByteBuffer.allocateDirect(DIRECT_BUFFER_SIZE);
+        }
+
+    };
+
+    /**
+     * Copies image into given file, replacing its contents. Blocking, call it from a background thread.
+     * Destination is deleted if the import fails
+     *
+     * @param pContext     app {@link Context}
+     * @param pUri         image {@link Uri}
+     * @param pDestination destination file
+     * @return import stats
+     * @throws IOException if image cannot be read, destination cannot be written or fewer bytes than source size were copied
+     */
+    @NonNull
+    public static Result importTo(@NonNull final Context pContext, @NonNull final Uri pUri, @NonNull final File pDestination)
+            throws IOException {
+        return doImport(pContext, pUri, pDestination, null);
+    }
+
+    /**
+     * Same as {@link #importTo(Context, Uri, File)} but feeds every copied byte to given digest
+     */
+    @NonNull
+    static Result importHashing(@NonNull final Context pContext, @NonNull final Uri pUri, @NonNull final File pDestination,
+                                @NonNull final MessageDigest pDigest)
+            throws IOException {
+        return doImport(pContext, pUri, pDestination, pDigest);
+    }
+
+    // ==== //
+
+    @NonNull
+    private static Result doImport(@NonNull final Context pContext, @NonNull final Uri pUri, @NonNull final File pDestination,
+                                   @Nullable final MessageDigest pDigest)
+            throws IOException {
+
+        PickStrictMode.onDiskAccess("image import");
+
+        final long start = System.nanoTime();
+
+        PickMetrics.beginSection("QIP copy");
+        try {
+            return doImport(pContext, pUri, pDestination, pDigest, start);
+        } finally {
+            PickMetrics.endSection();
+        }
+
+    }
+
+    @NonNull
+    private static Result doImport(@NonNull final Context pContext, @NonNull final Uri pUri, @NonNull final File pDestination,
+                                   @Nullable final MessageDigest pDigest, final long pStartNanos)
+            throws IOException {
+
+        final ParcelFileDescriptor descriptor = pContext.getContentResolver()
+                                                        .openFileDescriptor(pUri, "r");
+        if (descriptor == null) {
+            throw new FileNotFoundException("Could not open " + pUri);
+        }
+
+        // pipes and sockets report -1. Hashing needs the bytes, transferTo would bypass the digest
+        final long statSize = descriptor.getStatSize();
+        final boolean transfer = pDigest == null && statSize >= 0;
+
+        final FileInputStream in = new ParcelFileDescriptor.AutoCloseInputStream(descriptor);
+        FileOutputStream out = null;
+        boolean imported = false;
+        try {
+
+            out = new FileOutputStream(pDestination);
+
+            final FileChannel source = in.getChannel();
+            final FileChannel destination = out.getChannel();
+
+            final long bytes = transfer ? CopyLoops.transfer(source, destination, DIRECT_BUFFER.get())
+                                        : CopyLoops.copyBuffered(source, destination, DIRECT_BUFFER.get(), pDigest);
+
+            out.close();
+            out = null;
+
+            // source changed or provider closed it early: a partial image must not pass as imported
+            if (statSize >= 0 && bytes != statSize) {
+                throw new IOException("Copied " + bytes + " of " + statSize + " bytes of " + pUri);
+            }
+
+            imported = true;
+
+            PickMetrics.bytesCopied(bytes, pStartNanos);
+            PickMetrics.step(PickMetrics.STEP_COPY, pStartNanos);
+
+            return new Result(pDestination, bytes, System.nanoTime() - pStartNanos);
+        } finally {
+
+            IoUtils.closeQuietly(in);
+            IoUtils.closeQuietly(out);
+
+            if (!imported) {
+                //noinspection ResultOfMethodCallIgnored
+                pDestination.delete();
+            }
+
+        }
+
+    }
+
+    // ==== //
+
+    private ImageImporter() {}
+
+    // ==== //
+
+    /**
+     * Outcome of a single import
+     */
+    public static final class Result {
+
+        private final File mFile;
+        private final long mBytes;
+        private final long mDurationNanos;
+
+        Result(@NonNull final File pFile, final long pBytes, final long pDurationNanos) {
+
+            this.mFile = pFile;
+            this.mBytes = pBytes;
+            this.mDurationNanos = pDurationNanos;
+
+        }
+
+        /**
+         * @return destination file
+         */
+        @NonNull
+        public File getFile() {
+            return this.mFile;
+        }
+
+        /**
+         * @return number of bytes copied
+         */
+        public long getBytes() {
+            return this.mBytes;
+        }
+
+        /**
+         * @return wall time of the import, including opening the source
+         */
+        public long getDurationNanos() {
+            return this.mDurationNanos;
+        }
+
+        /**
+         * @return import throughput
+         */
+        public long getBytesPerSecond() {
+            return this.mDurationNanos <= 0 ? 0 : (long) (this.mBytes * 1e9 / this.mDurationNanos);
+        }
+
+        @Override
+        public String toString() {
+            return "ImageImporter.Result{file=" + this.mFile + ", bytes=" + this.mBytes + ", bytesPerSecond=" + this.getBytesPerSecond() + '}';
+        }
+
+    }
+
+}
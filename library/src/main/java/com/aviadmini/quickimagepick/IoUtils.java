@@ -0,0 +1,29 @@
+package com.aviadmini.quickimagepick;
+
+import android.support.annotation.Nullable;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+final class IoUtils {
+
+    static final int BUFFER_SIZE = 16 * 1024;
+
+    static void closeQuietly(@Nullable final Closeable pCloseable) {
+
+        if (pCloseable == null) {
+            return;
+        }
+
+        try {
+            pCloseable.close();
+        } catch (final IOException ignored) {
+        }
+
+    }
+
+    // ==== //
+
+    private IoUtils() {}
+
+}
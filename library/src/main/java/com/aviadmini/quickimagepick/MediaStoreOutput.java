@@ -0,0 +1,253 @@
+package com.aviadmini.quickimagepick;
+
+import android.annotation.TargetApi;
+import android.content.ContentValues;
+import android.content.Context;
+import android.net.Uri;
+import android.os.Build;
+import android.os.Environment;
+import android.provider.MediaStore;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+
+/**
+ * Camera output written straight into shared storage: a pending {@link MediaStore} image row is inserted before the camera
+ * app starts and published once it returns, so the picture is written once and shows up in gallery apps without a copy.
+ * Requires API 29 (pending rows, no storage permission needed for own rows), older versions use camera pictures directory.
+ * <br>
+ * Inserting a row is an IPC with disk work behind it, so one row is always inserted ahead on the io thread and a pick only takes it.
+ * A pick that comes before the row is ready uses camera pictures directory. Unpublished pending rows are removed by the system after
+ * a while, which also covers a prepared row lost with the process; the library deletes them right away when a pick does not use them.
+ */
+final class MediaStoreOutput {
+
+    private static final int API_Q = 29;
+
+    // MediaStore.MediaColumns.IS_PENDING and RELATIVE_PATH, added in API 29
+    private static final String COLUMN_IS_PENDING    = "is_pending";
+    private static final String COLUMN_RELATIVE_PATH = "relative_path";
+
+    private static final String MIME_TYPE = "image/jpeg";
+
+    private static volatile MediaStoreOutput sInstance;
+
+    @NonNull
+    static MediaStoreOutput get(@NonNull final Context pContext) {
+
+        MediaStoreOutput instance = sInstance;
+        if (instance == null) {
+
+            synchronized (MediaStoreOutput.class) {
+
+                instance = sInstance;
+                if (instance == null) {
+                    instance = sInstance = new MediaStoreOutput(pContext.getApplicationContext());
+                }
+
+            }
+
+        }
+
+        return instance;
+    }
+
+    private final Context mAppContext;
+
+    private final Object mLock = new Object();
+
+    // guarded by mLock
+    private Uri     mPrepared;
+    private boolean mPreparing;
+
+    private MediaStoreOutput(@NonNull final Context pAppContext) {
+        this.mAppContext = pAppContext;
+    }
+
+    static boolean isSupported() {
+        return Build.VERSION.SDK_INT >= API_Q;
+    }
+
+    /**
+     * @return true if given {@link Uri} points into {@link MediaStore}
+     */
+    static boolean isMediaStoreUri(@Nullable final Uri pUri) {
+        return pUri != null && MediaStore.AUTHORITY.equals(pUri.getAuthority());
+    }
+
+    // ==== PREPARED ROW ==== //
+
+    /**
+     * Inserts a row ahead on io thread if writing camera pictures into MediaStore is enabled and no row is prepared yet
+     */
+    void prepare() {
+
+        if (!isSupported()) {
+            return;
+        }
+
+        synchronized (this.mLock) {
+
+            if (this.mPrepared != null || this.mPreparing) {
+                return;
+            }
+
+            this.mPreparing = true;
+
+        }
+
+        PickExecutors.io()
+                     .execute(new Runnable() {
+
+                         @Override
+                         public void run() {
+
+                             // checked here, the journal may not be loaded yet when called on main thread
+                             final Uri uri = PickSessionStore.get(mAppContext)
+                                                             .isCameraToMediaStore() ? insertPending(mAppContext) : null;
+
+                             synchronized (mLock) {
+
+                                 mPreparing = false;
+                                 mPrepared = uri;
+
+                             }
+
+                         }
+
+                     });
+
+    }
+
+    /**
+     * Takes prepared row and starts preparation of the next one. Does no I/O
+     *
+     * @return row {@link Uri} to pass to camera app as output, null if none is ready yet
+     */
+    @Nullable
+    Uri take() {
+
+        final Uri uri;
+        synchronized (this.mLock) {
+
+            uri = this.mPrepared;
+            this.mPrepared = null;
+
+        }
+
+        this.prepare();
+
+        return uri;
+    }
+
+    /**
+     * Deletes prepared row in background, call it once writing camera pictures into MediaStore is disabled
+     */
+    void discard() {
+
+        // queued after a preparation in progress, so its row is deleted too
+        PickExecutors.io()
+                     .execute(new Runnable() {
+
+                         @Override
+                         public void run() {
+
+                             final Uri uri;
+                             synchronized (mLock) {
+
+                                 uri = mPrepared;
+                                 mPrepared = null;
+
+                             }
+
+                             if (uri == null) {
+                                 return;
+                             }
+
+                             try {
+                                 mAppContext.getContentResolver()
+                                            .delete(uri, null, null);
+                             } catch (final RuntimeException ignored) {
+                                 // row stays pending and is removed by the system eventually
+                             }
+
+                         }
+
+                     });
+
+    }
+
+    // ==== //
+
+    /**
+     * Inserts a pending image row in pictures collection, to be passed to camera app as output. Blocking, io thread only
+     *
+     * @return row {@link Uri} or null if it cannot be inserted
+     */
+    @TargetApi(API_Q)
+    @Nullable
+    private static Uri insertPending(@NonNull final Context pContext) {
+
+        PickStrictMode.onDiskAccess("MediaStore row insertion");
+
+        final ContentValues values = new ContentValues();
+        values.put(MediaStore.MediaColumns.DISPLAY_NAME, newDisplayName());
+        values.put(MediaStore.MediaColumns.MIME_TYPE, MIME_TYPE);
+        values.put(COLUMN_RELATIVE_PATH, Environment.DIRECTORY_PICTURES);
+        values.put(COLUMN_IS_PENDING, 1);
+
+        try {
+            return pContext.getContentResolver()
+                           .insert(MediaStore.Images.Media.EXTERNAL_CONTENT_URI, values);
+        } catch (final RuntimeException e) {
+
+            // e.g. shared storage is not mounted
+            return null;
+
+        }
+
+    }
+
+    /**
+     * Clears pending flag of a row filled by camera app, in background. Row is renamed after the time the picture was taken,
+     * as it was inserted ahead
+     */
+    @TargetApi(API_Q)
+    static void publish(@NonNull final Context pContext, @NonNull final Uri pUri) {
+
+        final Context appContext = pContext.getApplicationContext();
+
+        PickExecutors.io()
+                     .execute(new Runnable() {
+
+                         @Override
+                         public void run() {
+
+                             PickStrictMode.onDiskAccess("MediaStore row publishing");
+
+                             final ContentValues values = new ContentValues();
+                             values.put(MediaStore.MediaColumns.DISPLAY_NAME, newDisplayName());
+                             values.put(COLUMN_IS_PENDING, 0);
+
+                             try {
+                                 appContext.getContentResolver()
+                                           .update(pUri, values, null, null);
+                             } catch (final RuntimeException ignored) {
+                                 // row stays pending and is removed by the system eventually
+                             }
+
+                         }
+
+                     });
+
+    }
+
+    @NonNull
+    private static String newDisplayName() {
+        return "IMG_" + new SimpleDateFormat("yyyyMMdd_HHmmss", Locale.US).format(new Date()) + ".jpg";
+    }
+
+}
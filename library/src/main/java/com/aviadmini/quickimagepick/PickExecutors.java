@@ -0,0 +1,213 @@
+package com.aviadmini.quickimagepick;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.NonNull;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Threads used by the library for post-pick work
+ */
+final class PickExecutors {
+
+    private static final int  CORE_COUNT      = Math.max(1, Runtime.getRuntime()
+                                                                   .availableProcessors());
+    private static final long KEEP_ALIVE_SECS = 30;
+
+    private static volatile ThreadPoolExecutor sProcessingExecutor;
+    private static volatile ThreadPoolExecutor sIoExecutor;
+    private static volatile ThreadPoolExecutor sPrepExecutor;
+    private static volatile Handler            sMainHandler;
+
+    /**
+     * @return executor with one thread per CPU core, threads time out when idle
+     */
+    @NonNull
+    static Executor processing() {
+
+        ThreadPoolExecutor executor = sProcessingExecutor;
+        if (executor == null) {
+
+            synchronized (PickExecutors.class) {
+
+                executor = sProcessingExecutor;
+                if (executor == null) {
+
+                    executor = new ThreadPoolExecutor(CORE_COUNT, CORE_COUNT, KEEP_ALIVE_SECS, TimeUnit.SECONDS,
+                            new LinkedBlockingQueue<Runnable>(), new NamedThreadFactory("QIP processing"));
+                    executor.allowCoreThreadTimeOut(true);
+
+                    sProcessingExecutor = executor;
+
+                }
+
+            }
+
+        }
+
+        return executor;
+    }
+
+    /**
+     * @return single thread executor for small library disk jobs (journals, cleanup). Tasks run in submission order
+     */
+    @NonNull
+    static Executor io() {
+
+        ThreadPoolExecutor executor = sIoExecutor;
+        if (executor == null) {
+
+            synchronized (PickExecutors.class) {
+
+                executor = sIoExecutor;
+                if (executor == null) {
+
+                    executor = new ThreadPoolExecutor(1, 1, KEEP_ALIVE_SECS, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                            new NamedThreadFactory("QIP io"));
+                    executor.allowCoreThreadTimeOut(true);
+
+                    sIoExecutor = executor;
+
+                }
+
+            }
+
+        }
+
+        return executor;
+    }
+
+    /**
+     * @return single thread executor for state that main thread may have to wait for: pick session journal read and camera pictures
+     * directory. Nothing else runs on it, so such a wait is never stuck behind other library disk work queued on {@link #io()}
+     */
+    @NonNull
+    static Executor prep() {
+
+        ThreadPoolExecutor executor = sPrepExecutor;
+        if (executor == null) {
+
+            synchronized (PickExecutors.class) {
+
+                executor = sPrepExecutor;
+                if (executor == null) {
+
+                    executor = new ThreadPoolExecutor(1, 1, KEEP_ALIVE_SECS, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                            new NamedThreadFactory("QIP prep"));
+                    executor.allowCoreThreadTimeOut(true);
+
+                    sPrepExecutor = executor;
+
+                }
+
+            }
+
+        }
+
+        return executor;
+    }
+
+    @NonNull
+    static Handler mainHandler() {
+
+        Handler handler = sMainHandler;
+        if (handler == null) {
+
+            synchronized (PickExecutors.class) {
+
+                handler = sMainHandler;
+                if (handler == null) {
+                    handler = sMainHandler = new Handler(Looper.getMainLooper());
+                }
+
+            }
+
+        }
+
+        return handler;
+    }
+
+    static int coreCount() {
+        return CORE_COUNT;
+    }
+
+    static boolean isMainThread() {
+        return Looper.myLooper() == Looper.getMainLooper();
+    }
+
+    /**
+     * Waits for a task submitted to one of the library executors. Off main thread a task that has not started yet is run
+     * right away on the calling thread, which also keeps the io thread from waiting for a task queued behind itself.
+     * Main thread only waits, so that disk work stays in background
+     *
+     * @return task result
+     * @throws ExecutionException if task failed
+     */
+    static <T> T join(@NonNull final FutureTask<T> pTask)
+            throws ExecutionException {
+
+        if (!isMainThread()) {
+            pTask.run();
+        }
+
+        boolean interrupted = false;
+        try {
+
+            while (true) {
+
+                try {
+                    return pTask.get();
+                } catch (final InterruptedException e) {
+                    interrupted = true;
+                }
+
+            }
+
+        } finally {
+
+            if (interrupted) {
+                Thread.currentThread()
+                      .interrupt();
+            }
+
+        }
+
+    }
+
+    // ==== //
+
+    private PickExecutors() {}
+
+    // ==== //
+
+    static final class NamedThreadFactory
+            implements ThreadFactory {
+
+        private final String        mName;
+        private final AtomicInteger mCount = new AtomicInteger();
+
+        NamedThreadFactory(@NonNull final String pName) {
+            this.mName = pName;
+        }
+
+        @Override
+        public Thread newThread(@NonNull final Runnable pRunnable) {
+
+            final Thread thread = new Thread(pRunnable, this.mName + " #" + this.mCount.incrementAndGet());
+            thread.setDaemon(true);
+            thread.setPriority(Thread.NORM_PRIORITY - 1);
+
+            return thread;
+        }
+
+    }
+
+}
@@ -0,0 +1,727 @@
+package com.aviadmini.quickimagepick;
+
+import android.content.Context;
+import android.net.Uri;
+import android.os.Handler;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Result of a pick, or of processing chained to it. Alternative to {@link QuickImagePick.Callback}, returned by
+ * {@code QuickImagePick.handleActivityResult(...)} overloads without a callback.
+ * <br>
+ * Processing is chained with {@link #then(PickPipeline.Stage)} without blocking: each stage runs on a background executor
+ * as soon as the previous one completes, there are no main thread round trips between stages. Only {@link Callback}s
+ * are triggered on main thread (or on executor of your choice):
+ * <pre>
+ * QuickImagePick.handleActivityResult(context, requestCode, resultCode, data)
+ *               .then(PickStages.decode(1024, 1024))
+ *               .then(uploadStage)
+ *               .addCallback(callback);
+ * </pre>
+ * {@link #cancel(boolean)} stops chained stages that have not run yet, e.g. when the screen that started the pick is gone.
+ * A future is also cancelled when all futures chained from it are, unless a {@link Callback} was added to it: callbacks
+ * cannot be cancelled, so they keep the future they wait for alive.
+ *
+ * @param <T> type of the result
+ */
+@SuppressWarnings("unused")
+public final class PickFuture<T>
+        implements Future<T> {
+
+    private static final int STATE_PENDING   = 0;
+    private static final int STATE_SUCCEEDED = 1;
+    private static final int STATE_FAILED    = 2;
+    private static final int STATE_CANCELLED = 3;
+
+    private static final int INTERRUPT_NONE         = 0;
+    private static final int INTERRUPT_INTERRUPTING = 1;
+    private static final int INTERRUPT_INTERRUPTED  = 2;
+
+    private final Context       mContext;
+    private final PickFuture<?> mParent;
+
+    // chained stages run on processing threads, they are attributed to the session the pick belongs to
+    private final int mSessionId = PickMetrics.currentSession();
+
+    // guarded by this
+    private int        mState;
+    private T          mValue;
+    private Throwable  mError;
+    private PickSource mPickSource;
+    private int        mRequestType;
+    private Thread     mRunner;
+    private int        mInterruptState;
+    private int        mLiveDependents;
+
+    // guarded by this, null once done
+    private List<Runnable> mCompletionActions = new ArrayList<>();
+
+    private PickFuture(@NonNull final Context pContext, @Nullable final PickFuture<?> pParent) {
+
+        this.mContext = pContext;
+        this.mParent = pParent;
+
+    }
+
+    // ==== PICK ==== //
+
+    @NonNull
+    static PickFuture<Uri> forPick(@NonNull final Context pContext) {
+        return new PickFuture<>(pContext.getApplicationContext(), null);
+    }
+
+    @NonNull
+    static PickFuture<List<Uri>> forMultiplePick(@NonNull final Context pContext) {
+        return new PickFuture<>(pContext.getApplicationContext(), null);
+    }
+
+    /**
+     * @return callback that completes given future with the first picked image
+     */
+    @NonNull
+    static QuickImagePick.Callback completing(@NonNull final PickFuture<Uri> pFuture) {
+
+        return new QuickImagePick.Callback() {
+
+            @Override
+            public void onImagePicked(@NonNull final PickSource pPickSource, final int pRequestType, @NonNull final Uri pImageUri) {
+                pFuture.succeed(pPickSource, pRequestType, pImageUri);
+            }
+
+            @Override
+            public void onError(@NonNull final PickSource pPickSource, final int pRequestType, @NonNull final String pErrorString) {
+                pFuture.fail(pPickSource, pRequestType, new PickException(pErrorString));
+            }
+
+            @Override
+            public void onCancel(@NonNull final PickSource pPickSource, final int pRequestType) {
+                pFuture.cancelPick(pPickSource, pRequestType);
+            }
+
+        };
+    }
+
+    /**
+     * @return callback that completes given future with all picked images
+     */
+    @NonNull
+    static QuickImagePick.MultipleCallback completingAll(@NonNull final PickFuture<List<Uri>> pFuture) {
+
+        return new QuickImagePick.MultipleCallback() {
+
+            @Override
+            public void onImagesPicked(@NonNull final PickSource pPickSource, final int pRequestType, @NonNull final List<Uri> pImageUris) {
+                pFuture.succeed(pPickSource, pRequestType, pImageUris);
+            }
+
+            @Override
+            public void onImagePicked(@NonNull final PickSource pPickSource, final int pRequestType, @NonNull final Uri pImageUri) {
+                pFuture.succeed(pPickSource, pRequestType, Collections.singletonList(pImageUri));
+            }
+
+            @Override
+            public void onError(@NonNull final PickSource pPickSource, final int pRequestType, @NonNull final String pErrorString) {
+                pFuture.fail(pPickSource, pRequestType, new PickException(pErrorString));
+            }
+
+            @Override
+            public void onCancel(@NonNull final PickSource pPickSource, final int pRequestType) {
+                pFuture.cancelPick(pPickSource, pRequestType);
+            }
+
+        };
+    }
+
+    // ==== CHAINING ==== //
+
+    /**
+     * Runs given stage on the library processing executor once this future succeeds. Failure or cancellation of this future
+     * is passed on without running the stage
+     *
+     * @param pStage processing to run with the result
+     * @param <O>    stage output type
+     * @return future of the stage output
+     */
+    @NonNull
+    public <O> PickFuture<O> then(@NonNull final PickPipeline.Stage<? super T, O> pStage) {
+        return this.then(PickExecutors.processing(), pStage);
+    }
+
+    /**
+     * Runs given stage on given executor once this future succeeds. Failure or cancellation of this future
+     * is passed on without running the stage
+     *
+     * @param pExecutor executor to run the stage on
+     * @param pStage    processing to run with the result
+     * @param <O>       stage output type
+     * @return future of the stage output
+     */
+    @NonNull
+    public <O> PickFuture<O> then(@NonNull final Executor pExecutor, @NonNull final PickPipeline.Stage<? super T, O> pStage) {
+
+        final PickFuture<O> next = new PickFuture<>(this.mContext, this);
+
+        synchronized (this) {
+            this.mLiveDependents++;
+        }
+
+        this.whenDone(new Runnable() {
+
+            @Override
+            public void run() {
+
+                final boolean succeeded;
+                final T value;
+                final PickSource pickSource;
+                final int requestType;
+                synchronized (PickFuture.this) {
+
+                    succeeded = mState == STATE_SUCCEEDED;
+                    value = mValue;
+                    pickSource = mPickSource;
+                    requestType = mRequestType;
+
+                }
+
+                if (!succeeded) {
+
+                    next.completeFrom(PickFuture.this);
+
+                    return;
+                }
+
+                if (next.isDone()) {
+                    return;
+                }
+
+                try {
+
+                    pExecutor.execute(new Runnable() {
+
+                        @Override
+                        public void run() {
+                            next.runStage(pStage, value, pickSource, requestType);
+                        }
+
+                    });
+
+                } catch (final RuntimeException e) {
+                    next.fail(pickSource, requestType, e);
+                }
+
+            }
+
+        });
+
+        return next;
+    }
+
+    /**
+     * Triggers callback on main thread once this future is done. If it is already done, callback is posted right away
+     *
+     * @param pCallback callback to trigger
+     * @return this
+     */
+    @NonNull
+    public PickFuture<T> addCallback(@NonNull final Callback<? super T> pCallback) {
+
+        final Handler handler = PickExecutors.mainHandler();
+
+        return this.addCallback(new Executor() {
+
+            @Override
+            public void execute(@NonNull final Runnable pRunnable) {
+                handler.post(pRunnable);
+            }
+
+        }, pCallback);
+    }
+
+    /**
+     * Triggers callback on given executor once this future is done
+     *
+     * @param pExecutor executor to trigger callback on
+     * @param pCallback callback to trigger
+     * @return this
+     */
+    @NonNull
+    public PickFuture<T> addCallback(@NonNull final Executor pExecutor, @NonNull final Callback<? super T> pCallback) {
+
+        // counts as a dependent that is never cancelled
+        synchronized (this) {
+            this.mLiveDependents++;
+        }
+
+        this.whenDone(new Runnable() {
+
+            @Override
+            public void run() {
+
+                pExecutor.execute(new Runnable() {
+
+                    @Override
+                    public void run() {
+                        deliver(pCallback);
+                    }
+
+                });
+
+            }
+
+        });
+
+        return this;
+    }
+
+    // ==== STATE ==== //
+
+    /**
+     * @return source of the picked image, or null if pick has not completed yet
+     */
+    @Nullable
+    public synchronized PickSource getPickSource() {
+        return this.mPickSource;
+    }
+
+    /**
+     * @return request type the pick was started with, 0 until pick has completed
+     */
+    public synchronized int getRequestType() {
+        return this.mRequestType;
+    }
+
+    /**
+     * Cancels this future, chained stages that have not started yet do not run. Futures chained from it are cancelled too,
+     * as is the future this one is chained from once none of its other dependents (chained futures or callbacks) is live
+     *
+     * @param pMayInterruptIfRunning true to interrupt the thread running this future's stage
+     * @return false if future was already done
+     */
+    @Override
+    public boolean cancel(final boolean pMayInterruptIfRunning) {
+
+        final Thread runner;
+        synchronized (this) {
+
+            if (this.mState != STATE_PENDING) {
+                return false;
+            }
+
+            this.mState = STATE_CANCELLED;
+
+            runner = pMayInterruptIfRunning ? this.mRunner : null;
+            if (runner != null) {
+                this.mInterruptState = INTERRUPT_INTERRUPTING;
+            }
+
+        }
+
+        // runner waits for the interrupt to be published before it clears it and takes next task of the executor
+        if (runner != null) {
+
+            try {
+                runner.interrupt();
+            } finally {
+
+                synchronized (this) {
+
+                    this.mInterruptState = INTERRUPT_INTERRUPTED;
+
+                    this.notifyAll();
+
+                }
+
+            }
+
+        }
+
+        this.onDone();
+
+        if (this.mParent != null) {
+            this.mParent.onDependentCancelled(pMayInterruptIfRunning);
+        }
+
+        return true;
+    }
+
+    @Override
+    public synchronized boolean isCancelled() {
+        return this.mState == STATE_CANCELLED;
+    }
+
+    @Override
+    public synchronized boolean isDone() {
+        return this.mState != STATE_PENDING;
+    }
+
+    /**
+     * Blocking, never call it on main thread while the future is not done
+     *
+     * @throws ExecutionException with {@link PickException} if pick failed, or with exception thrown by a stage
+     */
+    @Override
+    public synchronized T get()
+            throws InterruptedException, ExecutionException {
+
+        while (this.mState == STATE_PENDING) {
+            this.wait();
+        }
+
+        return this.result();
+    }
+
+    @Override
+    public synchronized T get(final long pTimeout, @NonNull final TimeUnit pUnit)
+            throws InterruptedException, ExecutionException, TimeoutException {
+
+        final long deadline = System.nanoTime() + pUnit.toNanos(pTimeout);
+
+        while (this.mState == STATE_PENDING) {
+
+            final long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                throw new TimeoutException();
+            }
+
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+
+        }
+
+        return this.result();
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "PickFuture{state=" + this.mState + ", pickSource=" + this.mPickSource + ", requestType=" + this.mRequestType + '}';
+    }
+
+    // ==== //
+
+    private <I> void runStage(@NonNull final PickPipeline.Stage<? super I, T> pStage, @NonNull final I pInput,
+                          @Nullable final PickSource pPickSource, final int pRequestType) {
+
+        synchronized (this) {
+
+            if (this.mState != STATE_PENDING) {
+                return;
+            }
+
+            this.mRunner = Thread.currentThread();
+
+        }
+
+        final long start = PickMetrics.start();
+        final int previousSessionId = PickMetrics.enterSession(this.mSessionId);
+        PickMetrics.beginSection("QIP stage");
+
+        T output = null;
+        Throwable error = null;
+        try {
+
+            output = pStage.process(this.mContext, pInput);
+            if (output == null) {
+                error = new NullPointerException("Stage " + pStage + " returned null");
+            }
+
+        } catch (final Throwable e) {
+            error = e;
+        } finally {
+
+            PickMetrics.endSection();
+            PickMetrics.exitSession(previousSessionId);
+            PickMetrics.step(this.mSessionId, PickMetrics.STEP_STAGE, start);
+
+            final boolean interrupted;
+            synchronized (this) {
+
+                this.mRunner = null;
+
+                // cancel() took the runner and is about to interrupt it
+                boolean waitInterrupted = false;
+                while (this.mInterruptState == INTERRUPT_INTERRUPTING) {
+
+                    try {
+                        this.wait();
+                    } catch (final InterruptedException e) {
+                        waitInterrupted = true;
+                    }
+
+                }
+
+                interrupted = waitInterrupted || this.mInterruptState == INTERRUPT_INTERRUPTED;
+
+            }
+
+            // interrupt of a cancelled stage must not leak into the next task of the executor
+            if (interrupted) {
+                Thread.interrupted();
+            }
+
+        }
+
+        if (error == null) {
+            this.succeed(pPickSource, pRequestType, output);
+        } else {
+            this.fail(pPickSource, pRequestType, error);
+        }
+
+    }
+
+    private void succeed(@Nullable final PickSource pPickSource, final int pRequestType, @NonNull final T pValue) {
+
+        synchronized (this) {
+
+            if (this.mState != STATE_PENDING) {
+                return;
+            }
+
+            this.mState = STATE_SUCCEEDED;
+            this.mValue = pValue;
+            this.mPickSource = pPickSource;
+            this.mRequestType = pRequestType;
+
+        }
+
+        this.onDone();
+
+    }
+
+    private void fail(@Nullable final PickSource pPickSource, final int pRequestType, @NonNull final Throwable pError) {
+
+        synchronized (this) {
+
+            if (this.mState != STATE_PENDING) {
+                return;
+            }
+
+            this.mState = STATE_FAILED;
+            this.mError = pError;
+            this.mPickSource = pPickSource;
+            this.mRequestType = pRequestType;
+
+        }
+
+        this.onDone();
+
+    }
+
+    private void cancelPick(@Nullable final PickSource pPickSource, final int pRequestType) {
+
+        synchronized (this) {
+
+            if (this.mState != STATE_PENDING) {
+                return;
+            }
+
+            this.mState = STATE_CANCELLED;
+            this.mPickSource = pPickSource;
+            this.mRequestType = pRequestType;
+
+        }
+
+        this.onDone();
+
+    }
+
+    private void completeFrom(@NonNull final PickFuture<?> pParent) {
+
+        final int state;
+        final Throwable error;
+        final PickSource pickSource;
+        final int requestType;
+        synchronized (pParent) {
+
+            state = pParent.mState;
+            error = pParent.mError;
+            pickSource = pParent.mPickSource;
+            requestType = pParent.mRequestType;
+
+        }
+
+        if (state == STATE_FAILED) {
+            this.fail(pickSource, requestType, error);
+        } else {
+            this.cancelPick(pickSource, requestType);
+        }
+
+    }
+
+    private void onDependentCancelled(final boolean pMayInterruptIfRunning) {
+
+        synchronized (this) {
+
+            if (--this.mLiveDependents > 0) {
+                return;
+            }
+
+        }
+
+        this.cancel(pMayInterruptIfRunning);
+
+    }
+
+    private void whenDone(@NonNull final Runnable pAction) {
+
+        synchronized (this) {
+
+            if (this.mCompletionActions != null) {
+
+                this.mCompletionActions.add(pAction);
+
+                return;
+            }
+
+        }
+
+        pAction.run();
+
+    }
+
+    private void onDone() {
+
+        final List<Runnable> actions;
+        synchronized (this) {
+
+            actions = this.mCompletionActions;
+            this.mCompletionActions = null;
+
+            this.notifyAll();
+
+        }
+
+        for (final Runnable action : actions) {
+            action.run();
+        }
+
+    }
+
+    private void deliver(@NonNull final Callback<? super T> pCallback) {
+
+        final int state;
+        final T value;
+        final Throwable error;
+        synchronized (this) {
+
+            state = this.mState;
+            value = this.mValue;
+            error = this.mError;
+
+        }
+
+        switch (state) {
+
+            case STATE_SUCCEEDED: {
+
+                pCallback.onResult(value);
+
+                break;
+            }
+
+            case STATE_FAILED: {
+
+                pCallback.onError(error);
+
+                break;
+            }
+
+            default: {
+
+                pCallback.onCancel();
+
+                break;
+            }
+
+        }
+
+    }
+
+    // guarded by this, called when done
+    private T result()
+            throws ExecutionException {
+
+        switch (this.mState) {
+
+            case STATE_SUCCEEDED: {
+                return this.mValue;
+            }
+
+            case STATE_FAILED: {
+                throw new ExecutionException(this.mError);
+            }
+
+            default: {
+                throw new CancellationException();
+            }
+
+        }
+
+    }
+
+    // ==== //
+
+    /**
+     * Callback for {@link PickFuture} results
+     *
+     * @param <T> type of the result
+     */
+    public interface Callback<T> {
+
+        /**
+         * Triggered when pick and all chained stages completed
+         *
+         * @param pResult pick result or output of the last stage
+         */
+        void onResult(@NonNull final T pResult);
+
+        /**
+         * Triggered when pick or one of chained stages failed
+         *
+         * @param pCause {@link PickException} if pick failed, otherwise exception thrown by a stage
+         */
+        void onError(@NonNull final Throwable pCause);
+
+        /**
+         * Triggered when picking flow was cancelled (mostly by user) or the future was cancelled
+         */
+        void onCancel();
+
+    }
+
+    /**
+     * Failure of the pick itself, as opposed to failure of a chained stage
+     */
+    public static final class PickException
+            extends Exception {
+
+        private final String mErrorString;
+
+        PickException(@NonNull final String pErrorString) {
+
+            super(pErrorString);
+
+            this.mErrorString = pErrorString;
+
+        }
+
+        /**
+         * @return one of public {@code ERR_} constants in {@link QuickImagePick} class
+         */
+        @NonNull
+        public String getErrorString() {
+            return this.mErrorString;
+        }
+
+    }
+
+}
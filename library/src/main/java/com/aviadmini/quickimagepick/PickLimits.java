@@ -0,0 +1,115 @@
+package com.aviadmini.quickimagepick;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.aviadmini.quickimagepick.core.ImageHeaderParser;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Limits that gallery and documents picks are validated against before they are delivered, see
+ * {@link QuickImagePick#setPickLimits(PickLimits)}. Only the image header and provider metadata are read (see {@link PickedImage}),
+ * so non-images, truncated files and images declaring huge dimensions are rejected before anything reads or decodes them fully.
+ * <br>
+ * Format is detected from magic bytes, not from the extension or the type reported by provider: only JPEG, PNG, WebP and GIF
+ * are recognized, anything else is rejected
+ */
+@SuppressWarnings("unused")
+public final class PickLimits {
+
+    public static final long UNLIMITED = Long.MAX_VALUE;
+
+    private static volatile PickLimits sCurrent;
+
+    private final long        mMaxPixels;
+    private final long        mMaxBytes;
+    private final Set<String> mMimeTypes;
+
+    /**
+     * @param pMaxPixels max pixel count (width * height) declared by image header, or {@link #UNLIMITED}
+     * @param pMaxBytes  max size in bytes, or {@link #UNLIMITED}. Images of unknown size pass
+     * @param pMimeTypes allowed formats, {@code MIME_} constants of {@link ImageHeaderParser}. None to allow any recognized format
+     */
+    public PickLimits(final long pMaxPixels, final long pMaxBytes, @NonNull final String... pMimeTypes) {
+
+        if (pMaxPixels <= 0 || pMaxBytes <= 0) {
+            throw new IllegalArgumentException("Limits must be positive: " + pMaxPixels + " pixels, " + pMaxBytes + " bytes");
+        }
+
+        this.mMaxPixels = pMaxPixels;
+        this.mMaxBytes = pMaxBytes;
+        this.mMimeTypes = pMimeTypes.length == 0 ? null : Collections.unmodifiableSet(new HashSet<>(Arrays.asList(pMimeTypes)));
+
+    }
+
+    static void setCurrent(@Nullable final PickLimits pLimits) {
+        sCurrent = pLimits;
+    }
+
+    @Nullable
+    static PickLimits current() {
+        return sCurrent;
+    }
+
+    public long getMaxPixels() {
+        return this.mMaxPixels;
+    }
+
+    public long getMaxBytes() {
+        return this.mMaxBytes;
+    }
+
+    /**
+     * @return allowed formats, null if any recognized format is allowed
+     */
+    @Nullable
+    public Set<String> getMimeTypes() {
+        return this.mMimeTypes;
+    }
+
+    /**
+     * Reads header and size of the image if they are not cached yet. Blocking, call it from a background thread
+     *
+     * @param pImage picked image
+     * @return null if image is within limits, otherwise {@link QuickImagePick#ERR_NOT_AN_IMAGE} or
+     * {@link QuickImagePick#ERR_LIMITS_EXCEEDED}
+     */
+    @Nullable
+    String check(@NonNull final PickedImage pImage) {
+
+        // format and dimensions from the file itself, not from MediaStore: it may be a non-image or a bomb under an image name
+        pImage.ensureHeaderParsed();
+
+        // header is parsed only for recognized formats, and only if the file is long enough to hold it
+        final int width = pImage.getWidth();
+        final int height = pImage.getHeight();
+        if (width <= 0 || height <= 0) {
+            return QuickImagePick.ERR_NOT_AN_IMAGE;
+        }
+
+        if (this.mMimeTypes != null && !this.mMimeTypes.contains(pImage.getMimeType())) {
+            return QuickImagePick.ERR_LIMITS_EXCEEDED;
+        }
+
+        if ((long) width * height > this.mMaxPixels) {
+            return QuickImagePick.ERR_LIMITS_EXCEEDED;
+        }
+
+        final long size = pImage.getSize();
+        if (size != PickedImage.UNKNOWN && size > this.mMaxBytes) {
+            return QuickImagePick.ERR_LIMITS_EXCEEDED;
+        }
+
+        return null;
+    }
+
+    @Override
+    public String toString() {
+        return "PickLimits{maxPixels=" + this.mMaxPixels + ", maxBytes=" + this.mMaxBytes + ", mimeTypes=" + this.mMimeTypes + '}';
+    }
+
+}
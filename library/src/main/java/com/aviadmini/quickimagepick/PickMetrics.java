@@ -0,0 +1,259 @@
+package com.aviadmini.quickimagepick;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.v4.os.TraceCompat;
+
+/**
+ * Timings and counters of pick flows, reported to a {@link Listener} set with {@link QuickImagePick#setMetricsListener(Listener)}.
+ * Events carry the id of the {@link PickSession} they belong to, or {@link #NO_SESSION} for work started outside of one.
+ * <br>
+ * Without a listener nothing is measured: no clock reads and no allocations. Internal steps are also wrapped into
+ * {@link android.os.Trace} sections (API 18+) named "QIP ...", visible in systrace regardless of the listener.
+ */
+@SuppressWarnings("unused")
+public final class PickMetrics {
+
+    public static final int NO_SESSION = -1;
+
+    // ==== STEPS ==== //
+
+    /**
+     * Camera output file and {@link android.net.Uri} creation
+     */
+    public static final int STEP_PREPARE_OUTPUT = 0;
+
+    /**
+     * Pick intent construction, including chooser targets resolution
+     */
+    public static final int STEP_PREPARE_INTENT = 1;
+
+    /**
+     * Resolution of camera and gallery apps for a chooser
+     */
+    public static final int STEP_RESOLVE_TARGETS = 2;
+
+    /**
+     * From session start to its result, i.e. time spent in the external app. Not reported for sessions restored after process death
+     */
+    public static final int STEP_EXTERNAL_APP = 3;
+
+    /**
+     * Activity result handling, including callback
+     */
+    public static final int STEP_HANDLE_RESULT = 4;
+
+    /**
+     * Import of picked image into app storage
+     */
+    public static final int STEP_COPY = 5;
+
+    /**
+     * Sampled decode of picked image
+     */
+    public static final int STEP_DECODE = 6;
+
+    /**
+     * Single {@link PickPipeline} stage, excluding time in executor queue
+     */
+    public static final int STEP_STAGE = 7;
+
+    /**
+     * Whole {@link PickPipeline} run of one image, from pick to result posted to main thread
+     */
+    public static final int STEP_PIPELINE = 8;
+
+    /**
+     * From start of a {@link ProgressiveDecoder} run to its preview posted to main thread, i.e. time to first pixel
+     */
+    public static final int STEP_PREVIEW = 9;
+
+    /**
+     * Time a {@link PickScheduler} task waited in its lane before it started
+     */
+    public static final int STEP_QUEUE_WAIT = 10;
+
+    // ==== CACHES ==== //
+
+    public static final int CACHE_CHOOSER_TARGETS  = 0;
+    public static final int CACHE_METADATA         = 1;
+    public static final int CACHE_THUMBNAIL_MEMORY = 2;
+    public static final int CACHE_THUMBNAIL_DISK   = 3;
+    public static final int CACHE_DEDUP            = 4;
+    public static final int CACHE_BITMAP_POOL      = 5;
+
+    private static volatile Listener sListener;
+
+    // set only while a listener is present
+    private static final ThreadLocal<int[]> sCurrentSession = new ThreadLocal<int[]>() {
+
+        @Override
+        protected int[] initialValue() {
+            return new int[]{NO_SESSION};
+        }
+
+    };
+
+    static void setListener(@Nullable final Listener pListener) {
+        sListener = pListener;
+    }
+
+    // ==== RECORDING ==== //
+
+    /**
+     * @return start time for {@link #step(int, int, long)}, or 0 when nothing is measured
+     */
+    static long start() {
+        return sListener == null ? 0 : System.nanoTime();
+    }
+
+    static void step(final int pSessionId, final int pStep, final long pStartNanos) {
+
+        final Listener listener = sListener;
+        if (listener != null && pStartNanos != 0) {
+            listener.onStep(pSessionId, pStep, System.nanoTime() - pStartNanos);
+        }
+
+    }
+
+    static void step(final int pStep, final long pStartNanos) {
+
+        final Listener listener = sListener;
+        if (listener != null && pStartNanos != 0) {
+            listener.onStep(currentSession(), pStep, System.nanoTime() - pStartNanos);
+        }
+
+    }
+
+    static void bytesCopied(final long pBytes, final long pStartNanos) {
+
+        final Listener listener = sListener;
+        if (listener != null && pStartNanos != 0) {
+            listener.onBytesCopied(currentSession(), pBytes, System.nanoTime() - pStartNanos);
+        }
+
+    }
+
+    static void decoded(final int pWidth, final int pHeight, final long pPeakBytes, final long pStartNanos) {
+
+        final Listener listener = sListener;
+        if (listener != null && pStartNanos != 0) {
+            listener.onDecoded(currentSession(), pWidth, pHeight, pPeakBytes, System.nanoTime() - pStartNanos);
+        }
+
+    }
+
+    static void cacheLookup(final int pCache, final boolean pHit) {
+
+        final Listener listener = sListener;
+        if (listener != null) {
+            listener.onCacheLookup(currentSession(), pCache, pHit);
+        }
+
+    }
+
+    // ==== SESSION CONTEXT ==== //
+
+    /**
+     * Attributes events of the calling thread to given session until {@link #exitSession(int)}
+     *
+     * @return previous session, to be passed to {@link #exitSession(int)}
+     */
+    static int enterSession(final int pSessionId) {
+
+        if (sListener == null) {
+            return NO_SESSION;
+        }
+
+        final int[] holder = sCurrentSession.get();
+
+        final int previous = holder[0];
+        holder[0] = pSessionId;
+
+        return previous;
+    }
+
+    static void exitSession(final int pPreviousSessionId) {
+
+        if (sListener != null) {
+            sCurrentSession.get()[0] = pPreviousSessionId;
+        }
+
+    }
+
+    static int currentSession() {
+        return sListener == null ? NO_SESSION : sCurrentSession.get()[0];
+    }
+
+    // ==== TRACING ==== //
+
+    static void beginSection(@NonNull final String pName) {
+        TraceCompat.beginSection(pName);
+    }
+
+    static void endSection() {
+        TraceCompat.endSection();
+    }
+
+    // ==== //
+
+    private PickMetrics() {}
+
+    // ==== //
+
+    /**
+     * Receives metrics events. Called on the thread that did the work (main thread or library background threads),
+     * implementations must be thread safe and fast
+     */
+    public interface Listener {
+
+        /**
+         * @param pSessionId    session id or {@link #NO_SESSION}
+         * @param pStep         one of {@code STEP_} constants
+         * @param pDurationNanos step duration
+         */
+        void onStep(final int pSessionId, final int pStep, final long pDurationNanos);
+
+        /**
+         * @param pBytes         bytes copied into app storage
+         * @param pDurationNanos copy duration
+         */
+        void onBytesCopied(final int pSessionId, final long pBytes, final long pDurationNanos);
+
+        /**
+         * @param pWidth         decoded width
+         * @param pHeight        decoded height
+         * @param pPeakBytes     bytes of bitmaps alive at the same time during decode
+         * @param pDurationNanos decode duration
+         */
+        void onDecoded(final int pSessionId, final int pWidth, final int pHeight, final long pPeakBytes, final long pDurationNanos);
+
+        /**
+         * @param pCache one of {@code CACHE_} constants
+         * @param pHit   true if lookup was served from cache
+         */
+        void onCacheLookup(final int pSessionId, final int pCache, final boolean pHit);
+
+    }
+
+    /**
+     * {@link Listener} with empty methods, override the ones you need
+     */
+    public static abstract class ListenerAdapter
+            implements Listener {
+
+        @Override
+        public void onStep(final int pSessionId, final int pStep, final long pDurationNanos) {}
+
+        @Override
+        public void onBytesCopied(final int pSessionId, final long pBytes, final long pDurationNanos) {}
+
+        @Override
+        public void onDecoded(final int pSessionId, final int pWidth, final int pHeight, final long pPeakBytes, final long pDurationNanos) {}
+
+        @Override
+        public void onCacheLookup(final int pSessionId, final int pCache, final boolean pHit) {}
+
+    }
+
+}
@@ -0,0 +1,588 @@
+package com.aviadmini.quickimagepick;
+
+import android.content.Context;
+import android.net.Uri;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Ordered chain of processing stages applied to a picked image {@link Uri} off the main thread.
+ * Each stage of each pick is scheduled as a separate task, so stages of different picks run in parallel and a run yields
+ * to more urgent work between its stages (see {@link PickScheduler}). Result is delivered on main thread.
+ * <br>
+ * Pipelines are immutable: {@link #then(Stage)} returns a new pipeline. Build it once and reuse it:
+ * <pre>
+ * PickPipeline&lt;File&gt; pipeline = PickPipeline.begin()
+ *                                        .then(PickStages.decode(1024, 1024))
+ *                                        .then(PickStages.encode(Bitmap.CompressFormat.JPEG, 85, true))
+ *                                        .then(PickStages.persist(dir));
+ * </pre>
+ *
+ * @param <T> type of the result
+ */
+@SuppressWarnings("unused")
+public final class PickPipeline<T> {
+
+    private final List<Stage<?, ?>>      mStages;
+    private final Executor               mExecutor;
+    private final PickScheduler.Priority mPriority;
+
+    private PickPipeline(@NonNull final List<Stage<?, ?>> pStages, @Nullable final Executor pExecutor,
+                         @NonNull final PickScheduler.Priority pPriority) {
+
+        this.mStages = pStages;
+        this.mExecutor = pExecutor;
+        this.mPriority = pPriority;
+
+    }
+
+    /**
+     * @return empty pipeline that returns picked {@link Uri} as is
+     */
+    @NonNull
+    public static PickPipeline<Uri> begin() {
+        return new PickPipeline<>(Collections.<Stage<?, ?>>emptyList(), null, PickScheduler.Priority.USER_INITIATED);
+    }
+
+    /**
+     * @param pStage stage to append
+     * @param <O>    stage output type
+     * @return new pipeline with the stage appended
+     */
+    @NonNull
+    public <O> PickPipeline<O> then(@NonNull final Stage<? super T, O> pStage) {
+
+        final List<Stage<?, ?>> stages = new ArrayList<>(this.mStages.size() + 1);
+        stages.addAll(this.mStages);
+        stages.add(pStage);
+
+        return new PickPipeline<>(Collections.unmodifiableList(stages), this.mExecutor, this.mPriority);
+    }
+
+    /**
+     * @param pExecutor executor to run stages on. By default it's a library executor with one thread per CPU core,
+     *                  shared through {@link PickScheduler} lanes. Priorities do not apply to other executors
+     * @return new pipeline running on given executor
+     */
+    @NonNull
+    public PickPipeline<T> executeOn(@NonNull final Executor pExecutor) {
+        return new PickPipeline<>(this.mStages, pExecutor, this.mPriority);
+    }
+
+    /**
+     * @param pPriority {@link PickScheduler} lane for stages of this pipeline, {@link PickScheduler.Priority#USER_INITIATED} by default.
+     *                  Runs are tagged with the image {@link Uri}, see {@link PickScheduler#promote(Object, PickScheduler.Priority)}
+     * @return new pipeline running in given lane
+     */
+    @NonNull
+    public PickPipeline<T> withPriority(@NonNull final PickScheduler.Priority pPriority) {
+        return new PickPipeline<>(this.mStages, this.mExecutor, pPriority);
+    }
+
+    /**
+     * Runs the pipeline for given image
+     *
+     * @param pContext     app {@link Context}
+     * @param pPickSource  source of the image, passed to callback
+     * @param pRequestType request type, passed to callback
+     * @param pImageUri    picked image
+     * @param pCallback    result callback, triggered on main thread
+     */
+    public void process(@NonNull final Context pContext, @NonNull final PickSource pPickSource, final int pRequestType,
+                        @NonNull final Uri pImageUri, @NonNull final Callback<? super T> pCallback) {
+        new Run<>(this, pContext.getApplicationContext(), pPickSource, pRequestType, pImageUri, pCallback, null).schedule(0, pImageUri);
+    }
+
+    /**
+     * Runs the pipeline for several images, at most {@code pMaxParallelism} of them at a time.
+     * Results are delivered as soon as each image is processed, not after the whole batch
+     *
+     * @param pContext        app {@link Context}
+     * @param pPickSource     source of the images, passed to callback
+     * @param pRequestType    request type, passed to callback
+     * @param pImageUris      picked images
+     * @param pMaxParallelism max number of images processed at the same time
+     * @param pCallback       batch callback, triggered on main thread
+     */
+    public void processBatch(@NonNull final Context pContext, @NonNull final PickSource pPickSource, final int pRequestType,
+                             @NonNull final List<Uri> pImageUris, final int pMaxParallelism, @NonNull final BatchCallback<? super T> pCallback) {
+
+        if (pMaxParallelism <= 0) {
+            throw new IllegalArgumentException("Parallelism must be positive: " + pMaxParallelism);
+        }
+
+        new BatchRun<>(this, pContext.getApplicationContext(), pPickSource, pRequestType, new ArrayList<>(pImageUris), pCallback).start(
+                pMaxParallelism);
+
+    }
+
+    /**
+     * @param pContext  app {@link Context}
+     * @param pCallback pipeline result callback
+     * @return {@link QuickImagePick.Callback} that runs this pipeline for every picked image
+     */
+    @NonNull
+    public QuickImagePick.Callback asCallback(@NonNull final Context pContext, @NonNull final Callback<? super T> pCallback) {
+
+        final Context appContext = pContext.getApplicationContext();
+
+        return new QuickImagePick.Callback() {
+
+            @Override
+            public void onImagePicked(@NonNull final PickSource pPickSource, final int pRequestType, @NonNull final Uri pImageUri) {
+                process(appContext, pPickSource, pRequestType, pImageUri, pCallback);
+            }
+
+            @Override
+            public void onError(@NonNull final PickSource pPickSource, final int pRequestType, @NonNull final String pErrorString) {
+                pCallback.onError(pPickSource, pRequestType, pErrorString, null);
+            }
+
+            @Override
+            public void onCancel(@NonNull final PickSource pPickSource, final int pRequestType) {
+                pCallback.onCancel(pPickSource, pRequestType);
+            }
+
+        };
+    }
+
+    /**
+     * @param pContext        app {@link Context}
+     * @param pMaxParallelism max number of images processed at the same time
+     * @param pCallback       batch callback
+     * @return {@link QuickImagePick.MultipleCallback} that runs this pipeline for all picked images.
+     * Single image picks are processed as a batch of one
+     */
+    @NonNull
+    public QuickImagePick.MultipleCallback asMultipleCallback(@NonNull final Context pContext, final int pMaxParallelism,
+                                                              @NonNull final BatchCallback<? super T> pCallback) {
+
+        final Context appContext = pContext.getApplicationContext();
+
+        return new QuickImagePick.MultipleCallback() {
+
+            @Override
+            public void onImagesPicked(@NonNull final PickSource pPickSource, final int pRequestType, @NonNull final List<Uri> pImageUris) {
+                processBatch(appContext, pPickSource, pRequestType, pImageUris, pMaxParallelism, pCallback);
+            }
+
+            @Override
+            public void onImagePicked(@NonNull final PickSource pPickSource, final int pRequestType, @NonNull final Uri pImageUri) {
+                processBatch(appContext, pPickSource, pRequestType, Collections.singletonList(pImageUri), pMaxParallelism, pCallback);
+            }
+
+            @Override
+            public void onError(@NonNull final PickSource pPickSource, final int pRequestType, @NonNull final String pErrorString) {
+                pCallback.onError(pPickSource, pRequestType, pErrorString);
+            }
+
+            @Override
+            public void onCancel(@NonNull final PickSource pPickSource, final int pRequestType) {
+                pCallback.onCancel(pPickSource, pRequestType);
+            }
+
+        };
+    }
+
+    // ==== //
+
+    /**
+     * Single processing step. Called on a background thread
+     *
+     * @param <I> input type
+     * @param <O> output type
+     */
+    public interface Stage<I, O> {
+
+        /**
+         * @param pContext app {@link Context}
+         * @param pInput   output of previous stage, or picked {@link Uri} for the first stage
+         * @return stage output, must not be null
+         * @throws Exception processing error, reported to {@link Callback#onError(PickSource, int, String, Throwable)}
+         */
+        @NonNull
+        O process(@NonNull final Context pContext, @NonNull final I pInput)
+                throws Exception;
+
+    }
+
+    /**
+     * Callback for pipeline results. All methods are triggered on main thread
+     *
+     * @param <T> type of the result
+     */
+    public interface Callback<T> {
+
+        /**
+         * Triggered when all stages completed
+         *
+         * @param pPickSource  source from which image was retrieved
+         * @param pRequestType request type that was (optionally) set when starting pick flow
+         * @param pResult      output of the last stage
+         */
+        void onResult(@NonNull final PickSource pPickSource, final int pRequestType, @NonNull final T pResult);
+
+        /**
+         * Triggered when pick or one of the stages failed
+         *
+         * @param pPickSource  source from which image was retrieved
+         * @param pRequestType request type that was (optionally) set when starting pick flow
+         * @param pErrorString error string describing the error. One of public {@code ERR_} constants in {@link QuickImagePick} class
+         * @param pCause       exception thrown by a stage, null for pick errors
+         */
+        void onError(@NonNull final PickSource pPickSource, final int pRequestType, @NonNull final String pErrorString,
+                     @Nullable final Throwable pCause);
+
+        /**
+         * Triggered when picking flow was cancelled (mostly by user)
+         *
+         * @param pPickSource  source from which image was retrieved
+         * @param pRequestType request type that was (optionally) set when starting pick flow
+         */
+        void onCancel(@NonNull final PickSource pPickSource, final int pRequestType);
+
+    }
+
+    /**
+     * Callback for batch processing results. All methods are triggered on main thread
+     *
+     * @param <T> type of the result
+     */
+    public interface BatchCallback<T> {
+
+        /**
+         * Triggered when an image of the batch was processed
+         *
+         * @param pPickSource  source from which images were retrieved
+         * @param pRequestType request type that was (optionally) set when starting pick flow
+         * @param pIndex       index of the image in the batch
+         * @param pImageUri    picked image
+         * @param pResult      output of the last stage
+         */
+        void onItemResult(@NonNull final PickSource pPickSource, final int pRequestType, final int pIndex, @NonNull final Uri pImageUri,
+                          @NonNull final T pResult);
+
+        /**
+         * Triggered when one of the stages failed for an image of the batch. Other images are still processed
+         *
+         * @param pPickSource  source from which images were retrieved
+         * @param pRequestType request type that was (optionally) set when starting pick flow
+         * @param pIndex       index of the image in the batch
+         * @param pImageUri    picked image
+         * @param pCause       exception thrown by a stage
+         */
+        void onItemError(@NonNull final PickSource pPickSource, final int pRequestType, final int pIndex, @NonNull final Uri pImageUri,
+                         @NonNull final Throwable pCause);
+
+        /**
+         * Triggered after all images of the batch were delivered to {@code onItemResult(...)} or {@code onItemError(...)}
+         *
+         * @param pPickSource  source from which images were retrieved
+         * @param pRequestType request type that was (optionally) set when starting pick flow
+         * @param pSucceeded   number of successfully processed images
+         * @param pFailed      number of images that failed
+         */
+        void onBatchComplete(@NonNull final PickSource pPickSource, final int pRequestType, final int pSucceeded, final int pFailed);
+
+        /**
+         * Triggered when pick itself failed
+         *
+         * @param pPickSource  source from which images were retrieved
+         * @param pRequestType request type that was (optionally) set when starting pick flow
+         * @param pErrorString error string describing the error. One of public {@code ERR_} constants in {@link QuickImagePick} class
+         */
+        void onError(@NonNull final PickSource pPickSource, final int pRequestType, @NonNull final String pErrorString);
+
+        /**
+         * Triggered when picking flow was cancelled (mostly by user)
+         *
+         * @param pPickSource  source from which images were retrieved
+         * @param pRequestType request type that was (optionally) set when starting pick flow
+         */
+        void onCancel(@NonNull final PickSource pPickSource, final int pRequestType);
+
+    }
+
+    // ==== //
+
+    private static final class BatchRun<T> {
+
+        private final PickPipeline<T>          mPipeline;
+        private final Context                  mContext;
+        private final PickSource               mPickSource;
+        private final int                      mRequestType;
+        private final List<Uri>                mImageUris;
+        private final BatchCallback<? super T> mCallback;
+
+        private final AtomicInteger mNextIndex = new AtomicInteger();
+        private final AtomicInteger mRemaining;
+
+        // later images are started from processing threads, they are attributed to the session the batch started in
+        private final int mSessionId = PickMetrics.currentSession();
+
+        private final Runnable mStartNext = new Runnable() {
+
+            @Override
+            public void run() {
+
+                if (mRemaining.decrementAndGet() == 0) {
+                    deliverComplete();
+                } else {
+                    startNext();
+                }
+
+            }
+
+        };
+
+        // main thread only
+        private int mSucceeded;
+        private int mFailed;
+
+        BatchRun(@NonNull final PickPipeline<T> pPipeline, @NonNull final Context pContext, @NonNull final PickSource pPickSource,
+                 final int pRequestType, @NonNull final List<Uri> pImageUris, @NonNull final BatchCallback<? super T> pCallback) {
+
+            this.mPipeline = pPipeline;
+            this.mContext = pContext;
+            this.mPickSource = pPickSource;
+            this.mRequestType = pRequestType;
+            this.mImageUris = pImageUris;
+            this.mCallback = pCallback;
+
+            this.mRemaining = new AtomicInteger(pImageUris.size());
+
+        }
+
+        void start(final int pMaxParallelism) {
+
+            if (this.mImageUris.isEmpty()) {
+
+                this.deliverComplete();
+
+                return;
+            }
+
+            final int initial = Math.min(pMaxParallelism, this.mImageUris.size());
+            for (int i = 0; i < initial; i++) {
+                this.startNext();
+            }
+
+        }
+
+        // each finished image starts the next one, so at most pMaxParallelism images are in flight
+        private void startNext() {
+
+            final int index = this.mNextIndex.getAndIncrement();
+            if (index >= this.mImageUris.size()) {
+                return;
+            }
+
+            final Uri uri = this.mImageUris.get(index);
+
+            final Callback<T> itemCallback = new Callback<T>() {
+
+                @Override
+                public void onResult(@NonNull final PickSource pPickSource, final int pRequestType, @NonNull final T pResult) {
+
+                    mSucceeded++;
+
+                    mCallback.onItemResult(pPickSource, pRequestType, index, uri, pResult);
+
+                }
+
+                @Override
+                public void onError(@NonNull final PickSource pPickSource, final int pRequestType, @NonNull final String pErrorString,
+                                    @Nullable final Throwable pCause) {
+
+                    mFailed++;
+
+                    mCallback.onItemError(pPickSource, pRequestType, index, uri,
+                            pCause == null ? new IllegalStateException(pErrorString) : pCause);
+
+                }
+
+                @Override
+                public void onCancel(@NonNull final PickSource pPickSource, final int pRequestType) {
+                    // not triggered by pipeline runs
+                }
+
+            };
+
+            final int previousSessionId = PickMetrics.enterSession(this.mSessionId);
+            try {
+                new Run<>(this.mPipeline, this.mContext, this.mPickSource, this.mRequestType, uri, itemCallback, this.mStartNext).schedule(0,
+                        uri);
+            } finally {
+                PickMetrics.exitSession(previousSessionId);
+            }
+
+        }
+
+        private void deliverComplete() {
+
+            PickExecutors.mainHandler()
+                         .post(new Runnable() {
+
+                             @Override
+                             public void run() {
+                                 mCallback.onBatchComplete(mPickSource, mRequestType, mSucceeded, mFailed);
+                             }
+
+                         });
+
+        }
+
+    }
+
+    private static final class Run<T> {
+
+        private final PickPipeline<T>     mPipeline;
+        private final Context             mContext;
+        private final PickSource          mPickSource;
+        private final int                 mRequestType;
+        private final Callback<? super T> mCallback;
+        private final Runnable            mOnFinished;
+
+        // null when running on a custom executor
+        private final PickScheduler.Job mJob;
+
+        // metrics: runs are created on the thread that handles the pick result
+        private final int  mSessionId  = PickMetrics.currentSession();
+        private final long mStartNanos  = PickMetrics.start();
+
+        Run(@NonNull final PickPipeline<T> pPipeline, @NonNull final Context pContext, @NonNull final PickSource pPickSource,
+            final int pRequestType, @NonNull final Uri pImageUri, @NonNull final Callback<? super T> pCallback,
+            @Nullable final Runnable pOnFinished) {
+
+            this.mPipeline = pPipeline;
+            this.mContext = pContext;
+            this.mPickSource = pPickSource;
+            this.mRequestType = pRequestType;
+            this.mCallback = pCallback;
+            this.mOnFinished = pOnFinished;
+
+            this.mJob = pPipeline.mExecutor == null ? PickScheduler.get()
+                                                                   .newJob(pImageUri, pPipeline.mPriority) : null;
+
+        }
+
+        void schedule(final int pStageIndex, @NonNull final Object pInput) {
+
+            if (pStageIndex == this.mPipeline.mStages.size()) {
+
+                this.deliverResult(pInput);
+                this.finish();
+
+                return;
+            }
+
+            final Runnable task = new Runnable() {
+
+                @Override
+                public void run() {
+                    runStage(pStageIndex, pInput);
+                }
+
+            };
+
+            if (this.mJob == null) {
+                this.mPipeline.mExecutor.execute(task);
+            } else {
+                PickScheduler.get()
+                             .submit(this.mJob, task);
+            }
+
+        }
+
+        @SuppressWarnings("unchecked")
+        private void runStage(final int pStageIndex, @NonNull final Object pInput) {
+
+            final Stage<Object, Object> stage = (Stage<Object, Object>) this.mPipeline.mStages.get(pStageIndex);
+
+            final long start = PickMetrics.start();
+            final int previousSessionId = PickMetrics.enterSession(this.mSessionId);
+            PickMetrics.beginSection("QIP stage");
+
+            final Object output;
+            try {
+                output = stage.process(this.mContext, pInput);
+            } catch (final Throwable e) {
+
+                this.deliverError(e);
+                this.finish();
+
+                return;
+            } finally {
+
+                PickMetrics.endSection();
+                PickMetrics.exitSession(previousSessionId);
+                PickMetrics.step(this.mSessionId, PickMetrics.STEP_STAGE, start);
+
+            }
+
+            if (output == null) {
+
+                this.deliverError(new NullPointerException("Stage " + stage + " returned null"));
+                this.finish();
+
+                return;
+            }
+
+            this.schedule(pStageIndex + 1, output);
+
+        }
+
+        // called after delivery is posted, so anything posted by mOnFinished is delivered after the result
+        private void finish() {
+
+            PickMetrics.step(this.mSessionId, PickMetrics.STEP_PIPELINE, this.mStartNanos);
+
+            if (this.mJob != null) {
+                PickScheduler.get()
+                             .finish(this.mJob);
+            }
+
+            if (this.mOnFinished != null) {
+                this.mOnFinished.run();
+            }
+
+        }
+
+        private void deliverResult(@NonNull final Object pResult) {
+
+            PickExecutors.mainHandler()
+                         .post(new Runnable() {
+
+                             @SuppressWarnings("unchecked")
+                             @Override
+                             public void run() {
+                                 mCallback.onResult(mPickSource, mRequestType, (T) pResult);
+                             }
+
+                         });
+
+        }
+
+        private void deliverError(@NonNull final Throwable pCause) {
+
+            PickExecutors.mainHandler()
+                         .post(new Runnable() {
+
+                             @Override
+                             public void run() {
+                                 mCallback.onError(mPickSource, mRequestType, QuickImagePick.ERR_PROCESSING_FAILED, pCause);
+                             }
+
+                         });
+
+        }
+
+    }
+
+}
@@ -0,0 +1,507 @@
+package com.aviadmini.quickimagepick;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Priority lanes for post-pick work on the library processing threads. Each task waits in the lane of its {@link Priority}
+ * and a free thread always takes the oldest task of the highest non-empty lane.
+ * <br>
+ * Multi-stage work ({@link PickPipeline} runs, progressive decodes) submits each stage as a separate task, so it yields
+ * between stages to anything more urgent that arrived meanwhile. Background tasks never occupy all threads (unless there is
+ * a single one), so visible work waits at most for one stage to finish.
+ * <br>
+ * Work is tagged with the picked image {@link android.net.Uri}: {@link #promote(Object, Priority)} moves queued and future stages
+ * of that work to a higher lane, e.g. when the user opens an image that is still being processed in background.
+ * Queue depths and wait times are available per lane, waits are also reported as {@link PickMetrics#STEP_QUEUE_WAIT}.
+ */
+@SuppressWarnings("unused")
+public final class PickScheduler {
+
+    /**
+     * Lanes, most urgent first
+     */
+    public enum Priority {
+
+        /**
+         * Work the user is looking at right now: previews, thumbnails and tiles on screen
+         */
+        VISIBLE,
+
+        /**
+         * Work the user started and waits for: processing of a picked image
+         */
+        USER_INITIATED,
+
+        /**
+         * Work nobody waits for: uploads, cache warming
+         */
+        BACKGROUND
+
+    }
+
+    private static final Priority[] PRIORITIES = Priority.values();
+
+    private static volatile PickScheduler sInstance;
+
+    @NonNull
+    public static PickScheduler get() {
+
+        PickScheduler instance = sInstance;
+        if (instance == null) {
+
+            synchronized (PickScheduler.class) {
+
+                instance = sInstance;
+                if (instance == null) {
+                    instance = sInstance = new PickScheduler(PickExecutors.coreCount());
+                }
+
+            }
+
+        }
+
+        return instance;
+    }
+
+    private final Object mLock = new Object();
+
+    private final int mMaxThreads;
+    private final int mMaxBackgroundThreads;
+
+    // guarded by mLock
+    private final ArrayDeque<Entry>[] mLanes;
+    private final Set<Job>            mJobs = new HashSet<>();
+    private final int[]               mRunning;
+    private final long[]              mCompleted;
+    private final long[]              mTotalWaitNanos;
+    private final long[]              mMaxWaitNanos;
+    private int                       mPumps;
+
+    private final Runnable mPump = new Runnable() {
+
+        @Override
+        public void run() {
+            pump();
+        }
+
+    };
+
+    @SuppressWarnings("unchecked")
+    private PickScheduler(final int pMaxThreads) {
+
+        this.mMaxThreads = pMaxThreads;
+        this.mMaxBackgroundThreads = Math.max(1, pMaxThreads - 1);
+
+        this.mLanes = new ArrayDeque[PRIORITIES.length];
+        for (int i = 0; i < this.mLanes.length; i++) {
+            this.mLanes[i] = new ArrayDeque<>();
+        }
+
+        this.mRunning = new int[PRIORITIES.length];
+        this.mCompleted = new long[PRIORITIES.length];
+        this.mTotalWaitNanos = new long[PRIORITIES.length];
+        this.mMaxWaitNanos = new long[PRIORITIES.length];
+
+    }
+
+    // ==== SUBMIT ==== //
+
+    /**
+     * Runs single task in given lane
+     *
+     * @param pPriority lane
+     * @param pTag      tag for {@link #promote(Object, Priority)}, usually image {@link android.net.Uri}, or null
+     * @param pTask     task
+     */
+    public void execute(@NonNull final Priority pPriority, @Nullable final Object pTag, @NonNull final Runnable pTask) {
+        this.submit(this.newJob(pTag, pPriority), pTask, true);
+    }
+
+    /**
+     * @return job for work made of several tasks, must be passed to {@link #finish(Job)} after its last task
+     */
+    @NonNull
+    Job newJob(@Nullable final Object pTag, @NonNull final Priority pPriority) {
+
+        final Job job = new Job(pTag, pPriority);
+
+        synchronized (this.mLock) {
+            this.mJobs.add(job);
+        }
+
+        return job;
+    }
+
+    /**
+     * Queues next task of given job in the lane of its current priority
+     */
+    void submit(@NonNull final Job pJob, @NonNull final Runnable pTask) {
+        this.submit(pJob, pTask, false);
+    }
+
+    void finish(@NonNull final Job pJob) {
+
+        synchronized (this.mLock) {
+            this.mJobs.remove(pJob);
+        }
+
+    }
+
+    // ==== PROMOTION ==== //
+
+    /**
+     * Moves work with given tag to given lane, if it is in a lower one. Already queued tasks move right away,
+     * later tasks of the same work are queued in the new lane
+     *
+     * @param pTag      tag the work was submitted with, e.g. image {@link android.net.Uri}
+     * @param pPriority new lane
+     * @return number of promoted jobs
+     */
+    public int promote(@NonNull final Object pTag, @NonNull final Priority pPriority) {
+
+        int promoted = 0;
+        synchronized (this.mLock) {
+
+            for (final Job job : this.mJobs) {
+
+                if (pTag.equals(job.mTag) && pPriority.ordinal() < job.mPriority.ordinal()) {
+
+                    job.mPriority = pPriority;
+
+                    promoted++;
+
+                }
+
+            }
+
+            if (promoted == 0) {
+                return 0;
+            }
+
+            final List<Entry> moved = new ArrayList<>();
+            for (int lane = pPriority.ordinal() + 1; lane < this.mLanes.length; lane++) {
+
+                final Iterator<Entry> iterator = this.mLanes[lane].iterator();
+                while (iterator.hasNext()) {
+
+                    final Entry entry = iterator.next();
+                    if (entry.mJob.mPriority.ordinal() != lane) {
+
+                        iterator.remove();
+
+                        moved.add(entry);
+
+                    }
+
+                }
+
+            }
+
+            for (final Entry entry : moved) {
+                this.mLanes[entry.mJob.mPriority.ordinal()].addLast(entry);
+            }
+
+        }
+
+        // promoted background tasks may have been held back by the background limit
+        this.ensurePump();
+
+        return promoted;
+    }
+
+    // ==== STATS ==== //
+
+    /**
+     * @return number of tasks waiting in given lane
+     */
+    public int getQueueDepth(@NonNull final Priority pPriority) {
+
+        synchronized (this.mLock) {
+            return this.mLanes[pPriority.ordinal()].size();
+        }
+
+    }
+
+    /**
+     * @return number of tasks of given lane running right now
+     */
+    public int getRunningCount(@NonNull final Priority pPriority) {
+
+        synchronized (this.mLock) {
+            return this.mRunning[pPriority.ordinal()];
+        }
+
+    }
+
+    /**
+     * @return number of tasks that ran in given lane
+     */
+    public long getCompletedCount(@NonNull final Priority pPriority) {
+
+        synchronized (this.mLock) {
+            return this.mCompleted[pPriority.ordinal()];
+        }
+
+    }
+
+    /**
+     * @return average time tasks of given lane waited before they started, 0 if none ran yet
+     */
+    public long getAverageWaitNanos(@NonNull final Priority pPriority) {
+
+        synchronized (this.mLock) {
+
+            final int lane = pPriority.ordinal();
+
+            return this.mCompleted[lane] == 0 ? 0 : this.mTotalWaitNanos[lane] / this.mCompleted[lane];
+        }
+
+    }
+
+    /**
+     * @return longest time a task of given lane waited before it started
+     */
+    public long getMaxWaitNanos(@NonNull final Priority pPriority) {
+
+        synchronized (this.mLock) {
+            return this.mMaxWaitNanos[pPriority.ordinal()];
+        }
+
+    }
+
+    /**
+     * Resets counts and wait times, queue depths are not affected
+     */
+    public void resetStats() {
+
+        synchronized (this.mLock) {
+
+            for (int i = 0; i < PRIORITIES.length; i++) {
+
+                this.mCompleted[i] = 0;
+                this.mTotalWaitNanos[i] = 0;
+                this.mMaxWaitNanos[i] = 0;
+
+            }
+
+        }
+
+    }
+
+    @Override
+    public String toString() {
+
+        final StringBuilder builder = new StringBuilder("PickScheduler{");
+
+        synchronized (this.mLock) {
+
+            for (int i = 0; i < PRIORITIES.length; i++) {
+
+                builder.append(i == 0 ? "" : ", ")
+                       .append(PRIORITIES[i])
+                       .append("=")
+                       .append(this.mLanes[i].size())
+                       .append(" queued/")
+                       .append(this.mRunning[i])
+                       .append(" running");
+
+            }
+
+        }
+
+        return builder.append('}')
+                      .toString();
+    }
+
+    // ==== //
+
+    private void submit(@NonNull final Job pJob, @NonNull final Runnable pTask, final boolean pFinishesJob) {
+
+        final Entry entry = new Entry(pJob, pTask, pFinishesJob);
+
+        synchronized (this.mLock) {
+            this.mLanes[pJob.mPriority.ordinal()].addLast(entry);
+        }
+
+        this.ensurePump();
+
+    }
+
+    /**
+     * Starts pumps for tasks that can run now, up to thread count
+     */
+    private void ensurePump() {
+
+        final int started;
+        synchronized (this.mLock) {
+
+            int running = 0;
+            for (final int count : this.mRunning) {
+                running += count;
+            }
+
+            // pumps not running a task are about to take one
+            started = Math.min(this.mMaxThreads - this.mPumps, this.runnableCount() - (this.mPumps - running));
+            if (started <= 0) {
+                return;
+            }
+
+            this.mPumps += started;
+
+        }
+
+        for (int i = 0; i < started; i++) {
+            PickExecutors.processing()
+                         .execute(this.mPump);
+        }
+
+    }
+
+    /**
+     * Runs one task, then goes to the back of the processing queue if there is more work, so that other processing tasks are not starved
+     */
+    private void pump() {
+
+        final Entry entry;
+        final int lane;
+        synchronized (this.mLock) {
+
+            entry = this.poll();
+            if (entry == null) {
+
+                this.mPumps--;
+
+                return;
+            }
+
+            lane = entry.mJob.mPriority.ordinal();
+
+            this.mRunning[lane]++;
+
+        }
+
+        final long waitNanos = System.nanoTime() - entry.mQueuedAtNanos;
+
+        PickMetrics.step(entry.mSessionId, PickMetrics.STEP_QUEUE_WAIT, entry.mMetricsStartNanos);
+
+        try {
+            entry.mTask.run();
+        } finally {
+
+            if (entry.mFinishesJob) {
+                this.finish(entry.mJob);
+            }
+
+            final boolean more;
+            synchronized (this.mLock) {
+
+                this.mRunning[lane]--;
+                this.mCompleted[lane]++;
+                this.mTotalWaitNanos[lane] += waitNanos;
+                this.mMaxWaitNanos[lane] = Math.max(this.mMaxWaitNanos[lane], waitNanos);
+
+                more = this.runnableCount() > 0;
+                if (!more) {
+                    this.mPumps--;
+                }
+
+            }
+
+            if (more) {
+                PickExecutors.processing()
+                             .execute(this.mPump);
+            }
+
+        }
+
+    }
+
+    // guarded by mLock
+    @Nullable
+    private Entry poll() {
+
+        for (int lane = 0; lane < this.mLanes.length; lane++) {
+
+            if (lane == Priority.BACKGROUND.ordinal() && this.mRunning[lane] >= this.mMaxBackgroundThreads) {
+                return null;
+            }
+
+            final Entry entry = this.mLanes[lane].pollFirst();
+            if (entry != null) {
+                return entry;
+            }
+
+        }
+
+        return null;
+    }
+
+    /**
+     * @return number of queued tasks that may start now
+     */
+    // guarded by mLock
+    private int runnableCount() {
+
+        int count = 0;
+        for (int lane = 0; lane < this.mLanes.length; lane++) {
+
+            if (lane == Priority.BACKGROUND.ordinal()) {
+                count += Math.min(this.mLanes[lane].size(), Math.max(0, this.mMaxBackgroundThreads - this.mRunning[lane]));
+            } else {
+                count += this.mLanes[lane].size();
+            }
+
+        }
+
+        return count;
+    }
+
+    // ==== //
+
+    /**
+     * Work made of one or more tasks that share priority and tag
+     */
+    static final class Job {
+
+        private final Object mTag;
+
+        // guarded by scheduler lock
+        private Priority mPriority;
+
+        Job(@Nullable final Object pTag, @NonNull final Priority pPriority) {
+
+            this.mTag = pTag;
+            this.mPriority = pPriority;
+
+        }
+
+    }
+
+    private static final class Entry {
+
+        final Job      mJob;
+        final Runnable mTask;
+        final boolean  mFinishesJob;
+        final long     mQueuedAtNanos     = System.nanoTime();
+        final int      mSessionId         = PickMetrics.currentSession();
+        final long     mMetricsStartNanos = PickMetrics.start();
+
+        Entry(@NonNull final Job pJob, @NonNull final Runnable pTask, final boolean pFinishesJob) {
+
+            this.mJob = pJob;
+            this.mTask = pTask;
+            this.mFinishesJob = pFinishesJob;
+
+        }
+
+    }
+
+}
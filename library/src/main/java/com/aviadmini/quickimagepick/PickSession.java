@@ -0,0 +1,128 @@
+package com.aviadmini.quickimagepick;
+
+import android.net.Uri;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.aviadmini.quickimagepick.core.RequestCodes;
+
+/**
+ * Handle of a single in-flight pick, returned by {@code pickFrom...} methods.
+ * Several sessions can be in flight at the same time, each keeps its own request type and camera output.
+ */
+@SuppressWarnings("unused")
+public final class PickSession {
+
+    static final int KIND_CAMERA    = RequestCodes.KIND_CAMERA;
+    static final int KIND_GALLERY   = RequestCodes.KIND_GALLERY;
+    static final int KIND_DOCUMENTS = RequestCodes.KIND_DOCUMENTS;
+    static final int KIND_MULTIPLE  = RequestCodes.KIND_MULTIPLE;
+
+    static final int SLOT_COUNT = RequestCodes.SLOT_COUNT;
+    static final int SLOT_MASK  = RequestCodes.SLOT_MASK;
+
+    private final int          mId;
+    private final int          mKind;
+    private final int          mRequestType;
+    private final Uri          mOutputUri;
+    private final PickSource[] mPickSources;
+    private final boolean      mAllowMultiple;
+
+    // in-memory only, 0 for sessions restored from journal or when metrics are off
+    private final long mStartedAtNanos;
+
+    PickSession(final int pId, final int pKind, final int pRequestType, @Nullable final Uri pOutputUri, final boolean pAllowMultiple,
+                final long pStartedAtNanos, @NonNull final PickSource... pPickSources) {
+
+        this.mId = pId;
+        this.mKind = pKind;
+        this.mRequestType = pRequestType;
+        this.mOutputUri = pOutputUri;
+        this.mAllowMultiple = pAllowMultiple;
+        this.mPickSources = pPickSources;
+        this.mStartedAtNanos = pStartedAtNanos;
+
+    }
+
+    /**
+     * @return unique (within app process and its restores) id of this session
+     */
+    public int getId() {
+        return this.mId;
+    }
+
+    /**
+     * @return request code this session was started with. Same value is passed to {@code onActivityResult(...)}
+     */
+    public int getRequestCode() {
+        return toRequestCode(this.mKind, this.mId);
+    }
+
+    /**
+     * @return request type that was (optionally) set when starting pick flow
+     */
+    public int getRequestType() {
+        return this.mRequestType;
+    }
+
+    /**
+     * @return sources offered to user in this session
+     */
+    @NonNull
+    public PickSource[] getPickSources() {
+        return this.mPickSources.clone();
+    }
+
+    /**
+     * @return {@link Uri} camera apps write the picture to, or null if camera was not offered
+     */
+    @Nullable
+    public Uri getOutputUri() {
+        return this.mOutputUri;
+    }
+
+    /**
+     * @return true if user is allowed to pick several images in this session
+     */
+    public boolean isAllowMultiple() {
+        return this.mAllowMultiple;
+    }
+
+    int getKind() {
+        return this.mKind;
+    }
+
+    int getSlot() {
+        return this.mId & SLOT_MASK;
+    }
+
+    long getStartedAtNanos() {
+        return this.mStartedAtNanos;
+    }
+
+    // ==== REQUEST CODES ==== //
+
+    static int toRequestCode(final int pKind, final int pId) {
+        return RequestCodes.toRequestCode(pKind, pId);
+    }
+
+    static boolean isRequestCode(final int pRequestCode) {
+        return RequestCodes.isRequestCode(pRequestCode);
+    }
+
+    static int kindOf(final int pRequestCode) {
+        return RequestCodes.kindOf(pRequestCode);
+    }
+
+    static int slotOf(final int pRequestCode) {
+        return RequestCodes.slotOf(pRequestCode);
+    }
+
+    // ==== //
+
+    @Override
+    public String toString() {
+        return "PickSession{id=" + this.mId + ", requestCode=" + this.getRequestCode() + ", requestType=" + this.mRequestType + '}';
+    }
+
+}
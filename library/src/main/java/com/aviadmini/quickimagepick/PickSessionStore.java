@@ -0,0 +1,588 @@
+package com.aviadmini.quickimagepick;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.net.Uri;
+import android.preference.PreferenceManager;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Pick state holder: in-flight {@link PickSession}s and camera settings. State lives in memory and is mirrored to a small library-private binary journal
+ * on a background thread. The journal is only read when memory is empty, i.e. after process death. It is read on the prep thread
+ * (see {@link PickExecutors#prep()}) as soon as the store is created, main thread only waits for it if first access comes before
+ * the read is done, and then only for the read itself.
+ * <br>
+ * If there is no journal yet, camera settings that earlier versions kept in default shared preferences are moved into it on that read.
+ */
+final class PickSessionStore {
+
+    private static final String JOURNAL_FILE_NAME = "qip_pick_session.journal";
+
+    private static final int JOURNAL_MAGIC   = 0x51495053; // QIPS
+    private static final int JOURNAL_VERSION = 4;
+
+    // state kept in default shared preferences by versions before the journal, migrated once
+    private static final String LEGACY_PREFS_REQUEST_TYPE    = "req_type";
+    private static final String LEGACY_PREFS_LAST_CAMERA_URI = "last_cam_uri";
+    private static final String LEGACY_PREFS_CAMERA_DIR      = "cam_dir";
+
+    private static volatile PickSessionStore sInstance;
+
+    @NonNull
+    static PickSessionStore get(@NonNull final Context pContext) {
+
+        PickSessionStore instance = sInstance;
+        if (instance == null) {
+
+            synchronized (PickSessionStore.class) {
+
+                instance = sInstance;
+                if (instance == null) {
+
+                    instance = sInstance = new PickSessionStore(pContext.getApplicationContext());
+
+                    // main thread only waits for it on first access
+                    instance.scheduleLoad();
+
+                }
+
+            }
+
+        }
+
+        return instance;
+    }
+
+    /**
+     * Store of its own journal, not shared with {@link #get(Context)}. Reads the journal right away, as {@link #get(Context)} does
+     * on first call, so a new instance behaves like the store after process start. Used by tests
+     */
+    @NonNull
+    static PickSessionStore newInstance(@NonNull final Context pContext, @NonNull final File pJournalFile) {
+
+        final PickSessionStore store = new PickSessionStore(pContext.getApplicationContext());
+        store.mJournalFile = pJournalFile;
+
+        store.scheduleLoad();
+
+        return store;
+    }
+
+    private final Context mAppContext;
+
+    private final AtomicBoolean mWritePending = new AtomicBoolean();
+
+    private final Object mLock = new Object();
+
+    private final FutureTask<Journal> mJournalTask = new FutureTask<>(new Callable<Journal>() {
+
+        @Override
+        public Journal call() {
+            return readJournal();
+        }
+
+    });
+
+    private volatile File mJournalFile;
+
+    private volatile boolean mLoaded;
+
+    // sessions are indexed by slot encoded in request code, so result lookup is O(1)
+    private final PickSession[] mSessions = new PickSession[PickSession.SLOT_COUNT];
+
+    private int     mNextSessionId;
+    private String  mLastCameraUri;
+    private String  mCameraDir;
+    private boolean mCameraToMediaStore;
+
+    private PickSessionStore(@NonNull final Context pAppContext) {
+        this.mAppContext = pAppContext;
+    }
+
+    // ==== SESSIONS ==== //
+
+    @NonNull
+    PickSession newSession(final int pKind, final int pRequestType, @Nullable final Uri pOutputUri, final boolean pAllowMultiple,
+                           @NonNull final PickSource... pPickSources) {
+
+        final PickSession session;
+        this.ensureLoaded();
+
+        synchronized (this.mLock) {
+
+            session = new PickSession(this.mNextSessionId++, pKind, pRequestType, pOutputUri, pAllowMultiple, PickMetrics.start(),
+                    pPickSources);
+
+            // oldest abandoned session in the same slot is dropped
+            this.mSessions[session.getSlot()] = session;
+
+            if (pOutputUri != null) {
+                this.mLastCameraUri = pOutputUri.toString();
+            }
+
+        }
+
+        this.scheduleWrite();
+
+        return session;
+    }
+
+    /**
+     * Removes and returns the session started with given request code
+     */
+    @Nullable
+    PickSession takeSession(final int pRequestCode) {
+
+        final PickSession session;
+        this.ensureLoaded();
+
+        synchronized (this.mLock) {
+
+            final int slot = PickSession.slotOf(pRequestCode);
+
+            session = this.mSessions[slot];
+            if (session == null || session.getRequestCode() != pRequestCode) {
+                return null;
+            }
+
+            this.mSessions[slot] = null;
+
+        }
+
+        this.scheduleWrite();
+
+        return session;
+    }
+
+    @Nullable
+    PickSession peekSession(final int pRequestCode) {
+
+        this.ensureLoaded();
+
+        synchronized (this.mLock) {
+
+            final PickSession session = this.mSessions[PickSession.slotOf(pRequestCode)];
+
+            return session == null || session.getRequestCode() != pRequestCode ? null : session;
+        }
+
+    }
+
+    boolean isSessionLive(final int pSessionId) {
+
+        this.ensureLoaded();
+
+        synchronized (this.mLock) {
+
+            final PickSession session = this.mSessions[pSessionId & PickSession.SLOT_MASK];
+
+            return session != null && session.getId() == pSessionId;
+        }
+
+    }
+
+    void discardSession(final int pSessionId) {
+
+        this.ensureLoaded();
+
+        synchronized (this.mLock) {
+
+            final int slot = pSessionId & PickSession.SLOT_MASK;
+
+            final PickSession session = this.mSessions[slot];
+            if (session == null || session.getId() != pSessionId) {
+                return;
+            }
+
+            this.mSessions[slot] = null;
+
+        }
+
+        this.scheduleWrite();
+
+    }
+
+    // ==== STATE ==== //
+
+    @Nullable
+    String getLastCameraUri() {
+
+        this.ensureLoaded();
+
+        synchronized (this.mLock) {
+
+            return this.mLastCameraUri;
+        }
+
+    }
+
+    @Nullable
+    String getCameraDir() {
+
+        this.ensureLoaded();
+
+        synchronized (this.mLock) {
+
+            return this.mCameraDir;
+        }
+
+    }
+
+    void putCameraDir(@Nullable final String pCameraDir) {
+
+        this.ensureLoaded();
+
+        synchronized (this.mLock) {
+
+            this.mCameraDir = pCameraDir;
+
+        }
+
+        this.scheduleWrite();
+
+    }
+
+    boolean isCameraToMediaStore() {
+
+        this.ensureLoaded();
+
+        synchronized (this.mLock) {
+
+            return this.mCameraToMediaStore;
+        }
+
+    }
+
+    void putCameraToMediaStore(final boolean pCameraToMediaStore) {
+
+        this.ensureLoaded();
+
+        synchronized (this.mLock) {
+
+            this.mCameraToMediaStore = pCameraToMediaStore;
+
+        }
+
+        this.scheduleWrite();
+
+    }
+
+    // ==== JOURNAL ==== //
+
+    private void scheduleLoad() {
+
+        PickExecutors.prep()
+                     .execute(this.mJournalTask);
+
+    }
+
+    // must not be called while holding mLock: prep tasks queued before the journal read may need it
+    private void ensureLoaded() {
+
+        if (this.mLoaded) {
+            return;
+        }
+
+        Journal journal = null;
+        try {
+            journal = PickExecutors.join(this.mJournalTask);
+        } catch (final ExecutionException ignored) {
+        }
+
+        synchronized (this.mLock) {
+
+            if (this.mLoaded) {
+                return;
+            }
+
+            if (journal != null) {
+
+                this.mNextSessionId = journal.mNextSessionId;
+                this.mLastCameraUri = journal.mLastCameraUri;
+                this.mCameraDir = journal.mCameraDir;
+                this.mCameraToMediaStore = journal.mCameraToMediaStore;
+
+                for (final PickSession session : journal.mSessions) {
+                    this.mSessions[session.getSlot()] = session;
+                }
+
+            }
+
+            this.mLoaded = true;
+
+        }
+
+    }
+
+    @Nullable
+    private Journal readJournal() {
+
+        PickStrictMode.onDiskAccess("pick session journal read");
+
+        final File file = this.getJournalFile();
+        if (!file.isFile()) {
+            return this.migrateLegacyPreferences();
+        }
+
+        DataInputStream in = null;
+        try {
+
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+
+            if (in.readInt() != JOURNAL_MAGIC || in.readInt() != JOURNAL_VERSION) {
+                return null;
+            }
+
+            final Journal journal = new Journal();
+
+            journal.mNextSessionId = in.readInt();
+            journal.mLastCameraUri = readNullableString(in);
+            journal.mCameraDir = readNullableString(in);
+            journal.mCameraToMediaStore = in.readBoolean();
+
+            final int sessionCount = in.readInt();
+            for (int i = 0; i < sessionCount; i++) {
+
+                final int id = in.readInt();
+                final int kind = in.readInt();
+                final int requestType = in.readInt();
+                final String outputUri = readNullableString(in);
+                final boolean allowMultiple = in.readBoolean();
+                final PickSource[] pickSources = pickSourcesFromMask(in.readInt());
+
+                journal.mSessions.add(new PickSession(id, kind, requestType, outputUri == null ? null : Uri.parse(outputUri),
+                        allowMultiple, 0, pickSources));
+
+            }
+
+            return journal;
+        } catch (final IOException e) {
+
+            // corrupted or truncated journal - start from scratch
+            return null;
+
+        } finally {
+            IoUtils.closeQuietly(in);
+        }
+
+    }
+
+    private void scheduleWrite() {
+
+        // coalesce: one pending write always picks up the latest state
+        if (!this.mWritePending.compareAndSet(false, true)) {
+            return;
+        }
+
+        PickExecutors.io()
+                     .execute(new Runnable() {
+
+                         @Override
+                         public void run() {
+
+                             mWritePending.set(false);
+
+                             writeJournal();
+
+                         }
+
+                     });
+
+    }
+
+    private void writeJournal() {
+
+        PickStrictMode.onDiskAccess("pick session journal write");
+
+        final Journal journal = new Journal();
+        synchronized (this.mLock) {
+
+            journal.mNextSessionId = this.mNextSessionId;
+            journal.mLastCameraUri = this.mLastCameraUri;
+            journal.mCameraDir = this.mCameraDir;
+            journal.mCameraToMediaStore = this.mCameraToMediaStore;
+
+            for (final PickSession session : this.mSessions) {
+
+                if (session != null) {
+                    journal.mSessions.add(session);
+                }
+
+            }
+
+        }
+
+        this.writeJournalFile(journal);
+
+    }
+
+    /**
+     * Moves camera settings from default shared preferences, where versions before the journal kept them, to the journal.
+     * Request type of a pick in progress is dropped: results of picks started by those versions are not recognized anyway
+     *
+     * @return migrated state, null if there was nothing to migrate
+     */
+    @Nullable
+    private Journal migrateLegacyPreferences() {
+
+        final SharedPreferences preferences = PreferenceManager.getDefaultSharedPreferences(this.mAppContext);
+        if (!preferences.contains(LEGACY_PREFS_CAMERA_DIR) && !preferences.contains(LEGACY_PREFS_LAST_CAMERA_URI)
+                && !preferences.contains(LEGACY_PREFS_REQUEST_TYPE)) {
+            return null;
+        }
+
+        final Journal journal = new Journal();
+        journal.mCameraDir = preferences.getString(LEGACY_PREFS_CAMERA_DIR, null);
+        journal.mLastCameraUri = preferences.getString(LEGACY_PREFS_LAST_CAMERA_URI, null);
+
+        // keys stay until the journal holds their values, so a failed write is retried on next start
+        if (this.writeJournalFile(journal)) {
+
+            preferences.edit()
+                       .remove(LEGACY_PREFS_CAMERA_DIR)
+                       .remove(LEGACY_PREFS_LAST_CAMERA_URI)
+                       .remove(LEGACY_PREFS_REQUEST_TYPE)
+                       .commit();
+
+        }
+
+        return journal;
+    }
+
+    /**
+     * @return true if journal was written
+     */
+    private boolean writeJournalFile(@NonNull final Journal pJournal) {
+
+        final File file = this.getJournalFile();
+        final File tmpFile = new File(file.getPath() + ".tmp");
+
+        DataOutputStream out = null;
+        try {
+
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)));
+
+            out.writeInt(JOURNAL_MAGIC);
+            out.writeInt(JOURNAL_VERSION);
+            out.writeInt(pJournal.mNextSessionId);
+            writeNullableString(out, pJournal.mLastCameraUri);
+            writeNullableString(out, pJournal.mCameraDir);
+            out.writeBoolean(pJournal.mCameraToMediaStore);
+
+            out.writeInt(pJournal.mSessions.size());
+            for (final PickSession session : pJournal.mSessions) {
+
+                final Uri outputUri = session.getOutputUri();
+
+                out.writeInt(session.getId());
+                out.writeInt(session.getKind());
+                out.writeInt(session.getRequestType());
+                writeNullableString(out, outputUri == null ? null : outputUri.toString());
+                out.writeBoolean(session.isAllowMultiple());
+                out.writeInt(pickSourcesToMask(session.getPickSources()));
+
+            }
+
+            out.close();
+            out = null;
+
+            return tmpFile.renameTo(file);
+        } catch (final IOException e) {
+
+            // journal is best-effort, in-memory state stays authoritative
+            //noinspection ResultOfMethodCallIgnored
+            tmpFile.delete();
+
+            return false;
+        } finally {
+            IoUtils.closeQuietly(out);
+        }
+
+    }
+
+    // prep or io thread, or the first caller off main thread
+    @NonNull
+    private File getJournalFile() {
+
+        File file = this.mJournalFile;
+        if (file == null) {
+            file = this.mJournalFile = new File(this.mAppContext.getFilesDir(), JOURNAL_FILE_NAME);
+        }
+
+        return file;
+    }
+
+    // ==== //
+
+    @Nullable
+    private static String readNullableString(@NonNull final DataInputStream pIn)
+            throws IOException {
+        return pIn.readBoolean() ? pIn.readUTF() : null;
+    }
+
+    private static void writeNullableString(@NonNull final DataOutputStream pOut, @Nullable final String pString)
+            throws IOException {
+
+        pOut.writeBoolean(pString != null);
+
+        if (pString != null) {
+            pOut.writeUTF(pString);
+        }
+
+    }
+
+    static int pickSourcesToMask(@NonNull final PickSource[] pPickSources) {
+
+        int mask = 0;
+        for (final PickSource source : pPickSources) {
+            mask |= 1 << source.ordinal();
+        }
+
+        return mask;
+    }
+
+    @NonNull
+    private static PickSource[] pickSourcesFromMask(final int pMask) {
+
+        final List<PickSource> result = new ArrayList<>();
+        for (final PickSource source : PickSource.values()) {
+
+            if ((pMask & (1 << source.ordinal())) != 0) {
+                result.add(source);
+            }
+
+        }
+
+        return result.toArray(new PickSource[result.size()]);
+    }
+
+    // ==== //
+
+    private static final class Journal {
+
+        int     mNextSessionId;
+        String  mLastCameraUri;
+        String  mCameraDir;
+        boolean mCameraToMediaStore;
+
+        final List<PickSession> mSessions = new ArrayList<>();
+
+    }
+
+}
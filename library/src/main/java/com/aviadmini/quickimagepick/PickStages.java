@@ -0,0 +1,451 @@
+package com.aviadmini.quickimagepick;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.net.Uri;
+import android.support.annotation.NonNull;
+
+import com.aviadmini.quickimagepick.core.JpegMetadataStripper;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.UUID;
+
+/**
+ * Built-in {@link PickPipeline.Stage}s, in the order they are usually chained: copy (or strip metadata), decode, transform, encode, persist
+ * <br>
+ * Transform and encode stages can give the {@link Bitmap} they consumed to {@link BitmapPool}, so that the next decode can reuse it.
+ * It is opt-in ({@code pReleaseInput}): pass true only when the input is not used anywhere else, e.g. right after a decode stage.
+ * Never for shared bitmaps, such as results of {@link DedupImageStore#processOnce(String, PickPipeline.Stage)} or {@link ThumbnailCache}
+ */
+@SuppressWarnings("unused")
+public final class PickStages {
+
+    private static final String CACHE_DIR_NAME = "qip_pipeline";
+
+    // outputs of copy stages are meant to be consumed right away, older ones are trimmed above the quota
+    private static final long CACHE_MAX_BYTES  = 64L * 1024 * 1024;
+    private static final long CACHE_MIN_AGE_MS = 60L * 60 * 1000;
+
+    private static volatile DirectoryTrimmer sCacheTrimmer;
+
+    private static final Paint SCALE_PAINT = new Paint(Paint.FILTER_BITMAP_FLAG);
+
+    // ==== COPY ==== //
+
+    /**
+     * Files in the cache dir are trimmed in background to 64 MB, oldest first. Files younger than an hour are kept
+     *
+     * @return stage that copies picked image to a new file in app cache dir and outputs its {@link Uri}. Nothing is left behind
+     * if the copy fails
+     * @see ImageImporter
+     */
+    @NonNull
+    public static PickPipeline.Stage<Uri, Uri> copyToCache() {
+
+        return new PickPipeline.Stage<Uri, Uri>() {
+
+            @NonNull
+            @Override
+            public Uri process(@NonNull final Context pContext, @NonNull final Uri pInput)
+                    throws IOException {
+
+                // importer deletes the file if the copy fails
+                return Uri.fromFile(ImageImporter.importTo(pContext, pInput, newCacheFile(pContext))
+                                                 .getFile());
+            }
+
+        };
+    }
+
+    /**
+     * JPEGs are rewritten segment by segment without decoding, so this takes about as long as {@link #copyToCache()}
+     * and pixels stay exactly the same. Other formats pass as is. Output files are trimmed like those of {@link #copyToCache()}
+     *
+     * @return stage that copies picked JPEG to a new file in app cache dir without EXIF (GPS and the rest), XMP, IPTC and comments,
+     * and outputs its {@link Uri}. Orientation is kept, see {@link JpegMetadataStripper}
+     */
+    @NonNull
+    public static PickPipeline.Stage<Uri, Uri> stripMetadata() {
+
+        return new PickPipeline.Stage<Uri, Uri>() {
+
+            @NonNull
+            @Override
+            public Uri process(@NonNull final Context pContext, @NonNull final Uri pInput)
+                    throws IOException {
+
+                PickStrictMode.onDiskAccess("image metadata strip");
+
+                final File file = newCacheFile(pContext);
+
+                final InputStream in = new BufferedInputStream(openInputStream(pContext, pInput), IoUtils.BUFFER_SIZE);
+                OutputStream out = null;
+
+                PickMetrics.beginSection("QIP strip");
+                try {
+
+                    in.mark(2);
+                    final boolean jpeg = in.read() == 0xFF && in.read() == 0xD8;
+                    in.reset();
+
+                    if (!jpeg) {
+                        return pInput;
+                    }
+
+                    out = new FileOutputStream(file);
+
+                    JpegMetadataStripper.strip(in, out, new byte[IoUtils.BUFFER_SIZE]);
+
+                    // write errors must fail the stage, not be swallowed by closeQuietly()
+                    out.close();
+                    out = null;
+
+                    return Uri.fromFile(file);
+                } catch (final IOException | RuntimeException e) {
+
+                    IoUtils.closeQuietly(out);
+
+                    //noinspection ResultOfMethodCallIgnored
+                    file.delete();
+
+                    throw e;
+                } finally {
+
+                    PickMetrics.endSection();
+
+                    IoUtils.closeQuietly(in);
+                    IoUtils.closeQuietly(out);
+
+                }
+
+            }
+
+        };
+    }
+
+    // ==== DECODE ==== //
+
+    /**
+     * @return stage that decodes image into a full size {@link Bitmap}. Prefer {@link #decode(int, int)} for camera pictures
+     */
+    @NonNull
+    public static PickPipeline.Stage<Uri, Bitmap> decode() {
+
+        return new PickPipeline.Stage<Uri, Bitmap>() {
+
+            @NonNull
+            @Override
+            public Bitmap process(@NonNull final Context pContext, @NonNull final Uri pInput)
+                    throws IOException {
+
+                final InputStream in = openInputStream(pContext, pInput);
+                try {
+
+                    final Bitmap result = BitmapFactory.decodeStream(in);
+                    if (result == null) {
+                        throw new IOException("Could not decode " + pInput);
+                    }
+
+                    return result;
+                } finally {
+                    IoUtils.closeQuietly(in);
+                }
+
+            }
+
+        };
+    }
+
+    /**
+     * @param pMaxWidth  max width of the result
+     * @param pMaxHeight max height of the result
+     * @return stage that decodes image scaled down to fit into given size, without decoding it at full size first
+     * @see SampledImageDecoder#decode(Context, Uri, int, int)
+     */
+    @NonNull
+    public static PickPipeline.Stage<Uri, Bitmap> decode(final int pMaxWidth, final int pMaxHeight) {
+
+        return new PickPipeline.Stage<Uri, Bitmap>() {
+
+            @NonNull
+            @Override
+            public Bitmap process(@NonNull final Context pContext, @NonNull final Uri pInput)
+                    throws IOException {
+                return SampledImageDecoder.decode(pContext, pInput, pMaxWidth, pMaxHeight);
+            }
+
+        };
+    }
+
+    /**
+     * @param pMaxPixels max pixel count (width * height) of the result
+     * @return stage that decodes image scaled down to given pixel budget, without decoding it at full size first
+     * @see SampledImageDecoder#decodeWithinPixels(Context, Uri, long)
+     */
+    @NonNull
+    public static PickPipeline.Stage<Uri, Bitmap> decodeWithinPixels(final long pMaxPixels) {
+
+        return new PickPipeline.Stage<Uri, Bitmap>() {
+
+            @NonNull
+            @Override
+            public Bitmap process(@NonNull final Context pContext, @NonNull final Uri pInput)
+                    throws IOException {
+                return SampledImageDecoder.decodeWithinPixels(pContext, pInput, pMaxPixels);
+            }
+
+        };
+    }
+
+    // ==== TRANSFORM ==== //
+
+    /**
+     * @param pMaxWidth  max width of the result
+     * @param pMaxHeight max height of the result
+     * @return stage that scales {@link Bitmap} down to fit into given size, keeping aspect ratio. Smaller bitmaps pass as is.
+     * Result of scaling is mutable
+     */
+    @NonNull
+    public static PickPipeline.Stage<Bitmap, Bitmap> scale(final int pMaxWidth, final int pMaxHeight) {
+        return scale(pMaxWidth, pMaxHeight, false);
+    }
+
+    /**
+     * @param pMaxWidth     max width of the result
+     * @param pMaxHeight    max height of the result
+     * @param pReleaseInput true to release scaled input to {@link BitmapPool}. Only if the input is not used anywhere else
+     * @return stage that scales {@link Bitmap} down to fit into given size, keeping aspect ratio. Smaller bitmaps pass as is.
+     * Result of scaling is mutable
+     */
+    @NonNull
+    public static PickPipeline.Stage<Bitmap, Bitmap> scale(final int pMaxWidth, final int pMaxHeight, final boolean pReleaseInput) {
+
+        return new PickPipeline.Stage<Bitmap, Bitmap>() {
+
+            @NonNull
+            @Override
+            public Bitmap process(@NonNull final Context pContext, @NonNull final Bitmap pInput) {
+
+                final int width = pInput.getWidth();
+                final int height = pInput.getHeight();
+                if (width <= pMaxWidth && height <= pMaxHeight) {
+                    return pInput;
+                }
+
+                final float scale = Math.min((float) pMaxWidth / width, (float) pMaxHeight / height);
+                final int targetWidth = Math.max(1, Math.round(width * scale));
+                final int targetHeight = Math.max(1, Math.round(height * scale));
+
+                final Bitmap.Config config = pInput.getConfig() == null ? Bitmap.Config.ARGB_8888 : pInput.getConfig();
+
+                final BitmapPool pool = BitmapPool.get();
+
+                // same filtering as Bitmap.createScaledBitmap(), but into a mutable bitmap that can be pooled later
+                final Bitmap result = pool.obtain(targetWidth, targetHeight, config);
+                new Canvas(result).drawBitmap(pInput, null, new Rect(0, 0, targetWidth, targetHeight), SCALE_PAINT);
+
+                if (pReleaseInput) {
+                    pool.release(pInput);
+                }
+
+                return result;
+            }
+
+        };
+    }
+
+    // ==== ENCODE ==== //
+
+    /**
+     * @param pFormat  output format
+     * @param pQuality compression quality, 0-100
+     * @return stage that compresses {@link Bitmap} into bytes
+     */
+    @NonNull
+    public static PickPipeline.Stage<Bitmap, byte[]> encode(@NonNull final Bitmap.CompressFormat pFormat, final int pQuality) {
+        return encode(pFormat, pQuality, false);
+    }
+
+    /**
+     * @param pFormat       output format
+     * @param pQuality      compression quality, 0-100
+     * @param pReleaseInput true to release the input to {@link BitmapPool} once compressed. Only if the input is not used anywhere else
+     * @return stage that compresses {@link Bitmap} into bytes
+     */
+    @NonNull
+    public static PickPipeline.Stage<Bitmap, byte[]> encode(@NonNull final Bitmap.CompressFormat pFormat, final int pQuality,
+                                                            final boolean pReleaseInput) {
+
+        return new PickPipeline.Stage<Bitmap, byte[]>() {
+
+            @NonNull
+            @Override
+            public byte[] process(@NonNull final Context pContext, @NonNull final Bitmap pInput)
+                    throws IOException {
+
+                try {
+
+                    final ByteArrayOutputStream out = new ByteArrayOutputStream(IoUtils.BUFFER_SIZE);
+                    if (!pInput.compress(pFormat, pQuality, out)) {
+                        throw new IOException("Could not compress bitmap to " + pFormat);
+                    }
+
+                    return out.toByteArray();
+                } finally {
+
+                    if (pReleaseInput) {
+                        BitmapPool.get()
+                                  .release(pInput);
+                    }
+
+                }
+            }
+
+        };
+    }
+
+    /**
+     * @param pFormat   {@link Bitmap.CompressFormat#JPEG} or {@link Bitmap.CompressFormat#WEBP}
+     * @param pMaxBytes byte budget
+     * @return stage that compresses {@link Bitmap} with the highest quality that fits into given budget
+     * @see BudgetEncoder
+     */
+    @NonNull
+    public static PickPipeline.Stage<Bitmap, BudgetEncoder.Result> encodeWithin(@NonNull final Bitmap.CompressFormat pFormat,
+                                                                             final long pMaxBytes) {
+        return encodeWithin(pFormat, pMaxBytes, false);
+    }
+
+    /**
+     * @param pFormat       {@link Bitmap.CompressFormat#JPEG} or {@link Bitmap.CompressFormat#WEBP}
+     * @param pMaxBytes     byte budget
+     * @param pReleaseInput true to release the input to {@link BitmapPool} once compressed. Only if the input is not used anywhere else
+     * @return stage that compresses {@link Bitmap} with the highest quality that fits into given budget
+     * @see BudgetEncoder
+     */
+    @NonNull
+    public static PickPipeline.Stage<Bitmap, BudgetEncoder.Result> encodeWithin(@NonNull final Bitmap.CompressFormat pFormat,
+                                                                             final long pMaxBytes, final boolean pReleaseInput) {
+
+        return new PickPipeline.Stage<Bitmap, BudgetEncoder.Result>() {
+
+            @NonNull
+            @Override
+            public BudgetEncoder.Result process(@NonNull final Context pContext, @NonNull final Bitmap pInput)
+                    throws IOException {
+
+                final BudgetEncoder.Result result = BudgetEncoder.encode(pInput, pFormat, pMaxBytes);
+
+                // not on failure: an interrupted encode may leave candidates still reading the bitmap
+                if (pReleaseInput) {
+                    BitmapPool.get()
+                              .release(pInput);
+                }
+
+                return result;
+
+            }
+
+        };
+    }
+
+    // ==== PERSIST ==== //
+
+    /**
+     * @param pDir directory to save files to
+     * @return stage that writes bytes to a new file in given directory and outputs the file. The file is deleted if writing fails
+     */
+    @NonNull
+    public static PickPipeline.Stage<byte[], File> persist(@NonNull final File pDir) {
+
+        return new PickPipeline.Stage<byte[], File>() {
+
+            @NonNull
+            @Override
+            public File process(@NonNull final Context pContext, @NonNull final byte[] pInput)
+                    throws IOException {
+
+                //noinspection ResultOfMethodCallIgnored
+                pDir.mkdirs();
+
+                final File file = new File(pDir, UUID.randomUUID()
+                                                     .toString());
+
+                OutputStream out = null;
+                try {
+
+                    out = new FileOutputStream(file);
+                    out.write(pInput);
+
+                    // write errors must fail the stage, not be swallowed by closeQuietly()
+                    out.close();
+                    out = null;
+
+                    return file;
+                } catch (final IOException | RuntimeException e) {
+
+                    IoUtils.closeQuietly(out);
+
+                    //noinspection ResultOfMethodCallIgnored
+                    file.delete();
+
+                    throw e;
+                }
+            }
+
+        };
+    }
+
+    // ==== //
+
+    /**
+     * @return new file in pipeline cache dir. Schedules a trim of the dir, which never deletes files this young
+     */
+    @NonNull
+    private static File newCacheFile(@NonNull final Context pContext) {
+
+        final File dir = new File(pContext.getCacheDir(), CACHE_DIR_NAME);
+        //noinspection ResultOfMethodCallIgnored
+        dir.mkdirs();
+
+        // racing threads may create two, both trim the same dir
+        DirectoryTrimmer trimmer = sCacheTrimmer;
+        if (trimmer == null) {
+            trimmer = sCacheTrimmer = new DirectoryTrimmer(dir, CACHE_MAX_BYTES, CACHE_MIN_AGE_MS);
+        }
+
+        trimmer.scheduleTrim();
+
+        return new File(dir, UUID.randomUUID()
+                                 .toString());
+    }
+
+    @NonNull
+    static InputStream openInputStream(@NonNull final Context pContext, @NonNull final Uri pUri)
+            throws FileNotFoundException {
+
+        final InputStream in = pContext.getContentResolver()
+                                       .openInputStream(pUri);
+        if (in == null) {
+            throw new FileNotFoundException("Could not open " + pUri);
+        }
+
+        return in;
+    }
+
+    // ==== //
+
+    private PickStages() {}
+
+}
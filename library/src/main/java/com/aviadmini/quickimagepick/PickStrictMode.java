@@ -0,0 +1,32 @@
+package com.aviadmini.quickimagepick;
+
+import android.support.annotation.NonNull;
+
+/**
+ * Library strict mode, see {@link QuickImagePick#setStrictMode(boolean)}. Library code that touches the disk reports it here
+ */
+final class PickStrictMode {
+
+    private static volatile boolean sEnabled;
+
+    static void setEnabled(final boolean pEnabled) {
+        sEnabled = pEnabled;
+    }
+
+    /**
+     * @param pOperation what is being done, for the exception message
+     * @throws IllegalStateException if strict mode is enabled and called on main thread
+     */
+    static void onDiskAccess(@NonNull final String pOperation) {
+
+        if (sEnabled && PickExecutors.isMainThread()) {
+            throw new IllegalStateException("QuickImagePick strict mode: " + pOperation + " on main thread");
+        }
+
+    }
+
+    // ==== //
+
+    private PickStrictMode() {}
+
+}
@@ -0,0 +1,761 @@
+package com.aviadmini.quickimagepick;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Build;
+import android.provider.BaseColumns;
+import android.provider.DocumentsContract;
+import android.provider.MediaStore;
+import android.provider.OpenableColumns;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.WorkerThread;
+
+import com.aviadmini.quickimagepick.core.ImageHeaderParser;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Metadata of a picked image: dimensions, EXIF orientation, MIME type, size and last modification time.
+ * <br>
+ * Fields are read lazily and at most once per instance: size and modification time from a single provider query, dimensions,
+ * orientation and format from the image header bytes (see {@link ImageHeaderParser}). For MediaStore images the query also returns
+ * dimensions and orientation indexed by the media scanner, and the header is not read. Parsed headers are cached by {@link Uri} and
+ * modification time, so binding an unchanged image again costs the query only, and an image edited in place is never served
+ * the header of its previous version.
+ * <br>
+ * First access to a group of fields is blocking, do it from a background thread (or call {@link #load()} there).
+ * For several gallery picks {@link #loadStats(Context, List)} reads size, modification time, dimensions and orientation of all of them
+ * with a few queries.
+ */
+@SuppressWarnings("unused")
+public final class PickedImage {
+
+    public static final int UNKNOWN = -1;
+
+    private static final int MAX_CACHED = 128;
+
+    // SQLite limit of host parameters in one statement before 3.32
+    private static final int MAX_BATCH_SIZE = 999;
+
+    private static final String MEDIA_STORE_AUTHORITY = "media";
+
+    private static final String MEDIA_STORE_IMAGES = "images";
+
+    // MediaStore width and height columns
+    private static final boolean API_16 = Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN;
+
+    // uri@lastModified -> parsed header, null if the format was not recognized
+    private static final Map<String, ImageHeaderParser.Header> sHeaders = new LinkedHashMap<String, ImageHeaderParser.Header>(16, 0.75F,
+            true) {
+
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<String, ImageHeaderParser.Header> pEldest) {
+            return this.size() > MAX_CACHED;
+        }
+
+    };
+
+    /**
+     * Does no I/O, metadata is read on first access. Get a new instance for every bind: an instance keeps what it has read,
+     * a new one notices that the image was modified since
+     *
+     * @param pContext app {@link Context}
+     * @param pUri     image {@link Uri}
+     * @return metadata of given image
+     */
+    @NonNull
+    public static PickedImage of(@NonNull final Context pContext, @NonNull final Uri pUri) {
+        return new PickedImage(pContext.getApplicationContext(), pUri);
+    }
+
+    /**
+     * Drops cached headers of given image. Not needed after modifying it, unless its modification time stays the same
+     *
+     * @param pUri image {@link Uri}
+     */
+    public static void invalidate(@NonNull final Uri pUri) {
+
+        final String prefix = pUri.toString() + '@';
+
+        synchronized (sHeaders) {
+
+            final Iterator<String> iterator = sHeaders.keySet()
+                                                      .iterator();
+            while (iterator.hasNext()) {
+
+                if (iterator.next()
+                            .startsWith(prefix)) {
+                    iterator.remove();
+                }
+
+            }
+
+        }
+
+    }
+
+    /**
+     * Reads size, modification time and provider MIME type of several images at once. MediaStore images (gallery picks)
+     * are looked up with one {@code _id IN (...)} query per collection and up to 999 ids, instead of one query per image.
+     * The same query reads their dimensions and orientation (API 16+), so their headers are not read either.
+     * Other images, and MediaStore ones the app cannot see through their collection (e.g. without storage permission),
+     * are queried one by one and their dimensions and orientation come from image headers as usual, see {@link #load()}.
+     * <br>
+     * Blocking, call it from a background thread
+     *
+     * @param pContext app {@link Context}
+     * @param pUris    image {@link Uri}s
+     * @return metadata of given images, in the same order
+     */
+    @WorkerThread
+    @NonNull
+    public static List<PickedImage> loadStats(@NonNull final Context pContext, @NonNull final List<Uri> pUris) {
+
+        final List<PickedImage> result = new ArrayList<>(pUris.size());
+
+        // collection uri -> id -> image
+        final Map<Uri, Map<Long, PickedImage>> batches = new LinkedHashMap<>();
+        final List<PickedImage> singles = new ArrayList<>();
+
+        for (final Uri uri : pUris) {
+
+            final PickedImage image = of(pContext, uri);
+            result.add(image);
+
+            synchronized (image) {
+
+                if (image.mStatLoaded) {
+                    continue;
+                }
+
+            }
+
+            final long id = mediaStoreIdOf(uri);
+            if (id == -1) {
+
+                singles.add(image);
+
+                continue;
+            }
+
+            final Uri collection = collectionOf(uri);
+
+            Map<Long, PickedImage> batch = batches.get(collection);
+            if (batch == null) {
+                batches.put(collection, batch = new LinkedHashMap<>());
+            }
+
+            batch.put(id, image);
+
+        }
+
+        for (final Map.Entry<Uri, Map<Long, PickedImage>> entry : batches.entrySet()) {
+
+            final Map<Long, PickedImage> batch = entry.getValue();
+
+            queryBatch(pContext.getContentResolver(), entry.getKey(), batch);
+
+            // missing rows: deleted, or not visible through the collection
+            singles.addAll(batch.values());
+
+        }
+
+        for (final PickedImage image : singles) {
+            image.getSize();
+        }
+
+        return result;
+    }
+
+    private final Context mAppContext;
+    private final Uri     mUri;
+
+    // guarded by this
+    private boolean mStatLoaded;
+    private long    mSize         = UNKNOWN;
+    private long    mLastModified = UNKNOWN;
+    private String  mProviderMimeType;
+
+    // guarded by this. Loaded from MediaStore or parsed, parsed is what validation trusts
+    private boolean mHeaderLoaded;
+    private boolean mHeaderParsed;
+    private int     mWidth       = UNKNOWN;
+    private int     mHeight      = UNKNOWN;
+    private int     mOrientation = ImageHeaderParser.ORIENTATION_UNDEFINED;
+    private String  mHeaderMimeType;
+
+    private PickedImage(@NonNull final Context pAppContext, @NonNull final Uri pUri) {
+
+        this.mAppContext = pAppContext;
+        this.mUri = pUri;
+
+    }
+
+    @NonNull
+    public Uri getUri() {
+        return this.mUri;
+    }
+
+    /**
+     * @return width as stored, before applying orientation, or {@link #UNKNOWN}
+     */
+    public synchronized int getWidth() {
+
+        this.ensureHeader();
+
+        return this.mWidth;
+    }
+
+    /**
+     * @return height as stored, before applying orientation, or {@link #UNKNOWN}
+     */
+    public synchronized int getHeight() {
+
+        this.ensureHeader();
+
+        return this.mHeight;
+    }
+
+    /**
+     * @return EXIF orientation (1-8) or 0 if image has none
+     */
+    public synchronized int getOrientation() {
+
+        this.ensureHeader();
+
+        return this.mOrientation;
+    }
+
+    /**
+     * @return clockwise rotation needed to display the image upright: 0, 90, 180 or 270. Mirroring is ignored
+     */
+    public int getRotationDegrees() {
+
+        switch (this.getOrientation()) {
+
+            case 3:
+            case 4: {
+                return 180;
+            }
+
+            case 5:
+            case 6: {
+                return 90;
+            }
+
+            case 7:
+            case 8: {
+                return 270;
+            }
+
+            default: {
+                return 0;
+            }
+
+        }
+
+    }
+
+    /**
+     * @return MIME type detected from image header, or the one reported by provider if format is not recognized or the header was
+     * not read (MediaStore images)
+     */
+    @Nullable
+    public synchronized String getMimeType() {
+
+        this.ensureHeader();
+
+        if (this.mHeaderMimeType != null) {
+            return this.mHeaderMimeType;
+        }
+
+        this.ensureStat();
+
+        return this.mProviderMimeType;
+    }
+
+    /**
+     * @return size in bytes or {@link #UNKNOWN}
+     */
+    public synchronized long getSize() {
+
+        this.ensureStat();
+
+        return this.mSize;
+    }
+
+    /**
+     * @return last modification time in milliseconds or {@link #UNKNOWN}
+     */
+    public synchronized long getLastModified() {
+
+        this.ensureStat();
+
+        return this.mLastModified;
+    }
+
+    /**
+     * Reads all metadata now. Blocking, call it from a background thread
+     *
+     * @return this
+     */
+    @NonNull
+    public synchronized PickedImage load() {
+
+        this.ensureHeader();
+        this.ensureStat();
+
+        return this;
+    }
+
+    /**
+     * Opens the image for chunked, resumable upload. Blocking, call it from a background thread
+     *
+     * @param pChunkSize size of every chunk but the last one, e.g. {@link ChunkSource#DEFAULT_CHUNK_SIZE}
+     * @return open source, must be closed
+     * @throws IOException if image cannot be opened
+     */
+    @NonNull
+    public ChunkSource openChunks(final int pChunkSize)
+            throws IOException {
+        return ChunkSource.open(this.mAppContext, this.mUri, pChunkSize);
+    }
+
+    @Override
+    public String toString() {
+        return "PickedImage{uri=" + this.mUri + '}';
+    }
+
+    // ==== //
+
+    private void ensureHeader() {
+
+        if (this.mHeaderLoaded) {
+            return;
+        }
+
+        // MediaStore rows come with dimensions
+        this.ensureStat();
+
+        if (!this.mHeaderLoaded) {
+            this.ensureHeaderParsed();
+        }
+
+    }
+
+    /**
+     * Reads dimensions, orientation and format from the image header bytes even if MediaStore provided dimensions, e.g. to check
+     * that the file really is an image of that size
+     */
+    synchronized void ensureHeaderParsed() {
+
+        if (this.mHeaderParsed) {
+            return;
+        }
+
+        this.mHeaderLoaded = true;
+        this.mHeaderParsed = true;
+
+        this.mWidth = UNKNOWN;
+        this.mHeight = UNKNOWN;
+        this.mOrientation = ImageHeaderParser.ORIENTATION_UNDEFINED;
+
+        // cached header is valid only for the version of the image it was read from
+        this.ensureStat();
+
+        final String key = this.mLastModified == UNKNOWN ? null : this.mUri.toString() + '@' + this.mLastModified;
+
+        ImageHeaderParser.Header header = null;
+        boolean cached = false;
+        if (key != null) {
+
+            synchronized (sHeaders) {
+
+                cached = sHeaders.containsKey(key);
+                if (cached) {
+                    header = sHeaders.get(key);
+                }
+
+            }
+
+        }
+
+        PickMetrics.cacheLookup(PickMetrics.CACHE_METADATA, cached);
+
+        if (!cached) {
+
+            try {
+
+                header = this.readHeader();
+
+                if (key != null) {
+
+                    synchronized (sHeaders) {
+                        sHeaders.put(key, header);
+                    }
+
+                }
+
+            } catch (final IOException | RuntimeException ignored) {
+                // fields stay unknown for this instance, read again by the next one
+            }
+
+        }
+
+        if (header != null) {
+
+            this.mWidth = header.getWidth();
+            this.mHeight = header.getHeight();
+            this.mOrientation = header.getOrientation();
+            this.mHeaderMimeType = header.getMimeType();
+
+        }
+
+    }
+
+    @Nullable
+    private ImageHeaderParser.Header readHeader()
+            throws IOException {
+
+        PickStrictMode.onDiskAccess("image header read");
+
+        final InputStream in = new BufferedInputStream(PickStages.openInputStream(this.mAppContext, this.mUri));
+        try {
+            return ImageHeaderParser.parse(in);
+        } finally {
+            IoUtils.closeQuietly(in);
+        }
+
+    }
+
+    private void ensureStat() {
+
+        if (this.mStatLoaded) {
+            return;
+        }
+
+        this.mStatLoaded = true;
+
+        this.setStat(this.readStat());
+
+    }
+
+    @NonNull
+    private Stat readStat() {
+
+        PickStrictMode.onDiskAccess("image metadata query");
+
+        final Stat stat = new Stat();
+
+        if (ContentResolver.SCHEME_FILE.equals(this.mUri.getScheme())) {
+
+            final File file = new File(this.mUri.getPath());
+            if (file.isFile()) {
+
+                stat.mSize = file.length();
+                stat.mLastModified = file.lastModified();
+
+            }
+
+            return stat;
+        }
+
+        final ContentResolver resolver = this.mAppContext.getContentResolver();
+
+        Cursor cursor = null;
+        try {
+
+            // not every provider has every column, null projection returns what it has
+            cursor = resolver.query(this.mUri, null, null, null, null);
+            if (cursor != null && cursor.moveToFirst()) {
+
+                final int sizeIndex = cursor.getColumnIndex(OpenableColumns.SIZE);
+                if (sizeIndex != -1 && !cursor.isNull(sizeIndex)) {
+                    stat.mSize = cursor.getLong(sizeIndex);
+                }
+
+                final int lastModifiedIndex = cursor.getColumnIndex(DocumentsContract.Document.COLUMN_LAST_MODIFIED);
+                final int dateModifiedIndex = cursor.getColumnIndex(MediaStore.MediaColumns.DATE_MODIFIED);
+                if (lastModifiedIndex != -1 && !cursor.isNull(lastModifiedIndex)) {
+                    stat.mLastModified = cursor.getLong(lastModifiedIndex);
+                } else if (dateModifiedIndex != -1 && !cursor.isNull(dateModifiedIndex)) {
+                    // seconds
+                    stat.mLastModified = cursor.getLong(dateModifiedIndex) * 1000L;
+                }
+
+                final int mimeTypeIndex = cursor.getColumnIndex(MediaStore.MediaColumns.MIME_TYPE);
+                if (mimeTypeIndex != -1) {
+                    stat.mMimeType = cursor.getString(mimeTypeIndex);
+                }
+
+                // other providers may have columns of the same names with other meaning
+                if (mediaStoreIdOf(this.mUri) != -1) {
+                    readDimensions(cursor, stat);
+                }
+
+            }
+
+        } catch (final RuntimeException ignored) {
+            // provider refused the query
+        } finally {
+
+            // Cursor is not Closeable before API 16
+            if (cursor != null) {
+                cursor.close();
+            }
+
+        }
+
+        if (stat.mMimeType == null) {
+
+            try {
+                stat.mMimeType = resolver.getType(this.mUri);
+            } catch (final RuntimeException ignored) {
+            }
+
+        }
+
+        return stat;
+    }
+
+    // ==== BATCH ==== //
+
+    /**
+     * Queries given images in chunks, removes the ones found from the batch
+     */
+    private static void queryBatch(@NonNull final ContentResolver pResolver, @NonNull final Uri pCollection,
+                                   @NonNull final Map<Long, PickedImage> pBatch) {
+
+        PickStrictMode.onDiskAccess("image metadata batch query");
+
+        final List<Long> ids = new ArrayList<>(pBatch.keySet());
+
+        final String[] projection = batchProjectionOf(pCollection);
+
+        for (int start = 0; start < ids.size(); start += MAX_BATCH_SIZE) {
+
+            final int end = Math.min(ids.size(), start + MAX_BATCH_SIZE);
+
+            final StringBuilder selection = new StringBuilder(BaseColumns._ID).append(" IN (");
+            final String[] selectionArgs = new String[end - start];
+            for (int i = start; i < end; i++) {
+
+                selection.append(i == start ? "?" : ",?");
+                selectionArgs[i - start] = String.valueOf(ids.get(i));
+
+            }
+            selection.append(')');
+
+            Cursor cursor = null;
+            try {
+
+                cursor = pResolver.query(pCollection, projection, selection.toString(), selectionArgs, null);
+                if (cursor == null) {
+                    continue;
+                }
+
+                while (cursor.moveToNext()) {
+
+                    final PickedImage image = pBatch.remove(cursor.getLong(0));
+                    if (image == null) {
+                        continue;
+                    }
+
+                    final Stat stat = new Stat();
+
+                    if (!cursor.isNull(1)) {
+                        stat.mSize = cursor.getLong(1);
+                    }
+
+                    if (!cursor.isNull(2)) {
+                        // seconds
+                        stat.mLastModified = cursor.getLong(2) * 1000L;
+                    }
+
+                    stat.mMimeType = cursor.getString(3);
+
+                    readDimensions(cursor, stat);
+
+                    image.applyStat(stat);
+
+                }
+
+            } catch (final RuntimeException ignored) {
+                // collection not readable by the app, images are queried one by one
+            } finally {
+
+                // Cursor is not Closeable before API 16
+                if (cursor != null) {
+                    cursor.close();
+                }
+
+            }
+
+        }
+
+    }
+
+    @NonNull
+    private static String[] batchProjectionOf(@NonNull final Uri pCollection) {
+
+        final List<String> projection = new ArrayList<>(Arrays.asList(BaseColumns._ID, MediaStore.MediaColumns.SIZE,
+                MediaStore.MediaColumns.DATE_MODIFIED, MediaStore.MediaColumns.MIME_TYPE));
+
+        if (API_16) {
+
+            projection.add(MediaStore.MediaColumns.WIDTH);
+            projection.add(MediaStore.MediaColumns.HEIGHT);
+
+        }
+
+        // other collections have no orientation column and would fail the whole query
+        if (pCollection.getPathSegments()
+                       .contains(MEDIA_STORE_IMAGES)) {
+            projection.add(MediaStore.Images.ImageColumns.ORIENTATION);
+        }
+
+        return projection.toArray(new String[projection.size()]);
+    }
+
+    /**
+     * Reads MediaStore width, height and orientation columns that are present in given row. Rows not scanned yet have no dimensions
+     */
+    private static void readDimensions(@NonNull final Cursor pCursor, @NonNull final Stat pStat) {
+
+        final int widthIndex = pCursor.getColumnIndex(MediaStore.MediaColumns.WIDTH);
+        final int heightIndex = pCursor.getColumnIndex(MediaStore.MediaColumns.HEIGHT);
+        if (widthIndex == -1 || heightIndex == -1 || pCursor.isNull(widthIndex) || pCursor.isNull(heightIndex)) {
+            return;
+        }
+
+        pStat.mWidth = pCursor.getInt(widthIndex);
+        pStat.mHeight = pCursor.getInt(heightIndex);
+
+        final int orientationIndex = pCursor.getColumnIndex(MediaStore.Images.ImageColumns.ORIENTATION);
+        if (orientationIndex != -1 && !pCursor.isNull(orientationIndex)) {
+            pStat.mOrientation = exifOrientationOf(pCursor.getInt(orientationIndex));
+        }
+
+    }
+
+    /**
+     * @return EXIF orientation for MediaStore rotation. MediaStore does not store mirroring, neither do its rows
+     */
+    private static int exifOrientationOf(final int pDegrees) {
+
+        switch (pDegrees) {
+
+            case 90: {
+                return 6;
+            }
+
+            case 180: {
+                return 3;
+            }
+
+            case 270: {
+                return 8;
+            }
+
+            default: {
+                return ImageHeaderParser.ORIENTATION_UNDEFINED;
+            }
+
+        }
+
+    }
+
+    /**
+     * @return id of a MediaStore item, e.g. content://media/external/images/media/42, or -1 for other {@link Uri}s
+     */
+    private static long mediaStoreIdOf(@NonNull final Uri pUri) {
+
+        if (!ContentResolver.SCHEME_CONTENT.equals(pUri.getScheme()) || !MEDIA_STORE_AUTHORITY.equals(pUri.getAuthority())) {
+            return -1;
+        }
+
+        final List<String> segments = pUri.getPathSegments();
+        if (segments.size() < 2) {
+            return -1;
+        }
+
+        try {
+            return Long.parseLong(segments.get(segments.size() - 1));
+        } catch (final NumberFormatException e) {
+            return -1;
+        }
+
+    }
+
+    @NonNull
+    private static Uri collectionOf(@NonNull final Uri pItemUri) {
+
+        final List<String> segments = pItemUri.getPathSegments();
+
+        final Uri.Builder builder = pItemUri.buildUpon()
+                                            .path(null)
+                                            .query(null);
+        for (int i = 0; i < segments.size() - 1; i++) {
+            builder.appendPath(segments.get(i));
+        }
+
+        return builder.build();
+    }
+
+    private synchronized void applyStat(@NonNull final Stat pStat) {
+
+        if (this.mStatLoaded) {
+            return;
+        }
+
+        this.mStatLoaded = true;
+
+        this.setStat(pStat);
+
+    }
+
+    // guarded by this
+    private void setStat(@NonNull final Stat pStat) {
+
+        this.mSize = pStat.mSize;
+        this.mLastModified = pStat.mLastModified;
+        this.mProviderMimeType = pStat.mMimeType;
+
+        if (!this.mHeaderLoaded && pStat.mWidth > 0 && pStat.mHeight > 0) {
+
+            this.mHeaderLoaded = true;
+
+            this.mWidth = pStat.mWidth;
+            this.mHeight = pStat.mHeight;
+            this.mOrientation = pStat.mOrientation;
+
+        }
+
+    }
+
+    // ==== //
+
+    private static final class Stat {
+
+        long   mSize         = UNKNOWN;
+        long   mLastModified = UNKNOWN;
+        String mMimeType;
+        int    mWidth        = UNKNOWN;
+        int    mHeight       = UNKNOWN;
+        int    mOrientation  = ImageHeaderParser.ORIENTATION_UNDEFINED;
+
+    }
+
+}
@@ -0,0 +1,360 @@
+package com.aviadmini.quickimagepick;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.net.Uri;
+import android.os.Build;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.aviadmini.quickimagepick.core.ImageHeaderParser;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Decodes picked images in two steps to show something as early as possible: a small preview first, then the image
+ * at the requested size. Both are delivered to the same {@link Callback} for the same {@link Uri}, preview always first.
+ * <br>
+ * Preview is the JPEG thumbnail embedded into EXIF when there is one (no decode of the image itself, only its first 64KB are read),
+ * otherwise a heavily sampled decode (see {@link SampledImageDecoder}). Thumbnails that do not match image aspect ratio are not used,
+ * as some cameras pad them. No preview is delivered for images requested at about preview size.
+ * <br>
+ * Preview is decoded in {@link PickScheduler.Priority#VISIBLE} lane and the image in {@link PickScheduler.Priority#USER_INITIATED} one,
+ * both tagged with the image {@link Uri}.
+ * <br>
+ * Bitmaps are mutable where possible, give them to {@link BitmapPool#release(Bitmap)} once they are no longer shown
+ */
+@SuppressWarnings("unused")
+public final class ProgressiveDecoder {
+
+    /**
+     * Max width and height of a sampled preview
+     */
+    public static final int PREVIEW_SIZE = 256;
+
+    // embedded thumbnails are 4:3 or 16:9 at about 160 px, rounding makes their aspect ratio a bit off
+    private static final float MAX_ASPECT_RATIO_DIFFERENCE = 0.05F;
+
+    private static final boolean API_11 = Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB;
+
+    /**
+     * Decodes preview and then the image scaled down to fit into given size, on a library background thread
+     *
+     * @param pContext     app {@link Context}
+     * @param pPickSource  source of the image, passed to callback
+     * @param pRequestType request type, passed to callback
+     * @param pImageUri    picked image
+     * @param pMaxWidth    max width of the result
+     * @param pMaxHeight   max height of the result
+     * @param pCallback    callback, triggered on main thread
+     */
+    public static void decode(@NonNull final Context pContext, @NonNull final PickSource pPickSource, final int pRequestType,
+                              @NonNull final Uri pImageUri, final int pMaxWidth, final int pMaxHeight, @NonNull final Callback pCallback) {
+
+        if (pMaxWidth <= 0 || pMaxHeight <= 0) {
+            throw new IllegalArgumentException("Target size must be positive: " + pMaxWidth + "x" + pMaxHeight);
+        }
+
+        new Run(pContext.getApplicationContext(), pPickSource, pRequestType, pImageUri, pMaxWidth, pMaxHeight, pCallback).start();
+
+    }
+
+    /**
+     * @param pContext   app {@link Context}
+     * @param pMaxWidth  max width of the result
+     * @param pMaxHeight max height of the result
+     * @param pCallback  decode callback
+     * @return {@link QuickImagePick.Callback} that decodes every picked image progressively
+     */
+    @NonNull
+    public static QuickImagePick.Callback asCallback(@NonNull final Context pContext, final int pMaxWidth, final int pMaxHeight,
+                                                     @NonNull final Callback pCallback) {
+
+        final Context appContext = pContext.getApplicationContext();
+
+        return new QuickImagePick.Callback() {
+
+            @Override
+            public void onImagePicked(@NonNull final PickSource pPickSource, final int pRequestType, @NonNull final Uri pImageUri) {
+                decode(appContext, pPickSource, pRequestType, pImageUri, pMaxWidth, pMaxHeight, pCallback);
+            }
+
+            @Override
+            public void onError(@NonNull final PickSource pPickSource, final int pRequestType, @NonNull final String pErrorString) {
+                pCallback.onError(pPickSource, pRequestType, pErrorString, null);
+            }
+
+            @Override
+            public void onCancel(@NonNull final PickSource pPickSource, final int pRequestType) {
+                pCallback.onCancel(pPickSource, pRequestType);
+            }
+
+        };
+    }
+
+    // ==== //
+
+    /**
+     * @return decoded EXIF thumbnail, or null if image has none or it is not usable as a preview
+     */
+    @Nullable
+    private static Bitmap decodeExifThumbnail(@NonNull final Context pContext, @NonNull final Uri pUri) {
+
+        PickStrictMode.onDiskAccess("image thumbnail read");
+
+        final byte[] thumbnail;
+
+        InputStream in = null;
+        try {
+
+            in = new BufferedInputStream(PickStages.openInputStream(pContext, pUri));
+
+            thumbnail = ImageHeaderParser.readExifThumbnail(in);
+
+        } catch (final IOException | RuntimeException e) {
+            return null;
+        } finally {
+            IoUtils.closeQuietly(in);
+        }
+
+        if (thumbnail == null) {
+            return null;
+        }
+
+        // header is read once per image and cached, the full decode needs it anyway
+        final PickedImage image = PickedImage.of(pContext, pUri);
+        final int width = image.getWidth();
+        final int height = image.getHeight();
+
+        final BitmapFactory.Options options = new BitmapFactory.Options();
+        if (API_11) {
+            options.inMutable = true;
+        }
+
+        final Bitmap result = BitmapFactory.decodeByteArray(thumbnail, 0, thumbnail.length, options);
+        if (result == null) {
+            return null;
+        }
+
+        if (width <= 0 || height <= 0
+                || Math.abs((float) result.getWidth() / result.getHeight() - (float) width / height) > MAX_ASPECT_RATIO_DIFFERENCE) {
+
+            BitmapPool.get()
+                      .release(result);
+
+            return null;
+        }
+
+        return result;
+    }
+
+    // ==== //
+
+    private ProgressiveDecoder() {}
+
+    // ==== //
+
+    /**
+     * Callback for progressive decode results. All methods are triggered on main thread
+     */
+    public interface Callback {
+
+        /**
+         * Triggered before {@link #onResult(PickSource, int, Uri, Bitmap)} when a preview could be decoded. May not be triggered at all
+         *
+         * @param pPickSource  source from which image was retrieved
+         * @param pRequestType request type that was (optionally) set when starting pick flow
+         * @param pImageUri    picked image
+         * @param pPreview     small preview, at most {@link #PREVIEW_SIZE} when sampled, usually less when it is an embedded thumbnail
+         */
+        void onPreview(@NonNull final PickSource pPickSource, final int pRequestType, @NonNull final Uri pImageUri,
+                       @NonNull final Bitmap pPreview);
+
+        /**
+         * Triggered when image was decoded at requested size
+         *
+         * @param pPickSource  source from which image was retrieved
+         * @param pRequestType request type that was (optionally) set when starting pick flow
+         * @param pImageUri    picked image
+         * @param pBitmap      decoded image
+         */
+        void onResult(@NonNull final PickSource pPickSource, final int pRequestType, @NonNull final Uri pImageUri,
+                      @NonNull final Bitmap pBitmap);
+
+        /**
+         * Triggered when pick or decode failed. A preview may have been delivered before
+         *
+         * @param pPickSource  source from which image was retrieved
+         * @param pRequestType request type that was (optionally) set when starting pick flow
+         * @param pErrorString error string describing the error. One of public {@code ERR_} constants in {@link QuickImagePick} class
+         * @param pCause       decode exception, null for pick errors
+         */
+        void onError(@NonNull final PickSource pPickSource, final int pRequestType, @NonNull final String pErrorString,
+                     @Nullable final Throwable pCause);
+
+        /**
+         * Triggered when picking flow was cancelled (mostly by user)
+         *
+         * @param pPickSource  source from which image was retrieved
+         * @param pRequestType request type that was (optionally) set when starting pick flow
+         */
+        void onCancel(@NonNull final PickSource pPickSource, final int pRequestType);
+
+    }
+
+    private static final class Run {
+
+        private final Context    mContext;
+        private final PickSource mPickSource;
+        private final int        mRequestType;
+        private final Uri        mImageUri;
+        private final int        mMaxWidth;
+        private final int        mMaxHeight;
+        private final Callback   mCallback;
+
+        // metrics: runs are created on the thread that handles the pick result
+        private final int  mSessionId  = PickMetrics.currentSession();
+        private final long mStartNanos = PickMetrics.start();
+
+        Run(@NonNull final Context pContext, @NonNull final PickSource pPickSource, final int pRequestType, @NonNull final Uri pImageUri,
+            final int pMaxWidth, final int pMaxHeight, @NonNull final Callback pCallback) {
+
+            this.mContext = pContext;
+            this.mPickSource = pPickSource;
+            this.mRequestType = pRequestType;
+            this.mImageUri = pImageUri;
+            this.mMaxWidth = pMaxWidth;
+            this.mMaxHeight = pMaxHeight;
+            this.mCallback = pCallback;
+
+        }
+
+        void start() {
+
+            if (this.mMaxWidth <= PREVIEW_SIZE * 2 && this.mMaxHeight <= PREVIEW_SIZE * 2) {
+
+                this.scheduleResult();
+
+                return;
+            }
+
+            PickScheduler.get()
+                         .execute(PickScheduler.Priority.VISIBLE, this.mImageUri, new Runnable() {
+
+                             @Override
+                             public void run() {
+
+                                 final int previousSessionId = PickMetrics.enterSession(mSessionId);
+                                 try {
+                                     deliverPreview();
+                                 } finally {
+                                     PickMetrics.exitSession(previousSessionId);
+                                 }
+
+                                 // queued after the preview is posted, so it is delivered after it
+                                 scheduleResult();
+
+                             }
+
+                         });
+
+        }
+
+        private void scheduleResult() {
+
+            PickScheduler.get()
+                         .execute(PickScheduler.Priority.USER_INITIATED, this.mImageUri, new Runnable() {
+
+                             @Override
+                             public void run() {
+
+                                 final int previousSessionId = PickMetrics.enterSession(mSessionId);
+                                 try {
+                                     deliverResult();
+                                 } finally {
+                                     PickMetrics.exitSession(previousSessionId);
+                                 }
+
+                             }
+
+                         });
+
+        }
+
+        private void deliverPreview() {
+
+            PickMetrics.beginSection("QIP preview");
+            try {
+
+                Bitmap preview = decodeExifThumbnail(this.mContext, this.mImageUri);
+                if (preview == null) {
+
+                    try {
+                        preview = SampledImageDecoder.decode(this.mContext, this.mImageUri, PREVIEW_SIZE, PREVIEW_SIZE);
+                    } catch (final IOException | RuntimeException e) {
+                        // full decode will most likely fail too and report it
+                        return;
+                    }
+
+                }
+
+                final Bitmap result = preview;
+
+                PickExecutors.mainHandler()
+                             .post(new Runnable() {
+
+                                 @Override
+                                 public void run() {
+
+                                     PickMetrics.step(mSessionId, PickMetrics.STEP_PREVIEW, mStartNanos);
+
+                                     mCallback.onPreview(mPickSource, mRequestType, mImageUri, result);
+
+                                 }
+
+                             });
+
+            } finally {
+                PickMetrics.endSection();
+            }
+
+        }
+
+        private void deliverResult() {
+
+            final Bitmap bitmap;
+            try {
+                bitmap = SampledImageDecoder.decode(this.mContext, this.mImageUri, this.mMaxWidth, this.mMaxHeight);
+            } catch (final IOException | RuntimeException e) {
+
+                PickExecutors.mainHandler()
+                             .post(new Runnable() {
+
+                                 @Override
+                                 public void run() {
+                                     mCallback.onError(mPickSource, mRequestType, QuickImagePick.ERR_PROCESSING_FAILED, e);
+                                 }
+
+                             });
+
+                return;
+            }
+
+            PickExecutors.mainHandler()
+                         .post(new Runnable() {
+
+                             @Override
+                             public void run() {
+                                 mCallback.onResult(mPickSource, mRequestType, mImageUri, bitmap);
+                             }
+
+                         });
+
+        }
+
+    }
+
+}
@@ -2,16 +2,15 @@ package com.aviadmini.quickimagepick;
 
 import android.annotation.SuppressLint;
 import android.app.Activity;
+import android.content.ClipData;
 import android.content.ComponentName;
+import android.content.ContentResolver;
 import android.content.Context;
 import android.content.Intent;
-import android.content.pm.PackageManager;
 import android.content.pm.ResolveInfo;
 import android.net.Uri;
 import android.os.Build;
-import android.os.Environment;
 import android.os.Parcelable;
-import android.preference.PreferenceManager;
 import android.provider.DocumentsContract;
 import android.provider.MediaStore;
 import android.support.annotation.NonNull;
@@ -19,8 +18,12 @@ import android.support.annotation.Nullable;
 import android.support.v4.app.Fragment;
 import android.support.v4.content.FileProvider;
 
+import com.aviadmini.quickimagepick.core.ResultRouter;
+import com.aviadmini.quickimagepick.core.SourceSelection;
+
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.UUID;
 
@@ -32,20 +35,15 @@ import java.util.UUID;
 @SuppressLint("NewApi")
 public class QuickImagePick {
 
-    private static final String PREFS_REQUEST_TYPE    = "req_type";
-    private static final String PREFS_LAST_CAMERA_URI = "last_cam_uri";
-    private static final String PREFS_CAMERA_DIR      = "cam_dir";
-
-    private static final int REQ_CAMERA    = 4001;
-    private static final int REQ_GALLERY   = 4002;
-    private static final int REQ_DOCUMENTS = 4003;
-    private static final int REQ_MULTIPLE  = 4004;
-
     public static final String ERR_CAMERA_NULL_RESULT         = "Camera returned bad/null data";
     public static final String ERR_CAMERA_CANNOT_WRITE_OUTPUT = "App cannot write to specified camera output directory";
     public static final String ERR_GALLERY_NULL_RESULT        = "Gallery returned bad/null data";
     public static final String ERR_DOCS_NULL_RESULT           = "Documents returned bad/null data";
+    public static final String ERR_PROCESSING_FAILED          = "Processing of picked image failed";
+    public static final String ERR_NOT_AN_IMAGE               = "Picked file is not a supported image";
+    public static final String ERR_LIMITS_EXCEEDED            = "Picked image exceeds pick limits";
 
+    private static final boolean API_16 = Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN;
     private static final boolean API_19 = Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT;
     private static final boolean API_23 = Build.VERSION.SDK_INT >= Build.VERSION_CODES.M;
 
@@ -56,29 +54,29 @@ public class QuickImagePick {
      *
      * @param pActivity    activity which gets the result after pick flow
      * @param pRequestType request type (for different pick types), returned in callback
+     * @return pick session or null if process could not be started
      */
-    public static boolean pickFromCamera(@NonNull final Activity pActivity, final int pRequestType) {
+    @Nullable
+    public static PickSession pickFromCamera(@NonNull final Activity pActivity, final int pRequestType) {
 
-        final File file = createImageFile(pActivity);
-        if (file == null) {
-            return false;
-        }
-        final Intent intent = prepareCameraIntent(pActivity, createImageUri(pActivity, file), pRequestType);
-        if (intent == null) {
-            return false;
+        final PickSession session = startCameraSession(pActivity, pRequestType);
+        if (session == null) {
+            return null;
         }
 
-        pActivity.startActivityForResult(intent, REQ_CAMERA);
+        pActivity.startActivityForResult(prepareCameraIntent(session.getOutputUri()), session.getRequestCode());
 
-        return true;
+        return session;
     }
 
     /**
      * Capture new image using one of camera apps
      *
      * @param pActivity activity which gets the result after pick flow
+     * @return pick session or null if process could not be started
      */
-    public static boolean pickFromCamera(@NonNull final Activity pActivity) {
+    @Nullable
+    public static PickSession pickFromCamera(@NonNull final Activity pActivity) {
         return pickFromCamera(pActivity, 0);
     }
 
@@ -87,31 +85,29 @@ public class QuickImagePick {
      *
      * @param pFragment    support fragment which gets the result after pick flow
      * @param pRequestType request type (for different pick types), returned in callback
+     * @return pick session or null if process could not be started
      */
-    public static boolean pickFromCamera(@NonNull final Fragment pFragment, final int pRequestType) {
-
-        final Context context = pFragment.getContext();
+    @Nullable
+    public static PickSession pickFromCamera(@NonNull final Fragment pFragment, final int pRequestType) {
 
-        final File file = createImageFile(context);
-        if (file == null) {
-            return false;
-        }
-        final Intent intent = prepareCameraIntent(context, createImageUri(context, file), pRequestType);
-        if (intent == null) {
-            return false;
+        final PickSession session = startCameraSession(pFragment.getContext(), pRequestType);
+        if (session == null) {
+            return null;
         }
 
-        pFragment.startActivityForResult(intent, REQ_CAMERA);
+        pFragment.startActivityForResult(prepareCameraIntent(session.getOutputUri()), session.getRequestCode());
 
-        return true;
+        return session;
     }
 
     /**
      * Capture new image using one of camera apps
      *
      * @param pFragment support fragment which gets the result after pick flow
+     * @return pick session or null if process could not be started
      */
-    public static boolean pickFromCamera(@NonNull final Fragment pFragment) {
+    @Nullable
+    public static PickSession pickFromCamera(@NonNull final Fragment pFragment) {
         return pickFromCamera(pFragment, 0);
     }
 
@@ -120,42 +116,64 @@ public class QuickImagePick {
      *
      * @param pFragment    fragment which gets the result after pick flow
      * @param pRequestType request type (for different pick types), returned in callback
+     * @return pick session or null if process could not be started
      */
-    public static boolean pickFromCamera(@NonNull final android.app.Fragment pFragment, final int pRequestType) {
-
-        final Context context = API_23 ? pFragment.getContext() : pFragment.getActivity();
+    @Nullable
+    public static PickSession pickFromCamera(@NonNull final android.app.Fragment pFragment, final int pRequestType) {
 
-        final File file = createImageFile(context);
-        if (file == null) {
-            return false;
-        }
-        final Intent intent = prepareCameraIntent(context, createImageUri(context, file), pRequestType);
-        if (intent == null) {
-            return false;
+        final PickSession session = startCameraSession(API_23 ? pFragment.getContext() : pFragment.getActivity(), pRequestType);
+        if (session == null) {
+            return null;
         }
 
-        pFragment.startActivityForResult(intent, REQ_CAMERA);
+        pFragment.startActivityForResult(prepareCameraIntent(session.getOutputUri()), session.getRequestCode());
 
-        return true;
+        return session;
     }
 
     /**
      * Capture new image using camera apps
      *
      * @param pFragment fragment which gets the result after pick flow
+     * @return pick session or null if process could not be started
      */
-    public static boolean pickFromCamera(@NonNull final android.app.Fragment pFragment) {
+    @Nullable
+    public static PickSession pickFromCamera(@NonNull final android.app.Fragment pFragment) {
         return pickFromCamera(pFragment, 0);
     }
 
     @Nullable
-    private static Intent prepareCameraIntent(@NonNull final Context pContext, @NonNull final Uri pOutputFileUri, final int pRequestType) {
+    private static PickSession startCameraSession(@NonNull final Context pContext, final int pRequestType) {
+
+        final long start = PickMetrics.start();
+        PickMetrics.beginSection("QIP prepare output");
+        try {
 
-        PreferenceManager.getDefaultSharedPreferences(pContext)
-                         .edit()
-                         .putInt(PREFS_REQUEST_TYPE, pRequestType)
-                         .putString(PREFS_LAST_CAMERA_URI, pOutputFileUri.toString())
-                         .apply();
+            final CameraOutput output = createCameraOutput(pContext);
+            if (output == null) {
+                return null;
+            }
+
+            final PickSession session = PickSessionStore.get(pContext)
+                                                        .newSession(PickSession.KIND_CAMERA, pRequestType, output.mUri, false,
+                                                                PickSource.CAMERA);
+
+            if (output.mFile != null) {
+                CameraPicsJanitor.get(pContext)
+                                 .onFileCreated(session.getId(), output.mFile);
+            }
+
+            PickMetrics.step(session.getId(), PickMetrics.STEP_PREPARE_OUTPUT, start);
+
+            return session;
+        } finally {
+            PickMetrics.endSection();
+        }
+
+    }
+
+    @NonNull
+    private static Intent prepareCameraIntent(@NonNull final Uri pOutputFileUri) {
 
         final Intent result = new Intent(MediaStore.ACTION_IMAGE_CAPTURE);
         result.putExtra(MediaStore.EXTRA_OUTPUT, pOutputFileUri);
@@ -163,10 +181,36 @@ public class QuickImagePick {
         return result;
     }
 
+    /**
+     * @return pending MediaStore row if enabled, supported and already inserted, otherwise a new file in camera pictures directory.
+     * Null if neither can be created
+     */
+    @Nullable
+    private static CameraOutput createCameraOutput(@NonNull final Context pContext) {
+
+        if (MediaStoreOutput.isSupported() && PickSessionStore.get(pContext)
+                                                              .isCameraToMediaStore()) {
+
+            // inserted ahead in background, see MediaStoreOutput
+            final Uri uri = MediaStoreOutput.get(pContext)
+                                            .take();
+            if (uri != null) {
+                return new CameraOutput(uri, null);
+            }
+
+        }
+
+        final File file = createImageFile(pContext);
+
+        return file == null ? null : new CameraOutput(createImageUri(pContext, file), file);
+    }
+
     @Nullable
     private static File createImageFile(@NonNull final Context pContext) {
 
-        final File dir = getCameraPicsDirectory(pContext);
+        // prepared in background, see CameraPicsDirectory
+        final File dir = CameraPicsDirectory.get(pContext)
+                                            .await();
         if (dir == null) {
             return null;
         }
@@ -188,22 +232,42 @@ public class QuickImagePick {
      *
      * @param pActivity    activity which gets the result after pick flow
      * @param pRequestType request type (for different pick types), returned in callback
+     * @return pick session
+     */
+    @NonNull
+    public static PickSession pickFromGallery(@NonNull final Activity pActivity, final int pRequestType) {
+        return pickFromGallery(pActivity, pRequestType, false);
+    }
+
+    /**
+     * Pick image from Gallery, optionally allowing to pick several images at once
+     *
+     * @param pActivity      activity which gets the result after pick flow
+     * @param pRequestType   request type (for different pick types), returned in callback
+     * @param pAllowMultiple true to let user pick several images (API 18+, if picker app supports it).
+     *                       Picked images are delivered to {@link MultipleCallback#onImagesPicked(PickSource, int, List)}
+     * @return pick session
      */
-    public static void pickFromGallery(@NonNull final Activity pActivity, final int pRequestType) {
+    @NonNull
+    public static PickSession pickFromGallery(@NonNull final Activity pActivity, final int pRequestType, final boolean pAllowMultiple) {
 
-        final Intent intent = prepareGalleryIntent(pActivity, pRequestType);
+        final PickSession session = PickSessionStore.get(pActivity)
+                                                    .newSession(PickSession.KIND_GALLERY, pRequestType, null, pAllowMultiple, PickSource.GALLERY);
 
-        pActivity.startActivityForResult(intent, REQ_GALLERY);
+        pActivity.startActivityForResult(prepareGalleryIntent(pAllowMultiple), session.getRequestCode());
 
+        return session;
     }
 
     /**
      * Pick image from Gallery
      *
      * @param pActivity activity which gets the result after pick flow
+     * @return pick session
      */
-    public static void pickFromGallery(@NonNull final Activity pActivity) {
-        pickFromGallery(pActivity, 0);
+    @NonNull
+    public static PickSession pickFromGallery(@NonNull final Activity pActivity) {
+        return pickFromGallery(pActivity, 0);
     }
 
     /**
@@ -211,22 +275,42 @@ public class QuickImagePick {
      *
      * @param pFragment    support fragment which gets the result after pick flow
      * @param pRequestType request type (for different pick types), returned in callback
+     * @return pick session
+     */
+    @NonNull
+    public static PickSession pickFromGallery(@NonNull final Fragment pFragment, final int pRequestType) {
+        return pickFromGallery(pFragment, pRequestType, false);
+    }
+
+    /**
+     * Pick image from Gallery, optionally allowing to pick several images at once
+     *
+     * @param pFragment      support fragment which gets the result after pick flow
+     * @param pRequestType   request type (for different pick types), returned in callback
+     * @param pAllowMultiple true to let user pick several images (API 18+, if picker app supports it).
+     *                       Picked images are delivered to {@link MultipleCallback#onImagesPicked(PickSource, int, List)}
+     * @return pick session
      */
-    public static void pickFromGallery(@NonNull final Fragment pFragment, final int pRequestType) {
+    @NonNull
+    public static PickSession pickFromGallery(@NonNull final Fragment pFragment, final int pRequestType, final boolean pAllowMultiple) {
 
-        final Intent intent = prepareGalleryIntent(pFragment.getContext(), pRequestType);
+        final PickSession session = PickSessionStore.get(pFragment.getContext())
+                                                    .newSession(PickSession.KIND_GALLERY, pRequestType, null, pAllowMultiple, PickSource.GALLERY);
 
-        pFragment.startActivityForResult(intent, REQ_GALLERY);
+        pFragment.startActivityForResult(prepareGalleryIntent(pAllowMultiple), session.getRequestCode());
 
+        return session;
     }
 
     /**
      * Pick image from Gallery
      *
      * @param pFragment support fragment which gets the result after pick flow
+     * @return pick session
      */
-    public static void pickFromGallery(@NonNull final Fragment pFragment) {
-        pickFromGallery(pFragment, 0);
+    @NonNull
+    public static PickSession pickFromGallery(@NonNull final Fragment pFragment) {
+        return pickFromGallery(pFragment, 0);
     }
 
     /**
@@ -234,33 +318,59 @@ public class QuickImagePick {
      *
      * @param pFragment    fragment which gets the result after pick flow
      * @param pRequestType request type (for different pick types), returned in callback
+     * @return pick session
+     */
+    @NonNull
+    public static PickSession pickFromGallery(@NonNull final android.app.Fragment pFragment, final int pRequestType) {
+        return pickFromGallery(pFragment, pRequestType, false);
+    }
+
+    /**
+     * Pick image from Gallery, optionally allowing to pick several images at once
+     *
+     * @param pFragment      fragment which gets the result after pick flow
+     * @param pRequestType   request type (for different pick types), returned in callback
+     * @param pAllowMultiple true to let user pick several images (API 18+, if picker app supports it).
+     *                       Picked images are delivered to {@link MultipleCallback#onImagesPicked(PickSource, int, List)}
+     * @return pick session
      */
-    public static void pickFromGallery(@NonNull final android.app.Fragment pFragment, final int pRequestType) {
+    @NonNull
+    public static PickSession pickFromGallery(@NonNull final android.app.Fragment pFragment, final int pRequestType, final boolean pAllowMultiple) {
 
-        final Intent intent = prepareGalleryIntent(API_23 ? pFragment.getContext() : pFragment.getActivity(), pRequestType);
+        final PickSession session = PickSessionStore.get(API_23 ? pFragment.getContext() : pFragment.getActivity())
+                                                    .newSession(PickSession.KIND_GALLERY, pRequestType, null, pAllowMultiple, PickSource.GALLERY);
 
-        pFragment.startActivityForResult(intent, REQ_GALLERY);
+        pFragment.startActivityForResult(prepareGalleryIntent(pAllowMultiple), session.getRequestCode());
 
+        return session;
     }
 
     /**
      * Pick image from Gallery
      *
      * @param pFragment fragment which gets the result after pick flow
+     * @return pick session
      */
-    public static void pickFromGallery(@NonNull final android.app.Fragment pFragment) {
-        pickFromGallery(pFragment, 0);
+    @NonNull
+    public static PickSession pickFromGallery(@NonNull final android.app.Fragment pFragment) {
+        return pickFromGallery(pFragment, 0);
+    }
+
+    @NonNull
+    static Intent prepareGalleryIntent() {
+        return prepareGalleryIntent(false);
     }
 
     @NonNull
-    private static Intent prepareGalleryIntent(@NonNull final Context pContext, final int pRequestType) {
+    private static Intent prepareGalleryIntent(final boolean pAllowMultiple) {
 
-        PreferenceManager.getDefaultSharedPreferences(pContext)
-                         .edit()
-                         .putInt(PREFS_REQUEST_TYPE, pRequestType)
-                         .apply();
+        final Intent intent = new Intent(Intent.ACTION_PICK, MediaStore.Images.Media.EXTERNAL_CONTENT_URI);
+
+        if (pAllowMultiple) {
+            intent.putExtra(Intent.EXTRA_ALLOW_MULTIPLE, true);
+        }
 
-        return new Intent(Intent.ACTION_PICK, MediaStore.Images.Media.EXTERNAL_CONTENT_URI);
+        return intent;
     }
 
     // ==== DOCUMENTS ==== //
@@ -270,22 +380,42 @@ public class QuickImagePick {
      *
      * @param pActivity    activity which gets the result after pick flow
      * @param pRequestType request type (for different pick types), returned in callback
+     * @return pick session
+     */
+    @NonNull
+    public static PickSession pickFromDocuments(@NonNull final Activity pActivity, final int pRequestType) {
+        return pickFromDocuments(pActivity, pRequestType, false);
+    }
+
+    /**
+     * Pick image using Documents app (or file manager on pre-KitKat), optionally allowing to pick several images at once
+     *
+     * @param pActivity      activity which gets the result after pick flow
+     * @param pRequestType   request type (for different pick types), returned in callback
+     * @param pAllowMultiple true to let user pick several images (API 18+, if picker app supports it).
+     *                       Picked images are delivered to {@link MultipleCallback#onImagesPicked(PickSource, int, List)}
+     * @return pick session
      */
-    public static void pickFromDocuments(@NonNull final Activity pActivity, final int pRequestType) {
+    @NonNull
+    public static PickSession pickFromDocuments(@NonNull final Activity pActivity, final int pRequestType, final boolean pAllowMultiple) {
 
-        final Intent intent = prepareDocumentsIntent(pActivity, pRequestType);
+        final PickSession session = PickSessionStore.get(pActivity)
+                                                    .newSession(PickSession.KIND_DOCUMENTS, pRequestType, null, pAllowMultiple, PickSource.DOCUMENTS);
 
-        pActivity.startActivityForResult(intent, REQ_DOCUMENTS);
+        pActivity.startActivityForResult(prepareDocumentsIntent(pAllowMultiple), session.getRequestCode());
 
+        return session;
     }
 
     /**
      * Pick image using Documents app (or file manager on pre-KitKat)
      *
      * @param pActivity activity which gets the result after pick flow
+     * @return pick session
      */
-    public static void pickFromDocuments(@NonNull final Activity pActivity) {
-        pickFromDocuments(pActivity, 0);
+    @NonNull
+    public static PickSession pickFromDocuments(@NonNull final Activity pActivity) {
+        return pickFromDocuments(pActivity, 0);
     }
 
     /**
@@ -293,22 +423,42 @@ public class QuickImagePick {
      *
      * @param pFragment    support fragment which gets the result after pick flow
      * @param pRequestType request type (for different pick types), returned in callback
+     * @return pick session
+     */
+    @NonNull
+    public static PickSession pickFromDocuments(@NonNull final Fragment pFragment, final int pRequestType) {
+        return pickFromDocuments(pFragment, pRequestType, false);
+    }
+
+    /**
+     * Pick image using Documents app (or file manager on pre-KitKat), optionally allowing to pick several images at once
+     *
+     * @param pFragment      support fragment which gets the result after pick flow
+     * @param pRequestType   request type (for different pick types), returned in callback
+     * @param pAllowMultiple true to let user pick several images (API 18+, if picker app supports it).
+     *                       Picked images are delivered to {@link MultipleCallback#onImagesPicked(PickSource, int, List)}
+     * @return pick session
      */
-    public static void pickFromDocuments(@NonNull final Fragment pFragment, final int pRequestType) {
+    @NonNull
+    public static PickSession pickFromDocuments(@NonNull final Fragment pFragment, final int pRequestType, final boolean pAllowMultiple) {
 
-        final Intent intent = prepareDocumentsIntent(pFragment.getContext(), pRequestType);
+        final PickSession session = PickSessionStore.get(pFragment.getContext())
+                                                    .newSession(PickSession.KIND_DOCUMENTS, pRequestType, null, pAllowMultiple, PickSource.DOCUMENTS);
 
-        pFragment.startActivityForResult(intent, REQ_DOCUMENTS);
+        pFragment.startActivityForResult(prepareDocumentsIntent(pAllowMultiple), session.getRequestCode());
 
+        return session;
     }
 
     /**
      * Pick image using Documents app (or file manager on pre-KitKat)
      *
      * @param pFragment support fragment which gets the result after pick flow
+     * @return pick session
      */
-    public static void pickFromDocuments(@NonNull final Fragment pFragment) {
-        pickFromDocuments(pFragment, 0);
+    @NonNull
+    public static PickSession pickFromDocuments(@NonNull final Fragment pFragment) {
+        return pickFromDocuments(pFragment, 0);
     }
 
     /**
@@ -316,35 +466,54 @@ public class QuickImagePick {
      *
      * @param pFragment    fragment which gets the result after pick flow
      * @param pRequestType request type (for different pick types), returned in callback
+     * @return pick session
+     */
+    @NonNull
+    public static PickSession pickFromDocuments(@NonNull final android.app.Fragment pFragment, final int pRequestType) {
+        return pickFromDocuments(pFragment, pRequestType, false);
+    }
+
+    /**
+     * Pick image using Documents app (or file manager on pre-KitKat), optionally allowing to pick several images at once
+     *
+     * @param pFragment      fragment which gets the result after pick flow
+     * @param pRequestType   request type (for different pick types), returned in callback
+     * @param pAllowMultiple true to let user pick several images (API 18+, if picker app supports it).
+     *                       Picked images are delivered to {@link MultipleCallback#onImagesPicked(PickSource, int, List)}
+     * @return pick session
      */
-    public static void pickFromDocuments(@NonNull final android.app.Fragment pFragment, final int pRequestType) {
+    @NonNull
+    public static PickSession pickFromDocuments(@NonNull final android.app.Fragment pFragment, final int pRequestType, final boolean pAllowMultiple) {
 
-        final Intent intent = prepareDocumentsIntent(API_23 ? pFragment.getContext() : pFragment.getActivity(), pRequestType);
+        final PickSession session = PickSessionStore.get(API_23 ? pFragment.getContext() : pFragment.getActivity())
+                                                    .newSession(PickSession.KIND_DOCUMENTS, pRequestType, null, pAllowMultiple, PickSource.DOCUMENTS);
 
-        pFragment.startActivityForResult(intent, REQ_DOCUMENTS);
+        pFragment.startActivityForResult(prepareDocumentsIntent(pAllowMultiple), session.getRequestCode());
 
+        return session;
     }
 
     /**
      * Pick image using Documents app (or file manager on pre-KitKat)
      *
      * @param pFragment fragment which gets the result after pick flow
+     * @return pick session
      */
-    public static void pickFromDocuments(@NonNull final android.app.Fragment pFragment) {
-        pickFromDocuments(pFragment, 0);
+    @NonNull
+    public static PickSession pickFromDocuments(@NonNull final android.app.Fragment pFragment) {
+        return pickFromDocuments(pFragment, 0);
     }
 
     @NonNull
-    private static Intent prepareDocumentsIntent(@NonNull final Context pContext, final int pRequestType) {
-
-        PreferenceManager.getDefaultSharedPreferences(pContext)
-                         .edit()
-                         .putInt(PREFS_REQUEST_TYPE, pRequestType)
-                         .apply();
+    private static Intent prepareDocumentsIntent(final boolean pAllowMultiple) {
 
         final Intent intent = new Intent(Intent.ACTION_GET_CONTENT);
         intent.setType("image/*");
 
+        if (pAllowMultiple) {
+            intent.putExtra(Intent.EXTRA_ALLOW_MULTIPLE, true);
+        }
+
         return intent;
     }
 
@@ -357,19 +526,22 @@ public class QuickImagePick {
      * @param pRequestType request type (for different pick types), returned in callback
      * @param pTitle       intent chooser title
      * @param pPickSources sources offered to user to pick with
-     * @return true if process started successfully
+     * @return pick session or null if process could not be started
      */
-    public static boolean pickFromMultipleSources(@NonNull final Activity pActivity, final int pRequestType, @Nullable final String pTitle,
-                                                  @NonNull final PickSource... pPickSources) {
+    @Nullable
+    public static PickSession pickFromMultipleSources(@NonNull final Activity pActivity, final int pRequestType, @Nullable final String pTitle,
+                                                      @NonNull final PickSource... pPickSources) {
+
+        final PickSession session = startMultipleSourcesSession(pActivity, pRequestType, pPickSources);
 
-        final Intent intent = prepareMultipleSourcesIntent(pActivity, pRequestType, pTitle, pPickSources);
+        final Intent intent = prepareMultipleSourcesIntent(pActivity, session, pTitle);
         if (intent == null) {
-            return false;
+            return null;
         }
 
-        pActivity.startActivityForResult(intent, REQ_MULTIPLE);
+        pActivity.startActivityForResult(intent, session.getRequestCode());
 
-        return true;
+        return session;
     }
 
     /**
@@ -378,10 +550,11 @@ public class QuickImagePick {
      * @param pActivity    activity which gets the result after pick flow
      * @param pTitle       intent chooser title
      * @param pPickSources sources offered to user to pick with
-     * @return true if process started successfully
+     * @return pick session or null if process could not be started
      */
-    public static boolean pickFromMultipleSources(@NonNull final Activity pActivity, @Nullable final String pTitle,
-                                                  @NonNull final PickSource... pPickSources) {
+    @Nullable
+    public static PickSession pickFromMultipleSources(@NonNull final Activity pActivity, @Nullable final String pTitle,
+                                                      @NonNull final PickSource... pPickSources) {
         return pickFromMultipleSources(pActivity, 0, pTitle, pPickSources);
     }
 
@@ -392,19 +565,24 @@ public class QuickImagePick {
      * @param pRequestType request type (for different pick types), returned in callback
      * @param pTitle       intent chooser title
      * @param pPickSources sources offered to user to pick with
-     * @return true if process started successfully
+     * @return pick session or null if process could not be started
      */
-    public static boolean pickFromMultipleSources(@NonNull final Fragment pFragment, final int pRequestType, @Nullable final String pTitle,
-                                                  @NonNull final PickSource... pPickSources) {
+    @Nullable
+    public static PickSession pickFromMultipleSources(@NonNull final Fragment pFragment, final int pRequestType, @Nullable final String pTitle,
+                                                      @NonNull final PickSource... pPickSources) {
+
+        final Context context = pFragment.getContext();
+
+        final PickSession session = startMultipleSourcesSession(context, pRequestType, pPickSources);
 
-        final Intent intent = prepareMultipleSourcesIntent(pFragment.getContext(), pRequestType, pTitle, pPickSources);
+        final Intent intent = prepareMultipleSourcesIntent(context, session, pTitle);
         if (intent == null) {
-            return false;
+            return null;
         }
 
-        pFragment.startActivityForResult(intent, REQ_MULTIPLE);
+        pFragment.startActivityForResult(intent, session.getRequestCode());
 
-        return true;
+        return session;
     }
 
     /**
@@ -413,10 +591,11 @@ public class QuickImagePick {
      * @param pFragment    support fragment which gets the result after pick flow
      * @param pTitle       intent chooser title
      * @param pPickSources sources offered to user to pick with
-     * @return true if process started successfully
+     * @return pick session or null if process could not be started
      */
-    public static boolean pickFromMultipleSources(@NonNull final Fragment pFragment, @Nullable final String pTitle,
-                                                  @NonNull final PickSource... pPickSources) {
+    @Nullable
+    public static PickSession pickFromMultipleSources(@NonNull final Fragment pFragment, @Nullable final String pTitle,
+                                                      @NonNull final PickSource... pPickSources) {
         return pickFromMultipleSources(pFragment, 0, pTitle, pPickSources);
     }
 
@@ -427,20 +606,24 @@ public class QuickImagePick {
      * @param pRequestType request type (for different pick types), returned in callback
      * @param pTitle       intent chooser title
      * @param pPickSources sources offered to user to pick with
-     * @return true if process started successfully
+     * @return pick session or null if process could not be started
      */
-    public static boolean pickFromMultipleSources(@NonNull final android.app.Fragment pFragment, final int pRequestType,
-                                                  @Nullable final String pTitle, @NonNull final PickSource... pPickSources) {
+    @Nullable
+    public static PickSession pickFromMultipleSources(@NonNull final android.app.Fragment pFragment, final int pRequestType,
+                                                      @Nullable final String pTitle, @NonNull final PickSource... pPickSources) {
+
+        final Context context = API_23 ? pFragment.getContext() : pFragment.getActivity();
+
+        final PickSession session = startMultipleSourcesSession(context, pRequestType, pPickSources);
 
-        final Intent intent = prepareMultipleSourcesIntent(API_23 ? pFragment.getContext() : pFragment.getActivity(), pRequestType, pTitle,
-                pPickSources);
+        final Intent intent = prepareMultipleSourcesIntent(context, session, pTitle);
         if (intent == null) {
-            return false;
+            return null;
         }
 
-        pFragment.startActivityForResult(intent, REQ_MULTIPLE);
+        pFragment.startActivityForResult(intent, session.getRequestCode());
 
-        return true;
+        return session;
     }
 
     /**
@@ -449,122 +632,147 @@ public class QuickImagePick {
      * @param pFragment    fragment which gets the result after pick flow
      * @param pTitle       chooser title
      * @param pPickSources sources offered to user to pick with
-     * @return true if process started successfully
+     * @return pick session or null if process could not be started
      */
-    public static boolean pickFromMultipleSources(@NonNull final android.app.Fragment pFragment, @Nullable final String pTitle,
-                                                  @NonNull final PickSource... pPickSources) {
+    @Nullable
+    public static PickSession pickFromMultipleSources(@NonNull final android.app.Fragment pFragment, @Nullable final String pTitle,
+                                                      @NonNull final PickSource... pPickSources) {
         return pickFromMultipleSources(pFragment, 0, pTitle, pPickSources);
     }
 
-    @Nullable
-    private static Intent prepareMultipleSourcesIntent(@NonNull final Context pContext, final int pRequestType, @Nullable final String pTitle,
-                                                       @NonNull final PickSource... pSources) {
-
-        // no sources - no work
-        if (pSources.length == 0) {
-            return null;
-        }
+    @NonNull
+    private static PickSession startMultipleSourcesSession(@NonNull final Context pContext, final int pRequestType,
+                                                           @NonNull final PickSource... pSources) {
 
-        boolean addCamera = false;
-        boolean addGallery = false;
-        boolean addDocuments = false;
+        CameraOutput output = null;
         for (final PickSource source : pSources) {
 
-            switch (source) {
+            if (source == PickSource.CAMERA) {
 
-                case CAMERA: {
+                output = createCameraOutput(pContext);
 
-                    addCamera = true;
+                break;
+            }
 
-                    break;
-                }
+        }
 
-                case GALLERY: {
+        final PickSession session = PickSessionStore.get(pContext)
+                                                    .newSession(PickSession.KIND_MULTIPLE, pRequestType, output == null ? null : output.mUri,
+                                                            false, pSources);
 
-                    addGallery = true;
+        if (output != null && output.mFile != null) {
+            CameraPicsJanitor.get(pContext)
+                             .onFileCreated(session.getId(), output.mFile);
+        }
 
-                    break;
-                }
+        return session;
+    }
 
-                case DOCUMENTS: {
+    @Nullable
+    private static Intent prepareMultipleSourcesIntent(@NonNull final Context pContext, @NonNull final PickSession pSession,
+                                                       @Nullable final String pTitle) {
 
-                    addDocuments = true;
+        final long start = PickMetrics.start();
+        PickMetrics.beginSection("QIP prepare intent");
+        try {
 
-                    break;
-                }
+            final Intent result = buildMultipleSourcesIntent(pContext, pSession, pTitle);
 
-            }
+            PickMetrics.step(pSession.getId(), PickMetrics.STEP_PREPARE_INTENT, start);
 
+            return result;
+        } finally {
+            PickMetrics.endSection();
         }
 
-        final PackageManager packageManager = pContext.getPackageManager();
-
-        final ArrayList<Intent> resultIntents = new ArrayList<>();
+    }
 
-        // gather camera intents
-        if (addCamera) {
+    @Nullable
+    private static Intent buildMultipleSourcesIntent(@NonNull final Context pContext, @NonNull final PickSession pSession,
+                                                     @Nullable final String pTitle) {
 
-            final List<Intent> cameraIntents = new ArrayList<>();
+        final PickSource[] sources = pSession.getPickSources();
 
-            final File file = createImageFile(pContext);
+        // no sources - no work
+        if (sources.length == 0) {
 
-            if (file != null) {
+            PickSessionStore.get(pContext)
+                            .discardSession(pSession.getId());
 
-                final Uri outputFileUri = createImageUri(pContext, file);
+            return null;
+        }
 
-                final Intent cameraIntent = prepareCameraIntent(pContext, outputFileUri, pRequestType);
+        final ChooserTargetCache targetCache = ChooserTargetCache.get(pContext);
 
-                final List<ResolveInfo> camList = packageManager.queryIntentActivities(cameraIntent, 0);
-                for (final ResolveInfo resolveInfo : camList) {
+        final int sourcesMask = PickSessionStore.pickSourcesToMask(sources);
+        final Uri outputFileUri = pSession.getOutputUri();
 
-                    final String packageName = resolveInfo.activityInfo.packageName;
+        final Intent cameraIntent = outputFileUri == null ? null : prepareCameraIntent(outputFileUri);
+        final Intent galleryIntent = prepareGalleryIntent();
 
-                    final Intent intent = new Intent(cameraIntent);
-                    intent.setComponent(new ComponentName(resolveInfo.activityInfo.packageName, resolveInfo.activityInfo.name));
-                    intent.setPackage(packageName);
-                    intent.putExtra(MediaStore.EXTRA_OUTPUT, outputFileUri);
+        // resolve only what is offered
+        final List<ResolveInfo> cameraTargets;
+        final List<ResolveInfo> galleryTargets;
 
-                    cameraIntents.add(intent);
+        final long resolveStart = PickMetrics.start();
+        PickMetrics.beginSection("QIP resolve targets");
+        try {
 
-                }
+            cameraTargets = (sourcesMask & SourceSelection.SOURCE_CAMERA) != 0 && cameraIntent != null
+                            ? targetCache.getCameraTargets() : Collections.<ResolveInfo>emptyList();
 
-            }
+            galleryTargets = (sourcesMask & SourceSelection.SOURCE_GALLERY) != 0
+                             ? targetCache.getGalleryTargets(galleryIntent) : Collections.<ResolveInfo>emptyList();
 
-            resultIntents.addAll(cameraIntents);
+            PickMetrics.step(pSession.getId(), PickMetrics.STEP_RESOLVE_TARGETS, resolveStart);
 
+        } finally {
+            PickMetrics.endSection();
         }
 
-        // gather gallery intents
-        if (addGallery) {
+        final List<SourceSelection.Entry<ResolveInfo>> entries = SourceSelection.plan(sourcesMask, cameraIntent != null, cameraTargets,
+                galleryTargets);
 
-            final List<Intent> galleryIntents = new ArrayList<>();
+        final ArrayList<Intent> resultIntents = new ArrayList<>(entries.size());
+        for (final SourceSelection.Entry<ResolveInfo> entry : entries) {
 
-            final Intent galleryIntent = prepareGalleryIntent(pContext, pRequestType);
+            switch (entry.getSource()) {
 
-            final List<ResolveInfo> camList = packageManager.queryIntentActivities(galleryIntent, 0);
-            for (final ResolveInfo resolveInfo : camList) {
+                case SourceSelection.SOURCE_CAMERA: {
 
-                final String packageName = resolveInfo.activityInfo.packageName;
+                    //noinspection ConstantConditions - camera entries are planned only with output
+                    final Intent intent = forTarget(cameraIntent, entry.getTarget());
+                    intent.putExtra(MediaStore.EXTRA_OUTPUT, outputFileUri);
 
-                final Intent intent = new Intent(galleryIntent);
-                intent.setComponent(new ComponentName(resolveInfo.activityInfo.packageName, resolveInfo.activityInfo.name));
-                intent.setPackage(packageName);
+                    resultIntents.add(intent);
 
-                galleryIntents.add(intent);
+                    break;
+                }
 
-            }
+                case SourceSelection.SOURCE_GALLERY: {
 
-            resultIntents.addAll(galleryIntents);
+                    resultIntents.add(forTarget(galleryIntent, entry.getTarget()));
 
-        }
+                    break;
+                }
+
+                case SourceSelection.SOURCE_DOCUMENTS: {
+
+                    resultIntents.add(prepareDocumentsIntent(false));
+
+                    break;
+                }
+
+            }
 
-        // add documents intent
-        if (addDocuments) {
-            resultIntents.add(prepareDocumentsIntent(pContext, pRequestType));
         }
 
         // no components are able to perform pick
         if (resultIntents.size() == 0) {
+
+            PickSessionStore.get(pContext)
+                            .discardSession(pSession.getId());
+
             return null;
         }
 
@@ -575,6 +783,68 @@ public class QuickImagePick {
         return result;
     }
 
+    @NonNull
+    private static Intent forTarget(@NonNull final Intent pIntent, @NonNull final ResolveInfo pTarget) {
+
+        final Intent intent = new Intent(pIntent);
+        intent.setComponent(new ComponentName(pTarget.activityInfo.packageName, pTarget.activityInfo.name));
+        intent.setPackage(pTarget.activityInfo.packageName);
+
+        return intent;
+    }
+
+    /**
+     * Resolves apps offered by {@code pickFromMultipleSources(...)} and prepares camera pictures directory (and MediaStore row,
+     * see {@link #setCameraPicsToMediaStore(Context, boolean)}) on background threads,
+     * so that the first pick does not query {@link android.content.pm.PackageManager} or touch the disk on main thread.
+     * Call it early, e.g. in {@code Application.onCreate()}. Resolved apps are kept until a package is installed, removed or updated
+     *
+     * @param pContext app {@link Context}
+     */
+    public static void warmUp(@NonNull final Context pContext) {
+
+        ChooserTargetCache.get(pContext)
+                          .warmUp();
+
+        CameraPicsDirectory.get(pContext)
+                           .prepare();
+
+        MediaStoreOutput.get(pContext)
+                        .prepare();
+
+    }
+
+    /**
+     * Enables library strict mode: disk access by the library on main thread throws {@link IllegalStateException}.
+     * Meant for tests and debug builds, disabled by default
+     *
+     * @param pEnabled true to enable
+     */
+    public static void setStrictMode(final boolean pEnabled) {
+        PickStrictMode.setEnabled(pEnabled);
+    }
+
+    /**
+     * Sets limits that gallery and documents picks are validated against. Validation reads image header and size on a background thread
+     * before the callback is triggered, images that fail are reported with {@link #ERR_NOT_AN_IMAGE} or {@link #ERR_LIMITS_EXCEEDED}.
+     * Of several picked images only the valid ones are delivered. Pass null to deliver picks without validation, which is the default
+     *
+     * @param pLimits limits or null
+     */
+    public static void setPickLimits(@Nullable final PickLimits pLimits) {
+        PickLimits.setCurrent(pLimits);
+    }
+
+    /**
+     * Sets listener of pick flow timings and counters. Pass null to stop measuring, which is the default
+     *
+     * @param pListener metrics listener
+     * @see PickMetrics
+     */
+    public static void setMetricsListener(@Nullable final PickMetrics.Listener pListener) {
+        PickMetrics.setListener(pListener);
+    }
+
     // ==== RESULT HANDLING ==== //
 
     /**
@@ -625,126 +895,600 @@ public class QuickImagePick {
     public static boolean handleActivityResult(@NonNull final Context pContext, final int pRequestCode, final int pResultCode,
                                                @Nullable final Intent pData, @NonNull final Callback pCallback) {
 
-        if (pRequestCode != REQ_CAMERA && pRequestCode != REQ_GALLERY && pRequestCode != REQ_DOCUMENTS && pRequestCode != REQ_MULTIPLE) {
+        if (!PickSession.isRequestCode(pRequestCode)) {
             return false;
         }
 
-        final int requestType = PreferenceManager.getDefaultSharedPreferences(pContext)
-                                                 .getInt(PREFS_REQUEST_TYPE, 0);
+        final long start = PickMetrics.start();
+        PickMetrics.beginSection("QIP handle result");
+        try {
 
-        if (pResultCode == Activity.RESULT_OK) {
-
-            if (pRequestCode == REQ_DOCUMENTS) {
-                handleResultFromDocuments(pContext, requestType, pCallback, pData);
-            } else if (pRequestCode == REQ_GALLERY) {
-                handleResultFromGallery(pContext, requestType, pCallback, pData);
-            } else if (pRequestCode == REQ_CAMERA) {
-                handleResultFromCamera(pContext, requestType, pCallback);
-            } else if (pData == null || pData.getData() == null) {
-                handleResultFromCamera(pContext, requestType, pCallback);
-            } else {
-                handleResultFromDocuments(pContext, requestType, pCallback, pData);
-            }
+            final int sessionId = handleSessionResult(pContext, pRequestCode, pResultCode, pData, pCallback);
 
-        } else {
+            PickMetrics.step(sessionId, PickMetrics.STEP_HANDLE_RESULT, start);
 
-            if (pRequestCode == REQ_DOCUMENTS) {
-                pCallback.onCancel(PickSource.DOCUMENTS, requestType);
-            } else if (pRequestCode == REQ_GALLERY) {
-                pCallback.onCancel(PickSource.GALLERY, requestType);
-            } else if (pRequestCode == REQ_CAMERA) {
+        } finally {
+            PickMetrics.endSection();
+        }
 
-                pCallback.onCancel(PickSource.CAMERA, requestType);
+        return true;
+    }
 
-                deleteLastCameraPic(pContext);
+    /**
+     * @return id of the finished session or {@link PickMetrics#NO_SESSION} if it was lost
+     */
+    private static int handleSessionResult(@NonNull final Context pContext, final int pRequestCode, final int pResultCode,
+                                           @Nullable final Intent pData, @NonNull final Callback pCallback) {
 
-            } else {
+        final PickSessionStore sessionStore = PickSessionStore.get(pContext);
 
-                if (pData == null || pData.getData() == null) {
+        // camera output must stop being an orphan candidate before its session disappears
+        final PickSession finishing = sessionStore.peekSession(pRequestCode);
+        if (finishing != null && finishing.getOutputUri() != null) {
+            CameraPicsJanitor.get(pContext)
+                             .onSessionFinished(finishing.getId());
+        }
 
-                    pCallback.onCancel(PickSource.CAMERA, requestType);
+        // session may be missing only if the journal was lost, in which case request code still tells the kind
+        final PickSession session = sessionStore.takeSession(pRequestCode);
 
-                    deleteLastCameraPic(pContext);
+        final int sessionId = session == null ? PickMetrics.NO_SESSION : session.getId();
+        final int requestType = session == null ? 0 : session.getRequestType();
+        final Uri outputUri = session == null ? null : session.getOutputUri();
+        final boolean allowMultiple = session != null && session.isAllowMultiple();
 
-                } else if (DocumentsContract.isDocumentUri(pContext, pData.getData())) {
-                    pCallback.onCancel(PickSource.DOCUMENTS, requestType);
-                } else {
-                    pCallback.onCancel(PickSource.GALLERY, requestType);
-                }
+        if (session != null) {
+            PickMetrics.step(sessionId, PickMetrics.STEP_EXTERNAL_APP, session.getStartedAtNanos());
+        }
 
-            }
+        final int route = ResultRouter.route(PickSession.kindOf(pRequestCode), pData != null && pData.getData() != null);
 
+        // processing started by callbacks is attributed to this session
+        final int previousSessionId = PickMetrics.enterSession(sessionId);
+        try {
+            dispatchResult(pContext, pResultCode, route, requestType, outputUri, allowMultiple, pCallback, pData);
+        } finally {
+            PickMetrics.exitSession(previousSessionId);
         }
 
-        return true;
+        return sessionId;
     }
 
-    private static void handleResultFromCamera(@NonNull final Context pContext, final int pRequestType, @NonNull final Callback pCallback) {
+    private static void dispatchResult(@NonNull final Context pContext, final int pResultCode, final int pRoute, final int pRequestType,
+                                       @Nullable final Uri pOutputUri, final boolean pAllowMultiple, @NonNull final Callback pCallback,
+                                       @Nullable final Intent pData) {
 
-        final File cameraPicsDir = getCameraPicsDirectory(pContext);
-        if (cameraPicsDir == null || !cameraPicsDir.canWrite()) {
+        if (pResultCode == Activity.RESULT_OK) {
 
-            pCallback.onError(PickSource.CAMERA, pRequestType, ERR_CAMERA_CANNOT_WRITE_OUTPUT);
+            switch (pRoute) {
 
-            return;
-        }
+                case ResultRouter.ROUTE_CAMERA: {
 
-        final Uri pictureUri = getLastCameraUri(pContext);
+                    handleResultFromCamera(pContext, pRequestType, pOutputUri, pCallback);
 
-        if (pictureUri == null) {
-            pCallback.onError(PickSource.CAMERA, pRequestType, ERR_CAMERA_NULL_RESULT);
-        } else {
-            pCallback.onImagePicked(PickSource.GALLERY, pRequestType, pictureUri);
-        }
+                    break;
+                }
 
-    }
+                case ResultRouter.ROUTE_GALLERY: {
 
-    private static void handleResultFromGallery(@NonNull final Context pContext, final int pRequestType, @NonNull final Callback pCallback,
-                                                @Nullable final Intent pData) {
+                    handleResultFromGallery(pContext, pRequestType, pAllowMultiple, pCallback, pData);
 
-        final Uri pictureUri = pData == null ? null : pData.getData();
+                    break;
+                }
 
-        if (pictureUri == null) {
-            pCallback.onError(PickSource.GALLERY, pRequestType, ERR_GALLERY_NULL_RESULT);
-        } else {
-            pCallback.onImagePicked(PickSource.GALLERY, pRequestType, pictureUri);
-        }
+                case ResultRouter.ROUTE_DOCUMENTS: {
 
-    }
+                    handleResultFromDocuments(pContext, pRequestType, pAllowMultiple, pCallback, pData);
 
-    private static void handleResultFromDocuments(@NonNull final Context pContext, final int pRequestType, @NonNull final Callback pCallback,
-                                                  @Nullable final Intent pData) {
+                    break;
+                }
 
-        final Uri pictureUri = pData == null ? null : pData.getData();
+                default: {
 
-        if (pictureUri == null) {
-            pCallback.onError(PickSource.DOCUMENTS, pRequestType, ERR_DOCS_NULL_RESULT);
-        } else {
-            pCallback.onImagePicked(PickSource.DOCUMENTS, pRequestType, pictureUri);
-        }
+                    handleResultFromDocuments(pContext, pRequestType, false, pCallback, pData);
 
-    }
+                    break;
+                }
 
-    // ==== CAMERA DIR ====//
+            }
 
-    /**
-     * @param pContext app {@link Context}
-     * @return directory where pictures taken by camera apps will be saved or null if an error occurs.
-     * By default it's a pictures directory on external storage.
+        } else {
+
+            switch (pRoute) {
+
+                case ResultRouter.ROUTE_CAMERA: {
+
+                    pCallback.onCancel(PickSource.CAMERA, pRequestType);
+
+                    deleteCameraPic(pContext, pOutputUri);
+
+                    break;
+                }
+
+                case ResultRouter.ROUTE_GALLERY: {
+
+                    pCallback.onCancel(PickSource.GALLERY, pRequestType);
+
+                    break;
+                }
+
+                case ResultRouter.ROUTE_DOCUMENTS: {
+
+                    pCallback.onCancel(PickSource.DOCUMENTS, pRequestType);
+
+                    break;
+                }
+
+                default: {
+
+                    // route guarantees data
+                    //noinspection ConstantConditions
+                    final boolean document = DocumentsContract.isDocumentUri(pContext, pData.getData());
+
+                    pCallback.onCancel(document ? PickSource.DOCUMENTS : PickSource.GALLERY, pRequestType);
+
+                    break;
+                }
+
+            }
+
+        }
+
+        // user chose another source in chooser: pending row is not tracked by the janitor, delete it like a cancelled camera pick does
+        if (pRoute != ResultRouter.ROUTE_CAMERA && MediaStoreOutput.isMediaStoreUri(pOutputUri)) {
+            deleteCameraPic(pContext, pOutputUri);
+        }
+
+    }
+
+    /**
+     * Use this in {@code onActivityResult(...)} of Activity or Fragment to run picked image through a {@link PickPipeline}.
+     * Stages run in background, result is delivered on main thread
+     *
+     * @param pFragment    support fragment
+     * @param pRequestCode request code from {@code onActivityResult(...)} parameter
+     * @param pResultCode  result code from {@code onActivityResult(...)} parameter
+     * @param pData        Intent from {@code onActivityResult(...)} parameter
+     * @param pPipeline    processing applied to picked image
+     * @param pCallback    pipeline result callback
+     * @return true if result was accepted by QuickImagePick
      */
-    public static File getCameraPicsDirectory(@NonNull final Context pContext) {
+    public static <T> boolean handleActivityResult(@NonNull final Fragment pFragment, final int pRequestCode, final int pResultCode,
+                                                   @Nullable final Intent pData, @NonNull final PickPipeline<T> pPipeline,
+                                                   @NonNull final PickPipeline.Callback<? super T> pCallback) {
+        return handleActivityResult(pFragment.getContext(), pRequestCode, pResultCode, pData, pPipeline, pCallback);
+    }
+
+    /**
+     * Use this in {@code onActivityResult(...)} of Activity or Fragment to run picked image through a {@link PickPipeline}.
+     * Stages run in background, result is delivered on main thread
+     *
+     * @param pFragment    fragment
+     * @param pRequestCode request code from {@code onActivityResult(...)} parameter
+     * @param pResultCode  result code from {@code onActivityResult(...)} parameter
+     * @param pData        Intent from {@code onActivityResult(...)} parameter
+     * @param pPipeline    processing applied to picked image
+     * @param pCallback    pipeline result callback
+     * @return true if result was accepted by QuickImagePick
+     */
+    public static <T> boolean handleActivityResult(@NonNull final android.app.Fragment pFragment, final int pRequestCode,
+                                                   final int pResultCode, @Nullable final Intent pData,
+                                                   @NonNull final PickPipeline<T> pPipeline,
+                                                   @NonNull final PickPipeline.Callback<? super T> pCallback) {
+        return handleActivityResult(API_23 ? pFragment.getContext() : pFragment.getActivity(), pRequestCode, pResultCode, pData, pPipeline,
+                pCallback);
+    }
+
+    /**
+     * Use this in {@code onActivityResult(...)} of Activity or Fragment to run picked image through a {@link PickPipeline}.
+     * Stages run in background, result is delivered on main thread
+     *
+     * @param pContext     app {@link Context}
+     * @param pRequestCode request code from {@code onActivityResult(...)} parameter
+     * @param pResultCode  result code from {@code onActivityResult(...)} parameter
+     * @param pData        Intent from {@code onActivityResult(...)} parameter
+     * @param pPipeline    processing applied to picked image
+     * @param pCallback    pipeline result callback
+     * @return true if result was accepted by QuickImagePick
+     */
+    public static <T> boolean handleActivityResult(@NonNull final Context pContext, final int pRequestCode, final int pResultCode,
+                                                   @Nullable final Intent pData, @NonNull final PickPipeline<T> pPipeline,
+                                                   @NonNull final PickPipeline.Callback<? super T> pCallback) {
+        return handleActivityResult(pContext, pRequestCode, pResultCode, pData, pPipeline.asCallback(pContext, pCallback));
+    }
+
+    /**
+     * Use this in {@code onActivityResult(...)} of Activity or Fragment to run all picked images through a {@link PickPipeline}.
+     * Images are processed in parallel, each result is delivered on main thread as soon as it's ready
+     *
+     * @param pFragment       support fragment
+     * @param pRequestCode    request code from {@code onActivityResult(...)} parameter
+     * @param pResultCode     result code from {@code onActivityResult(...)} parameter
+     * @param pData           Intent from {@code onActivityResult(...)} parameter
+     * @param pPipeline       processing applied to each picked image
+     * @param pMaxParallelism max number of images processed at the same time
+     * @param pCallback       batch result callback
+     * @return true if result was accepted by QuickImagePick
+     */
+    public static <T> boolean handleActivityResult(@NonNull final Fragment pFragment, final int pRequestCode, final int pResultCode,
+                                                   @Nullable final Intent pData, @NonNull final PickPipeline<T> pPipeline,
+                                                   final int pMaxParallelism, @NonNull final PickPipeline.BatchCallback<? super T> pCallback) {
+        return handleActivityResult(pFragment.getContext(), pRequestCode, pResultCode, pData, pPipeline, pMaxParallelism, pCallback);
+    }
+
+    /**
+     * Use this in {@code onActivityResult(...)} of Activity or Fragment to run all picked images through a {@link PickPipeline}.
+     * Images are processed in parallel, each result is delivered on main thread as soon as it's ready
+     *
+     * @param pFragment       fragment
+     * @param pRequestCode    request code from {@code onActivityResult(...)} parameter
+     * @param pResultCode     result code from {@code onActivityResult(...)} parameter
+     * @param pData           Intent from {@code onActivityResult(...)} parameter
+     * @param pPipeline       processing applied to each picked image
+     * @param pMaxParallelism max number of images processed at the same time
+     * @param pCallback       batch result callback
+     * @return true if result was accepted by QuickImagePick
+     */
+    public static <T> boolean handleActivityResult(@NonNull final android.app.Fragment pFragment, final int pRequestCode,
+                                                   final int pResultCode, @Nullable final Intent pData,
+                                                   @NonNull final PickPipeline<T> pPipeline, final int pMaxParallelism,
+                                                   @NonNull final PickPipeline.BatchCallback<? super T> pCallback) {
+        return handleActivityResult(API_23 ? pFragment.getContext() : pFragment.getActivity(), pRequestCode, pResultCode, pData, pPipeline,
+                pMaxParallelism, pCallback);
+    }
+
+    /**
+     * Use this in {@code onActivityResult(...)} of Activity or Fragment to run all picked images through a {@link PickPipeline}.
+     * Images are processed in parallel, each result is delivered on main thread as soon as it's ready
+     *
+     * @param pContext        app {@link Context}
+     * @param pRequestCode    request code from {@code onActivityResult(...)} parameter
+     * @param pResultCode     result code from {@code onActivityResult(...)} parameter
+     * @param pData           Intent from {@code onActivityResult(...)} parameter
+     * @param pPipeline       processing applied to each picked image
+     * @param pMaxParallelism max number of images processed at the same time, e.g. number of CPU cores
+     * @param pCallback       batch result callback
+     * @return true if result was accepted by QuickImagePick
+     */
+    public static <T> boolean handleActivityResult(@NonNull final Context pContext, final int pRequestCode, final int pResultCode,
+                                                   @Nullable final Intent pData, @NonNull final PickPipeline<T> pPipeline,
+                                                   final int pMaxParallelism, @NonNull final PickPipeline.BatchCallback<? super T> pCallback) {
+        return handleActivityResult(pContext, pRequestCode, pResultCode, pData, pPipeline.asMultipleCallback(pContext, pMaxParallelism, pCallback));
+    }
 
-        final String camDirPath = PreferenceManager.getDefaultSharedPreferences(pContext)
-                                                   .getString(PREFS_CAMERA_DIR, null);
+    /**
+     * Use this in {@code onActivityResult(...)} of Activity or Fragment to get picked image as a {@link PickFuture},
+     * e.g. to chain processing to it. For picks with multiple images the future completes with the first one,
+     * see {@link #handleMultipleActivityResult(Fragment, int, int, Intent)}
+     *
+     * @param pFragment    support fragment
+     * @param pRequestCode request code from {@code onActivityResult(...)} parameter
+     * @param pResultCode  result code from {@code onActivityResult(...)} parameter
+     * @param pData        Intent from {@code onActivityResult(...)} parameter
+     * @return future of picked image {@link Uri} or null if result was not accepted by QuickImagePick. Already completed,
+     * unless picked image is validated in background first (see {@link #setPickLimits(PickLimits)})
+     */
+    @Nullable
+    public static PickFuture<Uri> handleActivityResult(@NonNull final Fragment pFragment, final int pRequestCode, final int pResultCode,
+                                                       @Nullable final Intent pData) {
+        return handleActivityResult(pFragment.getContext(), pRequestCode, pResultCode, pData);
+    }
+
+    /**
+     * Use this in {@code onActivityResult(...)} of Activity or Fragment to get picked image as a {@link PickFuture},
+     * e.g. to chain processing to it. For picks with multiple images the future completes with the first one,
+     * see {@link #handleMultipleActivityResult(android.app.Fragment, int, int, Intent)}
+     *
+     * @param pFragment    fragment
+     * @param pRequestCode request code from {@code onActivityResult(...)} parameter
+     * @param pResultCode  result code from {@code onActivityResult(...)} parameter
+     * @param pData        Intent from {@code onActivityResult(...)} parameter
+     * @return future of picked image {@link Uri} or null if result was not accepted by QuickImagePick. Already completed,
+     * unless picked image is validated in background first (see {@link #setPickLimits(PickLimits)})
+     */
+    @Nullable
+    public static PickFuture<Uri> handleActivityResult(@NonNull final android.app.Fragment pFragment, final int pRequestCode,
+                                                       final int pResultCode, @Nullable final Intent pData) {
+        return handleActivityResult(API_23 ? pFragment.getContext() : pFragment.getActivity(), pRequestCode, pResultCode, pData);
+    }
+
+    /**
+     * Use this in {@code onActivityResult(...)} of Activity or Fragment to get picked image as a {@link PickFuture},
+     * e.g. to chain processing to it. For picks with multiple images the future completes with the first one,
+     * see {@link #handleMultipleActivityResult(Context, int, int, Intent)}
+     *
+     * @param pContext     app {@link Context}
+     * @param pRequestCode request code from {@code onActivityResult(...)} parameter
+     * @param pResultCode  result code from {@code onActivityResult(...)} parameter
+     * @param pData        Intent from {@code onActivityResult(...)} parameter
+     * @return future of picked image {@link Uri} or null if result was not accepted by QuickImagePick. Already completed,
+     * unless picked image is validated in background first (see {@link #setPickLimits(PickLimits)})
+     */
+    @Nullable
+    public static PickFuture<Uri> handleActivityResult(@NonNull final Context pContext, final int pRequestCode, final int pResultCode,
+                                                       @Nullable final Intent pData) {
+
+        final PickFuture<Uri> future = PickFuture.forPick(pContext);
 
-        final File dir = camDirPath == null ? pContext.getExternalFilesDir(Environment.DIRECTORY_PICTURES) : new File(camDirPath);
+        return handleActivityResult(pContext, pRequestCode, pResultCode, pData, PickFuture.completing(future)) ? future : null;
+    }
+
+    /**
+     * Use this in {@code onActivityResult(...)} of Activity or Fragment to get all picked images as a {@link PickFuture}
+     *
+     * @param pFragment    support fragment
+     * @param pRequestCode request code from {@code onActivityResult(...)} parameter
+     * @param pResultCode  result code from {@code onActivityResult(...)} parameter
+     * @param pData        Intent from {@code onActivityResult(...)} parameter
+     * @return future of picked images or null if result was not accepted by QuickImagePick. Already completed,
+     * unless picked images are validated in background first (see {@link #setPickLimits(PickLimits)})
+     */
+    @Nullable
+    public static PickFuture<List<Uri>> handleMultipleActivityResult(@NonNull final Fragment pFragment, final int pRequestCode,
+                                                                     final int pResultCode, @Nullable final Intent pData) {
+        return handleMultipleActivityResult(pFragment.getContext(), pRequestCode, pResultCode, pData);
+    }
+
+    /**
+     * Use this in {@code onActivityResult(...)} of Activity or Fragment to get all picked images as a {@link PickFuture}
+     *
+     * @param pFragment    fragment
+     * @param pRequestCode request code from {@code onActivityResult(...)} parameter
+     * @param pResultCode  result code from {@code onActivityResult(...)} parameter
+     * @param pData        Intent from {@code onActivityResult(...)} parameter
+     * @return future of picked images or null if result was not accepted by QuickImagePick. Already completed,
+     * unless picked images are validated in background first (see {@link #setPickLimits(PickLimits)})
+     */
+    @Nullable
+    public static PickFuture<List<Uri>> handleMultipleActivityResult(@NonNull final android.app.Fragment pFragment, final int pRequestCode,
+                                                                     final int pResultCode, @Nullable final Intent pData) {
+        return handleMultipleActivityResult(API_23 ? pFragment.getContext() : pFragment.getActivity(), pRequestCode, pResultCode, pData);
+    }
+
+    /**
+     * Use this in {@code onActivityResult(...)} of Activity or Fragment to get all picked images as a {@link PickFuture}
+     *
+     * @param pContext     app {@link Context}
+     * @param pRequestCode request code from {@code onActivityResult(...)} parameter
+     * @param pResultCode  result code from {@code onActivityResult(...)} parameter
+     * @param pData        Intent from {@code onActivityResult(...)} parameter
+     * @return future of picked images or null if result was not accepted by QuickImagePick. Already completed,
+     * unless picked images are validated in background first (see {@link #setPickLimits(PickLimits)})
+     */
+    @Nullable
+    public static PickFuture<List<Uri>> handleMultipleActivityResult(@NonNull final Context pContext, final int pRequestCode,
+                                                                     final int pResultCode, @Nullable final Intent pData) {
+
+        final PickFuture<List<Uri>> future = PickFuture.forMultiplePick(pContext);
+
+        return handleActivityResult(pContext, pRequestCode, pResultCode, pData, PickFuture.completingAll(future)) ? future : null;
+    }
+
+    private static void handleResultFromCamera(@NonNull final Context pContext, final int pRequestType, @Nullable final Uri pOutputUri,
+                                               @NonNull final Callback pCallback) {
+
+        final boolean mediaStore = MediaStoreOutput.isMediaStoreUri(pOutputUri);
+
+        if (!mediaStore && CameraPicsDirectory.get(pContext)
+                                              .await() == null) {
+
+            pCallback.onError(PickSource.CAMERA, pRequestType, ERR_CAMERA_CANNOT_WRITE_OUTPUT);
+
+            return;
+        }
+
+        if (pOutputUri == null) {
+            pCallback.onError(PickSource.CAMERA, pRequestType, ERR_CAMERA_NULL_RESULT);
+        } else {
+
+            if (mediaStore) {
+                MediaStoreOutput.publish(pContext, pOutputUri);
+            }
+
+            pCallback.onImagePicked(PickSource.CAMERA, pRequestType, pOutputUri);
 
-        if (dir != null) {
-            //noinspection ConstantConditions,ResultOfMethodCallIgnored
-            dir.mkdirs();
         }
 
-        return dir;
+    }
+
+    private static void handleResultFromGallery(@NonNull final Context pContext, final int pRequestType, final boolean pAllowMultiple,
+                                                @NonNull final Callback pCallback, @Nullable final Intent pData) {
+
+        if (pAllowMultiple) {
+
+            final List<Uri> pictureUris = extractUris(pData);
+
+            if (pictureUris.isEmpty()) {
+                pCallback.onError(PickSource.GALLERY, pRequestType, ERR_GALLERY_NULL_RESULT);
+            } else {
+                deliverPicked(pContext, PickSource.GALLERY, pRequestType, pictureUris, true, pCallback);
+            }
+
+            return;
+        }
+
+        final Uri pictureUri = pData == null ? null : pData.getData();
+
+        if (pictureUri == null) {
+            pCallback.onError(PickSource.GALLERY, pRequestType, ERR_GALLERY_NULL_RESULT);
+        } else {
+            deliverPicked(pContext, PickSource.GALLERY, pRequestType, Collections.singletonList(pictureUri), false, pCallback);
+        }
+
+    }
+
+    private static void handleResultFromDocuments(@NonNull final Context pContext, final int pRequestType, final boolean pAllowMultiple,
+                                                  @NonNull final Callback pCallback, @Nullable final Intent pData) {
+
+        if (pAllowMultiple) {
+
+            final List<Uri> pictureUris = extractUris(pData);
+
+            if (pictureUris.isEmpty()) {
+                pCallback.onError(PickSource.DOCUMENTS, pRequestType, ERR_DOCS_NULL_RESULT);
+            } else {
+                deliverPicked(pContext, PickSource.DOCUMENTS, pRequestType, pictureUris, true, pCallback);
+            }
+
+            return;
+        }
+
+        final Uri pictureUri = pData == null ? null : pData.getData();
+
+        if (pictureUri == null) {
+            pCallback.onError(PickSource.DOCUMENTS, pRequestType, ERR_DOCS_NULL_RESULT);
+        } else {
+            deliverPicked(pContext, PickSource.DOCUMENTS, pRequestType, Collections.singletonList(pictureUri), false, pCallback);
+        }
+
+    }
+
+    /**
+     * Picker apps return several images in {@link ClipData}, single image (or the first one) might also be set as data
+     */
+    @NonNull
+    private static List<Uri> extractUris(@Nullable final Intent pData) {
+
+        final List<Uri> result = new ArrayList<>();
+        if (pData == null) {
+            return result;
+        }
+
+        final Uri data = pData.getData();
+        if (data != null) {
+            result.add(data);
+        }
+
+        final ClipData clipData = API_16 ? pData.getClipData() : null;
+        if (clipData != null) {
+
+            final int count = clipData.getItemCount();
+            for (int i = 0; i < count; i++) {
+
+                final Uri uri = clipData.getItemAt(i)
+                                        .getUri();
+                if (uri != null && !result.contains(uri)) {
+                    result.add(uri);
+                }
+
+            }
+
+        }
+
+        return result;
+    }
+
+    /**
+     * Without {@link PickLimits} images are delivered right away. Otherwise their headers are validated first, in
+     * {@link PickScheduler.Priority#USER_INITIATED} lane, images that fail are dropped and an error is delivered only if none passed
+     */
+    private static void deliverPicked(@NonNull final Context pContext, @NonNull final PickSource pPickSource, final int pRequestType,
+                                      @NonNull final List<Uri> pImageUris, final boolean pAllowMultiple, @NonNull final Callback pCallback) {
+
+        final PickLimits limits = PickLimits.current();
+        if (limits == null) {
+
+            deliverAccepted(pPickSource, pRequestType, pImageUris, pAllowMultiple, pCallback);
+
+            return;
+        }
+
+        final Context appContext = pContext.getApplicationContext();
+        final int sessionId = PickMetrics.currentSession();
+
+        // tagged with the first image, promoting it promotes validation of the whole pick
+        PickScheduler.get()
+                     .execute(PickScheduler.Priority.USER_INITIATED, pImageUris.get(0), new Runnable() {
+
+                         @Override
+                         public void run() {
+
+                             // one query per collection instead of one per gallery image. Headers are checked for the
+                             // modification times read here, an image replaced at the same Uri is never checked by its old header
+                             final List<PickedImage> images = PickedImage.loadStats(appContext, pImageUris);
+
+                             final List<Uri> accepted = new ArrayList<>(pImageUris.size());
+
+                             String error = null;
+                             for (final PickedImage image : images) {
+
+                                 final String uriError = limits.check(image);
+                                 if (uriError == null) {
+                                     accepted.add(image.getUri());
+                                 } else if (error == null) {
+                                     error = uriError;
+                                 }
+
+                             }
+
+                             final String firstError = error;
+
+                             PickExecutors.mainHandler()
+                                          .post(new Runnable() {
+
+                                              @Override
+                                              public void run() {
+
+                                                  final int previousSessionId = PickMetrics.enterSession(sessionId);
+                                                  try {
+
+                                                      if (accepted.isEmpty()) {
+                                                          //noinspection ConstantConditions
+                                                          pCallback.onError(pPickSource, pRequestType, firstError);
+                                                      } else {
+                                                          deliverAccepted(pPickSource, pRequestType, accepted, pAllowMultiple, pCallback);
+                                                      }
+
+                                                  } finally {
+                                                      PickMetrics.exitSession(previousSessionId);
+                                                  }
+
+                                              }
+
+                                          });
+
+                         }
+
+                     });
+
+    }
+
+    private static void deliverAccepted(@NonNull final PickSource pPickSource, final int pRequestType, @NonNull final List<Uri> pImageUris,
+                                        final boolean pAllowMultiple, @NonNull final Callback pCallback) {
+
+        if (!pAllowMultiple) {
+
+            pCallback.onImagePicked(pPickSource, pRequestType, pImageUris.get(0));
+
+            return;
+        }
+
+        if (pCallback instanceof MultipleCallback) {
+
+            ((MultipleCallback) pCallback).onImagesPicked(pPickSource, pRequestType, Collections.unmodifiableList(pImageUris));
+
+            return;
+        }
+
+        for (final Uri uri : pImageUris) {
+            pCallback.onImagePicked(pPickSource, pRequestType, uri);
+        }
+
+    }
+
+    // ==== CAMERA DIR ====//
+
+    /**
+     * Directory is created and checked for write access once, in background. On main thread this waits for that if it is not done yet,
+     * {@link #warmUp(Context)} starts it early
+     *
+     * @param pContext app {@link Context}
+     * @return directory where pictures taken by camera apps will be saved or null if an error occurs.
+     * By default it's a pictures directory on external storage.
+     */
+    public static File getCameraPicsDirectory(@NonNull final Context pContext) {
+        return CameraPicsDirectory.get(pContext)
+                                  .await();
     }
 
     /**
@@ -757,38 +1501,119 @@ public class QuickImagePick {
      */
     public static void setCameraPicsDirectory(@NonNull final Context pContext, @Nullable final String pDirPath) {
 
-        if (pDirPath == null) {
-            PreferenceManager.getDefaultSharedPreferences(pContext)
-                             .edit()
-                             .remove(PREFS_CAMERA_DIR)
-                             .apply();
+        PickSessionStore.get(pContext)
+                        .putCameraDir(pDirPath);
+
+        CameraPicsDirectory.get(pContext)
+                           .invalidate();
+
+    }
+
+    /**
+     * Makes camera apps write pictures straight into shared storage (pictures collection of {@link MediaStore}) instead of
+     * camera pictures directory, so they show up in gallery apps without being copied. Picked {@link Uri} is then a MediaStore one.
+     * Requires API 29, older versions keep using camera pictures directory. Disabled by default
+     * <br>
+     * Rows of cancelled picks are deleted. Quota and clean up of camera pictures do not apply to shared storage.
+     * <br>
+     * Rows are inserted ahead in background (when enabled, in {@link #warmUp(Context)} and after each camera pick), so that no
+     * MediaStore insert runs on main thread. A camera pick started before a row is ready writes into camera pictures directory
+     *
+     * @param pContext app {@link Context}
+     * @param pEnabled true to write camera pictures into MediaStore
+     */
+    public static void setCameraPicsToMediaStore(@NonNull final Context pContext, final boolean pEnabled) {
+
+        PickSessionStore.get(pContext)
+                        .putCameraToMediaStore(pEnabled);
+
+        if (pEnabled) {
+            MediaStoreOutput.get(pContext)
+                            .prepare();
         } else {
-            PreferenceManager.getDefaultSharedPreferences(pContext)
-                             .edit()
-                             .putString(PREFS_CAMERA_DIR, pDirPath)
-                             .apply();
+            MediaStoreOutput.get(pContext)
+                            .discard();
         }
 
     }
 
+    /**
+     * Limits disk space used by pictures taken with {@code pickFromCamera(...)}. When exceeded, least recently used pictures are deleted.
+     * Only files created by the library are counted and deleted. Clean up runs in background.
+     * <br>
+     * <b>Important: pictures above the quota are deleted even if your app still references them.</b>
+     *
+     * @param pContext  app {@link Context}
+     * @param pMaxBytes max total size of pictures, 0 for no limit
+     * @param pMaxFiles max number of pictures, 0 for no limit
+     */
+    public static void setCameraPicsQuota(@NonNull final Context pContext, final long pMaxBytes, final int pMaxFiles) {
+        CameraPicsJanitor.get(pContext)
+                         .setQuota(pMaxBytes, pMaxFiles);
+    }
+
+    /**
+     * Schedules background clean up of camera pictures directory: deletes files of camera picks that never returned a result
+     * (e.g. process was killed and never restored) and enforces {@link #setCameraPicsQuota(Context, long, int)}.
+     * Cheap to call, e.g. in {@code Application.onCreate()}
+     *
+     * @param pContext app {@link Context}
+     */
+    public static void cleanUpCameraPics(@NonNull final Context pContext) {
+        CameraPicsJanitor.get(pContext)
+                         .schedule();
+    }
+
     // ==== LAST CAM PIC ==== //
 
+    /**
+     * @param pContext app {@link Context}
+     * @return output {@link Uri} of the most recently started camera pick. Use {@link PickSession#getOutputUri()}
+     * when several picks may be in flight
+     */
+    @Nullable
     public static Uri getLastCameraUri(@NonNull final Context pContext) {
 
-        final String uriString = PreferenceManager.getDefaultSharedPreferences(pContext)
-                                                  .getString(PREFS_LAST_CAMERA_URI, null);
+        final String uriString = PickSessionStore.get(pContext)
+                                                 .getLastCameraUri();
 
         return uriString == null ? null : Uri.parse(uriString);
     }
 
+    /**
+     * Deletes output of the most recently started camera pick. Deletion runs in background
+     *
+     * @param pContext app {@link Context}
+     */
     public static void deleteLastCameraPic(@NonNull final Context pContext) {
+        deleteCameraPic(pContext, getLastCameraUri(pContext));
+    }
 
-        final Uri uri = getLastCameraUri(pContext);
-        if (uri != null) {
-            pContext.getContentResolver()
-                    .delete(uri, null, null);
+    /**
+     * Deletes in background
+     */
+    private static void deleteCameraPic(@NonNull final Context pContext, @Nullable final Uri pUri) {
+
+        if (pUri == null) {
+            return;
         }
 
+        final ContentResolver resolver = pContext.getContentResolver();
+
+        PickExecutors.io()
+                     .execute(new Runnable() {
+
+                         @Override
+                         public void run() {
+
+                             PickStrictMode.onDiskAccess("camera picture deletion");
+
+                             resolver.delete(pUri, null, null);
+
+                         }
+
+                     });
+
     }
 
     // ==== //
@@ -798,6 +1623,20 @@ public class QuickImagePick {
 
     // ==== //
 
+    private static final class CameraOutput {
+
+        final Uri  mUri;
+        final File mFile;
+
+        CameraOutput(@NonNull final Uri pUri, @Nullable final File pFile) {
+
+            this.mUri = pUri;
+            this.mFile = pFile;
+
+        }
+
+    }
+
     /**
      * Callback for {@code handleActivityResult(...)} methods
      */
@@ -833,4 +1672,25 @@ public class QuickImagePick {
 
     }
 
+    /**
+     * Callback for {@code handleActivityResult(...)} methods that also receives several images picked at once
+     *
+     * @see #pickFromGallery(Activity, int, boolean)
+     * @see #pickFromDocuments(Activity, int, boolean)
+     */
+    public interface MultipleCallback
+            extends Callback {
+
+        /**
+         * Triggered when user picked images in a session that allows multiple images.
+         * Plain {@link Callback} gets {@link #onImagePicked(PickSource, int, Uri)} for each of them instead
+         *
+         * @param pPickSource  source from which image {@link Uri}s were retrieved
+         * @param pRequestType request type that was (optionally) set when starting pick flow
+         * @param pImageUris   {@link Uri}s of the images, never empty
+         */
+        void onImagesPicked(@NonNull final PickSource pPickSource, final int pRequestType, @NonNull final List<Uri> pImageUris);
+
+    }
+
 }
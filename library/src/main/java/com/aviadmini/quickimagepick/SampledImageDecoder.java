@@ -0,0 +1,234 @@
+package com.aviadmini.quickimagepick;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.net.Uri;
+import android.os.Build;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.aviadmini.quickimagepick.core.SampleSize;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Decodes picked images at (about) the size they are needed. Image bounds are read first, then the image is decoded with the
+ * largest power-of-two sample size that keeps it at least as large as the target, and finally scaled to the exact target size.
+ * Peak memory is thus proportional to the target size and not to the size of the source image.
+ * <br>
+ * Sampled and scaled bitmaps come from {@link BitmapPool} when it has suitable ones, and intermediate bitmaps go back to it.
+ * Results are mutable, give them to {@link BitmapPool#release(Bitmap)} once they are no longer used.
+ */
+@SuppressWarnings("unused")
+public final class SampledImageDecoder {
+
+    private static final boolean API_11 = Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB;
+
+    private static final Paint SCALE_PAINT = new Paint(Paint.FILTER_BITMAP_FLAG);
+
+    /**
+     * Decodes image scaled down to fit into given size, keeping aspect ratio. Images smaller than that are not scaled up.
+     *
+     * @param pContext   app {@link Context}
+     * @param pUri       image {@link Uri}
+     * @param pMaxWidth  max width of the result
+     * @param pMaxHeight max height of the result
+     * @return decoded {@link Bitmap}
+     * @throws IOException if image cannot be read or decoded
+     */
+    @NonNull
+    public static Bitmap decode(@NonNull final Context pContext, @NonNull final Uri pUri, final int pMaxWidth, final int pMaxHeight)
+            throws IOException {
+
+        if (pMaxWidth <= 0 || pMaxHeight <= 0) {
+            throw new IllegalArgumentException("Target size must be positive: " + pMaxWidth + "x" + pMaxHeight);
+        }
+
+        final BitmapFactory.Options bounds = decodeBounds(pContext, pUri);
+
+        final float scale = SampleSize.fitScale(bounds.outWidth, bounds.outHeight, pMaxWidth, pMaxHeight);
+
+        final int targetWidth = Math.max(1, Math.round(bounds.outWidth * scale));
+        final int targetHeight = Math.max(1, Math.round(bounds.outHeight * scale));
+
+        return decodeScaled(pContext, pUri, bounds, targetWidth, targetHeight);
+    }
+
+    /**
+     * Decodes image scaled down to contain at most given amount of pixels, keeping aspect ratio.
+     * Images smaller than that are not scaled up.
+     *
+     * @param pContext   app {@link Context}
+     * @param pUri       image {@link Uri}
+     * @param pMaxPixels max pixel count (width * height) of the result
+     * @return decoded {@link Bitmap}
+     * @throws IOException if image cannot be read or decoded
+     */
+    @NonNull
+    public static Bitmap decodeWithinPixels(@NonNull final Context pContext, @NonNull final Uri pUri, final long pMaxPixels)
+            throws IOException {
+
+        if (pMaxPixels <= 0) {
+            throw new IllegalArgumentException("Pixel budget must be positive: " + pMaxPixels);
+        }
+
+        final BitmapFactory.Options bounds = decodeBounds(pContext, pUri);
+
+        final int[] size = SampleSize.pixelBudgetSize(bounds.outWidth, bounds.outHeight, pMaxPixels);
+
+        return decodeScaled(pContext, pUri, bounds, size[0], size[1]);
+    }
+
+    /**
+     * @param pSourceWidth  source image width
+     * @param pSourceHeight source image height
+     * @param pTargetWidth  required width
+     * @param pTargetHeight required height
+     * @return largest power-of-two sample size that keeps decoded image not smaller than required size
+     */
+    public static int computeSampleSize(final int pSourceWidth, final int pSourceHeight, final int pTargetWidth, final int pTargetHeight) {
+        return SampleSize.compute(pSourceWidth, pSourceHeight, pTargetWidth, pTargetHeight);
+    }
+
+    // ==== //
+
+    @NonNull
+    private static BitmapFactory.Options decodeBounds(@NonNull final Context pContext, @NonNull final Uri pUri)
+            throws IOException {
+
+        PickStrictMode.onDiskAccess("image decode");
+
+        final BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+
+        final InputStream in = PickStages.openInputStream(pContext, pUri);
+        try {
+            BitmapFactory.decodeStream(in, null, options);
+        } finally {
+            IoUtils.closeQuietly(in);
+        }
+
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            throw new IOException("Could not read image bounds of " + pUri);
+        }
+
+        return options;
+    }
+
+    @NonNull
+    private static Bitmap decodeScaled(@NonNull final Context pContext, @NonNull final Uri pUri, @NonNull final BitmapFactory.Options pBounds,
+                                       final int pTargetWidth, final int pTargetHeight)
+            throws IOException {
+
+        final long start = PickMetrics.start();
+
+        PickMetrics.beginSection("QIP decode");
+        try {
+            return decodeScaled(pContext, pUri, pBounds, pTargetWidth, pTargetHeight, start);
+        } finally {
+            PickMetrics.endSection();
+        }
+
+    }
+
+    @NonNull
+    private static Bitmap decodeScaled(@NonNull final Context pContext, @NonNull final Uri pUri, @NonNull final BitmapFactory.Options pBounds,
+                                       final int pTargetWidth, final int pTargetHeight, final long pStartNanos)
+            throws IOException {
+
+        final BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inSampleSize = computeSampleSize(pBounds.outWidth, pBounds.outHeight, pTargetWidth, pTargetHeight);
+
+        final BitmapPool pool = BitmapPool.get();
+
+        Bitmap reusable = null;
+        if (API_11) {
+
+            // decoders round sampled size differently, rounding up never asks for too small a bitmap
+            final int sampledWidth = (pBounds.outWidth + options.inSampleSize - 1) / options.inSampleSize;
+            final int sampledHeight = (pBounds.outHeight + options.inSampleSize - 1) / options.inSampleSize;
+
+            reusable = pool.takeForDecode(sampledWidth, sampledHeight, pBounds.outMimeType, options.inSampleSize);
+
+            options.inMutable = true;
+            options.inBitmap = reusable;
+
+        }
+
+        Bitmap sampled;
+        try {
+            sampled = decodeStream(pContext, pUri, options);
+        } catch (final IllegalArgumentException e) {
+
+            // decoder refused the pooled bitmap
+            if (reusable == null) {
+                throw e;
+            }
+
+            sampled = null;
+
+        }
+
+        if (sampled == null && reusable != null) {
+
+            pool.release(reusable);
+
+            options.inBitmap = null;
+
+            sampled = decodeStream(pContext, pUri, options);
+
+        }
+
+        if (sampled == null) {
+            throw new IOException("Could not decode " + pUri);
+        }
+
+        final long sampledBytes = BitmapPool.byteCountOf(sampled);
+
+        if (sampled.getWidth() == pTargetWidth && sampled.getHeight() == pTargetHeight) {
+
+            PickMetrics.decoded(pTargetWidth, pTargetHeight, sampledBytes, pStartNanos);
+            PickMetrics.step(PickMetrics.STEP_DECODE, pStartNanos);
+
+            return sampled;
+        }
+
+        final Bitmap.Config config = sampled.getConfig() == null ? Bitmap.Config.ARGB_8888 : sampled.getConfig();
+
+        // same filtering as Bitmap.createScaledBitmap(), but into a mutable bitmap that can be pooled later
+        final Bitmap result = pool.obtain(pTargetWidth, pTargetHeight, config);
+        new Canvas(result).drawBitmap(sampled, null, new Rect(0, 0, pTargetWidth, pTargetHeight), SCALE_PAINT);
+
+        // both are alive until here
+        PickMetrics.decoded(pTargetWidth, pTargetHeight, sampledBytes + BitmapPool.byteCountOf(result), pStartNanos);
+
+        pool.release(sampled);
+
+        PickMetrics.step(PickMetrics.STEP_DECODE, pStartNanos);
+
+        return result;
+    }
+
+    @Nullable
+    private static Bitmap decodeStream(@NonNull final Context pContext, @NonNull final Uri pUri, @NonNull final BitmapFactory.Options pOptions)
+            throws IOException {
+
+        final InputStream in = PickStages.openInputStream(pContext, pUri);
+        try {
+            return BitmapFactory.decodeStream(in, null, pOptions);
+        } finally {
+            IoUtils.closeQuietly(in);
+        }
+
+    }
+
+    // ==== //
+
+    private SampledImageDecoder() {}
+
+}
@@ -0,0 +1,379 @@
+package com.aviadmini.quickimagepick;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.net.Uri;
+import android.support.annotation.MainThread;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.WorkerThread;
+
+import com.aviadmini.quickimagepick.core.Hashing;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Thumbnails of picked images, cached in two tiers: decoded bitmaps in a memory LRU bounded by bytes and small JPEGs in
+ * app cache directory bounded by their own byte budget. Both tiers are keyed by {@link Uri} and thumbnail size.
+ * Concurrent requests for the same thumbnail share one decode.
+ */
+@SuppressWarnings("unused")
+public final class ThumbnailCache {
+
+    private static final String DIR_NAME = "qip_thumbs";
+
+    private static final long DEFAULT_DISK_BUDGET = 16 * 1024 * 1024;
+
+    private static final int THUMBNAIL_QUALITY = 85;
+
+    private static volatile ThumbnailCache sInstance;
+
+    /**
+     * @param pContext app {@link Context}
+     * @return cache with memory tier of 1/8 of max heap and 16MB disk tier
+     */
+    @NonNull
+    public static ThumbnailCache get(@NonNull final Context pContext) {
+
+        ThumbnailCache instance = sInstance;
+        if (instance == null) {
+
+            synchronized (ThumbnailCache.class) {
+
+                instance = sInstance;
+                if (instance == null) {
+
+                    final int memoryBudget = (int) Math.min(Integer.MAX_VALUE, Runtime.getRuntime()
+                                                                                      .maxMemory() / 8);
+
+                    instance = sInstance = new ThumbnailCache(pContext, memoryBudget, DEFAULT_DISK_BUDGET);
+
+                }
+
+            }
+
+        }
+
+        return instance;
+    }
+
+    private final Context mAppContext;
+    private final File    mDir;
+    private final long    mDiskBudget;
+
+    private final BitmapMemoryCache<String> mMemory;
+
+    // guarded by mDir
+    private long mDiskBytes = -1;
+
+    /**
+     * @param pContext      app {@link Context}
+     * @param pMemoryBudget max bytes of decoded thumbnails kept in memory
+     * @param pDiskBudget   max bytes of encoded thumbnails kept in cache directory
+     */
+    public ThumbnailCache(@NonNull final Context pContext, final int pMemoryBudget, final long pDiskBudget) {
+
+        this.mAppContext = pContext.getApplicationContext();
+        this.mDir = new File(this.mAppContext.getCacheDir(), DIR_NAME);
+        this.mDiskBudget = pDiskBudget;
+
+        this.mMemory = new BitmapMemoryCache<>(pMemoryBudget);
+
+    }
+
+    /**
+     * Memory tier only, does no I/O
+     *
+     * @param pUri  image {@link Uri}
+     * @param pSize max width and height of the thumbnail
+     * @return cached thumbnail or null
+     */
+    @Nullable
+    public Bitmap peek(@NonNull final Uri pUri, final int pSize) {
+        return this.mMemory.peek(key(pUri, pSize));
+    }
+
+    /**
+     * Gets thumbnail from memory, disk or by decoding the image, in that order. Blocking
+     *
+     * @param pUri  image {@link Uri}
+     * @param pSize max width and height of the thumbnail
+     * @return thumbnail. Shared, must not be recycled or modified
+     * @throws IOException if image cannot be read or decoded
+     */
+    @WorkerThread
+    @NonNull
+    public Bitmap get(@NonNull final Uri pUri, final int pSize)
+            throws IOException {
+
+        final String key = key(pUri, pSize);
+
+        final Bitmap cached = this.mMemory.peek(key);
+
+        PickMetrics.cacheLookup(PickMetrics.CACHE_THUMBNAIL_MEMORY, cached != null);
+
+        if (cached != null) {
+            return cached;
+        }
+
+        return this.mMemory.get(key, "thumbnail of " + pUri, this.newLoader(key, pUri, pSize));
+    }
+
+    /**
+     * Gets thumbnail in background and delivers it on main thread. Cached thumbnail is delivered immediately
+     *
+     * @param pUri      image {@link Uri}
+     * @param pSize     max width and height of the thumbnail
+     * @param pCallback receives the result
+     */
+    @MainThread
+    public void load(@NonNull final Uri pUri, final int pSize, @NonNull final Callback pCallback) {
+
+        final String key = key(pUri, pSize);
+
+        PickMetrics.cacheLookup(PickMetrics.CACHE_THUMBNAIL_MEMORY, this.mMemory.peek(key) != null);
+
+        this.mMemory.load(key, pUri, "thumbnail of " + pUri, this.newLoader(key, pUri, pSize), new BitmapMemoryCache.Delivery() {
+
+            @Override
+            public void onLoaded(@NonNull final Bitmap pBitmap) {
+                pCallback.onThumbnailLoaded(pUri, pSize, pBitmap);
+            }
+
+            @Override
+            public void onError(@NonNull final IOException pError) {
+                pCallback.onThumbnailError(pUri, pSize, pError);
+            }
+
+        });
+
+    }
+
+    /**
+     * Drops thumbnails of given image, e.g. after the app has modified it. Does no I/O
+     *
+     * @param pUri image {@link Uri}
+     */
+    public void invalidate(@NonNull final Uri pUri) {
+
+        final String prefix = pUri.toString() + '#';
+
+        for (final String key : this.mMemory.keys()) {
+
+            if (key.startsWith(prefix)) {
+                this.mMemory.remove(key);
+            }
+
+        }
+
+        // disk thumbnails are keyed by modification time too, re-reading it is enough
+        PickedImage.invalidate(pUri);
+
+    }
+
+    /**
+     * Drops memory tier, e.g. on {@link android.content.ComponentCallbacks2#onTrimMemory(int)}
+     */
+    public void trimMemory() {
+        this.mMemory.evictAll();
+    }
+
+    // ==== //
+
+    @NonNull
+    private BitmapMemoryCache.Loader newLoader(@NonNull final String pKey, @NonNull final Uri pUri, final int pSize) {
+
+        return new BitmapMemoryCache.Loader() {
+
+            @NonNull
+            @Override
+            public Bitmap load()
+                    throws IOException {
+                return loadThumbnail(pKey, pUri, pSize);
+            }
+
+        };
+    }
+
+    @NonNull
+    private Bitmap loadThumbnail(@NonNull final String pKey, @NonNull final Uri pUri, final int pSize)
+            throws IOException {
+
+        PickStrictMode.onDiskAccess("thumbnail load");
+
+        // changed images get different disk files, stale ones age out under the budget
+        final long lastModified = PickedImage.of(this.mAppContext, pUri)
+                                             .getLastModified();
+
+        final File file = new File(this.mDir, Hashing.md5Hex(pKey + '@' + lastModified));
+
+        Bitmap thumbnail = this.readDisk(file);
+
+        PickMetrics.cacheLookup(PickMetrics.CACHE_THUMBNAIL_DISK, thumbnail != null);
+
+        if (thumbnail == null) {
+
+            thumbnail = SampledImageDecoder.decode(this.mAppContext, pUri, pSize, pSize);
+
+            this.writeDisk(file, thumbnail);
+
+        }
+
+        return thumbnail;
+    }
+
+    @Nullable
+    private Bitmap readDisk(@NonNull final File pFile) {
+
+        if (!pFile.isFile()) {
+            return null;
+        }
+
+        final Bitmap bitmap = BitmapFactory.decodeFile(pFile.getPath());
+        if (bitmap == null) {
+
+            //noinspection ResultOfMethodCallIgnored
+            pFile.delete();
+
+            return null;
+        }
+
+        // recently used thumbnails are trimmed last
+        //noinspection ResultOfMethodCallIgnored
+        pFile.setLastModified(System.currentTimeMillis());
+
+        return bitmap;
+    }
+
+    private void writeDisk(@NonNull final File pFile, @NonNull final Bitmap pThumbnail) {
+
+        synchronized (this.mDir) {
+
+            //noinspection ResultOfMethodCallIgnored
+            this.mDir.mkdirs();
+
+            final File tmpFile = new File(pFile.getPath() + ".tmp");
+
+            OutputStream out = null;
+            try {
+
+                out = new BufferedOutputStream(new FileOutputStream(tmpFile), IoUtils.BUFFER_SIZE);
+
+                if (!pThumbnail.compress(Bitmap.CompressFormat.JPEG, THUMBNAIL_QUALITY, out)) {
+                    return;
+                }
+
+                out.close();
+                out = null;
+
+                if (!tmpFile.renameTo(pFile)) {
+                    return;
+                }
+
+                this.trimDisk(pFile.length());
+
+            } catch (final IOException ignored) {
+                // memory tier still has it
+            } finally {
+
+                IoUtils.closeQuietly(out);
+
+                //noinspection ResultOfMethodCallIgnored
+                tmpFile.delete();
+
+            }
+
+        }
+
+    }
+
+    // guarded by mDir
+    private void trimDisk(final long pAddedBytes) {
+
+        if (this.mDiskBytes >= 0) {
+
+            this.mDiskBytes += pAddedBytes;
+
+            if (this.mDiskBytes <= this.mDiskBudget) {
+                return;
+            }
+
+        }
+
+        final File[] files = this.mDir.listFiles();
+        if (files == null) {
+            return;
+        }
+
+        long total = 0;
+        for (final File file : files) {
+            total += file.length();
+        }
+
+        if (total > this.mDiskBudget) {
+
+            Arrays.sort(files, OLDEST_FIRST);
+
+            for (final File file : files) {
+
+                if (total <= this.mDiskBudget) {
+                    break;
+                }
+
+                final long length = file.length();
+                if (file.delete()) {
+                    total -= length;
+                }
+
+            }
+
+        }
+
+        this.mDiskBytes = total;
+
+    }
+
+    @NonNull
+    private static String key(@NonNull final Uri pUri, final int pSize) {
+
+        if (pSize <= 0) {
+            throw new IllegalArgumentException("Thumbnail size must be positive: " + pSize);
+        }
+
+        return pUri.toString() + '#' + pSize;
+    }
+
+    private static final Comparator<File> OLDEST_FIRST = new Comparator<File>() {
+
+        @Override
+        public int compare(final File pLhs, final File pRhs) {
+
+            final long lhs = pLhs.lastModified();
+            final long rhs = pRhs.lastModified();
+
+            return lhs < rhs ? -1 : (lhs == rhs ? 0 : 1);
+        }
+
+    };
+
+    // ==== //
+
+    public interface Callback {
+
+        /**
+         * @param pThumbnail shared thumbnail, must not be recycled or modified
+         */
+        void onThumbnailLoaded(@NonNull final Uri pUri, final int pSize, @NonNull final Bitmap pThumbnail);
+
+        void onThumbnailError(@NonNull final Uri pUri, final int pSize, @NonNull final IOException pError);
+
+    }
+
+}
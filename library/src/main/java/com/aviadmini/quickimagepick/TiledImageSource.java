@@ -0,0 +1,406 @@
+package com.aviadmini.quickimagepick;
+
+import android.annotation.TargetApi;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Rect;
+import android.net.Uri;
+import android.os.Build;
+import android.support.annotation.MainThread;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.WorkerThread;
+
+import com.aviadmini.quickimagepick.core.TileGrid;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Tiles of a very large picked image (panoramas, scans) for a zoomable viewer, decoded on demand with {@link BitmapRegionDecoder}.
+ * Only the visible part of the image is decoded, at the sample size that matches current zoom (see {@link TileGrid}), so memory use
+ * depends on the screen and not on the image.
+ * <br>
+ * Decoded tiles are kept in a memory LRU bounded by bytes. Decoding is lock-striped: a few region decoders of the same image are each
+ * guarded by their own lock and tiles are spread over them, so decodes of neighbouring tiles run in parallel and a slow tile
+ * does not stall panning. Concurrent requests for the same tile share one decode.
+ * <br>
+ * Requires API 10+. JPEG and PNG are supported on all versions, WebP where the platform decoder supports it
+ */
+@SuppressWarnings("unused")
+@TargetApi(Build.VERSION_CODES.GINGERBREAD_MR1)
+public final class TiledImageSource
+        implements Closeable {
+
+    public static final int DEFAULT_TILE_SIZE = 512;
+
+    private static final int MAX_STRIPES = 4;
+
+    /**
+     * @return true if tiled decoding is available on this device
+     */
+    public static boolean isSupported() {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.GINGERBREAD_MR1;
+    }
+
+    /**
+     * Opens image with {@link #DEFAULT_TILE_SIZE} tiles and tile cache of 1/8 of max heap. Blocking, call it from a background thread
+     *
+     * @see #open(Context, Uri, int, int)
+     */
+    @WorkerThread
+    @NonNull
+    public static TiledImageSource open(@NonNull final Context pContext, @NonNull final Uri pUri)
+            throws IOException {
+
+        final int cacheBytes = (int) Math.min(Integer.MAX_VALUE, Runtime.getRuntime()
+                                                                        .maxMemory() / 8);
+
+        return open(pContext, pUri, DEFAULT_TILE_SIZE, cacheBytes);
+    }
+
+    /**
+     * Blocking, call it from a background thread
+     *
+     * @param pContext    app {@link Context}
+     * @param pUri        image {@link Uri}
+     * @param pTileSize   size of decoded tiles in pixels
+     * @param pCacheBytes max bytes of decoded tiles kept in memory
+     * @return open source, must be closed
+     * @throws IOException if image cannot be read or its format does not support region decoding
+     */
+    @WorkerThread
+    @NonNull
+    public static TiledImageSource open(@NonNull final Context pContext, @NonNull final Uri pUri, final int pTileSize, final int pCacheBytes)
+            throws IOException {
+
+        if (!isSupported()) {
+            throw new IOException("Region decoding requires API 10");
+        }
+
+        if (pTileSize <= 0) {
+            throw new IllegalArgumentException("Tile size must be positive: " + pTileSize);
+        }
+
+        final Context appContext = pContext.getApplicationContext();
+
+        final BitmapRegionDecoder decoder = newDecoder(appContext, pUri);
+
+        return new TiledImageSource(appContext, pUri, pTileSize, pCacheBytes, decoder);
+    }
+
+    private final Context mAppContext;
+    private final Uri     mUri;
+    private final int     mTileSize;
+    private final int     mWidth;
+    private final int     mHeight;
+
+    private final Stripe[] mStripes;
+
+    private final BitmapMemoryCache<Long> mTiles;
+
+    private volatile boolean mClosed;
+
+    private TiledImageSource(@NonNull final Context pAppContext, @NonNull final Uri pUri, final int pTileSize, final int pCacheBytes,
+                             @NonNull final BitmapRegionDecoder pDecoder) {
+
+        this.mAppContext = pAppContext;
+        this.mUri = pUri;
+        this.mTileSize = pTileSize;
+        this.mWidth = pDecoder.getWidth();
+        this.mHeight = pDecoder.getHeight();
+
+        // each decoder holds its own copy of the image index, more stripes than decoding threads would only waste memory
+        this.mStripes = new Stripe[Math.max(1, Math.min(MAX_STRIPES, PickExecutors.coreCount()))];
+        for (int i = 0; i < this.mStripes.length; i++) {
+            this.mStripes[i] = new Stripe();
+        }
+
+        this.mStripes[0].mDecoder = pDecoder;
+
+        this.mTiles = new BitmapMemoryCache<>(pCacheBytes);
+
+    }
+
+    @NonNull
+    public Uri getUri() {
+        return this.mUri;
+    }
+
+    /**
+     * @return image width, before applying EXIF orientation
+     */
+    public int getWidth() {
+        return this.mWidth;
+    }
+
+    /**
+     * @return image height, before applying EXIF orientation
+     */
+    public int getHeight() {
+        return this.mHeight;
+    }
+
+    public int getTileSize() {
+        return this.mTileSize;
+    }
+
+    /**
+     * @param pScale displayed pixels per image pixel at current zoom
+     * @return sample size to request tiles with
+     */
+    public static int getSampleSize(final float pScale) {
+        return TileGrid.sampleSizeFor(pScale);
+    }
+
+    public int getColumnCount(final int pSampleSize) {
+        return TileGrid.tileCount(this.mWidth, this.mTileSize, checkSampleSize(pSampleSize));
+    }
+
+    public int getRowCount(final int pSampleSize) {
+        return TileGrid.tileCount(this.mHeight, this.mTileSize, checkSampleSize(pSampleSize));
+    }
+
+    /**
+     * @param pSampleSize sample size of the tile
+     * @param pColumn     tile column
+     * @param pRow        tile row
+     * @param pOutRect    receives part of the image covered by the tile, in image pixels
+     * @return given rect
+     */
+    @NonNull
+    public Rect getTileRect(final int pSampleSize, final int pColumn, final int pRow, @NonNull final Rect pOutRect) {
+
+        this.checkTile(pSampleSize, pColumn, pRow);
+
+        pOutRect.set(TileGrid.tileStart(pColumn, this.mTileSize, pSampleSize), TileGrid.tileStart(pRow, this.mTileSize, pSampleSize),
+                TileGrid.tileEnd(pColumn, this.mWidth, this.mTileSize, pSampleSize),
+                TileGrid.tileEnd(pRow, this.mHeight, this.mTileSize, pSampleSize));
+
+        return pOutRect;
+    }
+
+    /**
+     * Memory only, does no I/O
+     *
+     * @return cached tile or null
+     */
+    @Nullable
+    public Bitmap peekTile(final int pSampleSize, final int pColumn, final int pRow) {
+
+        this.checkTile(pSampleSize, pColumn, pRow);
+
+        return this.mTiles.peek(TileGrid.key(pSampleSize, pColumn, pRow));
+    }
+
+    /**
+     * Gets tile from memory or decodes it. Blocking
+     *
+     * @return tile. Shared, must not be recycled or modified
+     * @throws IOException if tile cannot be decoded or source is closed
+     */
+    @WorkerThread
+    @NonNull
+    public Bitmap getTile(final int pSampleSize, final int pColumn, final int pRow)
+            throws IOException {
+
+        this.checkTile(pSampleSize, pColumn, pRow);
+
+        final Long key = TileGrid.key(pSampleSize, pColumn, pRow);
+
+        return this.mTiles.get(key, "tile of " + this.mUri, this.newLoader(pSampleSize, pColumn, pRow));
+    }
+
+    /**
+     * Gets tile in background and delivers it on main thread. Cached tile is delivered immediately
+     */
+    @MainThread
+    public void loadTile(final int pSampleSize, final int pColumn, final int pRow, @NonNull final Callback pCallback) {
+
+        this.checkTile(pSampleSize, pColumn, pRow);
+
+        final Long key = TileGrid.key(pSampleSize, pColumn, pRow);
+        final BitmapMemoryCache.Loader loader = this.newLoader(pSampleSize, pColumn, pRow);
+
+        this.mTiles.load(key, this.mUri, "tile of " + this.mUri, loader, new BitmapMemoryCache.Delivery() {
+
+            @Override
+            public void onLoaded(@NonNull final Bitmap pBitmap) {
+                pCallback.onTileLoaded(pSampleSize, pColumn, pRow, pBitmap);
+            }
+
+            @Override
+            public void onError(@NonNull final IOException pError) {
+                pCallback.onTileError(pSampleSize, pColumn, pRow, pError);
+            }
+
+        });
+
+    }
+
+    /**
+     * Drops cached tiles, e.g. on {@link android.content.ComponentCallbacks2#onTrimMemory(int)}. Decoders stay open
+     */
+    public void trimMemory() {
+        this.mTiles.evictAll();
+    }
+
+    /**
+     * Releases decoders and cached tiles. Tiles already delivered stay valid
+     */
+    @Override
+    public void close() {
+
+        this.mClosed = true;
+
+        for (final Stripe stripe : this.mStripes) {
+
+            synchronized (stripe) {
+
+                if (stripe.mDecoder != null) {
+
+                    stripe.mDecoder.recycle();
+                    stripe.mDecoder = null;
+
+                }
+
+            }
+
+        }
+
+        this.mTiles.close();
+
+    }
+
+    @Override
+    public String toString() {
+        return "TiledImageSource{uri=" + this.mUri + ", width=" + this.mWidth + ", height=" + this.mHeight + ", tileSize=" + this.mTileSize
+                + ", stripes=" + this.mStripes.length + '}';
+    }
+
+    // ==== //
+
+    @NonNull
+    private BitmapMemoryCache.Loader newLoader(final int pSampleSize, final int pColumn, final int pRow) {
+
+        return new BitmapMemoryCache.Loader() {
+
+            @NonNull
+            @Override
+            public Bitmap load()
+                    throws IOException {
+                return decodeTile(pSampleSize, pColumn, pRow);
+            }
+
+        };
+    }
+
+    @NonNull
+    private Bitmap decodeTile(final int pSampleSize, final int pColumn, final int pRow)
+            throws IOException {
+
+        PickStrictMode.onDiskAccess("tile decode");
+
+        final Rect region = this.getTileRect(pSampleSize, pColumn, pRow, new Rect());
+
+        final BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inSampleSize = pSampleSize;
+
+        final Stripe stripe = this.mStripes[TileGrid.stripeOf(pColumn, pRow, this.mStripes.length)];
+
+        final Bitmap tile;
+        synchronized (stripe) {
+
+            if (this.mClosed) {
+                throw new IOException("Tiled source of " + this.mUri + " is closed");
+            }
+
+            if (stripe.mDecoder == null) {
+                stripe.mDecoder = newDecoder(this.mAppContext, this.mUri);
+            }
+
+            final long start = PickMetrics.start();
+            PickMetrics.beginSection("QIP decode tile");
+            try {
+
+                tile = stripe.mDecoder.decodeRegion(region, options);
+
+                if (tile != null) {
+                    PickMetrics.decoded(tile.getWidth(), tile.getHeight(), BitmapPool.byteCountOf(tile), start);
+                }
+
+            } finally {
+                PickMetrics.endSection();
+            }
+
+        }
+
+        if (tile == null) {
+            throw new IOException("Could not decode " + region + " of " + this.mUri);
+        }
+
+        return tile;
+    }
+
+    private void checkTile(final int pSampleSize, final int pColumn, final int pRow) {
+
+        if (pColumn < 0 || pColumn >= this.getColumnCount(pSampleSize) || pRow < 0 || pRow >= this.getRowCount(pSampleSize)) {
+            throw new IndexOutOfBoundsException("No tile " + pColumn + "," + pRow + " at sample size " + pSampleSize);
+        }
+
+    }
+
+    private static int checkSampleSize(final int pSampleSize) {
+
+        if (pSampleSize <= 0 || Integer.bitCount(pSampleSize) != 1) {
+            throw new IllegalArgumentException("Sample size must be a power of two: " + pSampleSize);
+        }
+
+        return pSampleSize;
+    }
+
+    @NonNull
+    private static BitmapRegionDecoder newDecoder(@NonNull final Context pContext, @NonNull final Uri pUri)
+            throws IOException {
+
+        PickStrictMode.onDiskAccess("region decoder open");
+
+        final InputStream in = PickStages.openInputStream(pContext, pUri);
+        try {
+
+            final BitmapRegionDecoder decoder = BitmapRegionDecoder.newInstance(in, false);
+            if (decoder == null) {
+                throw new IOException("Could not open region decoder for " + pUri);
+            }
+
+            return decoder;
+        } finally {
+            IoUtils.closeQuietly(in);
+        }
+
+    }
+
+    // ==== //
+
+    // lock of its decoder
+    private static final class Stripe {
+
+        BitmapRegionDecoder mDecoder;
+
+    }
+
+    public interface Callback {
+
+        /**
+         * @param pTile shared tile, must not be recycled or modified
+         */
+        void onTileLoaded(final int pSampleSize, final int pColumn, final int pRow, @NonNull final Bitmap pTile);
+
+        void onTileError(final int pSampleSize, final int pColumn, final int pRow, @NonNull final IOException pError);
+
+    }
+
+}